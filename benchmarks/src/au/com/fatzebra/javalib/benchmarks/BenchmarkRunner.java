@@ -0,0 +1,28 @@
+package au.com.fatzebra.javalib.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmark suites with the GC profiler and writes the results as JSON for comparison between builds.
+ *
+ * Usage: BenchmarkRunner [results file] [benchmark regex]
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String resultFile = args.length > 0 ? args[0] : "benchmarks/results.json";
+        String include = args.length > 1 ? args[1] : "au.com.fatzebra.javalib.*";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+    }
+}
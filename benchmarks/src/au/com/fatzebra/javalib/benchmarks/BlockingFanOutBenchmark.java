@@ -0,0 +1,91 @@
+package au.com.fatzebra.javalib.benchmarks;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.net.DaemonThreadFactory;
+import au.com.fatzebra.javalib.net.PooledTransport;
+import au.com.fatzebra.javalib.net.VirtualThreads;
+import au.com.fatzebra.javalib.simulator.GatewaySimulator;
+import au.com.fatzebra.javalib.simulator.Latency;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 200 blocking Purchase.create calls at once against a gateway simulator with 20ms of latency, run on a fixed pool of
+ * platform threads sized to the default connection pool, a platform pool with a thread per call, and virtual threads.
+ * The virtual thread case needs Java 21 and fails its setup on earlier versions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockingFanOutBenchmark {
+    private static final int CALLS = 200;
+
+    @Param({"platform-20", "platform-200", "virtual"})
+    public String threads;
+
+    private GatewaySimulator simulator;
+    private GatewayContext ctx;
+    private PooledTransport transport;
+    private ExecutorService executor;
+    private HashMap<String, Object> cardData;
+
+    @Setup
+    public void setUp() throws IOException {
+        if ("virtual".equals(threads)) {
+            executor = VirtualThreads.newExecutor("bench-virtual");
+        } else {
+            int size = Integer.parseInt(threads.substring("platform-".length()));
+            executor = Executors.newFixedThreadPool(size, new DaemonThreadFactory("bench-platform"));
+        }
+        simulator = GatewaySimulator.builder().latency(Latency.fixed(20)).start();
+        transport = new PooledTransport(CALLS, PooledTransport.DEFAULT_IDLE_TIMEOUT);
+        ctx = simulator.newContext();
+        ctx.transport = transport;
+        cardData = Payloads.cardData();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        transport.close();
+        simulator.close();
+    }
+
+    @Benchmark
+    public int fanOut() throws Exception {
+        List<Future<Purchase>> calls = new ArrayList<Future<Purchase>>(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            calls.add(executor.submit(() -> Purchase.create(100, cardData, "BENCH-0001", "1.2.3.4", "AUD", true, null, ctx)));
+        }
+        int approved = 0;
+        for (Future<Purchase> call : calls) {
+            if (call.get().successful) {
+                approved++;
+            }
+        }
+        return approved;
+    }
+}
@@ -0,0 +1,115 @@
+package au.com.fatzebra.javalib.benchmarks;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process HTTPS stand-in for the gateway which answers every purchase with a canned approval.
+ *
+ * It uses the self-signed localhost certificate in the benchmark resources - clients trust it through
+ * {@link #getSslContext()}.
+ */
+public class LoopbackGateway {
+    private static final byte[] PURCHASE_RESPONSE = Payloads.PURCHASE_RESPONSE.getBytes(StandardCharsets.UTF_8);
+
+    static {
+        // The JDK server writes the response headers and body separately. Without TCP_NODELAY the body waits on
+        // Nagle and the client's delayed ACK, adding ~40ms to every exchange.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpsServer server;
+    private final ExecutorService executor;
+    private final SSLContext sslContext;
+
+    private LoopbackGateway(HttpsServer server, ExecutorService executor, SSLContext sslContext) {
+        this.server = server;
+        this.executor = executor;
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Starts the stub on an ephemeral loopback port
+     * @return the running gateway
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static LoopbackGateway start() throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream keyStream = LoopbackGateway.class.getResourceAsStream("/localhost.jks");
+        try {
+            keyStore.load(keyStream, "changeit".toCharArray());
+        } finally {
+            keyStream.close();
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, "changeit".toCharArray());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        HttpsServer server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.createContext("/v1.0/purchases", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream request = exchange.getRequestBody();
+                byte[] buffer = new byte[1024];
+                while (request.read(buffer) != -1) {
+                    // discard the request
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, PURCHASE_RESPONSE.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(PURCHASE_RESPONSE);
+                body.close();
+            }
+        });
+        server.start();
+        return new LoopbackGateway(server, executor, sslContext);
+    }
+
+    /**
+     * Gets an SSL context which trusts the stub certificate
+     * @return the SSL context
+     */
+    public SSLContext getSslContext() {
+        return this.sslContext;
+    }
+
+    /**
+     * Builds a gateway context pointing at the stub
+     * @return the context
+     */
+    public GatewayContext newContext() {
+        GatewayContext ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.gateway_url = "https://localhost:" + server.getAddress().getPort() + "/v1.0/";
+        return ctx;
+    }
+
+    /**
+     * Stops the stub
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,58 @@
+package au.com.fatzebra.javalib.benchmarks;
+
+import au.com.fatzebra.javalib.models.FatZebraResponse;
+import au.com.fatzebra.javalib.models.Purchase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The model helpers used when logging transactions
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelBenchmark {
+    private Purchase purchase;
+    private final StringBuilder buffer = new StringBuilder(512);
+
+    @Setup
+    public void setUp() {
+        FatZebraResponse<Purchase> response = new FatZebraResponse<Purchase>(200, Payloads.PURCHASE_RESPONSE, null);
+        response.parseResult(Purchase.class);
+        purchase = response.result;
+    }
+
+    @Benchmark
+    public String responseMessage() {
+        return purchase.getResponseMessage();
+    }
+
+    @Benchmark
+    public String purchaseToString() {
+        return purchase.toString();
+    }
+
+    @Benchmark
+    public StringBuilder purchaseAppendTo() {
+        buffer.setLength(0);
+        return purchase.appendTo(buffer);
+    }
+
+    @Benchmark
+    public String purchasePrettyJson() {
+        return purchase.toPrettyJson();
+    }
+}
@@ -0,0 +1,38 @@
+package au.com.fatzebra.javalib.benchmarks;
+
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+
+import java.util.HashMap;
+
+/**
+ * Representative gateway messages shared by the benchmarks
+ */
+final class Payloads {
+    static final String PURCHASE_RESPONSE = "{\"successful\": true, \"response\": {\"authorization\": \"555327\", \"id\": \"071-P-ABC123D5\", " +
+            "\"card_number\": \"512345XXXXXX2346\", \"card_holder\": \"James Smith\", \"card_expiry\": \"2023-07-31\", " +
+            "\"card_token\": \"lqvubzsr\", \"amount\": 100, \"decimal_amount\": 1.0, \"successful\": true, \"message\": \"Approved\", " +
+            "\"reference\": \"BENCH-0001\", \"currency\": \"AUD\", \"transaction_id\": \"071-P-ABC123D5\", \"settlement_date\": \"2014-09-03\", " +
+            "\"transaction_date\": \"2014-09-02T11:25:53+10:00\", \"response_code\": \"00\", \"captured\": true, \"captured_amount\": 100, " +
+            "\"rrn\": \"071-P-ABC123D5\", \"cvv_match\": \"M\"}, \"errors\": [], \"test\": true}";
+
+    private Payloads() {
+    }
+
+    static HashMap<String, Object> cardData() {
+        HashMap<String, Object> card_data = new HashMap<String, Object>();
+        card_data.put("card_number", "5123456789012346");
+        card_data.put("card_holder", "James Smith");
+        card_data.put("cvv", "123");
+        card_data.put("card_expiry", "07/2023");
+        return card_data;
+    }
+
+    static PurchaseRequest purchaseRequest() {
+        PurchaseRequest request = new PurchaseRequest(cardData());
+        request.setAmount(100);
+        request.setReference("BENCH-0001");
+        request.setCustomerIp("1.2.3.4");
+        request.setCurrency("AUD");
+        return request;
+    }
+}
@@ -0,0 +1,67 @@
+package au.com.fatzebra.javalib.benchmarks;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.errors.APIError;
+import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.net.PooledTransport;
+import au.com.fatzebra.javalib.net.Resource;
+import au.com.fatzebra.javalib.net.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A complete Purchase.create - headers, serialisation, pooled HTTPS exchange and parsing - against the
+ * in-process loopback gateway
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PurchaseEndToEndBenchmark {
+    private LoopbackGateway gateway;
+    private GatewayContext ctx;
+    private HashMap<String, Object> cardData;
+    private Transport originalTransport;
+    private PooledTransport transport;
+
+    @Setup
+    public void setUp() throws IOException, GeneralSecurityException {
+        gateway = LoopbackGateway.start();
+        ctx = gateway.newContext();
+        cardData = Payloads.cardData();
+
+        originalTransport = Resource.getTransport();
+        transport = new PooledTransport(PooledTransport.DEFAULT_MAX_CONNECTIONS_PER_ROUTE, PooledTransport.DEFAULT_IDLE_TIMEOUT,
+                gateway.getSslContext().getSocketFactory());
+        Resource.setTransport(transport);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Resource.setTransport(originalTransport);
+        transport.close();
+        gateway.stop();
+    }
+
+    @Benchmark
+    public Purchase purchaseCreate() throws IOException, NetworkError, APIError {
+        return Purchase.create(100, cardData, "BENCH-0001", "1.2.3.4", "AUD", true, null, ctx);
+    }
+}
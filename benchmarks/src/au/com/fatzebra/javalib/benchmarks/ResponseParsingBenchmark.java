@@ -0,0 +1,58 @@
+package au.com.fatzebra.javalib.benchmarks;
+
+import au.com.fatzebra.javalib.models.FatZebraResponse;
+import au.com.fatzebra.javalib.models.Purchase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of a purchase response, from a retained string and straight from the body stream
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseParsingBenchmark {
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = Payloads.PURCHASE_RESPONSE.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The retained body path: the stream is read into a string, which is then parsed
+     */
+    @Benchmark
+    public Purchase parseFromString() {
+        Scanner s = new Scanner(new ByteArrayInputStream(body), "UTF-8");
+        s.useDelimiter("\\A");
+        FatZebraResponse<Purchase> response = new FatZebraResponse<Purchase>(200, s.next(), null);
+        s.close();
+        response.parseResult(Purchase.class);
+        return response.result;
+    }
+
+    @Benchmark
+    public Purchase parseFromStream() throws IOException {
+        FatZebraResponse<Purchase> response = new FatZebraResponse<Purchase>(200, null);
+        response.parseResult(new ByteArrayInputStream(body), Purchase.class);
+        return response.result;
+    }
+}
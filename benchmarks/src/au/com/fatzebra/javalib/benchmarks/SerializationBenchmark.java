@@ -0,0 +1,54 @@
+package au.com.fatzebra.javalib.benchmarks;
+
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import au.com.fatzebra.javalib.net.JsonBodyWriter;
+import au.com.fatzebra.javalib.net.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialisation of the purchase request as it is posted to the gateway
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    private PurchaseRequest request;
+
+    @Setup
+    public void setUp() {
+        request = Payloads.purchaseRequest();
+    }
+
+    @Benchmark
+    public String purchaseRequestToJson() {
+        return Resource.GSON.toJson(request);
+    }
+
+    @Benchmark
+    public byte[] purchaseRequestToBytes() throws UnsupportedEncodingException {
+        return Resource.GSON.toJson(request).getBytes(Resource.CHARSET);
+    }
+
+    /**
+     * The body as Resource now builds it for PurchaseRequest, RefundRequest and CaptureRequest
+     */
+    @Benchmark
+    public byte[] purchaseRequestWriteJson() {
+        return JsonBodyWriter.toBytes(request);
+    }
+}
@@ -0,0 +1,69 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.FatZebra;
+import au.com.fatzebra.javalib.GatewayContext;
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cached request headers with building them for every request.
+ *
+ * Run with the GC profiler (-prof gc) to compare the bytes allocated per request (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeadersBenchmark {
+    private GatewayContext ctx;
+
+    @Setup
+    public void setUp() {
+        ctx = new GatewayContext("TEST", "TEST", true);
+    }
+
+    @Benchmark
+    public Map<String, String> cachedHeaders() {
+        return Resource.getHeaders(ctx);
+    }
+
+    /**
+     * The headers as they were built before caching, for comparison
+     */
+    @Benchmark
+    public Map<String, String> rebuiltHeaders() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Accept-Charset", Resource.CHARSET);
+        headers.put("User-Agent", String.format("Fat Zebra v1 - Java %s", FatZebra.VERSION));
+        headers.put("Authorization", String.format("Basic %s",
+                Base64.encodeBase64String(String.format("%s:%s", ctx.username, ctx.token).getBytes())));
+
+        String[] propertyNames = {"os.name", "os.version", "os.arch",
+                "java.version", "java.vendor", "java.vm.version",
+                "java.vm.vendor"};
+        Map<String, String> propertyMap = new HashMap<String, String>();
+        for (String propertyName : propertyNames) {
+            propertyMap.put(propertyName, System.getProperty(propertyName));
+        }
+        propertyMap.put("bindings.version", FatZebra.VERSION);
+        propertyMap.put("lang", "Java");
+        propertyMap.put("publisher", "Fat Zebra");
+        headers.put("X-Client-User-Agent", Resource.GSON.toJson(propertyMap));
+        return headers;
+    }
+}
@@ -0,0 +1,382 @@
+package au.com.fatzebra.javalib;
+
+import au.com.fatzebra.javalib.net.CircuitBreakerPolicy;
+import au.com.fatzebra.javalib.net.HttpClientTransport;
+import au.com.fatzebra.javalib.net.Interceptor;
+import au.com.fatzebra.javalib.net.Metrics;
+import au.com.fatzebra.javalib.net.RateLimitPolicy;
+import au.com.fatzebra.javalib.net.RetryPolicy;
+import au.com.fatzebra.javalib.net.Timeouts;
+import au.com.fatzebra.javalib.net.Transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Holds a {@link FatZebraClient} for each merchant processed on behalf of, keyed by your own merchant ID.
+ *
+ * Every client in the registry shares one transport (and so one connection pool and TLS context - connections are
+ * per gateway host, not per merchant) and one async executor. Each merchant keeps its own credentials, circuit
+ * breakers and bulkhead, so one merchant tripping its breaker or using up its concurrent call limit does not affect
+ * the others. A merchant costs little more than its cached request headers.
+ *
+ * <pre>
+ * ClientRegistry registry = ClientRegistry.builder()
+ *         .sandbox(false)
+ *         .circuitBreakerPolicy(CircuitBreakerPolicy.builder().maxConcurrentCalls(10).build())
+ *         .build();
+ * registry.register("merchant-42", "username", "token");
+ *
+ * Purchase purchase = registry.get("merchant-42").purchase(request);
+ * </pre>
+ *
+ * Merchants can be registered, replaced (e.g. when a token is rotated) and removed at any time. Requests already
+ * in flight complete with the client they started with.
+ */
+public final class ClientRegistry implements Closeable {
+    private final ConcurrentHashMap<String, FatZebraClient> clients = new ConcurrentHashMap<String, FatZebraClient>();
+    private final Builder settings;
+    private final Transport transport;
+    private final Executor asyncExecutor;
+    private final Transport ownedTransport;
+    private final ExecutorService ownedExecutor;
+
+    private ClientRegistry(Builder builder) {
+        this.settings = builder.copy();
+        this.ownedTransport = builder.transport == null
+                ? FatZebraClient.newTransport(builder.http2, builder.metrics, builder.timeouts) : null;
+        this.transport = builder.transport != null ? builder.transport : this.ownedTransport;
+        this.ownedExecutor = builder.asyncExecutor == null
+                ? FatZebraClient.newExecutor(builder.virtualThreads, "fatzebra-registry") : null;
+        this.asyncExecutor = builder.asyncExecutor != null ? builder.asyncExecutor : this.ownedExecutor;
+    }
+
+    /**
+     * Starts building a registry
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Starts building a client which shares the registry's transport, executor and default settings, for a
+     * merchant which needs settings of its own. Register the client with {@link #register(String, FatZebraClient)}.
+     * @return the client builder
+     */
+    public FatZebraClient.Builder newClientBuilder() {
+        FatZebraClient.Builder builder = FatZebraClient.builder()
+                .sandbox(settings.sandbox)
+                .gatewayUrl(settings.gatewayUrl)
+                .transport(transport)
+                .asyncExecutor(asyncExecutor)
+                .retryPolicy(settings.retryPolicy)
+                .circuitBreakerPolicy(settings.circuitBreakerPolicy)
+                .rateLimitPolicy(settings.rateLimitPolicy)
+                .metrics(settings.metrics)
+                .timeouts(settings.timeouts);
+        for (Interceptor interceptor : settings.interceptors) {
+            builder.interceptor(interceptor);
+        }
+        return builder;
+    }
+
+    /**
+     * Registers a merchant with the registry's default settings, replacing any client already registered for it
+     * @param merchantId your ID for the merchant
+     * @param username the merchant's gateway username
+     * @param token the merchant's gateway token
+     * @return the client for the merchant
+     */
+    public FatZebraClient register(String merchantId, String username, String token) {
+        return register(merchantId, newClientBuilder().credentials(username, token).build());
+    }
+
+    /**
+     * Registers a merchant with the registry's default settings but metrics of its own, so calls can be told apart
+     * by merchant. The connection phases (DNS, CONNECT, TLS and TIME_TO_FIRST_BYTE) are measured by the shared
+     * transport, so they are still reported to the registry's metrics.
+     * @param merchantId your ID for the merchant
+     * @param username the merchant's gateway username
+     * @param token the merchant's gateway token
+     * @param metrics the metrics which the merchant's calls are reported to
+     * @return the client for the merchant
+     */
+    public FatZebraClient register(String merchantId, String username, String token, Metrics metrics) {
+        return register(merchantId, newClientBuilder().credentials(username, token).metrics(metrics).build());
+    }
+
+    /**
+     * Registers a client for a merchant, replacing any client already registered for it. The client should share
+     * the registry's transport, see {@link #newClientBuilder()}.
+     * @param merchantId your ID for the merchant
+     * @param client the client
+     * @return the client
+     */
+    public FatZebraClient register(String merchantId, FatZebraClient client) {
+        if (merchantId == null || client == null) {
+            throw new IllegalArgumentException("merchantId and client must not be null");
+        }
+        clients.put(merchantId, client);
+        return client;
+    }
+
+    /**
+     * Gets the client for a merchant
+     * @param merchantId your ID for the merchant
+     * @return the client, or null if the merchant is not registered
+     */
+    public FatZebraClient get(String merchantId) {
+        return clients.get(merchantId);
+    }
+
+    /**
+     * Removes a merchant. Requests already in flight for the merchant are not affected.
+     * @param merchantId your ID for the merchant
+     * @return the client which was registered, or null if there was none
+     */
+    public FatZebraClient remove(String merchantId) {
+        return clients.remove(merchantId);
+    }
+
+    /**
+     * Gets the IDs of the registered merchants
+     * @return a live, unmodifiable view of the IDs
+     */
+    public Set<String> getMerchantIds() {
+        return Collections.unmodifiableSet(clients.keySet());
+    }
+
+    /**
+     * Gets the number of registered merchants
+     * @return the number of merchants
+     */
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * Gets the transport shared by the registered clients
+     * @return the transport
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Removes every merchant and closes the connection pool and async executor created by the registry. A transport
+     * or executor supplied to the builder is left open.
+     * @throws IOException if the transport could not be closed
+     */
+    public void close() throws IOException {
+        clients.clear();
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+        if (ownedTransport != null) {
+            ownedTransport.close();
+        }
+    }
+
+    @Override public String toString() {
+        return String.format("<ClientRegistry merchants=%d>", clients.size());
+    }
+
+    /**
+     * Builds a {@link ClientRegistry}. The settings apply to every merchant registered with a username and token.
+     */
+    public static final class Builder {
+        private boolean sandbox = true;
+        private String gatewayUrl = null;
+        private Transport transport = null;
+        private Executor asyncExecutor = null;
+        private boolean virtualThreads = false;
+        private boolean http2 = false;
+        private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        private CircuitBreakerPolicy circuitBreakerPolicy = CircuitBreakerPolicy.DEFAULT;
+        private RateLimitPolicy rateLimitPolicy = RateLimitPolicy.DISABLED;
+        private Metrics metrics = Metrics.NOOP;
+        private final List<Interceptor> interceptors = new ArrayList<Interceptor>();
+        private Timeouts timeouts = Timeouts.builder().build();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets whether to use the sandbox (default true)
+         * @param value true for the sandbox, false for the live gateway
+         * @return this builder
+         */
+        public Builder sandbox(boolean value) {
+            this.sandbox = value;
+            return this;
+        }
+
+        /**
+         * Overrides the gateway URL, including the version path (e.g. https://localhost:8443/v1.0/)
+         * @param value the URL, or null for the live or sandbox URL
+         * @return this builder
+         */
+        public Builder gatewayUrl(String value) {
+            this.gatewayUrl = value;
+            return this;
+        }
+
+        /**
+         * Sets the transport shared by every merchant. By default the registry creates its own connection pool.
+         * @param value the transport, which the registry will not close
+         * @return this builder
+         */
+        public Builder transport(Transport value) {
+            this.transport = value;
+            return this;
+        }
+
+        /**
+         * Sets the executor for asynchronous requests of every merchant. By default the registry creates its own.
+         * @param value the executor, which the registry will not shut down
+         * @return this builder
+         */
+        public Builder asyncExecutor(Executor value) {
+            this.asyncExecutor = value;
+            return this;
+        }
+
+        /**
+         * Runs asynchronous requests of every merchant on virtual threads rather than a fixed pool of platform
+         * threads (default false). Before Java 21 the fixed pool is used. Ignored when an executor is set.
+         * @param value true for virtual threads
+         * @return this builder
+         */
+        public Builder virtualThreads(boolean value) {
+            this.virtualThreads = value;
+            return this;
+        }
+
+        /**
+         * Sends the requests of every merchant with an {@link HttpClientTransport}, which multiplexes them over
+         * HTTP/2 where the gateway negotiates it, rather than the HTTP/1.1 connection pool (default false). Before
+         * Java 11 the pool is used. Ignored when a transport is set.
+         * @param value true for HTTP/2
+         * @return this builder
+         */
+        public Builder http2(boolean value) {
+            this.http2 = value;
+            return this;
+        }
+
+        /**
+         * Sets the retry policy (default RetryPolicy.DEFAULT). The retry budget of the policy is shared by the
+         * merchants using it.
+         * @param value the policy
+         * @return this builder
+         */
+        public Builder retryPolicy(RetryPolicy value) {
+            if (value == null) {
+                throw new IllegalArgumentException("retry policy must not be null");
+            }
+            this.retryPolicy = value;
+            return this;
+        }
+
+        /**
+         * Sets the circuit breaker and bulkhead settings (default CircuitBreakerPolicy.DEFAULT). Each merchant has
+         * breakers and a bulkhead of its own.
+         * @param value the policy
+         * @return this builder
+         */
+        public Builder circuitBreakerPolicy(CircuitBreakerPolicy value) {
+            if (value == null) {
+                throw new IllegalArgumentException("circuit breaker policy must not be null");
+            }
+            this.circuitBreakerPolicy = value;
+            return this;
+        }
+
+        /**
+         * Sets the client-side rate limits (default RateLimitPolicy.DISABLED). Each merchant has limiters of its own,
+         * matching the gateway's per-merchant quotas.
+         * @param value the policy
+         * @return this builder
+         */
+        public Builder rateLimitPolicy(RateLimitPolicy value) {
+            if (value == null) {
+                throw new IllegalArgumentException("rate limit policy must not be null");
+            }
+            this.rateLimitPolicy = value;
+            return this;
+        }
+
+        /**
+         * Sets the metrics which every call is reported to (default Metrics.NOOP). The callbacks do not
+         * say which merchant a call was for; to tell merchants apart, register them with metrics of their own.
+         * @param value the metrics
+         * @return this builder
+         */
+        public Builder metrics(Metrics value) {
+            if (value == null) {
+                throw new IllegalArgumentException("metrics must not be null");
+            }
+            this.metrics = value;
+            return this;
+        }
+
+        /**
+         * Adds an interceptor, run around every call in the order added
+         * @param value the interceptor
+         * @return this builder
+         */
+        public Builder interceptor(Interceptor value) {
+            if (value == null) {
+                throw new IllegalArgumentException("interceptor must not be null");
+            }
+            this.interceptors.add(value);
+            return this;
+        }
+
+        /**
+         * Sets the connect and read timeouts (default 60 seconds)
+         * @param value the timeouts
+         * @return this builder
+         */
+        public Builder timeouts(Timeouts value) {
+            if (value == null) {
+                throw new IllegalArgumentException("timeouts must not be null");
+            }
+            this.timeouts = value;
+            return this;
+        }
+
+        /**
+         * Builds the registry
+         * @return the registry
+         */
+        public ClientRegistry build() {
+            return new ClientRegistry(this);
+        }
+
+        private Builder copy() {
+            Builder copy = new Builder();
+            copy.sandbox = sandbox;
+            copy.gatewayUrl = gatewayUrl;
+            copy.transport = transport;
+            copy.asyncExecutor = asyncExecutor;
+            copy.virtualThreads = virtualThreads;
+            copy.http2 = http2;
+            copy.retryPolicy = retryPolicy;
+            copy.circuitBreakerPolicy = circuitBreakerPolicy;
+            copy.rateLimitPolicy = rateLimitPolicy;
+            copy.metrics = metrics;
+            copy.interceptors.addAll(interceptors);
+            copy.timeouts = timeouts;
+            return copy;
+        }
+    }
+}
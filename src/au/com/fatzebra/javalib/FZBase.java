@@ -4,7 +4,8 @@ import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  * Represents the base object class for Fat Zebra models, methods etc.
@@ -122,50 +123,94 @@ public abstract class FZBase {
             setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).
             create();
 
+    private static final ClassValue<String> TYPE_NAMES = new ClassValue<String>() {
+        @Override protected String computeValue(Class<?> type) {
+            return type.getSimpleName();
+        }
+    };
+
     /**
-     * Outputs the object as a string representation
-     * @return object as string
+     * Gets the context used by the static API, which follows the FatZebra username, token and sandbox settings
+     * @return the shared context, which must not be changed
      */
-    @Override public String toString() {
-        return String.format(
-                "<%s@%s id=%s> JSON: %s",
-                this.getClass().getName(),
-                System.identityHashCode(this),
-                this.getIdString(),
-                PRETTY_GSON.toJson(this));
+    protected static GatewayContext defaultContext() {
+        return FatZebra.defaultContext();
+    }
+
+    /**
+     * Writes the fields of the object to a sink, for structured logging. Card numbers are masked.
+     * @param sink the sink receiving the fields
+     */
+    public void writeTo(FieldSink sink) {
     }
 
     /**
-     * Gets the objects ID, if available
-     * @return the object ID or an empty string
+     * Appends a compact single line representation of the object, with card numbers masked
+     * @param out the target, such as a log buffer
+     * @throws IOException if the target fails
      */
-    private Object getIdString() {
+    public void appendTo(Appendable out) throws IOException {
         try {
-            Field idField = this.getClass().getDeclaredField("id");
-            return idField.get(this);
-        } catch (SecurityException e) {
-            return "";
-        } catch (NoSuchFieldException e) {
-            return "";
-        } catch (IllegalArgumentException e) {
-            return "";
-        } catch (IllegalAccessException e) {
-            return "";
+            appendFields(out);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
 
+    /**
+     * Appends a compact single line representation of the object, with card numbers masked
+     * @param out the target
+     * @return the target
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        appendFields(out);
+        return out;
+    }
+
+    private void appendFields(Appendable out) {
+        FieldAppender appender = new FieldAppender(out).begin(TYPE_NAMES.get(getClass()));
+        writeTo(appender);
+        appender.end();
+    }
+
+    /**
+     * Outputs the object as a compact string representation, with card numbers masked
+     * @return object as string
+     */
+    @Override public String toString() {
+        return appendTo(new StringBuilder(256)).toString();
+    }
+
+    /**
+     * Outputs every field of the object as pretty printed JSON. Nothing is masked, so this is intended for
+     * debugging rather than logging.
+     * @return object as JSON
+     */
+    public String toPrettyJson() {
+        return PRETTY_GSON.toJson(this);
+    }
+
+    /**
+     * Gets the response code from the transaction
+     * @return the response code, or ResponseCode.UNKNOWN for objects without one
+     */
+    public ResponseCode getResponseCode() {
+        return ResponseCode.UNKNOWN;
+    }
+
+    /**
+     * Gets your reference for the transaction
+     * @return the reference, or null for objects without one
+     */
+    public String getReference() {
+        return null;
+    }
+
     /**
      * Gets the response message from the transaction
      * @return the response message, or unknown
      */
     public String getResponseMessage() {
-        try {
-            Field responseField = this.getClass().getDeclaredField("response_code");
-            String code = (String)responseField.get(this);
-
-            return RESPONSE_MAP[Integer.parseInt(code)];
-        } catch(Exception e) {
-            return "Unknown";
-        }
+        return getResponseCode().getMessage();
     }
 }
@@ -2,6 +2,9 @@ package au.com.fatzebra.javalib;
 
 /**
  * Represents the static/singleton Fat Zebra configuration
+ *
+ * The static settings are convenient for a single merchant account. Where several accounts are used, or the
+ * settings should not be shared across the application, build a {@link FatZebraClient} for each instead.
  */
 public class FatZebra {
     /**
@@ -12,17 +15,17 @@ public class FatZebra {
     /**
      * The authentication username for the gateway
      */
-    public static String username   = "TEST";
+    public static volatile String username   = "TEST";
 
     /**
      * The authentication token for the gateway
      */
-    public static String token      = "TEST";
+    public static volatile String token      = "TEST";
 
     /**
      * Indicates whether to use the Sandbox or not
      */
-    public static boolean sandbox   = true;
+    public static volatile boolean sandbox   = true;
 
     /**
      * The sandbox URL for the gateway
@@ -34,7 +37,20 @@ public class FatZebra {
      */
     public static final String LIVE_URL     = "https://gateway.fatzebra.com.au/v1.0/";
 
-    public static int timeout = 60;
+    /**
+     * The connect and read timeout in seconds, used unless Timeouts have been set
+     */
+    public static volatile int timeout = 60;
+
+    /**
+     * The context built from the static settings, reused (along with its cached headers) until they change
+     */
+    private static volatile GatewayContext defaultContext;
+
+    /**
+     * The client for the default context
+     */
+    private static volatile FatZebraClient defaultClient;
 
     /**
      * Builds the gateway URL using the context provided
@@ -43,7 +59,9 @@ public class FatZebra {
      * @return the build gateway URL
      */
     public static String getGatewayUrl(String suffix, GatewayContext ctx) {
-        if (ctx.sandbox) {
+        if (ctx.gateway_url != null) {
+            return ctx.gateway_url + suffix;
+        } else if (ctx.sandbox) {
             return SANDBOX_URL + suffix;
         } else {
             return LIVE_URL + suffix;
@@ -56,7 +74,7 @@ public class FatZebra {
      * @return the build gateway URL
      */
     public static String getGatewayUrl(String suffix) {
-        return getGatewayUrl(suffix, FatZebra.getContext());
+        return getGatewayUrl(suffix, defaultContext());
     }
 
     /**
@@ -71,4 +89,35 @@ public class FatZebra {
 
         return ctx;
     }
-}
\ No newline at end of file
+
+    /**
+     * Provides the context behind the static API, reused (with its cached headers and circuit breakers) until the
+     * username, token or sandbox settings are changed. Never handed out, as a change made through it would apply to
+     * every static request in the process.
+     * @return the shared context
+     */
+    static GatewayContext defaultContext() {
+        GatewayContext ctx = defaultContext;
+        if (ctx == null || !ctx.matches(FatZebra.username, FatZebra.token, FatZebra.sandbox)) {
+            ctx = getContext();
+            defaultContext = ctx;
+        }
+
+        return ctx;
+    }
+
+    /**
+     * Provides a client for the static/singleton FatZebra settings, which follows the settings as they change.
+     * The same client is returned until the username, token or sandbox settings are changed.
+     * @return the client
+     */
+    public static FatZebraClient getClient() {
+        GatewayContext ctx = defaultContext();
+        FatZebraClient client = defaultClient;
+        if (client == null || client.context() != ctx) {
+            client = FatZebraClient.forContext(ctx);
+            defaultClient = client;
+        }
+        return client;
+    }
+}
@@ -0,0 +1,518 @@
+package au.com.fatzebra.javalib;
+
+import au.com.fatzebra.javalib.batch.PurchaseBatch;
+import au.com.fatzebra.javalib.errors.APIError;
+import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.loadtest.LoadTest;
+import au.com.fatzebra.javalib.models.CaptureRequest;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.models.PurchaseCache;
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import au.com.fatzebra.javalib.models.Refund;
+import au.com.fatzebra.javalib.net.CircuitBreaker;
+import au.com.fatzebra.javalib.net.CircuitBreakerPolicy;
+import au.com.fatzebra.javalib.net.DaemonThreadFactory;
+import au.com.fatzebra.javalib.net.HttpClientTransport;
+import au.com.fatzebra.javalib.net.Interceptor;
+import au.com.fatzebra.javalib.net.Metrics;
+import au.com.fatzebra.javalib.net.Operation;
+import au.com.fatzebra.javalib.net.PooledTransport;
+import au.com.fatzebra.javalib.net.RateLimitPolicy;
+import au.com.fatzebra.javalib.net.RetryPolicy;
+import au.com.fatzebra.javalib.net.Timeouts;
+import au.com.fatzebra.javalib.net.Transport;
+import au.com.fatzebra.javalib.net.VirtualThreads;
+import au.com.fatzebra.javalib.stream.TransactionStreams;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An immutable, thread safe client for one merchant account. Everything a request needs - credentials, gateway URL,
+ * transport, async executor, timeouts, retry and circuit breaker settings - is fixed when the client is built, so
+ * any number of clients (one per merchant) can be used side by side without touching the static FatZebra settings
+ * and without allocating a context per call.
+ *
+ * <pre>
+ * FatZebraClient client = FatZebraClient.builder()
+ *         .credentials("merchant", "token")
+ *         .sandbox(false)
+ *         .timeouts(Timeouts.of(5000, 45000))
+ *         .build();
+ *
+ * Purchase purchase = client.purchase(request);
+ * </pre>
+ *
+ * A client creates its own connection pool and async executor unless they are given to the builder. Close the
+ * client to release them; a transport or executor supplied to the builder is left open.
+ */
+public final class FatZebraClient implements Closeable {
+    private final GatewayContext context;
+    private final Transport ownedTransport;
+    private final ExecutorService ownedExecutor;
+
+    private FatZebraClient(Builder builder) {
+        GatewayContext ctx = new GatewayContext(builder.username, builder.token, builder.sandbox);
+        ctx.gateway_url = builder.gatewayUrl;
+        ctx.retainResponseBody = builder.retainResponseBody;
+        ctx.retryPolicy = builder.retryPolicy;
+        ctx.circuitBreakerPolicy = builder.circuitBreakerPolicy;
+        ctx.rateLimitPolicy = builder.rateLimitPolicy;
+        ctx.timeouts = builder.timeouts;
+        ctx.metrics = builder.metrics;
+        ctx.purchaseCache = builder.purchaseCache;
+        ctx.coalesceFinds = builder.coalesceFinds;
+        ctx.interceptors = Collections.unmodifiableList(new ArrayList<Interceptor>(builder.interceptors));
+
+        this.ownedTransport = builder.transport == null ? newTransport(builder.http2, builder.metrics, builder.timeouts) : null;
+        ctx.transport = builder.transport != null ? builder.transport : this.ownedTransport;
+        this.ownedExecutor = builder.asyncExecutor == null ? newExecutor(builder.virtualThreads, "fatzebra-client") : null;
+        ctx.asyncExecutor = builder.asyncExecutor != null ? builder.asyncExecutor : this.ownedExecutor;
+
+        // never handed out (breakers and rate limiters only give the username), so the context can not change once
+        // the client is built
+        this.context = ctx;
+    }
+
+    static Transport newTransport(boolean http2, Metrics metrics, Timeouts timeouts) {
+        if (http2 && HttpClientTransport.isSupported()) {
+            int connectTimeout = 1;
+            for (Operation operation : Operation.values()) {
+                connectTimeout = Math.max(connectTimeout, timeouts.getConnectTimeout(operation));
+            }
+            return new HttpClientTransport(connectTimeout, null);
+        }
+        PooledTransport pool = new PooledTransport();
+        metrics.bindPool(pool);
+        return pool;
+    }
+
+    static ExecutorService newExecutor(boolean virtualThreads, String prefix) {
+        if (virtualThreads) {
+            return VirtualThreads.newExecutorOrFixedPool(prefix, PooledTransport.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+        }
+        // sized to the connection pool, as further threads would only wait for a connection
+        return Executors.newFixedThreadPool(PooledTransport.DEFAULT_MAX_CONNECTIONS_PER_ROUTE,
+                new DaemonThreadFactory(prefix));
+    }
+
+    private FatZebraClient(GatewayContext context) {
+        this.context = context;
+        this.ownedTransport = null;
+        this.ownedExecutor = null;
+    }
+
+    /**
+     * Starts building a client
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Wraps a context, for the static API. The client follows any later changes to the context.
+     */
+    static FatZebraClient forContext(GatewayContext context) {
+        return new FatZebraClient(context);
+    }
+
+    GatewayContext context() {
+        return context;
+    }
+
+    /**
+     * Gets the authentication username
+     * @return the username
+     */
+    public String getUsername() {
+        return context.username;
+    }
+
+    /**
+     * Indicates whether the client uses the sandbox
+     * @return true for the sandbox
+     */
+    public boolean isSandbox() {
+        return context.sandbox;
+    }
+
+    /**
+     * Builds the full URL for a gateway endpoint
+     * @param suffix the path of the endpoint, e.g. "purchases"
+     * @return the URL
+     */
+    public String getGatewayUrl(String suffix) {
+        return FatZebra.getGatewayUrl(suffix, context);
+    }
+
+    /**
+     * Gets the circuit breaker guarding an operation for this client
+     * @param operation the operation
+     * @return the circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker(Operation operation) {
+        return context.getCircuitBreaker(operation);
+    }
+
+    /**
+     * Performs a purchase
+     * @param request the purchase details
+     * @return the purchase
+     * @throws IOException
+     * @throws NetworkError
+     * @throws APIError
+     */
+    public Purchase purchase(PurchaseRequest request) throws IOException, NetworkError, APIError {
+        return Purchase.create(request, context);
+    }
+
+    /**
+     * Performs a purchase without blocking the calling thread
+     * @param request the purchase details
+     * @return future purchase, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public CompletableFuture<Purchase> purchaseAsync(PurchaseRequest request) {
+        return Purchase.createAsync(request, context);
+    }
+
+    /**
+     * Finds a purchase
+     * @param idOrReference the purchase ID or your reference
+     * @return the purchase
+     * @throws IOException
+     * @throws NetworkError
+     * @throws APIError
+     */
+    public Purchase findPurchase(String idOrReference) throws IOException, NetworkError, APIError {
+        return Purchase.find(idOrReference, context);
+    }
+
+    /**
+     * Finds a purchase without blocking the calling thread
+     * @param idOrReference the purchase ID or your reference
+     * @return future purchase, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public CompletableFuture<Purchase> findPurchaseAsync(String idOrReference) {
+        return Purchase.findAsync(idOrReference, context);
+    }
+
+    /**
+     * Refunds a purchase
+     * @param amount the amount to refund
+     * @param originalTransactionId the ID of the purchase
+     * @param reference your reference for the refund
+     * @return the refund
+     * @throws IOException
+     * @throws NetworkError
+     * @throws APIError
+     */
+    public Refund refund(int amount, String originalTransactionId, String reference) throws IOException, NetworkError, APIError {
+        return Refund.create(amount, originalTransactionId, reference, context);
+    }
+
+    /**
+     * Refunds a purchase without blocking the calling thread
+     * @param amount the amount to refund
+     * @param originalTransactionId the ID of the purchase
+     * @param reference your reference for the refund
+     * @return future refund, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public CompletableFuture<Refund> refundAsync(int amount, String originalTransactionId, String reference) {
+        return Refund.createAsync(amount, originalTransactionId, reference, context);
+    }
+
+    /**
+     * Captures an authorisation
+     * @param amount the amount to capture
+     * @param transactionId the authorisation transaction ID
+     * @return the capture result
+     * @throws IOException
+     * @throws NetworkError
+     * @throws APIError
+     */
+    public CaptureRequest capture(int amount, String transactionId) throws IOException, NetworkError, APIError {
+        return CaptureRequest.create(amount, transactionId, context);
+    }
+
+    /**
+     * Captures an authorisation without blocking the calling thread
+     * @param amount the amount to capture
+     * @param transactionId the authorisation transaction ID
+     * @return future capture result, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public CompletableFuture<CaptureRequest> captureAsync(int amount, String transactionId) {
+        return CaptureRequest.createAsync(amount, transactionId, context);
+    }
+
+    /**
+     * Creates a batch of purchases made with this client
+     * @param concurrency the maximum number of purchases in flight at once
+     * @param ratePerSecond the maximum number of purchases started per second, or 0 for no limit
+     * @return the batch
+     */
+    public PurchaseBatch newBatch(int concurrency, double ratePerSecond) {
+        return new PurchaseBatch(context, concurrency, ratePerSecond);
+    }
+
+    /**
+     * Starts building a load test which sends its requests with this client
+     * @return the load test builder
+     */
+    public LoadTest.Builder newLoadTest() {
+        return LoadTest.builder(context);
+    }
+
+    /**
+     * Starts building request streams which send their requests with this client
+     * @return the streams builder
+     */
+    public TransactionStreams.Builder newTransactionStreams() {
+        return TransactionStreams.builder(context);
+    }
+
+    /**
+     * Closes the connection pool and async executor created by the client. Asynchronous calls not yet complete fail
+     * with a NetworkError, and requests still in flight may fail.
+     * @throws IOException if the transport could not be closed
+     */
+    public void close() throws IOException {
+        if (ownedExecutor == null && ownedTransport == null) {
+            return;
+        }
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+        context.failPendingCalls(new NetworkError("The client was closed before the request completed", false));
+        if (ownedTransport != null) {
+            ownedTransport.close();
+        }
+    }
+
+    @Override public String toString() {
+        return String.format("<FatZebraClient username=%s sandbox=%s>", context.username, context.sandbox);
+    }
+
+    /**
+     * Builds a {@link FatZebraClient}
+     */
+    public static final class Builder {
+        private String username = "TEST";
+        private String token = "TEST";
+        private boolean sandbox = true;
+        private String gatewayUrl = null;
+        private boolean retainResponseBody = false;
+        private Transport transport = null;
+        private Executor asyncExecutor = null;
+        private boolean virtualThreads = false;
+        private boolean http2 = false;
+        private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        private CircuitBreakerPolicy circuitBreakerPolicy = CircuitBreakerPolicy.DEFAULT;
+        private RateLimitPolicy rateLimitPolicy = RateLimitPolicy.DISABLED;
+        private Metrics metrics = Metrics.NOOP;
+        private PurchaseCache purchaseCache = null;
+        private boolean coalesceFinds = false;
+        private final List<Interceptor> interceptors = new ArrayList<Interceptor>();
+        private Timeouts timeouts = Timeouts.builder().build();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the authentication credentials (default TEST/TEST)
+         * @param username the username
+         * @param token the token
+         * @return this builder
+         */
+        public Builder credentials(String username, String token) {
+            if (username == null || token == null) {
+                throw new IllegalArgumentException("username and token must not be null");
+            }
+            this.username = username;
+            this.token = token;
+            return this;
+        }
+
+        /**
+         * Sets whether to use the sandbox (default true)
+         * @param value true for the sandbox, false for the live gateway
+         * @return this builder
+         */
+        public Builder sandbox(boolean value) {
+            this.sandbox = value;
+            return this;
+        }
+
+        /**
+         * Overrides the gateway URL, including the version path (e.g. https://localhost:8443/v1.0/)
+         * @param value the URL, or null for the live or sandbox URL
+         * @return this builder
+         */
+        public Builder gatewayUrl(String value) {
+            this.gatewayUrl = value;
+            return this;
+        }
+
+        /**
+         * Keeps the raw response body on FatZebraResponse.responseBody for debugging (default false)
+         * @param value true to keep the body
+         * @return this builder
+         */
+        public Builder retainResponseBody(boolean value) {
+            this.retainResponseBody = value;
+            return this;
+        }
+
+        /**
+         * Sets the transport. By default the client creates its own connection pool.
+         * @param value the transport, which the client will not close
+         * @return this builder
+         */
+        public Builder transport(Transport value) {
+            this.transport = value;
+            return this;
+        }
+
+        /**
+         * Sets the executor for asynchronous requests. By default the client creates its own.
+         * @param value the executor, which the client will not shut down
+         * @return this builder
+         */
+        public Builder asyncExecutor(Executor value) {
+            this.asyncExecutor = value;
+            return this;
+        }
+
+        /**
+         * Runs asynchronous requests on virtual threads rather than a fixed pool of platform threads (default
+         * false). Before Java 21 the fixed pool is used. Ignored when an executor is set.
+         * @param value true for virtual threads
+         * @return this builder
+         */
+        public Builder virtualThreads(boolean value) {
+            this.virtualThreads = value;
+            return this;
+        }
+
+        /**
+         * Sends requests with an {@link HttpClientTransport}, which multiplexes them over HTTP/2 where the gateway
+         * negotiates it, rather than the HTTP/1.1 connection pool (default false). Before Java 11 the pool is used.
+         * Ignored when a transport is set.
+         * @param value true for HTTP/2
+         * @return this builder
+         */
+        public Builder http2(boolean value) {
+            this.http2 = value;
+            return this;
+        }
+
+        /**
+         * Sets the retry policy (default RetryPolicy.DEFAULT)
+         * @param value the policy
+         * @return this builder
+         */
+        public Builder retryPolicy(RetryPolicy value) {
+            this.retryPolicy = require(value, "retry policy");
+            return this;
+        }
+
+        /**
+         * Sets the circuit breaker and bulkhead settings (default CircuitBreakerPolicy.DEFAULT)
+         * @param value the policy
+         * @return this builder
+         */
+        public Builder circuitBreakerPolicy(CircuitBreakerPolicy value) {
+            this.circuitBreakerPolicy = require(value, "circuit breaker policy");
+            return this;
+        }
+
+        /**
+         * Sets the client-side rate limits (default RateLimitPolicy.DISABLED)
+         * @param value the policy
+         * @return this builder
+         */
+        public Builder rateLimitPolicy(RateLimitPolicy value) {
+            this.rateLimitPolicy = require(value, "rate limit policy");
+            return this;
+        }
+
+        /**
+         * Sets the metrics which every call is reported to (default Metrics.NOOP)
+         * @param value the metrics
+         * @return this builder
+         */
+        public Builder metrics(Metrics value) {
+            if (value == null) {
+                throw new IllegalArgumentException("metrics must not be null");
+            }
+            this.metrics = value;
+            return this;
+        }
+
+        /**
+         * Caches purchases for findPurchase, and the lookup made by a refund without a reference (default none)
+         * @param value the cache, or null for none
+         * @return this builder
+         */
+        public Builder purchaseCache(PurchaseCache value) {
+            this.purchaseCache = value;
+            return this;
+        }
+
+        /**
+         * Shares one request between concurrent finds for the same ID or reference (default false). The callers
+         * then share one Purchase, which must be treated as read only.
+         * @param value true to coalesce finds
+         * @return this builder
+         */
+        public Builder coalesceFinds(boolean value) {
+            this.coalesceFinds = value;
+            return this;
+        }
+
+        /**
+         * Adds an interceptor, run around every call in the order added
+         * @param value the interceptor
+         * @return this builder
+         */
+        public Builder interceptor(Interceptor value) {
+            if (value == null) {
+                throw new IllegalArgumentException("interceptor must not be null");
+            }
+            this.interceptors.add(value);
+            return this;
+        }
+
+        /**
+         * Sets the connect and read timeouts (default 60 seconds)
+         * @param value the timeouts
+         * @return this builder
+         */
+        public Builder timeouts(Timeouts value) {
+            this.timeouts = require(value, "timeouts");
+            return this;
+        }
+
+        /**
+         * Builds the client
+         * @return the client
+         */
+        public FatZebraClient build() {
+            return new FatZebraClient(this);
+        }
+
+        private static <T> T require(T value, String name) {
+            if (value == null) {
+                throw new IllegalArgumentException(name + " must not be null");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package au.com.fatzebra.javalib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * Renders fields as a compact single line, e.g. {@code <Purchase id=071-P-ABC123D5 amount=100 message="Declined - Please Retry">},
+ * appending directly to the target without building intermediate strings.
+ *
+ * Values containing spaces, quotes or = are quoted so the output can be parsed as key=value pairs.
+ */
+public final class FieldAppender implements FieldSink {
+    private final Appendable out;
+
+    /**
+     * Initialises a new appender
+     * @param out the target
+     */
+    public FieldAppender(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the opening of a model
+     * @param type the model type name
+     * @return this appender
+     */
+    public FieldAppender begin(String type) {
+        try {
+            out.append('<').append(type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the close of a model
+     */
+    public void end() {
+        try {
+            out.append('>');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void field(String name, String value) {
+        try {
+            name(name);
+            if (value == null) {
+                out.append("null");
+            } else if (needsQuotes(value)) {
+                out.append('"');
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c == '"' || c == '\\') {
+                        out.append('\\');
+                    }
+                    out.append(c);
+                }
+                out.append('"');
+            } else {
+                out.append(value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void field(String name, long value) {
+        try {
+            name(name);
+            if (out instanceof StringBuilder) {
+                ((StringBuilder) out).append(value);
+            } else {
+                out.append(Long.toString(value));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void field(String name, double value) {
+        try {
+            name(name);
+            if (out instanceof StringBuilder) {
+                ((StringBuilder) out).append(value);
+            } else {
+                out.append(Double.toString(value));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void field(String name, boolean value) {
+        try {
+            name(name);
+            out.append(value ? "true" : "false");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void field(String name, Date value) {
+        try {
+            name(name);
+            if (value == null) {
+                out.append("null");
+            } else {
+                appendDate(value.getTime());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends an ISO-8601 timestamp in the default time zone (e.g. 2014-09-02T11:25:53+10:00), without the
+     * intermediate objects DateTimeFormatter creates
+     */
+    private void appendDate(long millis) throws IOException {
+        int offset = ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds();
+        long seconds = Math.floorDiv(millis, 1000) + offset;
+        long days = Math.floorDiv(seconds, 86400);
+        int secondOfDay = (int) Math.floorMod(seconds, 86400);
+
+        // civil date from days since the epoch (proleptic Gregorian calendar)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        digits(year, 4);
+        out.append('-');
+        digits(month, 2);
+        out.append('-');
+        digits(day, 2);
+        out.append('T');
+        digits(secondOfDay / 3600, 2);
+        out.append(':');
+        digits(secondOfDay / 60 % 60, 2);
+        out.append(':');
+        digits(secondOfDay % 60, 2);
+        if (offset == 0) {
+            out.append('Z');
+        } else {
+            out.append(offset < 0 ? '-' : '+');
+            int absolute = Math.abs(offset);
+            digits(absolute / 3600, 2);
+            out.append(':');
+            digits(absolute / 60 % 60, 2);
+            if (absolute % 60 != 0) {
+                out.append(':');
+                digits(absolute % 60, 2);
+            }
+        }
+    }
+
+    private void digits(long value, int width) throws IOException {
+        if (value < 0) {
+            out.append('-');
+            value = -value;
+        }
+        long divisor = 1;
+        for (int i = 1; i < width || divisor * 10 <= value; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    private void name(String name) throws IOException {
+        out.append(' ').append(name).append('=');
+    }
+
+    private static boolean needsQuotes(String value) {
+        if (value.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c <= ' ' || c == '"' || c == '=' || c == '>' || c == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
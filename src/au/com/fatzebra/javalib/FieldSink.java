@@ -0,0 +1,86 @@
+package au.com.fatzebra.javalib;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Receives the fields of a model one at a time, for structured logging.
+ *
+ * Models write their fields in declaration order without reflection or intermediate objects, so an
+ * implementation can copy them straight into a log event (MDC, key/value pairs etc):
+ * <pre>
+ * purchase.writeTo(new FieldSink() {
+ *     public void field(String name, String value) { event.addKeyValue(name, value); }
+ *     ...
+ * });
+ * </pre>
+ *
+ * Card numbers are masked and card security codes omitted before they reach the sink.
+ */
+public interface FieldSink {
+    /**
+     * Receives a string field
+     * @param name the field name
+     * @param value the value, may be null
+     */
+    void field(String name, String value);
+
+    /**
+     * Receives an integer field
+     * @param name the field name
+     * @param value the value
+     */
+    void field(String name, long value);
+
+    /**
+     * Receives a decimal field
+     * @param name the field name
+     * @param value the value
+     */
+    void field(String name, double value);
+
+    /**
+     * Receives a boolean field
+     * @param name the field name
+     * @param value the value
+     */
+    void field(String name, boolean value);
+
+    /**
+     * Receives a date field
+     * @param name the field name
+     * @param value the value, may be null
+     */
+    void field(String name, Date value);
+
+    /**
+     * Masks a card number for display, keeping the first six and last four digits (e.g. 512345XXXXXX2346)
+     * @param cardNumber the card number, which may already be masked
+     * @return the masked card number, or null
+     */
+    static String maskCardNumber(String cardNumber) {
+        if (cardNumber == null) {
+            return null;
+        }
+        int length = cardNumber.length();
+        if (length < 13) {
+            // too short to be a PAN - mask it entirely rather than guess
+            char[] masked = new char[length];
+            Arrays.fill(masked, 'X');
+            return new String(masked);
+        }
+        boolean masked = true;
+        for (int i = 6; i < length - 4 && masked; i++) {
+            masked = !Character.isDigit(cardNumber.charAt(i));
+        }
+        if (masked) {
+            // the gateway returns card numbers already masked
+            return cardNumber;
+        }
+        char[] chars = cardNumber.toCharArray();
+        for (int i = 6; i < length - 4; i++) {
+            chars[i] = 'X';
+        }
+        return new String(chars);
+    }
+}
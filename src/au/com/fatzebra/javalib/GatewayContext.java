@@ -1,7 +1,32 @@
 package au.com.fatzebra.javalib;
 
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.models.PurchaseCache;
+import au.com.fatzebra.javalib.net.CircuitBreaker;
+import au.com.fatzebra.javalib.net.CircuitBreakerPolicy;
+import au.com.fatzebra.javalib.net.Interceptor;
+import au.com.fatzebra.javalib.net.Metrics;
+import au.com.fatzebra.javalib.net.Operation;
+import au.com.fatzebra.javalib.net.RateLimitPolicy;
+import au.com.fatzebra.javalib.net.RateLimiter;
+import au.com.fatzebra.javalib.net.RequestHeaders;
+import au.com.fatzebra.javalib.net.Resource;
+import au.com.fatzebra.javalib.net.RetryPolicy;
+import au.com.fatzebra.javalib.net.SingleFlight;
+import au.com.fatzebra.javalib.net.Timeouts;
+import au.com.fatzebra.javalib.net.Transport;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
 /**
  * Provides context (authentication credentials etc) for connection to the API
+ *
+ * A context may be shared between threads once it has been set up, but must not be changed while requests are
+ * being made with it. {@link FatZebraClient} offers an immutable alternative.
  */
 public class GatewayContext {
     public String username = "TEST";
@@ -10,6 +35,104 @@ public class GatewayContext {
     public String live_url = "gateway.fatzebra.com.au";
     public String sandbox_url = "gateway.sandbox.fatzebra.com.au";
 
+    /**
+     * Overrides the gateway URL, including the version path (e.g. https://localhost:8443/v1.0/).
+     * When null (the default) the live or sandbox URL is used.
+     */
+    public String gateway_url = null;
+
+    /**
+     * Keeps the raw response body on FatZebraResponse.responseBody for debugging. When false (the default) the
+     * response is parsed straight from the network stream without holding the body as a string.
+     */
+    public boolean retainResponseBody = false;
+
+    /**
+     * Overrides the retry policy for requests made with this context. When null (the default) the policy set by
+     * Resource.setRetryPolicy is used.
+     */
+    public RetryPolicy retryPolicy = null;
+
+    /**
+     * Overrides the connect and read timeouts for requests made with this context. When null (the default) the
+     * timeouts set by Resource.setTimeouts are used, or failing that FatZebra.timeout.
+     */
+    public Timeouts timeouts = null;
+
+    /**
+     * Overrides the transport for requests made with this context. When null (the default) the transport set by
+     * Resource.setTransport is used.
+     */
+    public Transport transport = null;
+
+    /**
+     * Overrides the executor running asynchronous requests made with this context. When null (the default) the
+     * executor set by Resource.setAsyncExecutor is used.
+     */
+    public Executor asyncExecutor = null;
+
+    /**
+     * Overrides the metrics for requests made with this context. When null (the default) the metrics set by
+     * Resource.setMetrics are used.
+     */
+    public Metrics metrics = null;
+
+    /**
+     * Overrides the interceptors run for requests made with this context. When null (the default) the interceptors
+     * added with Resource.addInterceptor are run.
+     */
+    public List<Interceptor> interceptors = null;
+
+    /**
+     * Caches purchases for Purchase.find (and the lookup made by Refund.create). When null (the default) every find
+     * goes to the gateway.
+     */
+    public PurchaseCache purchaseCache = null;
+
+    /**
+     * Shares one request between concurrent finds for the same ID or reference, so a burst of identical lookups
+     * makes a single call. Every caller gets the same Purchase, which must be treated as read only. When false (the
+     * default) each find makes its own request.
+     */
+    public boolean coalesceFinds = false;
+
+    /**
+     * Overrides the circuit breaker and bulkhead settings for requests made with this context. When null (the
+     * default) the policy set by Resource.setCircuitBreakerPolicy is used.
+     */
+    public CircuitBreakerPolicy circuitBreakerPolicy = null;
+
+    /**
+     * Overrides the client-side rate limits for requests made with this context. When null (the default) the policy
+     * set by Resource.setRateLimitPolicy is used.
+     */
+    public RateLimitPolicy rateLimitPolicy = null;
+
+    /**
+     * The circuit breaker for each operation, created on first use
+     */
+    private final ConcurrentHashMap<Operation, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<Operation, CircuitBreaker>();
+
+    /**
+     * The rate limiter for each limited operation, created on first use
+     */
+    private final ConcurrentHashMap<Operation, RateLimiter> rateLimiters = new ConcurrentHashMap<Operation, RateLimiter>();
+
+    /**
+     * The finds in flight, for coalescing
+     */
+    private final SingleFlight<String, Purchase> finds = new SingleFlight<String, Purchase>();
+
+    /**
+     * The asynchronous calls not yet complete
+     */
+    private final Set<CompletableFuture<?>> pendingCalls = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Headers built for the current credentials
+     */
+    private volatile RequestHeaders requestHeaders;
+
     public GatewayContext(String username, String token, boolean sandbox) {
         this.username = username;
         this.token = token;
@@ -18,4 +141,94 @@ public class GatewayContext {
 
     public GatewayContext() {
     }
+
+    /**
+     * Gets the request headers for this context. The headers are built once and only rebuilt
+     * if the username or token is changed.
+     * @return the request headers
+     */
+    public RequestHeaders getRequestHeaders() {
+        RequestHeaders headers = this.requestHeaders;
+        if (headers == null || !headers.isFor(this.username, this.token)) {
+            headers = RequestHeaders.create(this.username, this.token);
+            this.requestHeaders = headers;
+        }
+        return headers;
+    }
+
+    /**
+     * Gets the circuit breaker guarding an operation for this context. A new breaker is created if the policy
+     * has been changed since the last request.
+     * @param operation the operation
+     * @return the circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker(Operation operation) {
+        final CircuitBreakerPolicy policy = this.circuitBreakerPolicy != null ? this.circuitBreakerPolicy : Resource.getCircuitBreakerPolicy();
+        CircuitBreaker breaker = circuitBreakers.get(operation);
+        if (breaker == null || breaker.getPolicy() != policy) {
+            breaker = circuitBreakers.compute(operation, (key, existing) ->
+                    existing != null && existing.getPolicy() == policy ? existing : new CircuitBreaker(policy, this, key));
+        }
+        return breaker;
+    }
+
+    /**
+     * Gets the rate limiter for an operation for this context. A new limiter is created if the policy has been
+     * changed since the last request.
+     * @param operation the operation
+     * @return the rate limiter, or null if the operation is not limited
+     */
+    public RateLimiter getRateLimiter(Operation operation) {
+        final RateLimitPolicy policy = this.rateLimitPolicy != null ? this.rateLimitPolicy : Resource.getRateLimitPolicy();
+        if (!policy.isLimited(operation)) {
+            return null;
+        }
+        RateLimiter limiter = rateLimiters.get(operation);
+        if (limiter == null || limiter.getPolicy() != policy) {
+            limiter = rateLimiters.compute(operation, (key, existing) ->
+                    existing != null && existing.getPolicy() == policy ? existing : new RateLimiter(policy, this, key));
+        }
+        return limiter;
+    }
+
+    /**
+     * Gets the finds in flight for this context, which Purchase.find joins when coalesceFinds is set
+     * @return the finds in flight
+     */
+    public SingleFlight<String, Purchase> getFinds() {
+        return finds;
+    }
+
+    /**
+     * Tracks an asynchronous call made with this context until it completes
+     * @param call the pending result of the call
+     */
+    public void trackCall(final CompletableFuture<?> call) {
+        pendingCalls.add(call);
+        call.whenComplete((result, error) -> pendingCalls.remove(call));
+    }
+
+    /**
+     * Fails every asynchronous call made with this context which has not yet completed, such as when the client
+     * owning the context is closed
+     * @param failure the failure to complete the calls with
+     */
+    public void failPendingCalls(Throwable failure) {
+        for (CompletableFuture<?> call : pendingCalls) {
+            call.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Indicates whether this context holds the settings given
+     * @param username the authentication username
+     * @param token the authentication token
+     * @param sandbox the sandbox flag
+     * @return true if the settings match
+     */
+    boolean matches(String username, String token, boolean sandbox) {
+        return this.sandbox == sandbox
+                && (this.username == null ? username == null : this.username.equals(username))
+                && (this.token == null ? token == null : this.token.equals(token));
+    }
 }
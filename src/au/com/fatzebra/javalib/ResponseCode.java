@@ -0,0 +1,147 @@
+package au.com.fatzebra.javalib;
+
+/**
+ * A typed acquirer response code, with its message and classification precomputed.
+ *
+ * Instances are shared - look them up with {@link #of(String)} rather than parsing the code yourself:
+ * <pre>
+ * ResponseCode code = purchase.getResponseCode();
+ * if (code.isRetryable()) {
+ *     // queue the purchase for another attempt
+ * } else if (code.isExpiredCard()) {
+ *     // ask the customer for new card details
+ * }
+ * </pre>
+ */
+public final class ResponseCode {
+    /**
+     * Returned for missing or unrecognised response codes
+     */
+    public static final ResponseCode UNKNOWN = new ResponseCode(-1, "Unknown", false, false, false, false);
+
+    private static final int[] APPROVED_CODES = {0, 8, 10, 11, 16};
+    private static final int[] RETRYABLE_CODES = {9, 90};
+    private static final int[] EXPIRED_CARD_CODES = {33, 54};
+    // Declines which will fail again on the same card, whatever the timing - lost or stolen cards, invalid card
+    // numbers, transactions the card is not permitted to make etc.
+    private static final int[] HARD_DECLINE_CODES = {4, 7, 12, 14, 15, 31, 33, 41, 43, 54, 57, 62};
+
+    private static final ResponseCode[] CODES = new ResponseCode[FZBase.RESPONSE_MAP.length];
+
+    static {
+        for (int i = 0; i < CODES.length; i++) {
+            CODES[i] = new ResponseCode(i, FZBase.RESPONSE_MAP[i],
+                    contains(APPROVED_CODES, i),
+                    contains(RETRYABLE_CODES, i),
+                    contains(HARD_DECLINE_CODES, i),
+                    contains(EXPIRED_CARD_CODES, i));
+        }
+    }
+
+    private final int code;
+    private final String message;
+    private final boolean approved;
+    private final boolean retryable;
+    private final boolean hardDecline;
+    private final boolean expiredCard;
+
+    private ResponseCode(int code, String message, boolean approved, boolean retryable, boolean hardDecline, boolean expiredCard) {
+        this.code = code;
+        this.message = message;
+        this.approved = approved;
+        this.retryable = retryable;
+        this.hardDecline = hardDecline;
+        this.expiredCard = expiredCard;
+    }
+
+    /**
+     * Looks up a response code as returned by the gateway (e.g. "00", "05")
+     * @param code the response code
+     * @return the response code, or UNKNOWN if it is missing or not recognised
+     */
+    public static ResponseCode of(String code) {
+        if (code == null || code.isEmpty() || code.length() > 3) {
+            return UNKNOWN;
+        }
+        int value = 0;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return UNKNOWN;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return of(value);
+    }
+
+    /**
+     * Looks up a numeric response code
+     * @param code the response code
+     * @return the response code, or UNKNOWN if it is not recognised
+     */
+    public static ResponseCode of(int code) {
+        return code >= 0 && code < CODES.length ? CODES[code] : UNKNOWN;
+    }
+
+    /**
+     * Gets the numeric code
+     * @return the code, or -1 for UNKNOWN
+     */
+    public int getCode() {
+        return this.code;
+    }
+
+    /**
+     * Gets the response message
+     * @return the message, e.g. Approved, Insufficient Funds
+     */
+    public String getMessage() {
+        return this.message;
+    }
+
+    /**
+     * Indicates if the transaction was approved
+     * @return true if approved
+     */
+    public boolean isApproved() {
+        return this.approved;
+    }
+
+    /**
+     * Indicates if the decline is temporary and the transaction may succeed if submitted again later
+     * (Acquirer Busy, Declined - Please Retry)
+     * @return true if the transaction may be retried
+     */
+    public boolean isRetryable() {
+        return this.retryable;
+    }
+
+    /**
+     * Indicates if the decline is permanent for this card, so the transaction should not be retried
+     * @return true for a hard decline
+     */
+    public boolean isHardDecline() {
+        return this.hardDecline;
+    }
+
+    /**
+     * Indicates if the card has expired
+     * @return true if the card has expired
+     */
+    public boolean isExpiredCard() {
+        return this.expiredCard;
+    }
+
+    @Override public String toString() {
+        return this == UNKNOWN ? "Unknown" : String.format("%02d %s", this.code, this.message);
+    }
+
+    private static boolean contains(int[] codes, int code) {
+        for (int c : codes) {
+            if (c == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
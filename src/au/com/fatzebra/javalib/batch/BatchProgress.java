@@ -0,0 +1,98 @@
+package au.com.fatzebra.javalib.batch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters for a running {@link PurchaseBatch}
+ */
+public class BatchProgress {
+    final LongAdder submitted = new LongAdder();
+    final LongAdder approved = new LongAdder();
+    final LongAdder declined = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    private volatile long startedAt = 0;
+    private volatile long finishedAt = 0;
+
+    void start() {
+        startedAt = System.nanoTime();
+    }
+
+    void finish() {
+        finishedAt = System.nanoTime();
+    }
+
+    /**
+     * Gets the number of purchases sent to the gateway so far
+     * @return submitted purchases
+     */
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * Gets the number of purchases which have completed, whatever the outcome
+     * @return completed purchases
+     */
+    public long getCompleted() {
+        return getApproved() + getDeclined() + getFailed();
+    }
+
+    /**
+     * Gets the number of purchases which were approved
+     * @return approved purchases
+     */
+    public long getApproved() {
+        return approved.sum();
+    }
+
+    /**
+     * Gets the number of purchases which were processed but declined
+     * @return declined purchases
+     */
+    public long getDeclined() {
+        return declined.sum();
+    }
+
+    /**
+     * Gets the number of purchases which failed with an exception (network or API errors)
+     * @return failed purchases
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Gets the number of purchases sent but not yet completed
+     * @return in-flight purchases
+     */
+    public long getInFlight() {
+        return getSubmitted() - getCompleted();
+    }
+
+    /**
+     * Gets the time since the batch started, or the duration of a finished batch
+     * @return elapsed time in milliseconds
+     */
+    public long getElapsedMillis() {
+        if (startedAt == 0) {
+            return 0;
+        }
+        long end = finishedAt == 0 ? System.nanoTime() : finishedAt;
+        return TimeUnit.NANOSECONDS.toMillis(end - startedAt);
+    }
+
+    /**
+     * Gets the completion rate since the batch started
+     * @return completed purchases per second
+     */
+    public double getThroughput() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : getCompleted() * 1000.0 / elapsed;
+    }
+
+    @Override public String toString() {
+        return String.format("<BatchProgress submitted=%d approved=%d declined=%d failed=%d elapsed=%dms throughput=%.1f/s>",
+                getSubmitted(), getApproved(), getDeclined(), getFailed(), getElapsedMillis(), getThroughput());
+    }
+}
@@ -0,0 +1,208 @@
+package au.com.fatzebra.javalib.batch;
+
+import au.com.fatzebra.javalib.net.DaemonThreadFactory;
+import au.com.fatzebra.javalib.net.VirtualThreads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a group of blocking calls in parallel, each on its own thread, and waits for them together - such as
+ * capturing many authorisations at once. It follows the shape of Java's structured concurrency: the calls are forked
+ * inside a try-with-resources block, the first failure cancels the rest, and no call outlives the block.
+ *
+ * <pre>
+ * try (FanOut&lt;CaptureRequest&gt; fanOut = FanOut.open()) {
+ *     for (Purchase authorisation : authorisations) {
+ *         fanOut.fork(() -&gt; CaptureRequest.create(authorisation.amount, authorisation.id, ctx));
+ *     }
+ *     List&lt;CaptureRequest&gt; captures = fanOut.join();
+ * }
+ * </pre>
+ *
+ * Calls run on virtual threads on Java 21 and later, and on daemon platform threads before that. Either way the
+ * connection pool bounds how many reach the gateway at once; {@link #open(int)} bounds the threads as well.
+ *
+ * A fan-out is owned by the thread which opened it, and only that thread may fork, join or close it.
+ *
+ * @param <T> the result type of the calls
+ */
+public final class FanOut<T> implements AutoCloseable {
+    private final ThreadFactory threads;
+    private final Semaphore permits;
+    private final Thread owner = Thread.currentThread();
+    private final List<FutureTask<T>> tasks = new ArrayList<FutureTask<T>>();
+    private final Queue<Thread> running = new ConcurrentLinkedQueue<Thread>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private volatile boolean cancelled = false;
+    private boolean closed = false;
+
+    private FanOut(int maxConcurrency) {
+        this.threads = VirtualThreads.isSupported() ? VirtualThreads.newThreadFactory("fatzebra-fanout")
+                : new DaemonThreadFactory("fatzebra-fanout");
+        this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+    }
+
+    /**
+     * Opens a fan-out which starts every call as soon as it is forked
+     * @param <T> the result type of the calls
+     * @return the fan-out
+     */
+    public static <T> FanOut<T> open() {
+        return new FanOut<T>(0);
+    }
+
+    /**
+     * Opens a fan-out which runs at most the given number of calls at once. Forking blocks while it is at the limit.
+     * @param maxConcurrency the most calls to run at once
+     * @param <T> the result type of the calls
+     * @return the fan-out
+     */
+    public static <T> FanOut<T> open(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        return new FanOut<T>(maxConcurrency);
+    }
+
+    /**
+     * Starts a call on a new thread. Once a call has failed, further calls are cancelled without being run.
+     * @param call the call
+     * @return the pending result of the call
+     * @throws InterruptedException if interrupted while waiting for a free slot, in which case the calls are cancelled
+     */
+    public Future<T> fork(final Callable<? extends T> call) throws InterruptedException {
+        checkOwner();
+        if (closed) {
+            throw new IllegalStateException("The fan-out is closed");
+        }
+        FutureTask<T> task = new FutureTask<T>(() -> {
+            try {
+                return call.call();
+            } catch (Throwable e) {
+                fail(e);
+                throw e;
+            } finally {
+                running.remove(Thread.currentThread());
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        });
+        if (permits != null && !cancelled) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                // the task was never added, so join only waits for the calls already started
+                cancel();
+                throw e;
+            }
+            if (cancelled) {
+                permits.release();
+            }
+        }
+        tasks.add(task);
+        if (cancelled) {
+            task.cancel(false);
+            return task;
+        }
+        Thread thread = threads.newThread(task);
+        running.add(thread);
+        thread.start();
+        if (cancelled) {
+            // a call failed while the thread was starting
+            thread.interrupt();
+        }
+        return task;
+    }
+
+    /**
+     * Waits for every call to complete
+     * @return the results, in the order the calls were forked
+     * @throws ExecutionException with the first failure, once the other calls have stopped
+     * @throws InterruptedException if interrupted while waiting, in which case the calls are cancelled
+     */
+    public List<T> join() throws ExecutionException, InterruptedException {
+        checkOwner();
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            for (FutureTask<T> task : tasks) {
+                try {
+                    results.add(task.get());
+                } catch (ExecutionException | CancellationException e) {
+                    results.add(null);
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        }
+        awaitThreads();
+        Throwable first = failure.get();
+        if (first != null) {
+            throw new ExecutionException(first);
+        }
+        return results;
+    }
+
+    /**
+     * Cancels any calls still running, interrupting their threads, and waits for them to stop. A request already
+     * waiting on the gateway stops when interrupted on a virtual thread, and otherwise at its read timeout.
+     */
+    public void close() {
+        checkOwner();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancel();
+        boolean interrupted = false;
+        for (Thread thread : running) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            cancel();
+        }
+    }
+
+    private void cancel() {
+        cancelled = true;
+        for (Thread thread : running) {
+            thread.interrupt();
+        }
+    }
+
+    private void awaitThreads() throws InterruptedException {
+        for (Thread thread : running) {
+            thread.join();
+        }
+    }
+
+    private void checkOwner() {
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("A fan-out can only be used by the thread which opened it");
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package au.com.fatzebra.javalib.batch;
+
+import au.com.fatzebra.javalib.FatZebra;
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import au.com.fatzebra.javalib.net.DaemonThreadFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Submits a large number of purchases (such as a recurring billing run) with bounded concurrency and an
+ * optional rate limit.
+ *
+ * Requests are pulled from the source only when a slot is free and results are handed to the listener as
+ * they complete rather than collected, so memory use stays flat regardless of the size of the batch.
+ *
+ * <pre>
+ * PurchaseBatch batch = new PurchaseBatch(ctx, 10, 50);
+ * BatchProgress progress = batch.run(requests, new PurchaseBatch.Listener() { ... });
+ * </pre>
+ */
+public class PurchaseBatch {
+    /**
+     * Receives the outcome of each purchase in the batch.
+     *
+     * Methods are called from the batch worker threads, concurrently and in completion order. If a method throws,
+     * the batch stops taking requests and run() rethrows the exception once the purchases in flight complete. The
+     * purchase whose outcome was not recorded is still counted in the progress, as it was made.
+     */
+    public interface Listener {
+        /**
+         * Called when the gateway has processed the purchase - check purchase.successful for approval
+         * @param request the request submitted
+         * @param purchase the resulting purchase
+         */
+        void onResult(PurchaseRequest request, Purchase purchase);
+
+        /**
+         * Called when the purchase failed with an exception (IOException, NetworkError or APIError)
+         * @param request the request submitted
+         * @param error the exception raised
+         */
+        void onError(PurchaseRequest request, Exception error);
+    }
+
+    private final GatewayContext ctx;
+    private final int concurrency;
+    private final long intervalNanos;
+    private final BatchProgress progress = new BatchProgress();
+    private volatile boolean cancelled = false;
+    private final AtomicReference<RuntimeException> listenerFailure = new AtomicReference<RuntimeException>();
+
+    /**
+     * Initialises a batch using the default context without a rate limit
+     * @param concurrency the maximum number of purchases in flight at once
+     */
+    public PurchaseBatch(int concurrency) {
+        this(FatZebra.getContext(), concurrency, 0);
+    }
+
+    /**
+     * Initialises a batch
+     * @param ctx the gateway context (authentication etc)
+     * @param concurrency the maximum number of purchases in flight at once
+     * @param ratePerSecond the maximum number of purchases started per second, or 0 for no limit
+     */
+    public PurchaseBatch(GatewayContext ctx, int concurrency, double ratePerSecond) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        if (ratePerSecond < 0) {
+            throw new IllegalArgumentException("ratePerSecond must not be negative");
+        }
+        this.ctx = ctx;
+        this.concurrency = concurrency;
+        this.intervalNanos = ratePerSecond == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+    }
+
+    /**
+     * Gets the live progress counters of the batch
+     * @return the progress
+     */
+    public BatchProgress getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * Stops the batch taking further requests from its source. Purchases already in flight complete as normal.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Runs the batch from a stream of requests, blocking until every purchase has completed
+     * @param requests the purchase requests
+     * @param listener receives each outcome
+     * @return the final progress counters
+     * @throws InterruptedException if the calling thread is interrupted, in which case no further requests are sent
+     * @throws RuntimeException the first exception thrown by the listener, once the purchases in flight complete
+     */
+    public BatchProgress run(Stream<PurchaseRequest> requests, Listener listener) throws InterruptedException {
+        return run(requests.iterator(), listener);
+    }
+
+    /**
+     * Runs the batch, blocking until every purchase has completed
+     * @param requests the purchase requests
+     * @param listener receives each outcome
+     * @return the final progress counters
+     * @throws InterruptedException if the calling thread is interrupted, in which case no further requests are sent
+     * @throws RuntimeException the first exception thrown by the listener, once the purchases in flight complete
+     */
+    public BatchProgress run(Iterable<PurchaseRequest> requests, Listener listener) throws InterruptedException {
+        return run(requests.iterator(), listener);
+    }
+
+    /**
+     * Runs the batch, blocking until every purchase has completed
+     * @param requests the purchase requests
+     * @param listener receives each outcome
+     * @return the final progress counters
+     * @throws InterruptedException if the calling thread is interrupted, in which case no further requests are sent
+     * @throws RuntimeException the first exception thrown by the listener, once the purchases in flight complete
+     */
+    public BatchProgress run(Iterator<PurchaseRequest> requests, final Listener listener) throws InterruptedException {
+        final Semaphore slots = new Semaphore(concurrency);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory("fatzebra-batch"));
+        progress.start();
+        try {
+            long nextStart = System.nanoTime();
+            while (!cancelled && requests.hasNext()) {
+                slots.acquire();
+                boolean dispatched = false;
+                try {
+                    if (intervalNanos > 0) {
+                        long wait = nextStart - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        nextStart = Math.max(nextStart, System.nanoTime() - intervalNanos) + intervalNanos;
+                    }
+
+                    final PurchaseRequest request = requests.next();
+                    progress.submitted.increment();
+                    workers.execute(() -> {
+                        try {
+                            submit(request, listener);
+                        } catch (RuntimeException ex) {
+                            // the outcome was not recorded, so stop rather than send purchases nobody hears about
+                            if (!listenerFailure.compareAndSet(null, ex) && listenerFailure.get() != ex) {
+                                listenerFailure.get().addSuppressed(ex);
+                            }
+                            cancelled = true;
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                    dispatched = true;
+                } finally {
+                    if (!dispatched) {
+                        slots.release();
+                    }
+                }
+            }
+        } finally {
+            // wait for the in-flight purchases
+            slots.acquireUninterruptibly(concurrency);
+            slots.release(concurrency);
+            workers.shutdown();
+            progress.finish();
+        }
+        RuntimeException failure = listenerFailure.get();
+        if (failure != null) {
+            throw failure;
+        }
+        return progress;
+    }
+
+    private void submit(PurchaseRequest request, Listener listener) {
+        Purchase purchase;
+        try {
+            purchase = Purchase.create(request, ctx);
+        } catch (Exception ex) {
+            progress.failed.increment();
+            listener.onError(request, ex);
+            return;
+        }
+        if (purchase.successful) {
+            progress.approved.increment();
+        } else {
+            progress.declined.increment();
+        }
+        listener.onResult(request, purchase);
+    }
+}
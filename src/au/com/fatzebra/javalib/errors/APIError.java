@@ -11,6 +11,7 @@ public class APIError extends Exception {
     public static final long serialVersionUID = 1;
     private List<String> messages;
     private Throwable ex;
+    private int status = 0;
 
     /**
      * Initialises the error object
@@ -30,6 +31,24 @@ public class APIError extends Exception {
         this.ex = ex;
     }
 
+    /**
+     * Initialises the error object for an HTTP response
+     * @param messages error messages
+     * @param status the HTTP status code of the response
+     */
+    public APIError(List<String> messages, int status) {
+        this.messages = messages;
+        this.status = status;
+    }
+
+    /**
+     * Gets the HTTP status code of the response which raised the error
+     * @return the status code, or 0 if the error was not raised by a response
+     */
+    public int getStatus() {
+        return this.status;
+    }
+
     /**
      * Gets the messages for the error
      * @return the messages
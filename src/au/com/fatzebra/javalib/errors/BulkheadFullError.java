@@ -0,0 +1,16 @@
+package au.com.fatzebra.javalib.errors;
+
+/**
+ * Raised without contacting the gateway when the limit of concurrent requests to an endpoint has been reached
+ */
+public class BulkheadFullError extends NetworkError {
+    public static final long serialVersionUID = 1;
+
+    /**
+     * Initialises a new error
+     * @param message the error message
+     */
+    public BulkheadFullError(String message) {
+        super(message, false);
+    }
+}
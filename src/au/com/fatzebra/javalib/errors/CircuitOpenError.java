@@ -0,0 +1,28 @@
+package au.com.fatzebra.javalib.errors;
+
+/**
+ * Raised without contacting the gateway while its circuit breaker is open, because recent requests to the same
+ * endpoint have been failing
+ */
+public class CircuitOpenError extends NetworkError {
+    public static final long serialVersionUID = 1;
+    private long retryAfter;
+
+    /**
+     * Initialises a new error
+     * @param message the error message
+     * @param retryAfter the time in milliseconds until the breaker lets a trial request through
+     */
+    public CircuitOpenError(String message, long retryAfter) {
+        super(message, false);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Gets the time until the breaker lets a trial request through
+     * @return time in milliseconds, or 0 if a trial request is already in flight
+     */
+    public long getRetryAfter() {
+        return this.retryAfter;
+    }
+}
@@ -0,0 +1,26 @@
+package au.com.fatzebra.javalib.errors;
+
+/**
+ * Raised when a call does not complete by the deadline set for it. The request may or may not have been processed
+ * by the gateway.
+ */
+public class DeadlineExceededError extends NetworkError {
+    public static final long serialVersionUID = 1;
+
+    /**
+     * Initialises a new error
+     * @param message the error message
+     */
+    public DeadlineExceededError(String message) {
+        super(message, true);
+    }
+
+    /**
+     * Initialises a new error with an encapsulated exception
+     * @param message the error message
+     * @param ex the encapsulated exception
+     */
+    public DeadlineExceededError(String message, Throwable ex) {
+        super(message, true, ex);
+    }
+}
@@ -5,7 +5,6 @@ package au.com.fatzebra.javalib.errors;
  */
 public class NetworkError extends Exception {
     public static final long serialVersionUID = 1;
-    private String message;
     private Throwable ex;
     private boolean timeout = false;
 
@@ -15,7 +14,7 @@ public class NetworkError extends Exception {
      * @param timeout indicates if this error was a result of a timeout
      */
     public NetworkError(String message, boolean timeout) {
-        this.message = message;
+        super(message);
         this.timeout = timeout;
     }
 
@@ -27,17 +26,10 @@ public class NetworkError extends Exception {
      */
     public NetworkError(String message, boolean timeout, Throwable ex) {
         super(message, ex);
+        this.ex = ex;
         this.timeout = timeout;
     }
 
-    /**
-     * Gets the message for the exception
-     * @return the message
-     */
-    public String getMessage() {
-        return this.message;
-    }
-
     /**
      * Gets the timeout indicator for the exception
      * @return indicate if the error was a result of a timeout
@@ -0,0 +1,28 @@
+package au.com.fatzebra.javalib.errors;
+
+/**
+ * Raised without contacting the gateway when a request would have to wait longer than allowed for the client-side
+ * rate limiter
+ */
+public class RateLimitedError extends NetworkError {
+    public static final long serialVersionUID = 1;
+    private long retryAfter;
+
+    /**
+     * Initialises a new error
+     * @param message the error message
+     * @param retryAfter the time in milliseconds until the limiter would let the request through
+     */
+    public RateLimitedError(String message, long retryAfter) {
+        super(message, false);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Gets the time until the limiter would let the request through
+     * @return time in milliseconds
+     */
+    public long getRetryAfter() {
+        return this.retryAfter;
+    }
+}
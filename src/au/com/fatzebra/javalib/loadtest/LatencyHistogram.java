@@ -0,0 +1,159 @@
+package au.com.fatzebra.javalib.loadtest;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, thread safe latency histogram with the same bucketing as HdrHistogram: values are kept in
+ * microseconds to three significant digits (a relative error under 0.1%) from 1 microsecond to an hour, in about
+ * 23,000 counters however many values are recorded.
+ *
+ * Values above an hour are recorded as an hour.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_HALF_COUNT_MAGNITUDE = 10;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+    private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF_COUNT * 2;
+    private static final long SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+    private static final int LEADING_ZERO_COUNT_BASE = 64 - SUB_BUCKET_HALF_COUNT_MAGNITUDE - 1;
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int PERCENTILE_TICKS_PER_HALF_DISTANCE = 5;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Initialises an empty histogram
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(countsIndex(HIGHEST_TRACKABLE_MICROS) + 1);
+    }
+
+    /**
+     * Records a latency
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.min(HIGHEST_TRACKABLE_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        counts.incrementAndGet(countsIndex(micros));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max;
+        while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+            // retry
+        }
+    }
+
+    /**
+     * Gets the number of latencies recorded
+     * @return the count
+     */
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Gets the highest latency recorded
+     * @param unit the unit of the result
+     * @return the latency
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(maxMicros.get(), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Gets the mean latency
+     * @param unit the unit of the result
+     * @return the latency, or 0 if nothing was recorded
+     */
+    public double getMean(TimeUnit unit) {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalMicros.get() / count * 1000 / unit.toNanos(1);
+    }
+
+    /**
+     * Gets the latency at or below which the given percentage of latencies fall
+     * @param percentile the percentile, from 0 to 100
+     * @param unit the unit of the result
+     * @return the latency, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile, TimeUnit unit) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+        long running = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            running += counts.get(i);
+            if (running >= target) {
+                return unit.convert(Math.min(highestEquivalentValue(i), maxMicros.get()), TimeUnit.MICROSECONDS);
+            }
+        }
+        return getMax(unit);
+    }
+
+    /**
+     * Prints the percentile distribution in HdrHistogram's format, in milliseconds, with percentiles closer together
+     * towards the tail
+     * @param out the stream to print to
+     */
+    public void outputPercentileDistribution(PrintStream out) {
+        long count = totalCount.get();
+        out.println("       Value     Percentile TotalCount 1/(1-Percentile)");
+        out.println();
+        double levelToReport = 0;
+        long running = 0;
+        for (int i = 0; i < counts.length() && count > 0; i++) {
+            long atIndex = counts.get(i);
+            if (atIndex == 0) {
+                continue;
+            }
+            running += atIndex;
+            double reached = 100.0 * running / count;
+            double value = Math.min(highestEquivalentValue(i), maxMicros.get()) / 1000.0;
+            while (reached >= levelToReport && levelToReport < 100 && running < count) {
+                out.printf(Locale.ROOT, "%12.3f %14.12f %10d %14.2f%n",
+                        value, levelToReport / 100, running, 1 / (1 - levelToReport / 100));
+                levelToReport = nextLevel(levelToReport);
+            }
+            if (running >= count) {
+                out.printf(Locale.ROOT, "%12.3f %14.12f %10d%n", value, 1.0, running);
+                break;
+            }
+        }
+        out.printf(Locale.ROOT, "#[Mean    = %12.3f, Max            = %12.3f]%n", getMean(TimeUnit.MICROSECONDS) / 1000,
+                maxMicros.get() / 1000.0);
+        out.printf(Locale.ROOT, "#[Total count    = %12d]%n", count);
+    }
+
+    /**
+     * Steps through the percentiles as HdrHistogram does: 0, then five steps to 50%, five more to 75%, five more
+     * to 87.5%, and so on
+     */
+    private static double nextLevel(double level) {
+        long halfDistance = (long) Math.pow(2, (long) (Math.log(100 / (100 - level)) / Math.log(2)) + 1);
+        return level + 100.0 / (PERCENTILE_TICKS_PER_HALF_DISTANCE * halfDistance);
+    }
+
+    private static int countsIndex(long micros) {
+        int bucketIndex = LEADING_ZERO_COUNT_BASE - Long.numberOfLeadingZeros(micros | SUB_BUCKET_MASK);
+        int subBucketIndex = (int) (micros >>> bucketIndex);
+        return ((bucketIndex + 1) << SUB_BUCKET_HALF_COUNT_MAGNITUDE) + (subBucketIndex - SUB_BUCKET_HALF_COUNT);
+    }
+
+    private static long highestEquivalentValue(int index) {
+        int bucketIndex = (index >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1;
+        int subBucketIndex = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+        if (bucketIndex < 0) {
+            subBucketIndex -= SUB_BUCKET_HALF_COUNT;
+            bucketIndex = 0;
+        }
+        return ((long) subBucketIndex << bucketIndex) + (1L << bucketIndex) - 1;
+    }
+}
@@ -0,0 +1,455 @@
+package au.com.fatzebra.javalib.loadtest;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.models.CaptureRequest;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import au.com.fatzebra.javalib.models.Refund;
+import au.com.fatzebra.javalib.net.Operation;
+import au.com.fatzebra.javalib.simulator.GatewaySimulator;
+import au.com.fatzebra.javalib.simulator.Latency;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a mix of purchases, finds, captures and refunds at a fixed rate and records their latencies, to size the
+ * connection pool and executor a client needs before it sees that load in production.
+ *
+ * The test is open loop: requests are sent on a schedule whether or not earlier ones have completed, as real
+ * customers arrive, and each latency is measured from when the request was due rather than when it was sent. A
+ * client which falls behind shows it in the percentiles instead of quietly sending fewer requests (coordinated
+ * omission).
+ *
+ * Purchases in the mix are split between authorisations, which are queued for the captures, and captured purchases,
+ * which the finds and refunds pick from at random. Refunds are for one cent, so a purchase can be refunded many times.
+ *
+ * <pre>
+ * LoadTestResult result = LoadTest.builder(simulator.newContext())
+ *         .rate(500)
+ *         .duration(60, TimeUnit.SECONDS)
+ *         .mix(Operation.PURCHASE, 80).mix(Operation.FIND, 10).mix(Operation.CAPTURE, 5).mix(Operation.REFUND, 5)
+ *         .build()
+ *         .run();
+ * result.print(System.out);
+ * </pre>
+ */
+public final class LoadTest {
+    private static final int RECENT_PURCHASES = 1024;
+
+    private final GatewayContext ctx;
+    private final double rate;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final int maxInFlight;
+    private final int amount;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final double authorisationShare;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36).toUpperCase();
+    private final AtomicLong sequence = new AtomicLong();
+    private final BlockingQueue<String> authorisations = new ArrayBlockingQueue<String>(4096);
+    private final AtomicReferenceArray<String> recent = new AtomicReferenceArray<String>(RECENT_PURCHASES);
+    private final AtomicLong recentCursor = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private volatile boolean cancelled = false;
+
+    private LoadTest(Builder builder) {
+        this.ctx = builder.ctx;
+        this.rate = builder.rate;
+        this.durationNanos = builder.durationNanos;
+        this.warmupNanos = builder.warmupNanos;
+        this.maxInFlight = builder.maxInFlight;
+        this.amount = builder.amount;
+        this.operations = new Operation[builder.mix.size()];
+        this.cumulativeWeights = new int[builder.mix.size()];
+        int total = 0;
+        int i = 0;
+        for (Map.Entry<Operation, Integer> entry : builder.mix.entrySet()) {
+            total += entry.getValue();
+            operations[i] = entry.getKey();
+            cumulativeWeights[i++] = total;
+        }
+        int purchases = weight(builder.mix, Operation.PURCHASE);
+        this.authorisationShare = purchases == 0 ? 0 : Math.min(1.0, (double) weight(builder.mix, Operation.CAPTURE) / purchases);
+    }
+
+    /**
+     * Starts building a test which sends 80% purchases, 10% finds, 5% captures and 5% refunds
+     * @param ctx the gateway context, e.g. from {@link GatewaySimulator#newContext()}
+     * @return the builder
+     */
+    public static Builder builder(GatewayContext ctx) {
+        return new Builder(ctx);
+    }
+
+    /**
+     * Stops sending requests. Requests in flight complete as normal.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Runs the test, blocking until it has finished and every request in flight has completed
+     * @return the results, excluding the warm up
+     * @throws InterruptedException if the calling thread is interrupted, in which case no further requests are sent
+     */
+    public LoadTestResult run() throws InterruptedException {
+        final LoadTestResult result = new LoadTestResult(rate);
+        final Semaphore slots = new Semaphore(maxInFlight);
+        final double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        final long start = System.nanoTime();
+        final long measureFrom = start + warmupNanos;
+        final long end = measureFrom + durationNanos;
+        result.start(measureFrom);
+        try {
+            for (long i = 0; !cancelled; i++) {
+                final long due = start + (long) (i * intervalNanos);
+                if (due - end >= 0) {
+                    break;
+                }
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                // waiting here is counted in the latency, as the request is already due
+                slots.acquire();
+                boolean dispatched = false;
+                try {
+                    dispatched = dispatch(due, due - measureFrom >= 0, result, slots);
+                } finally {
+                    if (!dispatched) {
+                        slots.release();
+                    }
+                }
+            }
+        } finally {
+            result.finish(Math.max(measureFrom, System.nanoTime()));
+            // wait for the requests in flight
+            slots.acquireUninterruptibly(maxInFlight);
+            slots.release(maxInFlight);
+            result.setPeakInFlight(peakInFlight.get());
+        }
+        return result;
+    }
+
+    /**
+     * Sends the next request in the mix
+     * @return false if there was nothing to send
+     */
+    private boolean dispatch(final long due, final boolean measured, LoadTestResult result, final Semaphore slots) {
+        final Operation operation = nextOperation();
+        final LoadTestResult.OperationResult stats = result.get(operation);
+        final long sent = System.nanoTime();
+        CompletableFuture<?> call = send(operation);
+        if (call == null) {
+            if (measured) {
+                stats.skipped.increment();
+            }
+            return false;
+        }
+        int now = inFlight.incrementAndGet();
+        int peak;
+        // the warm up opens the connections, which holds requests up and is not representative
+        while (measured && now > (peak = peakInFlight.get()) && !peakInFlight.compareAndSet(peak, now)) {
+            // retry
+        }
+        call.whenComplete((response, error) -> {
+            long completed = System.nanoTime();
+            inFlight.decrementAndGet();
+            if (measured) {
+                stats.responseTimes.record(completed - due);
+                stats.serviceTimes.record(completed - sent);
+                if (error != null) {
+                    stats.errors.increment();
+                } else if (!successful(response)) {
+                    stats.declined.increment();
+                }
+            }
+            slots.release();
+        });
+        return true;
+    }
+
+    private CompletableFuture<?> send(Operation operation) {
+        switch (operation) {
+            case PURCHASE:
+                final boolean authorise = ThreadLocalRandom.current().nextDouble() < authorisationShare;
+                return Purchase.createAsync(purchaseRequest(!authorise), ctx).thenApply(purchase -> {
+                    if (purchase.successful) {
+                        if (authorise) {
+                            authorisations.offer(purchase.id);
+                        } else {
+                            recent.set((int) (recentCursor.getAndIncrement() % RECENT_PURCHASES), purchase.id);
+                        }
+                    }
+                    return purchase;
+                });
+            case FIND:
+                String found = recentPurchase();
+                return found == null ? null : Purchase.findAsync(found, ctx);
+            case CAPTURE:
+                String authorisation = authorisations.poll();
+                return authorisation == null ? null : CaptureRequest.createAsync(amount, authorisation, ctx);
+            case REFUND:
+                String refunded = recentPurchase();
+                return refunded == null ? null : Refund.createAsync(1, refunded, nextReference(), ctx);
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+
+    private PurchaseRequest purchaseRequest(boolean capture) {
+        HashMap<String, Object> card = new HashMap<String, Object>();
+        card.put("card_holder", "Load Test");
+        card.put("card_number", "5123456789012346");
+        card.put("cvv", "123");
+        card.put("card_expiry", "05/2099");
+        PurchaseRequest request = new PurchaseRequest(card);
+        request.setAmount(amount);
+        request.setReference(nextReference());
+        request.setCurrency("AUD");
+        request.setCustomerIp("127.0.0.1");
+        request.setCapture(capture);
+        return request;
+    }
+
+    private String nextReference() {
+        return "LOAD-" + runId + "-" + sequence.incrementAndGet();
+    }
+
+    private String recentPurchase() {
+        long stored = Math.min(recentCursor.get(), RECENT_PURCHASES);
+        return stored == 0 ? null : recent.get(ThreadLocalRandom.current().nextInt((int) stored));
+    }
+
+    private Operation nextOperation() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private static boolean successful(Object response) {
+        if (response instanceof Purchase) {
+            return ((Purchase) response).successful;
+        } else if (response instanceof Refund) {
+            return ((Refund) response).successful;
+        } else if (response instanceof CaptureRequest) {
+            return ((CaptureRequest) response).successful;
+        }
+        return true;
+    }
+
+    private static int weight(Map<Operation, Integer> mix, Operation operation) {
+        Integer weight = mix.get(operation);
+        return weight == null ? 0 : weight;
+    }
+
+    /**
+     * Runs a test from the command line and prints the results. Without --url it runs against a
+     * {@link GatewaySimulator} with a 50ms median latency.
+     *
+     * <pre>
+     * java au.com.fatzebra.javalib.loadtest.LoadTest --rate 500 --duration 60 --warmup 10 \
+     *         --mix purchase=80,find=10,capture=5,refund=5 [--url URL --username USER --token TOKEN]
+     * </pre>
+     * @param args the options
+     * @throws Exception if the test could not be run
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        GatewaySimulator simulator = null;
+        GatewayContext ctx;
+        if (options.containsKey("url")) {
+            ctx = new GatewayContext(options.get("username"), options.get("token"), true);
+            ctx.gateway_url = options.get("url");
+        } else {
+            simulator = GatewaySimulator.builder().latency(Latency.logNormal(50, 0.5)).start();
+            ctx = simulator.newContext();
+            System.out.println("Running against a simulator at " + simulator.getGatewayUrl());
+        }
+
+        try {
+            Builder builder = builder(ctx)
+                    .rate(Double.parseDouble(option(options, "rate", "100")))
+                    .duration(Long.parseLong(option(options, "duration", "30")), TimeUnit.SECONDS)
+                    .warmup(Long.parseLong(option(options, "warmup", "5")), TimeUnit.SECONDS)
+                    .maxInFlight(Integer.parseInt(option(options, "max-in-flight", "10000")));
+            if (options.containsKey("mix")) {
+                builder.clearMix();
+                for (String part : options.get("mix").split(",")) {
+                    String[] pair = part.split("=");
+                    builder.mix(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+                }
+            }
+            builder.build().run().print(System.out);
+        } finally {
+            if (simulator != null) {
+                simulator.close();
+            }
+        }
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Builds a {@link LoadTest}
+     */
+    public static final class Builder {
+        private final GatewayContext ctx;
+        private final Map<Operation, Integer> mix = new EnumMap<Operation, Integer>(Operation.class);
+        private double rate = 100;
+        private long durationNanos = TimeUnit.SECONDS.toNanos(30);
+        private long warmupNanos = TimeUnit.SECONDS.toNanos(5);
+        private int maxInFlight = 10000;
+        private int amount = 1000;
+
+        private Builder(GatewayContext ctx) {
+            if (ctx == null) {
+                throw new IllegalArgumentException("ctx must not be null");
+            }
+            this.ctx = ctx;
+            mix.put(Operation.PURCHASE, 80);
+            mix.put(Operation.FIND, 10);
+            mix.put(Operation.CAPTURE, 5);
+            mix.put(Operation.REFUND, 5);
+        }
+
+        /**
+         * Sets the rate requests are sent at (default 100)
+         * @param perSecond requests per second
+         * @return this builder
+         */
+        public Builder rate(double perSecond) {
+            if (!(perSecond > 0)) {
+                throw new IllegalArgumentException("rate must be positive");
+            }
+            this.rate = perSecond;
+            return this;
+        }
+
+        /**
+         * Sets how long to measure for, after the warm up (default 30 seconds)
+         * @param value the duration
+         * @param unit the unit of the duration
+         * @return this builder
+         */
+        public Builder duration(long value, TimeUnit unit) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("duration must be positive");
+            }
+            this.durationNanos = unit.toNanos(value);
+            return this;
+        }
+
+        /**
+         * Sets how long to send requests for before measuring, while connections are opened and the JIT compiles
+         * the hot path (default 5 seconds)
+         * @param value the duration
+         * @param unit the unit of the duration
+         * @return this builder
+         */
+        public Builder warmup(long value, TimeUnit unit) {
+            if (value < 0) {
+                throw new IllegalArgumentException("warmup must not be negative");
+            }
+            this.warmupNanos = unit.toNanos(value);
+            return this;
+        }
+
+        /**
+         * Sets the weight of an operation in the mix, replacing the default weight
+         * @param operation the operation
+         * @param weight the relative weight, or 0 to leave the operation out
+         * @return this builder
+         */
+        public Builder mix(Operation operation, int weight) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("weight must not be negative");
+            }
+            if (weight == 0) {
+                this.mix.remove(operation);
+            } else {
+                this.mix.put(operation, weight);
+            }
+            return this;
+        }
+
+        /**
+         * Removes every operation from the mix, to build one up from nothing
+         * @return this builder
+         */
+        public Builder clearMix() {
+            this.mix.clear();
+            return this;
+        }
+
+        /**
+         * Sets the most requests in flight at once (default 10,000). Requests due while the test is at the limit
+         * wait, and the wait counts in their latency.
+         * @param value the number of requests
+         * @return this builder
+         */
+        public Builder maxInFlight(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("maxInFlight must be at least 1");
+            }
+            this.maxInFlight = value;
+            return this;
+        }
+
+        /**
+         * Sets the amount of each purchase and capture in cents (default 1000)
+         * @param value the amount
+         * @return this builder
+         */
+        public Builder amount(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("amount must be positive");
+            }
+            this.amount = value;
+            return this;
+        }
+
+        /**
+         * Builds the test
+         * @return the test
+         */
+        public LoadTest build() {
+            if (mix.isEmpty()) {
+                throw new IllegalArgumentException("the mix must include at least one operation");
+            }
+            return new LoadTest(this);
+        }
+    }
+}
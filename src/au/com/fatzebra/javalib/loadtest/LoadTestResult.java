@@ -0,0 +1,190 @@
+package au.com.fatzebra.javalib.loadtest;
+
+import au.com.fatzebra.javalib.net.Operation;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latencies and counters of a {@link LoadTest}, per operation
+ */
+public final class LoadTestResult {
+    private final Map<Operation, OperationResult> operations = new EnumMap<Operation, OperationResult>(Operation.class);
+    private final double targetRate;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile int peakInFlight;
+
+    LoadTestResult(double targetRate) {
+        this.targetRate = targetRate;
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationResult());
+        }
+    }
+
+    void start(long nanos) {
+        this.startedAt = nanos;
+    }
+
+    void finish(long nanos) {
+        this.finishedAt = nanos;
+    }
+
+    void setPeakInFlight(int value) {
+        this.peakInFlight = value;
+    }
+
+    /**
+     * Gets the results for one operation
+     * @param operation the operation
+     * @return the results
+     */
+    public OperationResult get(Operation operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * Gets the rate requests were scheduled at
+     * @return requests per second
+     */
+    public double getTargetRate() {
+        return this.targetRate;
+    }
+
+    /**
+     * Gets the rate requests were sent at after the warm up. Below the target rate, the client could not keep up.
+     * @return requests per second
+     */
+    public double getAchievedRate() {
+        long sent = 0;
+        for (OperationResult result : operations.values()) {
+            sent += result.getCount() + result.getSkipped();
+        }
+        double seconds = getDuration(TimeUnit.NANOSECONDS) / 1e9;
+        return seconds > 0 ? sent / seconds : 0;
+    }
+
+    /**
+     * Gets the time measured, after the warm up
+     * @param unit the unit of the result
+     * @return the duration
+     */
+    public long getDuration(TimeUnit unit) {
+        return unit.convert(Math.max(0, finishedAt - startedAt), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the most requests in flight at once after the warm up, including any queued in the client for a
+     * connection or an executor thread. By Little's law this is about the rate times the response time.
+     * @return the number of requests
+     */
+    public int getPeakInFlight() {
+        return this.peakInFlight;
+    }
+
+    /**
+     * Prints a summary table followed by the percentile distribution of each operation's response times
+     * @param out the stream to print to
+     */
+    public void print(PrintStream out) {
+        out.printf(Locale.ROOT, "Target %.1f requests/s, sent %.1f/s over %.1fs, peak %d in flight%n%n",
+                targetRate, getAchievedRate(), getDuration(TimeUnit.MILLISECONDS) / 1000.0, peakInFlight);
+        out.printf(Locale.ROOT, "%-10s %8s %8s %8s %8s %9s %9s %9s %9s %9s %9s%n", "Operation", "Count", "Errors",
+                "Declined", "Skipped", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99");
+        for (Map.Entry<Operation, OperationResult> entry : operations.entrySet()) {
+            OperationResult result = entry.getValue();
+            if (result.getCount() + result.getSkipped() == 0) {
+                continue;
+            }
+            LatencyHistogram latencies = result.getResponseTimes();
+            out.printf(Locale.ROOT, "%-10s %8d %8d %8d %8d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n", entry.getKey(),
+                    result.getCount(), result.getErrors(), result.getDeclined(), result.getSkipped(),
+                    millis(latencies.getValueAtPercentile(50, TimeUnit.MICROSECONDS)),
+                    millis(latencies.getValueAtPercentile(90, TimeUnit.MICROSECONDS)),
+                    millis(latencies.getValueAtPercentile(99, TimeUnit.MICROSECONDS)),
+                    millis(latencies.getValueAtPercentile(99.9, TimeUnit.MICROSECONDS)),
+                    millis(latencies.getMax(TimeUnit.MICROSECONDS)),
+                    millis(result.getServiceTimes().getValueAtPercentile(99, TimeUnit.MICROSECONDS)));
+        }
+        for (Map.Entry<Operation, OperationResult> entry : operations.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                out.println();
+                out.println(entry.getKey() + " response time (ms):");
+                entry.getValue().getResponseTimes().outputPercentileDistribution(out);
+            }
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    /**
+     * The latencies and counters of one operation
+     */
+    public static final class OperationResult {
+        final LatencyHistogram responseTimes = new LatencyHistogram();
+        final LatencyHistogram serviceTimes = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder declined = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+
+        OperationResult() {
+        }
+
+        /**
+         * Gets the response times, measured from when each request was due to be sent rather than when it was. Time
+         * spent waiting behind slow requests - for a connection, an executor thread or a slot in the test - is
+         * counted, so the latencies are not understated when the client falls behind (coordinated omission).
+         * @return the histogram
+         */
+        public LatencyHistogram getResponseTimes() {
+            return this.responseTimes;
+        }
+
+        /**
+         * Gets the service times, measured from when each request was handed to the client
+         * @return the histogram
+         */
+        public LatencyHistogram getServiceTimes() {
+            return this.serviceTimes;
+        }
+
+        /**
+         * Gets the number of requests completed, whatever the outcome
+         * @return the number of requests
+         */
+        public long getCount() {
+            return this.responseTimes.getTotalCount();
+        }
+
+        /**
+         * Gets the number of requests which failed with an exception (network or API errors)
+         * @return the number of requests
+         */
+        public long getErrors() {
+            return this.errors.sum();
+        }
+
+        /**
+         * Gets the number of transactions the gateway processed but declined
+         * @return the number of transactions
+         */
+        public long getDeclined() {
+            return this.declined.sum();
+        }
+
+        /**
+         * Gets the number of requests not sent because there was nothing to act on yet, e.g. a capture before any
+         * authorisation had completed
+         * @return the number of requests
+         */
+        public long getSkipped() {
+            return this.skipped.sum();
+        }
+    }
+}
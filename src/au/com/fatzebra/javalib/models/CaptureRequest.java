@@ -1,18 +1,22 @@
 package au.com.fatzebra.javalib.models;
 
-import au.com.fatzebra.javalib.FatZebra;
+import au.com.fatzebra.javalib.FieldSink;
 import au.com.fatzebra.javalib.GatewayContext;
 import au.com.fatzebra.javalib.errors.APIError;
 import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.net.JsonBody;
+import au.com.fatzebra.javalib.net.JsonBodyWriter;
+import au.com.fatzebra.javalib.net.Operation;
 import au.com.fatzebra.javalib.net.Resource;
 import com.google.gson.annotations.Expose;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents a capture request to the gateway
  */
-public class CaptureRequest extends Resource {
+public class CaptureRequest extends Resource implements JsonBody {
     /**
      * The amount of the capture
      */
@@ -28,6 +32,22 @@ public class CaptureRequest extends Resource {
      */
     public boolean successful;
 
+    /**
+     * Writes the request as it is posted to the gateway
+     * @param out the writer
+     */
+    public void writeJson(JsonBodyWriter out) {
+        out.beginObject()
+                .field("amount", this.amount)
+                .endObject();
+    }
+
+    @Override public void writeTo(FieldSink sink) {
+        sink.field("id", this.id);
+        sink.field("amount", this.amount);
+        sink.field("successful", this.successful);
+    }
+
     /**
      * Performs a capture request
      * @param amount the amount of the capture
@@ -38,7 +58,7 @@ public class CaptureRequest extends Resource {
      * @throws APIError
      */
     public static CaptureRequest create(int amount, String transactionId) throws IOException, NetworkError, APIError {
-        return create(amount, transactionId, FatZebra.getContext());
+        return create(amount, transactionId, defaultContext());
     }
 
     /**
@@ -56,11 +76,46 @@ public class CaptureRequest extends Resource {
         request.setAmount(amount);
         request.setTransactionId(transactionId);
 
-        FatZebraResponse<CaptureRequest> response = doRequest(String.format("purchases/%s/capture", transactionId), request, RequestType.POST, CaptureRequest.class, ctx);
+        FatZebraResponse<CaptureRequest> response;
+        try {
+            response = doRequest(Operation.CAPTURE, String.format("purchases/%s/capture", transactionId), request, RequestType.POST, CaptureRequest.class, ctx);
+        } finally {
+            Purchase.invalidate(transactionId, ctx);
+        }
         request.successful = response.result.successful;
         return response.result;
     }
 
+    /**
+     * Performs a capture request without blocking the calling thread
+     * @param amount the amount of the capture
+     * @param transactionId the authorisation transaction ID
+     * @return future CaptureRequest, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<CaptureRequest> createAsync(int amount, String transactionId) {
+        return createAsync(amount, transactionId, defaultContext());
+    }
+
+    /**
+     * Performs a capture request without blocking the calling thread
+     * @param amount the amount of the capture
+     * @param transactionId the authorisation transaction ID
+     * @param ctx the gateway context for authentication
+     * @return future CaptureRequest, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<CaptureRequest> createAsync(int amount, String transactionId, GatewayContext ctx) {
+        final CaptureRequest request = new CaptureRequest();
+        request.setAmount(amount);
+        request.setTransactionId(transactionId);
+
+        return doRequestAsync(Operation.CAPTURE, String.format("purchases/%s/capture", transactionId), request, RequestType.POST, CaptureRequest.class, ctx)
+                .whenComplete((response, error) -> Purchase.invalidate(transactionId, ctx))
+                .thenApply(response -> {
+                    request.successful = response.result.successful;
+                    return response.result;
+                });
+    }
+
     /**
      * Sets the amount of the capture
      * @param value the amount of the capture
@@ -1,7 +1,16 @@
 package au.com.fatzebra.javalib.models;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -10,12 +19,17 @@ import java.util.Map;
  * @param <T> the type (Purchase, Refund etc) of the response
  */
 public class FatZebraResponse<T> {
+    /**
+     * The GSON instance for the response payload, shared as Gson and its type adapters are thread safe
+     */
+    private static final Gson RESULT_GSON = new GsonBuilder().setDateFormat("yyyy-MM-dd").create();
+
     /**
      * The response Code (HTTP status code)
      */
     public int responseCode;
     /**
-     * The response body
+     * The response body - only retained when requested (see GatewayContext.retainResponseBody)
      */
     public String responseBody;
     /**
@@ -52,17 +66,85 @@ public class FatZebraResponse<T> {
     }
 
     /**
-     * Parses the response into the class T provided in clazz
+     * Initialises a new response which will be parsed from the body stream
+     * @param rCode the HTTP response code
+     * @param hdrs the response headers
+     */
+    public FatZebraResponse(int rCode, Map<String, List<String>> hdrs) {
+        this(rCode, null, hdrs);
+    }
+
+    /**
+     * Parses the response body held by this response into the class T provided in clazz
      * @param clazz the class for the receiving object
      */
     public void parseResult(Class<T> clazz) {
-        JsonParser parser = new JsonParser();
-        JsonObject responsePayload = (JsonObject) parser.parse(this.responseBody);
-        JsonElement wrapper = responsePayload.get("response");
-        this.result = new GsonBuilder().setDateFormat("yyyy-MM-dd").create().fromJson(wrapper, clazz);
+        try {
+            parse(new StringReader(this.responseBody), clazz);
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Parses the response straight from the body stream into the class T provided in clazz, in a single pass
+     * @param body the response body stream, which is read to the end of the JSON document but not closed
+     * @param clazz the class for the receiving object
+     * @throws IOException if the body can not be read or is not valid JSON
+     */
+    public void parseResult(InputStream body, Class<T> clazz) throws IOException {
+        parse(new InputStreamReader(body, StandardCharsets.UTF_8), clazz);
+    }
+
+    private void parse(Reader body, Class<T> clazz) throws IOException {
+        JsonReader reader = new JsonReader(body);
+        reader.setLenient(true);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("response".equals(name)) {
+                    this.result = RESULT_GSON.getAdapter(clazz).read(reader);
+                } else if ("successful".equals(name)) {
+                    this.successful = readBoolean(reader);
+                } else if ("test".equals(name)) {
+                    this.test = readBoolean(reader);
+                } else if ("errors".equals(name)) {
+                    this.errors = readErrors(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private static boolean readBoolean(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return false;
+        }
+        return reader.nextBoolean();
+    }
 
-        FatZebraResponse r = new Gson().fromJson(this.responseBody, this.getClass());
-        this.successful = r.successful;
-        this.errors = r.errors;
+    private static List<String> readErrors(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<String> errors = new ArrayList<String>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            JsonToken token = reader.peek();
+            if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+                errors.add(reader.nextString());
+            } else {
+                errors.add(RESULT_GSON.getAdapter(JsonElement.class).read(reader).toString());
+            }
+        }
+        reader.endArray();
+        return errors;
     }
 }
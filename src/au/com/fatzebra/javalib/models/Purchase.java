@@ -1,13 +1,16 @@
 package au.com.fatzebra.javalib.models;
-import au.com.fatzebra.javalib.FatZebra;
+import au.com.fatzebra.javalib.FieldSink;
 import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.ResponseCode;
 import au.com.fatzebra.javalib.errors.APIError;
 import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.net.Operation;
 import au.com.fatzebra.javalib.net.Resource;
 
 import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The Purchase model
@@ -94,6 +97,36 @@ public class Purchase extends Resource {
 
     public Purchase() {}
 
+    /**
+     * Gets the typed acquirer response code for the transaction
+     * @return the response code, or ResponseCode.UNKNOWN if it is missing or not recognised
+     */
+    @Override public ResponseCode getResponseCode() {
+        return ResponseCode.of(this.response_code);
+    }
+
+    @Override public void writeTo(FieldSink sink) {
+        sink.field("id", this.id);
+        sink.field("amount", this.amount);
+        sink.field("decimal_amount", this.decimal_amount);
+        sink.field("captured_total", this.captured_total);
+        sink.field("captured", this.captured);
+        sink.field("authorization", this.authorization);
+        sink.field("card_number", FieldSink.maskCardNumber(this.card_number));
+        sink.field("card_holder", this.card_holder);
+        sink.field("card_expiry", this.card_expiry);
+        sink.field("card_token", this.card_token);
+        sink.field("successful", this.successful);
+        sink.field("message", this.message);
+        sink.field("reference", this.reference);
+        sink.field("currency", this.currency);
+        sink.field("settlement_date", this.settlement_date);
+        sink.field("transaction_date", this.transaction_date);
+        sink.field("response_code", this.response_code);
+        sink.field("rrn", this.rrn);
+        sink.field("cvv_match", this.cvv_match);
+    }
+
     /**
      * Create a purchase with real-time capture
      * @param amount the amount to be charged (as an integer - i.e. $100.50 will be 10050)
@@ -118,7 +151,7 @@ public class Purchase extends Resource {
      * @return Purchase
      */
     public static Purchase create(int amount, HashMap<String, Object> card_data, String reference, String ip, String currency, boolean capture) throws IOException, NetworkError, APIError {
-        return create(amount, card_data, reference, ip, currency, capture, null, FatZebra.getContext());
+        return create(amount, card_data, reference, ip, currency, capture, null, defaultContext());
     }
 
     /**
@@ -133,7 +166,132 @@ public class Purchase extends Resource {
      * @return Purchase
      */
     public static Purchase create(int amount, HashMap<String, Object> card_data, String reference, String ip, String currency, boolean capture, HashMap<String,String> extraParameters, GatewayContext ctx) throws IOException, NetworkError, APIError {
-        // Create the purchase message
+        return create(buildRequest(amount, card_data, reference, ip, currency, capture, extraParameters), ctx);
+    }
+
+    /**
+     * Create a purchase from a prepared request
+     * @param request the purchase request
+     * @param ctx the gateway context (authentication etc)
+     * @return Purchase
+     */
+    public static Purchase create(PurchaseRequest request, GatewayContext ctx) throws IOException, NetworkError, APIError {
+        FatZebraResponse<Purchase> response = doRequest(Operation.PURCHASE, "purchases", request, RequestType.POST, Purchase.class, ctx, reconciler(request, ctx));
+        return cached(response.result, ctx);
+    }
+
+    /**
+     * Create a purchase with real-time capture without blocking the calling thread
+     * @param amount the amount to be charged (as an integer - i.e. $100.50 will be 10050)
+     * @param card_data a HashMap<String,Object> of card data containing the card_expiry, card_number, card_holder, card_security_code
+     * @param reference the order reference, usually an invoice or order number
+     * @param ip the customers IP address
+     * @param currency the currency code for the order (e.g. AUD, USD etc)
+     * @return future Purchase, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<Purchase> createAsync(int amount, HashMap<String, Object> card_data, String reference, String ip, String currency) {
+        return createAsync(amount, card_data, reference, ip, currency, true);
+    }
+
+    /**
+     * Create a purchase with the option of capture or real-time capture without blocking the calling thread
+     * @param amount the amount to be charged (as an integer - i.e. $100.50 will be 10050)
+     * @param card_data a HashMap<String,Object> of card data containing the card_expiry, card_number, card_holder, card_security_code
+     * @param reference the order reference, usually an invoice or order number
+     * @param ip the customers IP address
+     * @param currency the currency code for the order (e.g. AUD, USD etc)
+     * @param capture indicates whether to capture this transaction immediately or not
+     * @return future Purchase, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<Purchase> createAsync(int amount, HashMap<String, Object> card_data, String reference, String ip, String currency, boolean capture) {
+        return createAsync(amount, card_data, reference, ip, currency, capture, null, defaultContext());
+    }
+
+    /**
+     * Create a purchase with the option of capture or real-time capture without blocking the calling thread
+     * @param amount the amount to be charged (as an integer - i.e. $100.50 will be 10050)
+     * @param card_data a HashMap<String,Object> of card data containing the card_expiry, card_number, card_holder, card_security_code
+     * @param reference the order reference, usually an invoice or order number
+     * @param ip the customers IP address
+     * @param currency the currency code for the order (e.g. AUD, USD etc)
+     * @param capture indicates whether to capture this transaction immediately or not
+     * @param ctx the gateway context (authentication etc)
+     * @return future Purchase, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<Purchase> createAsync(int amount, HashMap<String, Object> card_data, String reference, String ip, String currency, boolean capture, HashMap<String,String> extraParameters, GatewayContext ctx) {
+        PurchaseRequest request;
+        try {
+            request = buildRequest(amount, card_data, reference, ip, currency, capture, extraParameters);
+        } catch (APIError ex) {
+            CompletableFuture<Purchase> failed = new CompletableFuture<Purchase>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+        return createAsync(request, ctx);
+    }
+
+    /**
+     * Create a purchase from a prepared request without blocking the calling thread
+     * @param request the purchase request
+     * @param ctx the gateway context (authentication etc)
+     * @return future Purchase, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<Purchase> createAsync(PurchaseRequest request, GatewayContext ctx) {
+        return doRequestAsync(Operation.PURCHASE, "purchases", request, RequestType.POST, Purchase.class, ctx, reconciler(request, ctx))
+                .thenApply(response -> cached(response.result, ctx));
+    }
+
+    /**
+     * Looks up a purchase which may have been processed before its response was lost, by its reference. Only a
+     * purchase for the same amount is accepted as the earlier attempt - anything else means the reference has been
+     * used before and the outcome can not be told.
+     */
+    private static Reconciler<Purchase> reconciler(final PurchaseRequest request, final GatewayContext ctx) {
+        if (request.reference == null || request.reference.isEmpty()) {
+            return null;
+        }
+        return () -> {
+            FatZebraResponse<Purchase> existing;
+            try {
+                existing = doRequest(Operation.FIND, String.format("purchases/%s", request.reference), null, RequestType.GET, Purchase.class, ctx);
+            } catch (APIError ex) {
+                if (ex.getStatus() == 404) {
+                    return null;
+                }
+                throw ex;
+            }
+            if (existing.result == null || existing.result.amount != request.amount) {
+                throw new IOException(String.format("Unable to confirm the outcome of purchase %s - the reference is used by a different purchase", request.reference));
+            }
+            return existing;
+        };
+    }
+
+    /**
+     * Adds a purchase to the context's cache, if it has one
+     */
+    private static Purchase cached(Purchase purchase, GatewayContext ctx) {
+        PurchaseCache cache = ctx.purchaseCache;
+        if (cache != null) {
+            cache.put(purchase);
+        }
+        return purchase;
+    }
+
+    /**
+     * Drops a purchase which has changed from the context's cache, if it has one
+     */
+    static void invalidate(String idOrReference, GatewayContext ctx) {
+        PurchaseCache cache = ctx.purchaseCache;
+        if (cache != null) {
+            cache.invalidate(idOrReference);
+        }
+    }
+
+    /**
+     * Builds the purchase message
+     */
+    private static PurchaseRequest buildRequest(int amount, HashMap<String, Object> card_data, String reference, String ip, String currency, boolean capture, HashMap<String,String> extraParameters) throws APIError {
         PurchaseRequest request = new PurchaseRequest();
         request.setAmount(amount);
         request.setReference(reference);
@@ -144,9 +302,7 @@ public class Purchase extends Resource {
         if (extraParameters != null) {
             request.setExtra(extraParameters);
         }
-
-        FatZebraResponse<Purchase> response = doRequest("purchases", request, RequestType.POST, Purchase.class, ctx);
-        return response.result;
+        return request;
     }
 
     /**
@@ -155,7 +311,7 @@ public class Purchase extends Resource {
      * @return Purchase
      */
     public static Purchase find(String idOrReference) throws IOException, NetworkError, APIError {
-        return find(idOrReference, FatZebra.getContext());
+        return find(idOrReference, defaultContext());
     }
 
     /**
@@ -165,8 +321,52 @@ public class Purchase extends Resource {
      * @return Purchase
      */
     public static Purchase find(String idOrReference, GatewayContext ctx) throws IOException, NetworkError, APIError {
-        FatZebraResponse<Purchase> response = doRequest(String.format("purchases/%s", idOrReference), null, RequestType.GET, Purchase.class, ctx);
-        return response.result;
+        PurchaseCache cache = ctx.purchaseCache;
+        Purchase purchase = cache == null ? null : cache.get(idOrReference);
+        if (purchase != null) {
+            return purchase;
+        }
+        if (!ctx.coalesceFinds) {
+            return fetch(idOrReference, ctx);
+        }
+        return ctx.getFinds().execute(idOrReference, () -> fetch(idOrReference, ctx));
+    }
+
+    private static Purchase fetch(String idOrReference, GatewayContext ctx) throws IOException, NetworkError, APIError {
+        FatZebraResponse<Purchase> response = doRequest(Operation.FIND, String.format("purchases/%s", idOrReference), null, RequestType.GET, Purchase.class, ctx);
+        return cached(response.result, ctx);
+    }
+
+    /**
+     * Finds a Purchase by the Purchase ID or the merchants reference without blocking the calling thread
+     * @param idOrReference the Fat Zebra ID or Reference for the record
+     * @return future Purchase, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<Purchase> findAsync(String idOrReference) {
+        return findAsync(idOrReference, defaultContext());
+    }
+
+    /**
+     * Finds a Purchase by the Purchase ID or the merchants reference without blocking the calling thread
+     * @param idOrReference the Fat Zebra ID or Reference for the record
+     * @param ctx the gateway context (authentication etc)
+     * @return future Purchase, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<Purchase> findAsync(String idOrReference, GatewayContext ctx) {
+        PurchaseCache cache = ctx.purchaseCache;
+        Purchase purchase = cache == null ? null : cache.get(idOrReference);
+        if (purchase != null) {
+            return CompletableFuture.completedFuture(purchase);
+        }
+        if (!ctx.coalesceFinds) {
+            return fetchAsync(idOrReference, ctx);
+        }
+        return ctx.getFinds().executeAsync(idOrReference, () -> fetchAsync(idOrReference, ctx));
+    }
+
+    private static CompletableFuture<Purchase> fetchAsync(String idOrReference, GatewayContext ctx) {
+        return doRequestAsync(Operation.FIND, String.format("purchases/%s", idOrReference), null, RequestType.GET, Purchase.class, ctx)
+                .thenApply(response -> cached(response.result, ctx));
     }
 
     /**
@@ -176,7 +376,7 @@ public class Purchase extends Resource {
      * @return boolean indicating outcome
      */
     public boolean refund(int amount, String reference) throws IOException, NetworkError, APIError{
-        return refund(amount, reference, FatZebra.getContext());
+        return refund(amount, reference, defaultContext());
     }
 
     /**
@@ -198,7 +398,7 @@ public class Purchase extends Resource {
      * @return boolean indicating outcome
      */
     public boolean capture(int amount) throws IOException, NetworkError, APIError {
-        return capture(amount, FatZebra.getContext());
+        return capture(amount, defaultContext());
     }
 
     /**
@@ -218,4 +418,8 @@ public class Purchase extends Resource {
 
         return cr.successful;
     }
+
+    @Override public String getReference() {
+        return this.reference;
+    }
 }
@@ -0,0 +1,173 @@
+package au.com.fatzebra.javalib.models;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, in memory cache of purchases for {@link Purchase#find}, indexed by both the Fat Zebra ID and your
+ * reference. Enable it for a context with {@code ctx.purchaseCache = new PurchaseCache(10000, 300000)} or with
+ * FatZebraClient.Builder.purchaseCache.
+ *
+ * Purchases are added as they are created or found, and dropped when they are captured or refunded through the
+ * library, when they pass the TTL, or when the cache is full (least recently used first). Changes made outside the
+ * library (e.g. in the merchant dashboard) are only seen once the entry expires, so keep the TTL short where that
+ * matters.
+ *
+ * The same Purchase instance is returned to every caller which finds it, so treat found purchases as read only.
+ */
+public final class PurchaseCache {
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    // guarded by this
+    private final LinkedHashMap<String, Entry> byId;
+    private final HashMap<String, String> idsByReference = new HashMap<String, String>();
+
+    /**
+     * Initialises an empty cache
+     * @param maxEntries the most purchases held
+     * @param ttl the time (in milliseconds) a purchase is held after it was last created or fetched
+     */
+    public PurchaseCache(int maxEntries, long ttl) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        if (ttl < 1) {
+            throw new IllegalArgumentException("ttl must be at least 1ms");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+        this.byId = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
+
+    /**
+     * Gets a cached purchase
+     * @param idOrReference the Fat Zebra ID or your reference
+     * @return the purchase, or null if it is not cached
+     */
+    public synchronized Purchase get(String idOrReference) {
+        if (idOrReference == null) {
+            return null;
+        }
+        Entry entry = byId.get(idOrReference);
+        if (entry == null) {
+            String id = idsByReference.get(idOrReference);
+            entry = id == null ? null : byId.get(id);
+        }
+        if (entry != null && System.nanoTime() - entry.expiresAt >= 0) {
+            remove(entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.purchase;
+    }
+
+    /**
+     * Adds or replaces a purchase. Purchases without an ID are ignored.
+     * @param purchase the purchase
+     */
+    public synchronized void put(Purchase purchase) {
+        if (purchase == null || purchase.id == null) {
+            return;
+        }
+        Entry previous = byId.get(purchase.id);
+        if (previous != null) {
+            remove(previous);
+        }
+        Entry entry = new Entry(purchase, System.nanoTime() + ttlNanos);
+        byId.put(purchase.id, entry);
+        if (purchase.reference != null && !purchase.reference.isEmpty()) {
+            idsByReference.put(purchase.reference, purchase.id);
+        }
+        if (byId.size() > maxEntries) {
+            Iterator<Entry> eldest = byId.values().iterator();
+            Entry evicted = eldest.next();
+            eldest.remove();
+            removeReference(evicted);
+        }
+    }
+
+    /**
+     * Drops a purchase, so the next find goes to the gateway
+     * @param idOrReference the Fat Zebra ID or your reference
+     */
+    public synchronized void invalidate(String idOrReference) {
+        if (idOrReference == null) {
+            return;
+        }
+        Entry entry = byId.get(idOrReference);
+        if (entry == null) {
+            String id = idsByReference.get(idOrReference);
+            entry = id == null ? null : byId.get(id);
+        }
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    /**
+     * Drops every purchase
+     */
+    public synchronized void clear() {
+        byId.clear();
+        idsByReference.clear();
+    }
+
+    /**
+     * Gets the number of purchases held, including any which have expired but not yet been dropped
+     * @return the number of purchases
+     */
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache
+     * @return cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups which had to go to the gateway
+     * @return cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void remove(Entry entry) {
+        byId.remove(entry.purchase.id);
+        removeReference(entry);
+    }
+
+    private void removeReference(Entry entry) {
+        String reference = entry.purchase.reference;
+        if (reference != null && entry.purchase.id.equals(idsByReference.get(reference))) {
+            idsByReference.remove(reference);
+        }
+    }
+
+    @Override public String toString() {
+        return String.format("<PurchaseCache size=%d hits=%d misses=%d>", size(), getHits(), getMisses());
+    }
+
+    private static final class Entry {
+        final Purchase purchase;
+        final long expiresAt;
+
+        Entry(Purchase purchase, long expiresAt) {
+            this.purchase = purchase;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
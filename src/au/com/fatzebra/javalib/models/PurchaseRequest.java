@@ -1,6 +1,10 @@
 package au.com.fatzebra.javalib.models;
 
+import au.com.fatzebra.javalib.FieldAppender;
+import au.com.fatzebra.javalib.FieldSink;
 import au.com.fatzebra.javalib.errors.APIError;
+import au.com.fatzebra.javalib.net.JsonBody;
+import au.com.fatzebra.javalib.net.JsonBodyWriter;
 import com.google.gson.Gson;
 import com.google.gson.annotations.Expose;
 
@@ -11,7 +15,7 @@ import java.util.Iterator;
 /**
  * The purchase request which is sent to the gateway
  */
-public class PurchaseRequest {
+public class PurchaseRequest implements JsonBody {
     private final String[] PERMITTED_EXTRA_KEYS = {
             "xid",
             "cavv",
@@ -156,4 +160,62 @@ public class PurchaseRequest {
         Gson gson = new Gson();
         return gson.toJson(this);
     }
+
+    /**
+     * Writes the fields of the request to a sink, for structured logging. The card number is masked and the
+     * card security code is omitted.
+     *
+     * @param sink the sink receiving the fields
+     */
+    public void writeTo(FieldSink sink) {
+        sink.field("amount", this.amount);
+        sink.field("reference", this.reference);
+        sink.field("card_holder", this.card_holder);
+        sink.field("card_number", FieldSink.maskCardNumber(this.card_number));
+        sink.field("card_expiry", this.card_expiry);
+        sink.field("capture", this.capture);
+        sink.field("currency", this.currency);
+        sink.field("customer_ip", this.customer_ip);
+    }
+
+    /**
+     * Writes the request as it is posted to the gateway
+     *
+     * @param out the writer
+     */
+    public void writeJson(JsonBodyWriter out) {
+        out.beginObject()
+                .field("amount", this.amount)
+                .field("reference", this.reference)
+                .field("card_holder", this.card_holder)
+                .field("card_number", this.card_number)
+                .field("cvv", this.cvv)
+                .field("card_expiry", this.card_expiry)
+                .field("capture", this.capture)
+                .field("currency", this.currency)
+                .field("customer_ip", this.customer_ip)
+                .field("extra", this.extra)
+                .endObject();
+    }
+
+    /**
+     * Renders the request as a compact string with the card number masked and the card security code omitted
+     *
+     * @return request as string
+     */
+    @Override public String toString() {
+        StringBuilder out = new StringBuilder(192);
+        FieldAppender appender = new FieldAppender(out).begin("PurchaseRequest");
+        writeTo(appender);
+        appender.end();
+        return out.toString();
+    }
+
+    /**
+     * Gets the reference for the transaction
+     * @return the reference
+     */
+    public String getReference() {
+        return this.reference;
+    }
 }
@@ -1,13 +1,16 @@
 package au.com.fatzebra.javalib.models;
 
-import au.com.fatzebra.javalib.FatZebra;
+import au.com.fatzebra.javalib.FieldSink;
 import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.ResponseCode;
 import au.com.fatzebra.javalib.errors.APIError;
 import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.net.Operation;
 import au.com.fatzebra.javalib.net.Resource;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents a refund from the Gateway
@@ -62,6 +65,29 @@ public class Refund extends Resource {
      */
     public String response_code;
 
+    /**
+     * Gets the typed acquirer response code for the transaction
+     * @return the response code, or ResponseCode.UNKNOWN if it is missing or not recognised
+     */
+    @Override public ResponseCode getResponseCode() {
+        return ResponseCode.of(this.response_code);
+    }
+
+    @Override public void writeTo(FieldSink sink) {
+        sink.field("id", this.id);
+        sink.field("reference", this.reference);
+        sink.field("amount", this.amount);
+        sink.field("authorization", this.authorization);
+        sink.field("message", this.message);
+        sink.field("card_holder", this.card_holder);
+        sink.field("card_number", FieldSink.maskCardNumber(this.card_number));
+        sink.field("card_expiry", this.card_expiry);
+        sink.field("card_type", this.card_type);
+        sink.field("transaction_date", this.transaction_date);
+        sink.field("successful", this.successful);
+        sink.field("response_code", this.response_code);
+    }
+
     /**
      * Refunds a transaction based on the original transaction ID
      * @param amount the refund amount
@@ -72,7 +98,7 @@ public class Refund extends Resource {
      * @throws APIError
      */
     public static Refund create(int amount, String originalTransactionId) throws IOException, NetworkError, APIError {
-        return create(amount, originalTransactionId, FatZebra.getContext());
+        return create(amount, originalTransactionId, defaultContext());
     }
 
     /**
@@ -101,7 +127,7 @@ public class Refund extends Resource {
      * @throws APIError
      */
     public static Refund create(int amount, String originalTransactionId, String reference) throws IOException, NetworkError, APIError {
-        return create(amount, originalTransactionId, reference, FatZebra.getContext());
+        return create(amount, originalTransactionId, reference, defaultContext());
     }
 
     /**
@@ -116,14 +142,73 @@ public class Refund extends Resource {
      * @throws APIError
      */
     public static Refund create(int amount, String originalTransactionId, String reference, GatewayContext ctx) throws IOException, NetworkError, APIError {
+        try {
+            FatZebraResponse<Refund> response = doRequest(Operation.REFUND, "refunds", buildRequest(amount, originalTransactionId, reference), RequestType.POST, Refund.class, ctx);
+            return response.result;
+        } finally {
+            Purchase.invalidate(originalTransactionId, ctx);
+        }
+    }
+
+    /**
+     * Refunds a transaction based on the original transaction ID without blocking the calling thread
+     * @param amount the refund amount
+     * @param originalTransactionId the original transaction ID
+     * @return future Refund, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<Refund> createAsync(int amount, String originalTransactionId) {
+        return createAsync(amount, originalTransactionId, defaultContext());
+    }
+
+    /**
+     * Refunds a transaction based on the original transaction ID without blocking the calling thread
+     * @param amount the refund amount
+     * @param originalTransactionId the original transaction ID
+     * @param ctx the gateway context for authentication
+     * @return future Refund, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<Refund> createAsync(final int amount, final String originalTransactionId, final GatewayContext ctx) {
+        return Purchase.findAsync(originalTransactionId, ctx)
+                .thenCompose(purchase -> createAsync(amount, originalTransactionId, purchase.reference, ctx));
+    }
+
+    /**
+     * Refunds a transaction based on the original transaction ID with a reference without blocking the calling thread
+     * @param amount the refund amount
+     * @param originalTransactionId the original transaction ID
+     * @param reference the refund reference
+     * @return future Refund, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<Refund> createAsync(int amount, String originalTransactionId, String reference) {
+        return createAsync(amount, originalTransactionId, reference, defaultContext());
+    }
+
+    /**
+     * Refunds a transaction based on the original transaction ID with a reference without blocking the calling thread
+     * @param amount the refund amount
+     * @param originalTransactionId the original transaction ID
+     * @param reference the refund reference
+     * @param ctx the gateway context for authentication
+     * @return future Refund, which completes exceptionally with an IOException, NetworkError or APIError on failure
+     */
+    public static CompletableFuture<Refund> createAsync(int amount, String originalTransactionId, String reference, GatewayContext ctx) {
+        return doRequestAsync(Operation.REFUND, "refunds", buildRequest(amount, originalTransactionId, reference), RequestType.POST, Refund.class, ctx)
+                .whenComplete((response, error) -> Purchase.invalidate(originalTransactionId, ctx))
+                .thenApply(response -> response.result);
+    }
+
+    /**
+     * Builds the refund message
+     */
+    private static RefundRequest buildRequest(int amount, String originalTransactionId, String reference) {
         RefundRequest request = new RefundRequest();
         request.setAmount(amount);
         request.setReference(reference);
         request.setOriginalTransactionId(originalTransactionId);
-
-        FatZebraResponse<Refund> response = doRequest("refunds", request, RequestType.POST, Refund.class, ctx);
-        return response.result;
+        return request;
     }
 
-
+    @Override public String getReference() {
+        return this.reference;
+    }
 }
@@ -1,10 +1,12 @@
 package au.com.fatzebra.javalib.models;
+import au.com.fatzebra.javalib.net.JsonBody;
+import au.com.fatzebra.javalib.net.JsonBodyWriter;
 import com.google.gson.annotations.Expose;
 
 /**
  * The refund request which is sent to the gateway
  */
-public class RefundRequest {
+public class RefundRequest implements JsonBody {
     /**
      * The Original Transaction ID
      */
@@ -41,4 +43,24 @@ public class RefundRequest {
     public void setAmount(int val) {
         this.amount = val;
     }
+
+    /**
+     * Writes the request as it is posted to the gateway
+     * @param out the writer
+     */
+    public void writeJson(JsonBodyWriter out) {
+        out.beginObject()
+                .field("transaction_id", this.transaction_id)
+                .field("reference", this.reference)
+                .field("amount", this.amount)
+                .endObject();
+    }
+
+    /**
+     * Gets the reference for the refund
+     * @return the reference
+     */
+    public String getReference() {
+        return this.reference;
+    }
 }
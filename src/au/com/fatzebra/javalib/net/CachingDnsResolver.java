@@ -0,0 +1,136 @@
+package au.com.fatzebra.javalib.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link DnsResolver} which caches the addresses of another resolver for a bounded time.
+ *
+ * Entries are refreshed in the background once they pass the refresh point, so callers keep using the cached
+ * addresses while the lookup runs. A cache hit is a single ConcurrentHashMap read and takes no locks. Only an
+ * entry which has fully expired (for example because the background refresh kept failing) is resolved on the
+ * calling thread.
+ *
+ * This cache is private to the library and never changes the JVM wide networkaddress.cache.ttl property.
+ */
+public class CachingDnsResolver implements DnsResolver {
+    /**
+     * The default time (in milliseconds) addresses are cached
+     */
+    public static final long DEFAULT_TTL = 30000;
+
+    /**
+     * The largest number of host names cached - the library only talks to a handful of hosts
+     */
+    private static final int MAX_ENTRIES = 64;
+
+    private final DnsResolver delegate;
+    private final long ttlNanos;
+    private final long refreshNanos;
+    private final Executor refreshExecutor;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Initialises a cache over the system resolver with the default TTL
+     */
+    public CachingDnsResolver() {
+        this(DnsResolver.SYSTEM, DEFAULT_TTL);
+    }
+
+    /**
+     * Initialises a cache
+     * @param delegate the resolver performing the lookups
+     * @param ttl the time in milliseconds addresses are cached
+     */
+    public CachingDnsResolver(DnsResolver delegate, long ttl) {
+        this(delegate, ttl, Executors.newSingleThreadExecutor(new DaemonThreadFactory("fatzebra-dns")));
+    }
+
+    /**
+     * Initialises a cache
+     * @param delegate the resolver performing the lookups
+     * @param ttl the time in milliseconds addresses are cached
+     * @param refreshExecutor the executor for background refreshes
+     */
+    public CachingDnsResolver(DnsResolver delegate, long ttl, Executor refreshExecutor) {
+        if (ttl < 1) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+        this.refreshNanos = this.ttlNanos * 3 / 4;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        Entry entry = entries.get(host);
+        long now = System.nanoTime();
+        if (entry != null) {
+            long age = now - entry.resolvedAt;
+            if (age < ttlNanos) {
+                if (age >= refreshNanos) {
+                    scheduleRefresh(host, entry);
+                }
+                return entry.addresses.clone();
+            }
+        }
+        return lookup(host).addresses.clone();
+    }
+
+    /**
+     * Discards every cached entry
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private Entry lookup(String host) throws UnknownHostException {
+        InetAddress[] addresses = delegate.resolve(host);
+        if (addresses == null || addresses.length == 0) {
+            throw new UnknownHostException(host);
+        }
+        Entry entry = new Entry(addresses, System.nanoTime());
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(host)) {
+            entries.clear();
+        }
+        entries.put(host, entry);
+        return entry;
+    }
+
+    private void scheduleRefresh(final String host, Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    lookup(host);
+                } catch (Exception e) {
+                    // keep serving the cached addresses until they expire
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * The cached addresses for a host
+     */
+    private static class Entry {
+        final InetAddress[] addresses;
+        final long resolvedAt;
+        final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        Entry(InetAddress[] addresses, long resolvedAt) {
+            this.addresses = addresses;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+}
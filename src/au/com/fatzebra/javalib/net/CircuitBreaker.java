@@ -0,0 +1,232 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.errors.BulkheadFullError;
+import au.com.fatzebra.javalib.errors.CircuitOpenError;
+import au.com.fatzebra.javalib.errors.NetworkError;
+
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The circuit breaker and bulkhead guarding one endpoint (operation) of a {@link GatewayContext}, as configured by
+ * a {@link CircuitBreakerPolicy}. Obtain it with {@link GatewayContext#getCircuitBreaker(Operation)}.
+ *
+ * While the breaker is closed, checking it is a single volatile read, so it adds nothing measurable to a healthy
+ * request.
+ */
+public final class CircuitBreaker {
+    /**
+     * The state of a breaker
+     */
+    public enum State {
+        /**
+         * Requests are sent as normal
+         */
+        CLOSED,
+        /**
+         * Requests are rejected with a CircuitOpenError
+         */
+        OPEN,
+        /**
+         * A limited number of trial requests are sent to find out if the gateway has recovered
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Notified when a breaker changes state - for example to shed load before requests start failing.
+     *
+     * Called on the thread whose request caused the change, so implementations should be quick and must not block.
+     */
+    public interface Listener {
+        /**
+         * Called when the breaker changes state
+         * @param breaker the breaker
+         * @param from the previous state
+         * @param to the new state
+         */
+        void onStateChange(CircuitBreaker breaker, State from, State to);
+    }
+
+    private final CircuitBreakerPolicy policy;
+    private final String username;
+    private final Operation operation;
+    private final Semaphore bulkhead;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile State state = State.CLOSED;
+    // guarded by this
+    private long openedAt;
+    private int trialsInFlight;
+
+    /**
+     * Initialises a new breaker
+     * @param policy the settings
+     * @param context the context the breaker belongs to
+     * @param operation the operation the breaker guards
+     */
+    public CircuitBreaker(CircuitBreakerPolicy policy, GatewayContext context, Operation operation) {
+        this.policy = policy;
+        this.username = context.username;
+        this.operation = operation;
+        this.bulkhead = policy.getMaxConcurrentCalls() > 0 ? new Semaphore(policy.getMaxConcurrentCalls()) : null;
+    }
+
+    /**
+     * Gets the settings of the breaker
+     * @return the policy
+     */
+    public CircuitBreakerPolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Gets the username of the merchant the breaker belongs to
+     * @return the username
+     */
+    public String getUsername() {
+        return this.username;
+    }
+
+    /**
+     * Gets the operation the breaker guards
+     * @return the operation
+     */
+    public Operation getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Gets the current state. An open breaker reports OPEN until the next request after the open duration moves it
+     * to HALF_OPEN.
+     * @return the state
+     */
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * Gets the number of consecutive failures while closed
+     * @return consecutive failures
+     */
+    public int getConsecutiveFailures() {
+        return this.consecutiveFailures.get();
+    }
+
+    /**
+     * Gets the number of requests in flight through the bulkhead
+     * @return requests in flight, or 0 if the bulkhead is disabled
+     */
+    public int getInFlight() {
+        return bulkhead == null ? 0 : policy.getMaxConcurrentCalls() - bulkhead.availablePermits();
+    }
+
+    /**
+     * Claims permission for a request, which must be followed by exactly one call to {@link #release}
+     * @return true if the request is a trial of a half open breaker
+     * @throws CircuitOpenError if the breaker is open
+     * @throws BulkheadFullError if the concurrent request limit has been reached
+     */
+    boolean acquire() throws NetworkError {
+        boolean trial = state != State.CLOSED && acquireTrial();
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            if (trial) {
+                synchronized (this) {
+                    trialsInFlight--;
+                }
+            }
+            throw new BulkheadFullError(String.format("Too many %s requests in flight (limit %d)",
+                    describe(), policy.getMaxConcurrentCalls()));
+        }
+        return trial;
+    }
+
+    /**
+     * Records the outcome of a request
+     * @param trial the value returned by acquire
+     * @param healthy false if the request failed in a way which suggests the gateway is unhealthy
+     */
+    void release(boolean trial, boolean healthy) {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+        if (trial) {
+            synchronized (this) {
+                trialsInFlight--;
+                if (state == State.HALF_OPEN) {
+                    if (healthy) {
+                        consecutiveFailures.set(0);
+                        transition(State.CLOSED);
+                    } else {
+                        open();
+                    }
+                }
+            }
+        } else if (healthy) {
+            // avoid writing the shared counter on every success
+            if (consecutiveFailures.get() != 0) {
+                consecutiveFailures.set(0);
+            }
+        } else if (policy.getFailureThreshold() > 0 && consecutiveFailures.incrementAndGet() >= policy.getFailureThreshold()) {
+            synchronized (this) {
+                if (state == State.CLOSED) {
+                    open();
+                }
+            }
+        }
+    }
+
+    private synchronized boolean acquireTrial() throws CircuitOpenError {
+        if (state == State.OPEN) {
+            long remaining = openedAt + policy.getOpenDuration() - now();
+            if (remaining > 0) {
+                throw new CircuitOpenError(String.format("The circuit breaker for %s requests is open after repeated failures", describe()), remaining);
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.CLOSED) {
+            return false;
+        }
+        if (trialsInFlight >= policy.getHalfOpenCalls()) {
+            throw new CircuitOpenError(String.format("The circuit breaker for %s requests is waiting on a trial request", describe()), 0);
+        }
+        trialsInFlight++;
+        return true;
+    }
+
+    private void open() {
+        openedAt = now();
+        consecutiveFailures.set(0);
+        transition(State.OPEN);
+    }
+
+    private void transition(State to) {
+        State from = state;
+        if (from == to) {
+            return;
+        }
+        state = to;
+        for (Listener listener : policy.getListeners()) {
+            try {
+                listener.onStateChange(this, from, to);
+            } catch (RuntimeException e) {
+                // a faulty listener must not break the request which triggered the change
+            }
+        }
+    }
+
+    private String describe() {
+        return operation.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    @Override public String toString() {
+        return String.format("<CircuitBreaker operation=%s state=%s failures=%d inFlight=%d>",
+                operation, state, getConsecutiveFailures(), getInFlight());
+    }
+}
@@ -0,0 +1,184 @@
+package au.com.fatzebra.javalib.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The settings for the circuit breakers and bulkheads guarding each endpoint of a {@link au.com.fatzebra.javalib.GatewayContext}.
+ *
+ * After a run of consecutive failures (network errors, timeouts and 5xx responses) the breaker opens and requests
+ * fail straight away with a CircuitOpenError rather than tying up the caller for the full timeout. Once the open
+ * duration has passed a limited number of trial requests are let through - a success closes the breaker again, a
+ * failure re-opens it.
+ *
+ * The bulkhead caps the requests in flight to an endpoint, so a slow gateway can only hold that many caller threads.
+ * Further requests fail with a BulkheadFullError. It is disabled by default.
+ *
+ * <pre>
+ * Resource.setCircuitBreakerPolicy(CircuitBreakerPolicy.builder()
+ *         .failureThreshold(10)
+ *         .openDuration(15000)
+ *         .maxConcurrentCalls(50)
+ *         .listener((breaker, from, to) -&gt; log.warn("{} {} -&gt; {}", breaker.getOperation(), from, to))
+ *         .build());
+ * </pre>
+ */
+public final class CircuitBreakerPolicy {
+    /**
+     * Requests are never rejected
+     */
+    public static final CircuitBreakerPolicy DISABLED = builder().failureThreshold(0).build();
+
+    /**
+     * The default policy: open after 5 consecutive failures for 30 seconds, then let 1 trial request through. No
+     * bulkhead.
+     */
+    public static final CircuitBreakerPolicy DEFAULT = builder().build();
+
+    private final int failureThreshold;
+    private final long openDuration;
+    private final int halfOpenCalls;
+    private final int maxConcurrentCalls;
+    private final List<CircuitBreaker.Listener> listeners;
+
+    private CircuitBreakerPolicy(Builder builder) {
+        this.failureThreshold = builder.failureThreshold;
+        this.openDuration = builder.openDuration;
+        this.halfOpenCalls = builder.halfOpenCalls;
+        this.maxConcurrentCalls = builder.maxConcurrentCalls;
+        this.listeners = Collections.unmodifiableList(new ArrayList<CircuitBreaker.Listener>(builder.listeners));
+    }
+
+    /**
+     * Starts building a policy from the default settings
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the number of consecutive failures which open the breaker
+     * @return the threshold, or 0 if the breaker never opens
+     */
+    public int getFailureThreshold() {
+        return this.failureThreshold;
+    }
+
+    /**
+     * Gets the time the breaker stays open before trial requests are let through
+     * @return time in milliseconds
+     */
+    public long getOpenDuration() {
+        return this.openDuration;
+    }
+
+    /**
+     * Gets the number of trial requests let through at once while the breaker is half open
+     * @return trial requests
+     */
+    public int getHalfOpenCalls() {
+        return this.halfOpenCalls;
+    }
+
+    /**
+     * Gets the maximum number of requests in flight to an endpoint
+     * @return the limit, or 0 for no limit
+     */
+    public int getMaxConcurrentCalls() {
+        return this.maxConcurrentCalls;
+    }
+
+    /**
+     * Gets the listeners notified of breaker state changes
+     * @return the listeners
+     */
+    public List<CircuitBreaker.Listener> getListeners() {
+        return this.listeners;
+    }
+
+    /**
+     * Builds a {@link CircuitBreakerPolicy}
+     */
+    public static final class Builder {
+        private int failureThreshold = 5;
+        private long openDuration = 30000;
+        private int halfOpenCalls = 1;
+        private int maxConcurrentCalls = 0;
+        private final List<CircuitBreaker.Listener> listeners = new ArrayList<CircuitBreaker.Listener>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of consecutive failures which open the breaker (default 5)
+         * @param value the threshold, or 0 to never open
+         * @return this builder
+         */
+        public Builder failureThreshold(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("failureThreshold must not be negative");
+            }
+            this.failureThreshold = value;
+            return this;
+        }
+
+        /**
+         * Sets the time the breaker stays open before trial requests are let through (default 30000ms)
+         * @param value time in milliseconds
+         * @return this builder
+         */
+        public Builder openDuration(long value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("openDuration must not be negative");
+            }
+            this.openDuration = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of trial requests let through at once while the breaker is half open (default 1)
+         * @param value trial requests
+         * @return this builder
+         */
+        public Builder halfOpenCalls(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("halfOpenCalls must be at least 1");
+            }
+            this.halfOpenCalls = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests in flight to an endpoint (default 0, no limit)
+         * @param value the limit, or 0 for no limit
+         * @return this builder
+         */
+        public Builder maxConcurrentCalls(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("maxConcurrentCalls must not be negative");
+            }
+            this.maxConcurrentCalls = value;
+            return this;
+        }
+
+        /**
+         * Adds a listener for breaker state changes
+         * @param listener the listener
+         * @return this builder
+         */
+        public Builder listener(CircuitBreaker.Listener listener) {
+            this.listeners.add(listener);
+            return this;
+        }
+
+        /**
+         * Builds the policy
+         * @return the policy
+         */
+        public CircuitBreakerPolicy build() {
+            return new CircuitBreakerPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package au.com.fatzebra.javalib.net;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a call must complete, covering everything the library does for it - waiting for the
+ * async executor, acquiring a pooled connection, each attempt, the backoff between retries and reading the response.
+ *
+ * A deadline applies to the calls made on the current thread while it is attached:
+ * <pre>
+ * try (Deadline.Scope scope = Deadline.after(3, TimeUnit.SECONDS).attach()) {
+ *     Purchase purchase = Purchase.create(request, ctx);
+ * }
+ * </pre>
+ * Asynchronous calls capture the deadline attached when they are started. When the deadline passes the call fails
+ * with a DeadlineExceededError and any request in flight is abandoned.
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+    private final long expiresAt;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Creates a deadline the given time from now
+     * @param timeout the time allowed
+     * @param unit the unit of the timeout
+     * @return the deadline
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Gets the deadline attached to the current thread
+     * @return the deadline, or null if there is none
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Attaches the deadline to the current thread until the scope is closed. If an earlier deadline is already
+     * attached, that one continues to apply.
+     * @return the scope, to be closed once the calls are complete
+     */
+    public Scope attach() {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(previous != null && previous.expiresAt - this.expiresAt < 0 ? previous : this);
+        return new Scope(previous);
+    }
+
+    /**
+     * Gets the time remaining
+     * @param unit the unit for the result
+     * @return the time remaining, or 0 if the deadline has passed
+     */
+    public long remaining(TimeUnit unit) {
+        return unit.convert(Math.max(0, expiresAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Indicates if the deadline has passed
+     * @return true if the deadline has passed
+     */
+    public boolean isExpired() {
+        return expiresAt - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Shortens a socket timeout so that it ends by the deadline
+     * @param timeout the timeout in milliseconds, where 0 is no timeout
+     * @return the timeout in milliseconds - at least 1, as 0 would mean no timeout
+     */
+    public int cap(int timeout) {
+        // round up, so that a socket timing out at the cap finds the deadline has passed
+        long remaining = (remaining(TimeUnit.NANOSECONDS) + 999999) / 1000000;
+        if (timeout > 0) {
+            remaining = Math.min(remaining, timeout);
+        }
+        return (int) Math.max(1, Math.min(remaining, Integer.MAX_VALUE));
+    }
+
+    @Override public String toString() {
+        return String.format("<Deadline remaining=%dms>", remaining(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Restores the previously attached deadline when closed
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Deadline previous;
+
+        private Scope(Deadline previous) {
+            this.previous = previous;
+        }
+
+        public void close() {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package au.com.fatzebra.javalib.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Resolves gateway host names for the {@link PooledTransport}
+ */
+public interface DnsResolver {
+    /**
+     * Resolves through the JVM (InetAddress), subject to the JVM wide networkaddress.cache.ttl
+     */
+    DnsResolver SYSTEM = InetAddress::getAllByName;
+
+    /**
+     * Resolves a host name
+     * @param host the host name
+     * @return the addresses for the host, in the order they should be tried
+     * @throws UnknownHostException if the host can not be resolved
+     */
+    InetAddress[] resolve(String host) throws UnknownHostException;
+}
@@ -0,0 +1,201 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.FZBase;
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.ResponseCode;
+import au.com.fatzebra.javalib.errors.APIError;
+import au.com.fatzebra.javalib.models.FatZebraResponse;
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import au.com.fatzebra.javalib.models.RefundRequest;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A gateway call as seen by {@link Interceptor}s. It is only created when interceptors are configured.
+ */
+public final class GatewayCall {
+    private final Operation operation;
+    private final String username;
+    private final boolean sandbox;
+    private final String reference;
+    private final List<Interceptor> interceptors;
+    private final long startNanos = System.nanoTime();
+    private Map<String, String> headers;
+    private Map<Object, Object> attributes;
+    private int status;
+    private ResponseCode responseCode = ResponseCode.UNKNOWN;
+
+    private GatewayCall(Operation operation, GatewayContext context, String reference, List<Interceptor> interceptors) {
+        this.operation = operation;
+        this.username = context.username;
+        this.sandbox = context.sandbox;
+        this.reference = reference;
+        this.interceptors = interceptors;
+    }
+
+    /**
+     * Creates a call and runs the beforeSend hooks
+     */
+    static GatewayCall start(Operation operation, GatewayContext context, Object payload, List<Interceptor> interceptors) {
+        String reference = null;
+        if (payload instanceof PurchaseRequest) {
+            reference = ((PurchaseRequest) payload).getReference();
+        } else if (payload instanceof RefundRequest) {
+            reference = ((RefundRequest) payload).getReference();
+        } else if (payload instanceof FZBase) {
+            reference = ((FZBase) payload).getReference();
+        }
+        GatewayCall call = new GatewayCall(operation, context, reference, interceptors);
+        for (Interceptor interceptor : interceptors) {
+            try {
+                interceptor.beforeSend(call);
+            } catch (RuntimeException e) {
+                // a faulty interceptor must not break the request
+            }
+        }
+        return call;
+    }
+
+    /**
+     * Records the outcome and runs the completion hooks
+     */
+    void complete(FatZebraResponse<?> response, Throwable failure) {
+        if (failure == null) {
+            status = response.responseCode;
+            if (response.result instanceof FZBase) {
+                responseCode = ((FZBase) response.result).getResponseCode();
+            }
+        } else if (failure instanceof APIError) {
+            status = ((APIError) failure).getStatus();
+        }
+        for (int i = interceptors.size() - 1; i >= 0; i--) {
+            try {
+                if (failure == null) {
+                    interceptors.get(i).afterReceive(this, response);
+                } else {
+                    interceptors.get(i).onError(this, failure);
+                }
+            } catch (RuntimeException e) {
+                // as above
+            }
+        }
+    }
+
+    /**
+     * Adds the headers set by interceptors to the context's headers
+     */
+    Map<String, String> headers(Map<String, String> base) {
+        if (headers == null) {
+            return base;
+        }
+        Map<String, String> merged = new HashMap<String, String>(base);
+        merged.putAll(headers);
+        return Collections.unmodifiableMap(merged);
+    }
+
+    /**
+     * Gets the operation
+     * @return the operation
+     */
+    public Operation getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Gets the username of the merchant the call is made for
+     * @return the username
+     */
+    public String getUsername() {
+        return this.username;
+    }
+
+    /**
+     * Indicates whether the call goes to the sandbox
+     * @return true for the sandbox
+     */
+    public boolean isSandbox() {
+        return this.sandbox;
+    }
+
+    /**
+     * Gets your reference for the transaction, where the request has one
+     * @return the reference, or null
+     */
+    public String getReference() {
+        return this.reference;
+    }
+
+    /**
+     * Gets the System.nanoTime() at which the call started
+     * @return the start time in nanoseconds
+     */
+    public long getStartNanos() {
+        return this.startNanos;
+    }
+
+    /**
+     * Gets the HTTP status of the final attempt
+     * @return the status, or 0 if the gateway did not respond
+     */
+    public int getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Gets the gateway response code of the transaction
+     * @return the response code, or ResponseCode.UNKNOWN if there is none
+     */
+    public ResponseCode getResponseCode() {
+        return this.responseCode;
+    }
+
+    /**
+     * Adds a header to the request. Only effective from beforeSend.
+     * @param name the header name
+     * @param value the header value
+     */
+    public void setHeader(String name, String value) {
+        if (headers == null) {
+            headers = new HashMap<String, String>(4);
+        }
+        headers.put(name, value);
+    }
+
+    /**
+     * Gets a header added by an interceptor
+     * @param name the header name
+     * @return the value, or null
+     */
+    public String getHeader(String name) {
+        return headers == null ? null : headers.get(name);
+    }
+
+    /**
+     * Stores a value for the duration of the call, such as a span. Use a key private to the interceptor.
+     * @param key the key
+     * @param value the value
+     */
+    public void setAttribute(Object key, Object value) {
+        if (attributes == null) {
+            attributes = new IdentityHashMap<Object, Object>(4);
+        }
+        attributes.put(key, value);
+    }
+
+    /**
+     * Gets a value stored with setAttribute
+     * @param key the key
+     * @return the value, or null
+     */
+    public Object getAttribute(Object key) {
+        return attributes == null ? null : attributes.get(key);
+    }
+
+    @Override public String toString() {
+        return String.format("<GatewayCall operation=%s reference=%s status=%d>", operation, reference, status);
+    }
+}
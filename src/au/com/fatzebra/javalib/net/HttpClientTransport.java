@@ -0,0 +1,368 @@
+package au.com.fatzebra.javalib.net;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Transport} built on the JDK HttpClient of Java 11 and later, which negotiates HTTP/2 with the gateway and
+ * falls back to HTTP/1.1 where it is not offered. Over HTTP/2 concurrent requests are multiplexed as streams on one
+ * connection, so a burst of checkouts shares a single TCP connection and TLS handshake instead of opening one per
+ * request in flight.
+ *
+ * Async requests are sent with the HttpClient's own non-blocking I/O, so they do not hold an executor thread while
+ * waiting for the gateway.
+ *
+ * The library is built for Java 8, so the HttpClient API is found by reflection; {@link #isSupported()} says whether
+ * it was. HttpClient has no per request connect timeout, so the connect timeout is set for the transport, and each
+ * request is limited to its connect and read timeouts together, shortened to its deadline.
+ */
+public class HttpClientTransport implements Transport {
+    /**
+     * The default connect timeout in milliseconds, matching the default Timeouts
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 60000;
+
+    /**
+     * Headers set by HttpClient itself, which it refuses to take from the caller
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<String>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade"));
+
+    private static final Method NEW_CLIENT_BUILDER;
+    private static final Method CLIENT_VERSION;
+    private static final Method CLIENT_CONNECT_TIMEOUT;
+    private static final Method CLIENT_EXECUTOR;
+    private static final Method CLIENT_SSL_CONTEXT;
+    private static final Method CLIENT_BUILD;
+    private static final Object HTTP_2;
+    private static final Method NEW_REQUEST_BUILDER;
+    private static final Method REQUEST_TIMEOUT;
+    private static final Method REQUEST_HEADER;
+    private static final Method REQUEST_METHOD;
+    private static final Method REQUEST_BUILD;
+    private static final Method BODY_OF_BYTE_ARRAY;
+    private static final Method NO_BODY;
+    private static final Object BYTE_ARRAY_HANDLER;
+    private static final Method SEND;
+    private static final Method SEND_ASYNC;
+    private static final Method STATUS_CODE;
+    private static final Method RESPONSE_HEADERS;
+    private static final Method RESPONSE_BODY;
+    private static final Method RESPONSE_VERSION;
+    private static final Method HEADERS_MAP;
+    private static final Method CLOSE;
+
+    static {
+        Method[] methods = new Method[20];
+        Object http2 = null;
+        Object byteArrayHandler = null;
+        Method close = null;
+        try {
+            Class<?> client = Class.forName("java.net.http.HttpClient");
+            Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+            Class<?> version = Class.forName("java.net.http.HttpClient$Version");
+            Class<?> request = Class.forName("java.net.http.HttpRequest");
+            Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+            Class<?> publishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+            Class<?> publisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+            Class<?> response = Class.forName("java.net.http.HttpResponse");
+            Class<?> handlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+            Class<?> handler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+            Class<?> headers = Class.forName("java.net.http.HttpHeaders");
+            methods[0] = client.getMethod("newBuilder");
+            methods[1] = clientBuilder.getMethod("version", version);
+            methods[2] = clientBuilder.getMethod("connectTimeout", Duration.class);
+            methods[3] = clientBuilder.getMethod("executor", Executor.class);
+            methods[4] = clientBuilder.getMethod("build");
+            methods[5] = request.getMethod("newBuilder", java.net.URI.class);
+            methods[6] = requestBuilder.getMethod("timeout", Duration.class);
+            methods[7] = requestBuilder.getMethod("header", String.class, String.class);
+            methods[8] = requestBuilder.getMethod("method", String.class, publisher);
+            methods[9] = requestBuilder.getMethod("build");
+            methods[10] = publishers.getMethod("ofByteArray", byte[].class);
+            methods[11] = publishers.getMethod("noBody");
+            methods[12] = client.getMethod("send", request, handler);
+            methods[13] = client.getMethod("sendAsync", request, handler);
+            methods[14] = response.getMethod("statusCode");
+            methods[15] = response.getMethod("headers");
+            methods[16] = response.getMethod("body");
+            methods[17] = response.getMethod("version");
+            methods[18] = headers.getMethod("map");
+            methods[19] = clientBuilder.getMethod("sslContext", SSLContext.class);
+            http2 = version.getField("HTTP_2").get(null);
+            byteArrayHandler = handlers.getMethod("ofByteArray").invoke(null);
+            try {
+                // HttpClient is AutoCloseable from Java 21, and before that is closed when it is garbage collected
+                close = client.getMethod("close");
+            } catch (NoSuchMethodException e) {
+                close = null;
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            methods = new Method[20];
+        }
+        NEW_CLIENT_BUILDER = methods[0];
+        CLIENT_VERSION = methods[1];
+        CLIENT_CONNECT_TIMEOUT = methods[2];
+        CLIENT_EXECUTOR = methods[3];
+        CLIENT_SSL_CONTEXT = methods[19];
+        CLIENT_BUILD = methods[4];
+        NEW_REQUEST_BUILDER = methods[5];
+        REQUEST_TIMEOUT = methods[6];
+        REQUEST_HEADER = methods[7];
+        REQUEST_METHOD = methods[8];
+        REQUEST_BUILD = methods[9];
+        BODY_OF_BYTE_ARRAY = methods[10];
+        NO_BODY = methods[11];
+        SEND = methods[12];
+        SEND_ASYNC = methods[13];
+        STATUS_CODE = methods[14];
+        RESPONSE_HEADERS = methods[15];
+        RESPONSE_BODY = methods[16];
+        RESPONSE_VERSION = methods[17];
+        HEADERS_MAP = methods[18];
+        HTTP_2 = http2;
+        BYTE_ARRAY_HANDLER = byteArrayHandler;
+        CLOSE = NEW_CLIENT_BUILDER != null ? close : null;
+    }
+
+    private final Object client;
+    private final AtomicLong http2Responses = new AtomicLong();
+    private final AtomicLong http1Responses = new AtomicLong();
+
+    /**
+     * Initialises a transport with the default connect timeout, whose HttpClient runs on its own executor
+     * @throws UnsupportedOperationException before Java 11
+     */
+    public HttpClientTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, null);
+    }
+
+    /**
+     * Initialises a transport
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param executor the executor for the HttpClient's async work, or null for the HttpClient's own
+     * @throws UnsupportedOperationException before Java 11
+     */
+    public HttpClientTransport(int connectTimeout, Executor executor) {
+        this(connectTimeout, executor, null);
+    }
+
+    /**
+     * Initialises a transport
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param executor the executor for the HttpClient's async work, or null for the HttpClient's own
+     * @param sslContext the TLS context, or null for the default
+     * @throws UnsupportedOperationException before Java 11
+     */
+    public HttpClientTransport(int connectTimeout, Executor executor, SSLContext sslContext) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("The HttpClient transport needs Java 11 or later");
+        }
+        if (connectTimeout < 1) {
+            throw new IllegalArgumentException("connectTimeout must be positive");
+        }
+        try {
+            Object builder = NEW_CLIENT_BUILDER.invoke(null);
+            CLIENT_VERSION.invoke(builder, HTTP_2);
+            CLIENT_CONNECT_TIMEOUT.invoke(builder, Duration.ofMillis(connectTimeout));
+            if (executor != null) {
+                CLIENT_EXECUTOR.invoke(builder, executor);
+            }
+            if (sslContext != null) {
+                CLIENT_SSL_CONTEXT.invoke(builder, sslContext);
+            }
+            this.client = CLIENT_BUILD.invoke(builder);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("The HttpClient could not be created", e);
+        }
+    }
+
+    /**
+     * Checks whether this JVM has the HttpClient
+     * @return true on Java 11 and later
+     */
+    public static boolean isSupported() {
+        return NEW_CLIENT_BUILDER != null;
+    }
+
+    /**
+     * Gets the number of responses received over HTTP/2
+     * @return the number of responses
+     */
+    public long getHttp2Responses() {
+        return this.http2Responses.get();
+    }
+
+    /**
+     * Gets the number of responses received over HTTP/1.1, where the gateway did not negotiate HTTP/2
+     * @return the number of responses
+     */
+    public long getHttp1Responses() {
+        return this.http1Responses.get();
+    }
+
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        Metrics metrics = request.getMetrics();
+        long started = metrics.isEnabled() ? System.nanoTime() : 0;
+        Object response;
+        try {
+            response = SEND.invoke(client, buildRequest(request), BYTE_ARRAY_HANDLER);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                InterruptedIOException failure = new InterruptedIOException("Interrupted waiting for the gateway");
+                failure.initCause(cause);
+                throw failure;
+            }
+            throw failure(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        recordFirstByte(request, started);
+        return toResponse(response);
+    }
+
+    @Override public CompletableFuture<TransportResponse> executeAsync(final TransportRequest request, Executor executor) {
+        final long started = request.getMetrics().isEnabled() ? System.nanoTime() : 0;
+        CompletableFuture<?> exchange;
+        try {
+            exchange = (CompletableFuture<?>) SEND_ASYNC.invoke(client, buildRequest(request), BYTE_ARRAY_HANDLER);
+        } catch (IOException e) {
+            CompletableFuture<TransportResponse> failed = new CompletableFuture<TransportResponse>();
+            failed.completeExceptionally(e);
+            return failed;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+        final CompletableFuture<TransportResponse> future = new CompletableFuture<TransportResponse>();
+        exchange.whenComplete((response, error) -> {
+            try {
+                if (error != null) {
+                    throw failure(error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error);
+                }
+                recordFirstByte(request, started);
+                future.complete(toResponse(response));
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    public void close() throws IOException {
+        if (CLOSE != null) {
+            try {
+                CLOSE.invoke(client);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IOException("The HttpClient could not be closed", e);
+            }
+        }
+    }
+
+    private Object buildRequest(TransportRequest request) throws IOException {
+        try {
+            Object builder = NEW_REQUEST_BUILDER.invoke(null, request.getUrl().toURI());
+            // HttpClient times the whole exchange, from connecting until the response headers arrive
+            long timeout = (long) request.getEffectiveConnectTimeout() + request.getEffectiveReadTimeout();
+            if (request.getDeadline() != null) {
+                timeout = request.getDeadline().cap((int) Math.min(timeout, Integer.MAX_VALUE));
+            }
+            REQUEST_TIMEOUT.invoke(builder, Duration.ofMillis(timeout));
+            if (request.getHeaders() != null) {
+                for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                    if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                        REQUEST_HEADER.invoke(builder, header.getKey(), header.getValue());
+                    }
+                }
+            }
+            byte[] body = request.getBody();
+            if (body != null && request.getContentType() != null) {
+                REQUEST_HEADER.invoke(builder, "Content-Type", request.getContentType());
+            }
+            Object publisher = body != null ? BODY_OF_BYTE_ARRAY.invoke(null, (Object) body) : NO_BODY.invoke(null);
+            REQUEST_METHOD.invoke(builder, request.getMethod(), publisher);
+            return REQUEST_BUILD.invoke(builder);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid gateway URL: " + request.getUrl(), e);
+        } catch (InvocationTargetException e) {
+            // an invalid header or method, which would fail every request
+            throw new IllegalArgumentException(e.getCause().getMessage(), e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private TransportResponse toResponse(Object response) throws IOException {
+        try {
+            if (HTTP_2.equals(RESPONSE_VERSION.invoke(response))) {
+                http2Responses.incrementAndGet();
+            } else {
+                http1Responses.incrementAndGet();
+            }
+            int status = (Integer) STATUS_CODE.invoke(response);
+            Map<String, List<String>> headers = (Map<String, List<String>>) HEADERS_MAP.invoke(RESPONSE_HEADERS.invoke(response));
+            byte[] body = (byte[]) RESPONSE_BODY.invoke(response);
+            return new TransportResponse(status, headers == null ? Collections.<String, List<String>>emptyMap() : headers,
+                    new ByteArrayInputStream(body == null ? new byte[0] : body));
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IOException("The response could not be read", e);
+        }
+    }
+
+    private static void recordFirstByte(TransportRequest request, long started) {
+        Metrics metrics = request.getMetrics();
+        if (metrics.isEnabled()) {
+            // the body is read with the headers, so it is included here along with connecting
+            metrics.recordPhase(request.getOperation(), Metrics.Phase.TIME_TO_FIRST_BYTE, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Maps the HttpClient timeouts onto the exceptions raised by the other transports, so retries and errors treat
+     * them the same way
+     */
+    private static IOException failure(Throwable cause) {
+        if (cause instanceof IOException) {
+            String name = cause.getClass().getName();
+            IOException failure;
+            if ("java.net.http.HttpConnectTimeoutException".equals(name)) {
+                failure = new ConnectException(cause.getMessage());
+            } else if ("java.net.http.HttpTimeoutException".equals(name)) {
+                failure = new SocketTimeoutException(cause.getMessage());
+            } else {
+                return (IOException) cause;
+            }
+            failure.initCause(cause);
+            return failure;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+}
@@ -0,0 +1,378 @@
+package au.com.fatzebra.javalib.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HTTP/1.1 message framing used by the {@link PooledTransport}
+ */
+final class HttpMessages {
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int MAX_HEADERS = 256;
+
+    private HttpMessages() {
+    }
+
+    /**
+     * Reads a CRLF (or LF) terminated line
+     * @param in the stream to read from
+     * @return the line without the terminator, or null if the stream ended before any data was read
+     * @throws IOException
+     */
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new ProtocolException("Response line exceeds " + MAX_LINE_LENGTH + " bytes");
+            }
+            line.append((char) b);
+        }
+        if (line.length() == 0) {
+            return null;
+        }
+        throw new EOFException("Connection closed in the middle of a response line");
+    }
+
+    /**
+     * Parses the status code from a status line such as "HTTP/1.1 200 OK"
+     * @param statusLine the status line
+     * @return the status code
+     * @throws ProtocolException if the line is not a valid status line
+     */
+    static int parseStatus(String statusLine) throws ProtocolException {
+        if (statusLine.startsWith("HTTP/") && statusLine.length() >= 12 && statusLine.charAt(8) == ' ') {
+            int status = 0;
+            for (int i = 9; i < 12; i++) {
+                char c = statusLine.charAt(i);
+                if (c < '0' || c > '9') {
+                    throw new ProtocolException("Invalid status line: " + statusLine);
+                }
+                status = status * 10 + (c - '0');
+            }
+            return status;
+        }
+        throw new ProtocolException("Invalid status line: " + statusLine);
+    }
+
+    /**
+     * Reads the header block up to and including the blank line which terminates it
+     * @param in the stream to read from
+     * @return the headers keyed case insensitively
+     * @throws IOException
+     */
+    static Map<String, List<String>> readHeaders(InputStream in) throws IOException {
+        Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        int count = 0;
+        while ((line = readLine(in)) != null && line.length() > 0) {
+            if (++count > MAX_HEADERS) {
+                throw new ProtocolException("Too many response headers");
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new ProtocolException("Invalid response header: " + line);
+            }
+            String name = line.substring(0, colon).trim();
+            List<String> values = headers.get(name);
+            if (values == null) {
+                values = new ArrayList<String>(1);
+                headers.put(name, values);
+            }
+            values.add(line.substring(colon + 1).trim());
+        }
+        if (line == null) {
+            throw new EOFException("Connection closed in the middle of the response headers");
+        }
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Gets the first value of a header
+     * @param headers the headers
+     * @param name the header name
+     * @return the value or null
+     */
+    static String firstHeader(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * A response body which knows whether it has been read to its end
+     */
+    abstract static class Body extends InputStream {
+        /**
+         * Indicates if the whole body has been consumed, leaving the connection ready for the next response
+         * @return true once the body has been fully read
+         */
+        abstract boolean isComplete();
+    }
+
+    /**
+     * A body delimited by a Content-Length header
+     */
+    static class FixedLengthBody extends Body {
+        private final InputStream in;
+        private long remaining;
+
+        FixedLengthBody(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Connection closed before the response body was complete");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read == -1) {
+                throw new EOFException("Connection closed before the response body was complete");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        boolean isComplete() {
+            return remaining == 0;
+        }
+    }
+
+    /**
+     * A body sent with chunked transfer encoding
+     */
+    static class ChunkedBody extends Body {
+        private final InputStream in;
+        private long chunkRemaining = 0;
+        private boolean complete = false;
+
+        ChunkedBody(InputStream in) {
+            this.in = in;
+        }
+
+        @Override public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Connection closed in the middle of a chunk");
+            }
+            chunkRemaining--;
+            return b;
+        }
+
+        @Override public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, chunkRemaining));
+            if (read == -1) {
+                throw new EOFException("Connection closed in the middle of a chunk");
+            }
+            chunkRemaining -= read;
+            return read;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (complete) {
+                return false;
+            }
+            if (chunkRemaining > 0) {
+                return true;
+            }
+            String sizeLine = readLine(in);
+            // Every chunk after the first is preceded by the CRLF which terminated the previous one
+            if (sizeLine != null && sizeLine.length() == 0) {
+                sizeLine = readLine(in);
+            }
+            if (sizeLine == null) {
+                throw new EOFException("Connection closed before the final chunk");
+            }
+            int extension = sizeLine.indexOf(';');
+            String size = (extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim();
+            try {
+                chunkRemaining = Long.parseLong(size, 16);
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Invalid chunk size: " + sizeLine);
+            }
+            if (chunkRemaining == 0) {
+                readHeaders(in); // trailers
+                complete = true;
+                return false;
+            }
+            return true;
+        }
+
+        boolean isComplete() {
+            return complete;
+        }
+    }
+
+    /**
+     * A body which runs until the server closes the connection
+     */
+    static class UntilCloseBody extends Body {
+        private final InputStream in;
+
+        UntilCloseBody(InputStream in) {
+            this.in = in;
+        }
+
+        @Override public int read() throws IOException {
+            return in.read();
+        }
+
+        @Override public int read(byte[] buffer, int offset, int length) throws IOException {
+            return in.read(buffer, offset, length);
+        }
+
+        boolean isComplete() {
+            return false;
+        }
+    }
+
+    /**
+     * A buffered input stream without BufferedInputStream's locking. A connection is used by one thread at a time,
+     * so the lock only costs time, and where the JDK implements it with synchronized it pins a virtual thread to its
+     * carrier for as long as the socket read blocks.
+     */
+    static final class ConnectionInputStream extends InputStream {
+        private final InputStream in;
+        private final byte[] buffer;
+        private int position;
+        private int limit;
+
+        ConnectionInputStream(InputStream in, int size) {
+            this.in = in;
+            this.buffer = new byte[size];
+        }
+
+        @Override public int read() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        @Override public int read(byte[] target, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == limit) {
+                if (length >= buffer.length) {
+                    // nothing buffered, so read large requests straight into the caller's array
+                    return in.read(target, offset, length);
+                }
+                if (!fill()) {
+                    return -1;
+                }
+            }
+            int count = Math.min(length, limit - position);
+            System.arraycopy(buffer, position, target, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override public int available() throws IOException {
+            return limit - position + in.available();
+        }
+
+        @Override public void close() throws IOException {
+            in.close();
+        }
+
+        private boolean fill() throws IOException {
+            int read = in.read(buffer, 0, buffer.length);
+            position = 0;
+            limit = Math.max(0, read);
+            return read > 0;
+        }
+    }
+
+    /**
+     * A buffered output stream without BufferedOutputStream's locking, for the same reasons as
+     * {@link ConnectionInputStream}
+     */
+    static final class ConnectionOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer;
+        private int count;
+
+        ConnectionOutputStream(OutputStream out, int size) {
+            this.out = out;
+            this.buffer = new byte[size];
+        }
+
+        @Override public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override public void write(byte[] source, int offset, int length) throws IOException {
+            if (length >= buffer.length) {
+                flushBuffer();
+                out.write(source, offset, length);
+                return;
+            }
+            if (length > buffer.length - count) {
+                flushBuffer();
+            }
+            System.arraycopy(source, offset, buffer, count, length);
+            count += length;
+        }
+
+        @Override public void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        @Override public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if (count > 0) {
+                out.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+    }
+}
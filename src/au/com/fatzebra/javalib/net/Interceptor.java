@@ -0,0 +1,36 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.models.FatZebraResponse;
+
+/**
+ * Hooks run around every gateway call, for tracing, auditing or adding headers. Each hook runs once per call, however
+ * many attempts the retry policy makes, and every method has an empty default.
+ *
+ * Hooks run on the thread making the request - for an async call, beforeSend runs on the caller's thread and the
+ * completion hooks on the thread which completes the call. A hook which throws is ignored, so it can not break the
+ * request. Interceptors run in the order they were added, and the completion hooks in reverse order.
+ */
+public interface Interceptor {
+    /**
+     * Called before the request is sent. Headers added to the call are sent with every attempt.
+     * @param call the call
+     */
+    default void beforeSend(GatewayCall call) {
+    }
+
+    /**
+     * Called once the gateway has responded successfully - including declined transactions
+     * @param call the call, with its status and response code set
+     * @param response the response
+     */
+    default void afterReceive(GatewayCall call, FatZebraResponse<?> response) {
+    }
+
+    /**
+     * Called when the call fails, with the exception raised to the caller
+     * @param call the call, with its status set if the gateway responded
+     * @param error the APIError, NetworkError or other exception
+     */
+    default void onError(GatewayCall call, Throwable error) {
+    }
+}
@@ -0,0 +1,15 @@
+package au.com.fatzebra.javalib.net;
+
+/**
+ * A request payload which writes its own JSON, so it can be posted without Gson's reflection or an intermediate
+ * string. Payloads which do not implement it are serialised with {@link Resource#GSON}.
+ *
+ * Implementations write the same fields, in the same order, as Gson would for their exposed fields.
+ */
+public interface JsonBody {
+    /**
+     * Writes the payload as a JSON object
+     * @param out the writer
+     */
+    void writeJson(JsonBodyWriter out);
+}
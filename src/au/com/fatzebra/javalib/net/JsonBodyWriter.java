@@ -0,0 +1,279 @@
+package au.com.fatzebra.javalib.net;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Writes a {@link JsonBody} as UTF-8 JSON straight into a byte buffer which each thread reuses, so the only
+ * allocation per request is the body itself.
+ *
+ * Strings are escaped as Gson escapes them (including its HTML-safe escapes), and null fields are left out as Gson
+ * leaves them out, so the bytes are the same as {@code GSON.toJson(payload).getBytes(CHARSET)}.
+ */
+public final class JsonBodyWriter {
+    /**
+     * Buffers which grew beyond this are dropped after use rather than held by the thread
+     */
+    static final int MAX_RETAINED = 16 * 1024;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private static final ThreadLocal<JsonBodyWriter> WRITERS = new ThreadLocal<JsonBodyWriter>() {
+        @Override protected JsonBodyWriter initialValue() {
+            return new JsonBodyWriter();
+        }
+    };
+
+    private byte[] buffer = new byte[512];
+    private int length;
+    private boolean comma;
+    private boolean inUse;
+
+    private JsonBodyWriter() {
+    }
+
+    /**
+     * Serialises a payload
+     * @param body the payload
+     * @return the UTF-8 JSON
+     */
+    public static byte[] toBytes(JsonBody body) {
+        JsonBodyWriter writer = WRITERS.get();
+        if (writer.inUse) {
+            // a payload serialising another payload from writeJson
+            writer = new JsonBodyWriter();
+        }
+        writer.inUse = true;
+        try {
+            writer.length = 0;
+            writer.comma = false;
+            body.writeJson(writer);
+            return Arrays.copyOf(writer.buffer, writer.length);
+        } finally {
+            writer.inUse = false;
+            if (writer.buffer.length > MAX_RETAINED) {
+                writer.buffer = new byte[512];
+            }
+        }
+    }
+
+    /**
+     * Opens an object
+     * @return this writer
+     */
+    public JsonBodyWriter beginObject() {
+        separate();
+        write('{');
+        comma = false;
+        return this;
+    }
+
+    /**
+     * Closes an object
+     * @return this writer
+     */
+    public JsonBodyWriter endObject() {
+        write('}');
+        comma = true;
+        return this;
+    }
+
+    /**
+     * Writes a string field, or nothing if the value is null
+     * @param name the field name
+     * @param value the value
+     * @return this writer
+     */
+    public JsonBodyWriter field(String name, String value) {
+        if (value != null) {
+            name(name);
+            string(value);
+            comma = true;
+        }
+        return this;
+    }
+
+    /**
+     * Writes an integer field
+     * @param name the field name
+     * @param value the value
+     * @return this writer
+     */
+    public JsonBodyWriter field(String name, long value) {
+        name(name);
+        number(value);
+        comma = true;
+        return this;
+    }
+
+    /**
+     * Writes a boolean field
+     * @param name the field name
+     * @param value the value
+     * @return this writer
+     */
+    public JsonBodyWriter field(String name, boolean value) {
+        name(name);
+        if (value) {
+            ensure(4);
+            buffer[length++] = 't';
+            buffer[length++] = 'r';
+            buffer[length++] = 'u';
+            buffer[length++] = 'e';
+        } else {
+            ensure(5);
+            buffer[length++] = 'f';
+            buffer[length++] = 'a';
+            buffer[length++] = 'l';
+            buffer[length++] = 's';
+            buffer[length++] = 'e';
+        }
+        comma = true;
+        return this;
+    }
+
+    /**
+     * Writes a map of strings as an object field, or nothing if the map is null. Entries with null values are left
+     * out.
+     * @param name the field name
+     * @param value the map
+     * @return this writer
+     */
+    public JsonBodyWriter field(String name, Map<String, String> value) {
+        if (value != null) {
+            name(name);
+            comma = false;
+            write('{');
+            for (Map.Entry<String, String> entry : value.entrySet()) {
+                field(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            endObject();
+        }
+        return this;
+    }
+
+    private void name(String name) {
+        separate();
+        string(name);
+        write(':');
+    }
+
+    private void separate() {
+        if (comma) {
+            write(',');
+        }
+    }
+
+    private void string(String value) {
+        int count = value.length();
+        // most values are short ASCII, which needs no more than this
+        ensure(count + 2);
+        buffer[length++] = '"';
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c < 0x20 || c == '"' || c == '\\' || c == '<' || c == '>' || c == '&' || c == '=' || c == '\'') {
+                    escape(c);
+                } else {
+                    ensure(1);
+                    buffer[length++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[length++] = (byte) (0xc0 | c >> 6);
+                buffer[length++] = (byte) (0x80 | c & 0x3f);
+            } else if (c == '\u2028' || c == '\u2029') {
+                escape(c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensure(4);
+                buffer[length++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[length++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[length++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                // an unpaired surrogate, which String.getBytes replaces
+                ensure(1);
+                buffer[length++] = '?';
+            } else {
+                ensure(3);
+                buffer[length++] = (byte) (0xe0 | c >> 12);
+                buffer[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buffer[length++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        write('"');
+    }
+
+    private void escape(char c) {
+        ensure(6);
+        buffer[length++] = '\\';
+        switch (c) {
+            case '"':
+            case '\\':
+                buffer[length++] = (byte) c;
+                return;
+            case '\t':
+                buffer[length++] = 't';
+                return;
+            case '\b':
+                buffer[length++] = 'b';
+                return;
+            case '\n':
+                buffer[length++] = 'n';
+                return;
+            case '\r':
+                buffer[length++] = 'r';
+                return;
+            case '\f':
+                buffer[length++] = 'f';
+                return;
+            default:
+                buffer[length++] = 'u';
+                buffer[length++] = HEX[c >> 12 & 0xf];
+                buffer[length++] = HEX[c >> 8 & 0xf];
+                buffer[length++] = HEX[c >> 4 & 0xf];
+                buffer[length++] = HEX[c & 0xf];
+        }
+    }
+
+    private void number(long value) {
+        if (value == Long.MIN_VALUE) {
+            ascii(Long.toString(value));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte swap = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = swap;
+        }
+    }
+
+    private void ascii(String value) {
+        ensure(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[length++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void write(char c) {
+        ensure(1);
+        buffer[length++] = (byte) c;
+    }
+
+    private void ensure(int needed) {
+        if (length + needed > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + needed));
+        }
+    }
+}
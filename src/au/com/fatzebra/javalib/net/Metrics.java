@@ -0,0 +1,128 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.ResponseCode;
+
+/**
+ * Receives measurements of every gateway call, to be forwarded to a metrics library such as Micrometer or
+ * Dropwizard Metrics. Every method has an empty default, so implementations only override what they record.
+ *
+ * <pre>
+ * Resource.setMetrics(new Metrics() {
+ *     public void recordCall(Operation operation, Outcome outcome, ResponseCode responseCode, long nanos) {
+ *         registry.timer("fatzebra.calls", "operation", operation.name(), "outcome", outcome.name())
+ *                 .record(nanos, TimeUnit.NANOSECONDS);
+ *     }
+ * });
+ * </pre>
+ *
+ * Methods are called on the thread making the request (or the async executor), so they must be thread safe and
+ * quick. When metrics are disabled ({@link #NOOP}, the default) the library skips the measurements altogether.
+ */
+public interface Metrics {
+    /**
+     * Records nothing, and tells the library not to take measurements
+     */
+    Metrics NOOP = new Metrics() {
+        @Override public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * A phase of a single attempt. Transports other than the {@link PooledTransport} may not report every phase,
+     * and a pooled connection which is reused skips DNS, CONNECT and TLS.
+     */
+    enum Phase {
+        /**
+         * Resolving the gateway host name
+         */
+        DNS,
+        /**
+         * Opening the TCP connection
+         */
+        CONNECT,
+        /**
+         * The TLS handshake
+         */
+        TLS,
+        /**
+         * From starting to send the request until the status line of the response is received
+         */
+        TIME_TO_FIRST_BYTE,
+        /**
+         * Reading and parsing the response body
+         */
+        PARSE
+    }
+
+    /**
+     * The outcome of a call, after any retries
+     */
+    enum Outcome {
+        /**
+         * The gateway processed the request successfully
+         */
+        SUCCESS,
+        /**
+         * The gateway processed the request, but the transaction was declined
+         */
+        DECLINED,
+        /**
+         * The gateway rejected the request (APIError)
+         */
+        API_ERROR,
+        /**
+         * The gateway could not be reached or timed out (NetworkError)
+         */
+        NETWORK_ERROR,
+        /**
+         * Any other failure
+         */
+        ERROR
+    }
+
+    /**
+     * Indicates whether measurements should be taken
+     * @return false to skip measuring altogether
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Records the duration of a phase of an attempt
+     * @param operation the operation, or null if the request was not made by the library
+     * @param phase the phase
+     * @param nanos the duration in nanoseconds
+     */
+    default void recordPhase(Operation operation, Phase phase, long nanos) {
+    }
+
+    /**
+     * Records an attempt which received an HTTP response
+     * @param operation the operation
+     * @param status the HTTP status
+     * @param requestBytes the size of the request body
+     * @param responseBytes the size of the response body read
+     */
+    default void recordExchange(Operation operation, int status, long requestBytes, long responseBytes) {
+    }
+
+    /**
+     * Records a completed call, including the time spent on any retries
+     * @param operation the operation
+     * @param outcome the outcome
+     * @param responseCode the gateway response code of the transaction, or ResponseCode.UNKNOWN if there is none
+     * @param nanos the duration in nanoseconds
+     */
+    default void recordCall(Operation operation, Outcome outcome, ResponseCode responseCode, long nanos) {
+    }
+
+    /**
+     * Called when the metrics are attached to a connection pool, so its state can be reported as gauges - for
+     * example by sampling {@link PooledTransport#getStats()} when the metrics are scraped
+     * @param pool the connection pool
+     */
+    default void bindPool(PooledTransport pool) {
+    }
+}
@@ -0,0 +1,23 @@
+package au.com.fatzebra.javalib.net;
+
+/**
+ * The gateway operations, used to apply per-operation settings such as the retry rules
+ */
+public enum Operation {
+    /**
+     * Creating a purchase (POST purchases)
+     */
+    PURCHASE,
+    /**
+     * Looking up a purchase by ID or reference (GET purchases/:id)
+     */
+    FIND,
+    /**
+     * Refunding a purchase (POST refunds)
+     */
+    REFUND,
+    /**
+     * Capturing an authorisation (POST purchases/:id/capture)
+     */
+    CAPTURE
+}
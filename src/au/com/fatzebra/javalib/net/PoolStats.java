@@ -0,0 +1,84 @@
+package au.com.fatzebra.javalib.net;
+
+/**
+ * A point in time snapshot of the {@link PooledTransport} connection pool
+ */
+public class PoolStats {
+    private final int leased;
+    private final int idle;
+    private final int pending;
+    private final long created;
+    private final long reused;
+    private final long evicted;
+
+    /**
+     * Initialises a new snapshot
+     * @param leased the number of connections currently in use
+     * @param idle the number of connections waiting in the pool
+     * @param pending the number of requests waiting for a connection
+     * @param created the total number of connections opened (and TLS handshakes performed)
+     * @param reused the total number of requests served by a pooled connection
+     * @param evicted the total number of idle or stale connections closed by the pool
+     */
+    public PoolStats(int leased, int idle, int pending, long created, long reused, long evicted) {
+        this.leased = leased;
+        this.idle = idle;
+        this.pending = pending;
+        this.created = created;
+        this.reused = reused;
+        this.evicted = evicted;
+    }
+
+    /**
+     * Gets the number of connections currently in use
+     * @return leased connections
+     */
+    public int getLeased() {
+        return this.leased;
+    }
+
+    /**
+     * Gets the number of idle connections in the pool
+     * @return idle connections
+     */
+    public int getIdle() {
+        return this.idle;
+    }
+
+    /**
+     * Gets the number of requests waiting for a connection
+     * @return pending requests
+     */
+    public int getPending() {
+        return this.pending;
+    }
+
+    /**
+     * Gets the total number of connections opened
+     * @return created connections
+     */
+    public long getCreated() {
+        return this.created;
+    }
+
+    /**
+     * Gets the total number of requests served by a pooled connection
+     * @return reused connections
+     */
+    public long getReused() {
+        return this.reused;
+    }
+
+    /**
+     * Gets the total number of connections closed by eviction
+     * @return evicted connections
+     */
+    public long getEvicted() {
+        return this.evicted;
+    }
+
+    @Override public String toString() {
+        return String.format("<PoolStats leased=%d idle=%d pending=%d created=%d reused=%d evicted=%d>",
+                leased, idle, pending, created, reused, evicted);
+    }
+}
@@ -0,0 +1,599 @@
+package au.com.fatzebra.javalib.net;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Transport} which keeps HTTP/1.1 connections alive and reuses them between requests.
+ *
+ * Connections are pooled per route (scheme, host and port) so repeat requests skip the TCP connect and the
+ * TLS handshake. All connections share a single SSLSocketFactory, so when a new connection is required the
+ * TLS session of an earlier connection can be resumed rather than negotiated from scratch.
+ *
+ * Idle connections are closed once they have been unused for the idle timeout, either by the background
+ * evictor or when they are next taken from the pool.
+ */
+public class PooledTransport implements Transport {
+    /**
+     * The default maximum number of concurrent connections to a single host
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+    /**
+     * The default time (in milliseconds) an idle connection is kept in the pool
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+    /**
+     * Connections idle for longer than this (in milliseconds) are checked for a server side close before reuse
+     */
+    private static final long STALE_CHECK_AFTER = 1000;
+
+    /**
+     * The most we will read from an unfinished body to salvage its connection
+     */
+    private static final int DRAIN_LIMIT = 65536;
+
+    /**
+     * The resolver shared by pools which are not given one
+     */
+    private static final DnsResolver DEFAULT_RESOLVER = new CachingDnsResolver();
+
+    private final int maxConnectionsPerRoute;
+    private final long idleTimeout;
+    private final SSLSocketFactory sslSocketFactory;
+    private final DnsResolver resolver;
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private final ScheduledExecutorService evictor;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * Initialises a pool with the default limits and the default SSL socket factory
+     */
+    public PooledTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Initialises a pool using the default SSL socket factory
+     * @param maxConnectionsPerRoute the maximum number of concurrent connections to a single host
+     * @param idleTimeout the time in milliseconds an idle connection is kept open
+     */
+    public PooledTransport(int maxConnectionsPerRoute, long idleTimeout) {
+        this(maxConnectionsPerRoute, idleTimeout, (SSLSocketFactory) SSLSocketFactory.getDefault());
+    }
+
+    /**
+     * Initialises a pool
+     * @param maxConnectionsPerRoute the maximum number of concurrent connections to a single host
+     * @param idleTimeout the time in milliseconds an idle connection is kept open
+     * @param sslSocketFactory the factory for TLS connections, shared by every connection in the pool
+     */
+    public PooledTransport(int maxConnectionsPerRoute, long idleTimeout, SSLSocketFactory sslSocketFactory) {
+        this(maxConnectionsPerRoute, idleTimeout, sslSocketFactory, DEFAULT_RESOLVER);
+    }
+
+    /**
+     * Initialises a pool
+     * @param maxConnectionsPerRoute the maximum number of concurrent connections to a single host
+     * @param idleTimeout the time in milliseconds an idle connection is kept open
+     * @param sslSocketFactory the factory for TLS connections, shared by every connection in the pool
+     * @param resolver the resolver for host names
+     */
+    public PooledTransport(int maxConnectionsPerRoute, long idleTimeout, SSLSocketFactory sslSocketFactory, DnsResolver resolver) {
+        if (maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerRoute must be at least 1");
+        }
+        if (idleTimeout < 1) {
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        }
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.idleTimeout = idleTimeout;
+        this.sslSocketFactory = sslSocketFactory;
+        this.resolver = resolver;
+
+        long evictionPeriod = Math.max(idleTimeout / 2, 10);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("fatzebra-pool-evictor"));
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, evictionPeriod, evictionPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the maximum number of concurrent connections to a single host
+     * @return connection limit
+     */
+    public int getMaxConnectionsPerRoute() {
+        return this.maxConnectionsPerRoute;
+    }
+
+    /**
+     * Gets the time an idle connection is kept open
+     * @return idle timeout in milliseconds
+     */
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    /**
+     * Takes a snapshot of the pool metrics
+     * @return the pool statistics
+     */
+    public PoolStats getStats() {
+        int leased = 0;
+        int idle = 0;
+        for (Route route : routes.values()) {
+            leased += maxConnectionsPerRoute - route.permits.availablePermits();
+            idle += route.idle.size();
+        }
+        return new PoolStats(leased, idle, pending.get(), created.get(), reused.get(), evicted.get());
+    }
+
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        if (closed) {
+            throw new IOException("Transport has been closed");
+        }
+        Deadline deadline = request.getDeadline();
+        if (deadline != null && deadline.isExpired()) {
+            throw new SocketTimeoutException("The deadline passed before the request was sent");
+        }
+        Route route = route(request.getUrl());
+        acquirePermit(route, request.getEffectiveConnectTimeout());
+        try {
+            Connection connection = route.poll();
+            if (connection != null) {
+                reused.incrementAndGet();
+                try {
+                    return exchange(route, connection, request);
+                } catch (IOException e) {
+                    connection.close();
+                    // The server may have closed the connection while it sat in the pool. Only requests
+                    // which are safe to repeat are re-sent - a POST may already have been processed.
+                    if (!"GET".equals(request.getMethod())) {
+                        throw e;
+                    }
+                }
+            }
+
+            connection = connect(route, request.getEffectiveConnectTimeout(), request);
+            try {
+                return exchange(route, connection, request);
+            } catch (IOException e) {
+                connection.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            route.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes all pooled connections and stops the evictor. Connections in use are closed when released.
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        for (Route route : routes.values()) {
+            Connection connection;
+            while ((connection = route.idle.pollFirst()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private Route route(URL url) {
+        String scheme = url.getProtocol().toLowerCase();
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        String key = scheme + "://" + url.getHost() + ":" + port;
+        Route route = routes.get(key);
+        if (route == null) {
+            Route created = new Route(scheme, url.getHost(), port, url.getPort() == -1);
+            route = routes.putIfAbsent(key, created);
+            if (route == null) {
+                route = created;
+            }
+        }
+        return route;
+    }
+
+    private void acquirePermit(Route route, int timeout) throws IOException {
+        pending.incrementAndGet();
+        try {
+            if (timeout > 0) {
+                if (!route.permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new ConnectException(String.format("Timed out waiting for a pooled connection to %s", route.host));
+                }
+            } else {
+                route.permits.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a pooled connection");
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private Connection connect(Route route, int connectTimeout, TransportRequest request) throws IOException {
+        Metrics metrics = request.getMetrics();
+        long started = metrics.isEnabled() ? System.nanoTime() : 0;
+        InetAddress[] addresses = resolver.resolve(route.host);
+        if (metrics.isEnabled()) {
+            metrics.recordPhase(request.getOperation(), Metrics.Phase.DNS, System.nanoTime() - started);
+        }
+        if (addresses == null || addresses.length == 0) {
+            throw new UnknownHostException(route.host);
+        }
+        IOException lastFailure = null;
+        for (InetAddress address : addresses) {
+            try {
+                return connect(route, address, connectTimeout, request);
+            } catch (SocketException | SocketTimeoutException e) {
+                // refused, unreachable or timed out - try the next address for the host
+                lastFailure = e;
+            }
+        }
+        throw lastFailure;
+    }
+
+    private Connection connect(Route route, InetAddress address, int connectTimeout, TransportRequest request) throws IOException {
+        Metrics metrics = request.getMetrics();
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            long started = metrics.isEnabled() ? System.nanoTime() : 0;
+            try {
+                socket.connect(new InetSocketAddress(address, route.port), connectTimeout);
+            } catch (SocketTimeoutException e) {
+                // report it as a connection failure, so callers can tell the request was never sent
+                ConnectException failure = new ConnectException(String.format("Timed out connecting to %s", route.host));
+                failure.initCause(e);
+                throw failure;
+            }
+            if (metrics.isEnabled()) {
+                long connected = System.nanoTime();
+                metrics.recordPhase(request.getOperation(), Metrics.Phase.CONNECT, connected - started);
+                started = connected;
+            }
+            if (route.secure) {
+                SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, route.host, route.port, true);
+                SSLParameters parameters = sslSocket.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(parameters);
+                sslSocket.setSoTimeout(connectTimeout);
+                sslSocket.startHandshake();
+                socket = sslSocket;
+                if (metrics.isEnabled()) {
+                    metrics.recordPhase(request.getOperation(), Metrics.Phase.TLS, System.nanoTime() - started);
+                }
+            }
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+        created.incrementAndGet();
+        return new Connection(socket);
+    }
+
+    private TransportResponse exchange(Route route, Connection connection, TransportRequest request) throws IOException {
+        connection.socket.setSoTimeout(request.getEffectiveReadTimeout());
+        connection.deadlineStream.deadline = request.getDeadline();
+        connection.deadlineStream.readTimeout = request.getReadTimeout();
+        Metrics metrics = request.getMetrics();
+        long started = metrics.isEnabled() ? System.nanoTime() : 0;
+        writeRequest(route, connection.out, request);
+
+        InputStream in = connection.in;
+        String statusLine;
+        int status;
+        Map<String, List<String>> headers;
+        do {
+            statusLine = HttpMessages.readLine(in);
+            if (statusLine == null) {
+                throw new EOFException("Connection closed by the server before a response was received");
+            }
+            status = HttpMessages.parseStatus(statusLine);
+            headers = HttpMessages.readHeaders(in);
+        } while (status >= 100 && status < 200);
+        if (metrics.isEnabled()) {
+            metrics.recordPhase(request.getOperation(), Metrics.Phase.TIME_TO_FIRST_BYTE, System.nanoTime() - started);
+        }
+
+        String connectionHeader = HttpMessages.firstHeader(headers, "Connection");
+        boolean keepAlive = statusLine.startsWith("HTTP/1.1")
+                ? !"close".equalsIgnoreCase(connectionHeader)
+                : "keep-alive".equalsIgnoreCase(connectionHeader);
+
+        String transferEncoding = HttpMessages.firstHeader(headers, "Transfer-Encoding");
+        String contentLength = HttpMessages.firstHeader(headers, "Content-Length");
+        HttpMessages.Body body;
+        if ("HEAD".equals(request.getMethod()) || status == 204 || status == 304) {
+            body = new HttpMessages.FixedLengthBody(in, 0);
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            body = new HttpMessages.ChunkedBody(in);
+        } else if (contentLength != null) {
+            try {
+                body = new HttpMessages.FixedLengthBody(in, Long.parseLong(contentLength.trim()));
+            } catch (NumberFormatException e) {
+                throw new java.net.ProtocolException("Invalid Content-Length: " + contentLength);
+            }
+        } else {
+            body = new HttpMessages.UntilCloseBody(in);
+            keepAlive = false;
+        }
+
+        return new TransportResponse(status, headers, new PooledBody(route, connection, body, keepAlive));
+    }
+
+    private static void writeRequest(Route route, OutputStream out, TransportRequest request) throws IOException {
+        URL url = request.getUrl();
+        String path = url.getFile();
+        if (path.length() == 0) {
+            path = "/";
+        }
+
+        StringBuilder head = new StringBuilder(512);
+        head.append(request.getMethod()).append(' ').append(path).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(route.hostHeader).append("\r\n");
+        if (request.getHeaders() != null) {
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        byte[] body = request.getBody();
+        if (body != null) {
+            if (request.getContentType() != null) {
+                head.append("Content-Type: ").append(request.getContentType()).append("\r\n");
+            }
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        head.append("\r\n");
+
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (body != null) {
+            out.write(body);
+        }
+        out.flush();
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Route route : routes.values()) {
+            for (Connection connection : route.idle) {
+                if (connection.isExpired(now) && route.idle.removeFirstOccurrence(connection)) {
+                    connection.close();
+                    evicted.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing more can be done
+        }
+    }
+
+    /**
+     * The connections to a single scheme, host and port
+     */
+    private class Route {
+        final String host;
+        final int port;
+        final boolean secure;
+        final String hostHeader;
+        final Semaphore permits = new Semaphore(maxConnectionsPerRoute);
+        final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<Connection>();
+
+        Route(String scheme, String host, int port, boolean defaultPort) {
+            this.host = host;
+            this.port = port;
+            this.secure = "https".equals(scheme);
+            this.hostHeader = defaultPort ? host : host + ":" + port;
+        }
+
+        /**
+         * Takes the most recently used connection which is still usable
+         * @return a connection or null if none is available
+         */
+        Connection poll() {
+            long now = System.nanoTime();
+            Connection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (!connection.isExpired(now) && !connection.isStale(now)) {
+                    return connection;
+                }
+                connection.close();
+                evicted.incrementAndGet();
+            }
+            return null;
+        }
+
+        void release(Connection connection) {
+            connection.deadlineStream.deadline = null;
+            connection.lastUsed = System.nanoTime();
+            idle.offerFirst(connection);
+            if (closed && idle.remove(connection)) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * A single keep-alive connection
+     */
+    private class Connection {
+        final Socket socket;
+        final DeadlineInputStream deadlineStream;
+        final InputStream in;
+        final OutputStream out;
+        volatile long lastUsed = System.nanoTime();
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.deadlineStream = new DeadlineInputStream(socket);
+            this.in = new HttpMessages.ConnectionInputStream(deadlineStream, 8192);
+            this.out = new HttpMessages.ConnectionOutputStream(socket.getOutputStream(), 8192);
+        }
+
+        boolean isExpired(long now) {
+            return now - lastUsed > TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        }
+
+        /**
+         * Checks whether the server has closed (or written to) the connection while it was idle
+         * @param now the current nano time
+         * @return true if the connection can not be reused
+         */
+        boolean isStale(long now) {
+            if (socket.isClosed()) {
+                return true;
+            }
+            if (now - lastUsed < TimeUnit.MILLISECONDS.toNanos(STALE_CHECK_AFTER)) {
+                return false;
+            }
+            try {
+                socket.setSoTimeout(1);
+                // Either the server closed the connection or sent bytes nobody asked for
+                in.read();
+                return true;
+            } catch (SocketTimeoutException e) {
+                return false;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+
+        void close() {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Shortens the socket timeout before each read so that reading the response ends by the request deadline,
+     * however slowly the server trickles it out
+     */
+    private static class DeadlineInputStream extends FilterInputStream {
+        private final Socket socket;
+        Deadline deadline;
+        int readTimeout;
+
+        DeadlineInputStream(Socket socket) throws IOException {
+            super(socket.getInputStream());
+            this.socket = socket;
+        }
+
+        @Override public int read() throws IOException {
+            beforeRead();
+            return super.read();
+        }
+
+        @Override public int read(byte[] buffer, int offset, int length) throws IOException {
+            beforeRead();
+            return super.read(buffer, offset, length);
+        }
+
+        private void beforeRead() throws IOException {
+            Deadline current = deadline;
+            if (current != null) {
+                if (current.isExpired()) {
+                    throw new SocketTimeoutException("The deadline passed while reading the response");
+                }
+                socket.setSoTimeout(current.cap(readTimeout));
+            }
+        }
+    }
+
+    /**
+     * The response body, which returns the connection to the pool when it is closed
+     */
+    private class PooledBody extends InputStream {
+        private final Route route;
+        private final Connection connection;
+        private final HttpMessages.Body body;
+        private final boolean keepAlive;
+        private boolean released = false;
+
+        PooledBody(Route route, Connection connection, HttpMessages.Body body, boolean keepAlive) {
+            this.route = route;
+            this.connection = connection;
+            this.body = body;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override public int read() throws IOException {
+            return body.read();
+        }
+
+        @Override public int read(byte[] buffer, int offset, int length) throws IOException {
+            return body.read(buffer, offset, length);
+        }
+
+        @Override public int available() throws IOException {
+            return body.available();
+        }
+
+        @Override public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            try {
+                if (keepAlive && !closed && drain()) {
+                    route.release(connection);
+                } else {
+                    connection.close();
+                }
+            } finally {
+                route.permits.release();
+            }
+        }
+
+        private boolean drain() {
+            try {
+                long drained = 0;
+                while (!body.isComplete() && drained < DRAIN_LIMIT) {
+                    if (body.read() == -1) {
+                        break;
+                    }
+                    drained++;
+                }
+                return body.isComplete();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
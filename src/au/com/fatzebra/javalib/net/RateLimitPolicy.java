@@ -0,0 +1,189 @@
+package au.com.fatzebra.javalib.net;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The settings for the client-side rate limiters of a {@link au.com.fatzebra.javalib.GatewayContext}, one for each
+ * endpoint (purchases, lookups, refunds and captures).
+ *
+ * Each limiter is a token bucket: requests are let through at the configured rate, with bursts of up to the bucket
+ * size, and otherwise wait for a token. A request which would wait longer than the maximum wait (or its deadline)
+ * fails straight away with a RateLimitedError. Every attempt takes a token, including retries.
+ *
+ * When adaptive, a limiter slows down on a throttling response from the gateway - a 429, a Retry-After header, or a
+ * RateLimit-Remaining of 0 - halving its rate and pausing until the Retry-After has passed. Successful responses then
+ * bring it back up to the configured rate.
+ *
+ * <pre>
+ * Resource.setRateLimitPolicy(RateLimitPolicy.builder()
+ *         .rate(20, 5)
+ *         .rate(Operation.REFUND, 5, 1)
+ *         .maxWait(2000)
+ *         .build());
+ * </pre>
+ */
+public final class RateLimitPolicy {
+    /**
+     * Requests are never limited
+     */
+    public static final RateLimitPolicy DISABLED = builder().build();
+
+    private final Map<Operation, Limit> limits;
+    private final long maxWait;
+    private final boolean adaptive;
+
+    private RateLimitPolicy(Builder builder) {
+        this.limits = new EnumMap<Operation, Limit>(builder.limits);
+        this.maxWait = builder.maxWait;
+        this.adaptive = builder.adaptive;
+    }
+
+    /**
+     * Starts building a policy. Nothing is limited until a rate is set.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Indicates whether an operation is limited
+     * @param operation the operation
+     * @return true if a rate is set for it
+     */
+    public boolean isLimited(Operation operation) {
+        return limits.containsKey(operation);
+    }
+
+    /**
+     * Gets the rate for an operation
+     * @param operation the operation
+     * @return requests per second, or 0 if the operation is not limited
+     */
+    public double getRate(Operation operation) {
+        Limit limit = limits.get(operation);
+        return limit == null ? 0 : limit.rate;
+    }
+
+    /**
+     * Gets the bucket size for an operation: the number of requests which may be sent at once after a quiet period
+     * @param operation the operation
+     * @return the bucket size, or 0 if the operation is not limited
+     */
+    public int getBurst(Operation operation) {
+        Limit limit = limits.get(operation);
+        return limit == null ? 0 : limit.burst;
+    }
+
+    /**
+     * Gets the longest a request waits for a token before failing
+     * @return time in milliseconds
+     */
+    public long getMaxWait() {
+        return this.maxWait;
+    }
+
+    /**
+     * Indicates whether the limiters slow down when the gateway throttles requests
+     * @return true if adaptive
+     */
+    public boolean isAdaptive() {
+        return this.adaptive;
+    }
+
+    private static final class Limit {
+        final double rate;
+        final int burst;
+
+        Limit(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+        }
+    }
+
+    /**
+     * Builds a {@link RateLimitPolicy}
+     */
+    public static final class Builder {
+        private final Map<Operation, Limit> limits = new EnumMap<Operation, Limit>(Operation.class);
+        private long maxWait = 5000;
+        private boolean adaptive = true;
+
+        private Builder() {
+        }
+
+        /**
+         * Limits every operation to the same rate. Each operation has its own bucket.
+         * @param perSecond requests per second
+         * @param burst the bucket size
+         * @return this builder
+         */
+        public Builder rate(double perSecond, int burst) {
+            for (Operation operation : Operation.values()) {
+                rate(operation, perSecond, burst);
+            }
+            return this;
+        }
+
+        /**
+         * Limits an operation
+         * @param operation the operation
+         * @param perSecond requests per second
+         * @param burst the bucket size
+         * @return this builder
+         */
+        public Builder rate(Operation operation, double perSecond, int burst) {
+            if (!(perSecond > 0)) {
+                throw new IllegalArgumentException("rate must be positive");
+            }
+            if (burst < 1) {
+                throw new IllegalArgumentException("burst must be at least 1");
+            }
+            this.limits.put(operation, new Limit(perSecond, burst));
+            return this;
+        }
+
+        /**
+         * Removes the limit on an operation
+         * @param operation the operation
+         * @return this builder
+         */
+        public Builder unlimited(Operation operation) {
+            this.limits.remove(operation);
+            return this;
+        }
+
+        /**
+         * Sets the longest a request waits for a token before failing with a RateLimitedError (default 5000ms).
+         * Asynchronous requests wait without holding a thread.
+         * @param value time in milliseconds, or 0 to fail rather than wait
+         * @return this builder
+         */
+        public Builder maxWait(long value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("maxWait must not be negative");
+            }
+            this.maxWait = value;
+            return this;
+        }
+
+        /**
+         * Sets whether the limiters slow down when the gateway throttles requests (default true)
+         * @param value the adaptive flag
+         * @return this builder
+         */
+        public Builder adaptive(boolean value) {
+            this.adaptive = value;
+            return this;
+        }
+
+        /**
+         * Builds the policy
+         * @return the policy
+         */
+        public RateLimitPolicy build() {
+            return new RateLimitPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.errors.RateLimitedError;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The token bucket limiting the requests to one endpoint (operation) of a {@link GatewayContext}, as configured by a
+ * {@link RateLimitPolicy}. Obtain it with {@link GatewayContext#getRateLimiter(Operation)}.
+ *
+ * The bucket is kept as the time at which it will next be full (the generic cell rate algorithm), so taking a token
+ * is a single compare-and-set and the limiter never locks.
+ */
+public final class RateLimiter {
+    /**
+     * The furthest an adaptive limiter slows down below the configured rate
+     */
+    static final int MAX_SLOWDOWN = 16;
+
+    private final RateLimitPolicy policy;
+    private final String username;
+    private final Operation operation;
+    private final long baseInterval;
+    private final int burst;
+    private final AtomicLong theoreticalArrival;
+    private volatile long interval;
+
+    /**
+     * Initialises a full bucket
+     * @param policy the settings
+     * @param context the context the limiter belongs to
+     * @param operation the operation the limiter guards, which must be limited by the policy
+     */
+    public RateLimiter(RateLimitPolicy policy, GatewayContext context, Operation operation) {
+        if (!policy.isLimited(operation)) {
+            throw new IllegalArgumentException(String.format("The policy does not limit %s", operation));
+        }
+        this.policy = policy;
+        this.username = context.username;
+        this.operation = operation;
+        this.baseInterval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / policy.getRate(operation)));
+        this.burst = policy.getBurst(operation);
+        this.interval = baseInterval;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Gets the settings of the limiter
+     * @return the policy
+     */
+    public RateLimitPolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Gets the username of the merchant the limiter belongs to
+     * @return the username
+     */
+    public String getUsername() {
+        return this.username;
+    }
+
+    /**
+     * Gets the operation the limiter guards
+     * @return the operation
+     */
+    public Operation getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Gets the current rate, which is below the configured rate while the limiter is recovering from throttling
+     * @return requests per second
+     */
+    public double getRate() {
+        return (double) TimeUnit.SECONDS.toNanos(1) / interval;
+    }
+
+    /**
+     * Takes a token if one is available now
+     * @return true if the request may be sent
+     */
+    public boolean tryAcquire() {
+        return reserve(0) <= 0;
+    }
+
+    /**
+     * Takes a token, waiting up to the timeout for one
+     * @param timeout the longest to wait
+     * @param unit the unit of the timeout
+     * @return true if the request may be sent, false if no token would be available in time (and none was taken)
+     * @throws InterruptedException if interrupted while waiting, in which case the token is spent
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long maxWait = unit.toNanos(timeout);
+        long wait = reserve(maxWait);
+        if (wait > maxWait) {
+            return false;
+        }
+        TimeUnit.NANOSECONDS.sleep(wait);
+        return true;
+    }
+
+    /**
+     * Takes a token, waiting as long as it takes
+     * @throws InterruptedException if interrupted while waiting, in which case the token is spent
+     */
+    public void acquire() throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(reserve(Long.MAX_VALUE));
+    }
+
+    /**
+     * Takes a token to be used after the returned wait, unless the wait would be longer than allowed
+     * @param maxWait the longest the caller will wait, in nanoseconds
+     * @return the time to wait in nanoseconds; if it is more than maxWait no token was taken
+     */
+    long reserve(long maxWait) {
+        long interval = this.interval;
+        long tolerance = burst * interval;
+        for (;;) {
+            long now = System.nanoTime();
+            long arrival = theoreticalArrival.get();
+            long next = (arrival - now > 0 ? arrival : now) + interval;
+            long wait = next - tolerance - now;
+            if (wait > maxWait) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    /**
+     * Creates the error for a request which can not wait for a token
+     * @param wait the wait in nanoseconds returned by reserve
+     * @return the error
+     */
+    RateLimitedError rejected(long wait) {
+        return new RateLimitedError(String.format("The rate limit for %s requests has been reached",
+                operation.name().toLowerCase(Locale.ROOT)), TimeUnit.NANOSECONDS.toMillis(wait));
+    }
+
+    /**
+     * Adjusts an adaptive limiter to a response from the gateway. A throttling response halves the rate and pauses
+     * the bucket until any Retry-After has passed. Other responses bring the rate back towards the configured rate.
+     * @param status the HTTP status
+     * @param headers the response headers
+     */
+    void onResponse(int status, Map<String, List<String>> headers) {
+        if (!policy.isAdaptive()) {
+            return;
+        }
+        long retryAfter = -1;
+        boolean exhausted = false;
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                String name = header.getKey();
+                if (name == null || header.getValue() == null || header.getValue().isEmpty()) {
+                    continue;
+                }
+                if ("Retry-After".equalsIgnoreCase(name)) {
+                    retryAfter = parseNumber(header.getValue().get(0));
+                } else if ("RateLimit-Remaining".equalsIgnoreCase(name) || "X-RateLimit-Remaining".equalsIgnoreCase(name)) {
+                    exhausted = parseNumber(header.getValue().get(0)) == 0;
+                }
+            }
+        }
+        long current = this.interval;
+        if (status == 429 || retryAfter > 0 || exhausted) {
+            interval = Math.min(current * 2, baseInterval * MAX_SLOWDOWN);
+            if (retryAfter > 0) {
+                pause(TimeUnit.SECONDS.toNanos(retryAfter));
+            }
+        } else if (current != baseInterval) {
+            // avoid writing the shared interval on every success once recovered
+            interval = Math.max(baseInterval, current - current / 16);
+        }
+    }
+
+    /**
+     * Empties the bucket so no request is let through until the pause has passed
+     */
+    private void pause(long nanos) {
+        long interval = this.interval;
+        long until = System.nanoTime() + nanos + burst * interval - interval;
+        long arrival;
+        do {
+            arrival = theoreticalArrival.get();
+            if (arrival - until >= 0) {
+                return;
+            }
+        } while (!theoreticalArrival.compareAndSet(arrival, until));
+    }
+
+    /**
+     * Parses a whole number of seconds (or a count), ignoring dates and anything else
+     * @return the number, or -1 if it is not one
+     */
+    private static long parseNumber(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override public String toString() {
+        return String.format("<RateLimiter operation=%s rate=%.1f/s burst=%d>", operation, getRate(), burst);
+    }
+}
@@ -0,0 +1,99 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.FatZebra;
+import org.apache.commons.codec.binary.Base64;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The immutable set of headers sent with every request for a set of credentials.
+ *
+ * The client headers (user agent etc) never change within a JVM so they are built once. Each
+ * {@link au.com.fatzebra.javalib.GatewayContext} caches the headers for its credentials, so the Authorization
+ * header is only encoded again when the username or token is changed.
+ */
+public final class RequestHeaders {
+    /**
+     * The headers describing this library and the JVM, shared by every request
+     */
+    static final Map<String, String> CLIENT_HEADERS = buildClientHeaders();
+
+    private final String username;
+    private final String token;
+    private final Map<String, String> headers;
+
+    private RequestHeaders(String username, String token) {
+        this.username = username;
+        this.token = token;
+
+        Map<String, String> headers = new LinkedHashMap<String, String>(CLIENT_HEADERS);
+        headers.put("Authorization", String.format("Basic %s", base64EncodedCredentials(username, token)));
+        this.headers = Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Builds the headers for a set of credentials
+     * @param username the gateway username
+     * @param token the gateway token
+     * @return the headers
+     */
+    public static RequestHeaders create(String username, String token) {
+        return new RequestHeaders(username, token);
+    }
+
+    /**
+     * Indicates whether these headers were built for the credentials given
+     * @param username the gateway username
+     * @param token the gateway token
+     * @return true if the credentials match
+     */
+    public boolean isFor(String username, String token) {
+        return equal(this.username, username) && equal(this.token, token);
+    }
+
+    /**
+     * Gets the headers as an unmodifiable map
+     * @return the headers
+     */
+    public Map<String, String> asMap() {
+        return this.headers;
+    }
+
+    /**
+     * Encodes the username and token into a base64 value used for the Authorization header
+     *
+     * @return String base64 encoded values joined with a colon (:)
+     */
+    private static String base64EncodedCredentials(String username, String token) {
+        return Base64.encodeBase64String(String.format("%s:%s", username, token).getBytes());
+    }
+
+    private static Map<String, String> buildClientHeaders() {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("Accept-Charset", Resource.CHARSET);
+
+        headers.put("User-Agent",
+                String.format("Fat Zebra v1 - Java %s", FatZebra.VERSION));
+
+        // debug headers
+        String[] propertyNames = {"os.name", "os.version", "os.arch",
+                "java.version", "java.vendor", "java.vm.version",
+                "java.vm.vendor"};
+        Map<String, String> propertyMap = new HashMap<String, String>();
+        for (String propertyName : propertyNames) {
+            propertyMap.put(propertyName, System.getProperty(propertyName));
+        }
+        propertyMap.put("bindings.version", FatZebra.VERSION);
+        propertyMap.put("lang", "Java");
+        propertyMap.put("publisher", "Fat Zebra");
+        headers.put("X-Client-User-Agent", Resource.GSON.toJson(propertyMap));
+        return Collections.unmodifiableMap(headers);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -4,23 +4,34 @@ import au.com.fatzebra.javalib.FZBase;
 
 import au.com.fatzebra.javalib.FatZebra;
 import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.ResponseCode;
 import au.com.fatzebra.javalib.errors.APIError;
+import au.com.fatzebra.javalib.errors.DeadlineExceededError;
 import au.com.fatzebra.javalib.errors.NetworkError;
 import au.com.fatzebra.javalib.models.FatZebraResponse;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import org.apache.commons.codec.binary.Base64;
 
-import javax.net.ssl.*;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 
 /**
@@ -29,10 +40,48 @@ import java.util.Scanner;
 public abstract class Resource extends FZBase {
     public static final String CHARSET = "UTF-8";
     public static final String CONTENT_TYPE = "application/json";
-    private static final String DNS_CACHE_TTL_PROPERTY_NAME = "networkaddress.cache.ttl";
 
-    private static String originalDNSCacheTTL = null;
-    private static boolean allowedToSetTTL = true;
+    /**
+     * HttpURLConnection by default, which honours the JVM proxy settings. The connection pool is opt in.
+     */
+    private static volatile Transport transport = new UrlConnectionTransport();
+
+    /**
+     * No retries unless opted in, so the static API behaves as it always has. FatZebraClient retries by default.
+     */
+    private static volatile RetryPolicy retryPolicy = RetryPolicy.NONE;
+
+    /**
+     * Breakers off unless opted in, so the static API behaves as it always has. FatZebraClient enables them.
+     */
+    private static volatile CircuitBreakerPolicy circuitBreakerPolicy = CircuitBreakerPolicy.DISABLED;
+
+    private static volatile RateLimitPolicy rateLimitPolicy = RateLimitPolicy.DISABLED;
+
+    private static volatile Timeouts timeouts = null;
+
+    private static volatile Metrics metrics = Metrics.NOOP;
+
+    private static final CopyOnWriteArrayList<Interceptor> interceptors = new CopyOnWriteArrayList<Interceptor>();
+
+    /**
+     * Waits out the backoff of asynchronous retries, handing the next attempt to the async executor
+     */
+    private static final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(
+            new DaemonThreadFactory("fatzebra-retry"));
+
+    /**
+     * The number of threads running asynchronous requests made without a client. The shared transport leaves
+     * connections to the JDK keep-alive cache, which has no pool to match, so this simply caps the requests in flight.
+     */
+    private static final int ASYNC_THREADS = 20;
+
+    /**
+     * Runs the blocking work of asynchronous requests made without a client. A FatZebraClient with its own connection
+     * pool has an executor sized to that pool instead.
+     */
+    private static volatile Executor asyncExecutor = Executors.newFixedThreadPool(
+            ASYNC_THREADS, new DaemonThreadFactory("fatzebra-async"));
 
     public static final Gson GSON = new GsonBuilder()
             .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
@@ -49,183 +98,861 @@ public abstract class Resource extends FZBase {
     protected static String getResponseBody(InputStream responseStream) throws IOException {
         //\A denotes the start of the stream boundary
         Scanner s = new Scanner(responseStream, CHARSET);
-        s.useDelimiter("\\A");
+        try {
+            s.useDelimiter("\\A");
+            return s.hasNext() ? s.next() : "";
+        } finally {
+            // closing the stream hands the connection back to the transport
+            s.close();
+            responseStream.close();
+        }
+    }
 
-        String rBody = s.next(); //
+    /**
+     * Gets the headers for the request including the auth header and the user agent. The headers are cached
+     * by the context, so this does not allocate.
+     *
+     * @return Map<String,String> map of headers (key/value pairs)
+     */
+    static Map<String, String> getHeaders(GatewayContext ctx) {
+        return ctx.getRequestHeaders().asMap();
+    }
 
-        s.close();
-        responseStream.close();
-        return rBody;
+    /**
+     * Gets the transport used when the context does not set its own
+     *
+     * @return the transport
+     */
+    public static Transport getTransport() {
+        return transport;
     }
 
     /**
-     * Encodes the username and token into a base64 value used for the Authorization header
-     * The username and token must be set in the FatZebra class.
+     * Replaces the transport used when the context does not set its own. The previous transport is not closed.
      *
-     * @return String base64 encoded values joined with a colon (:)
+     * @param value the new transport
      */
-    private static String base64EncodedCredentials(GatewayContext ctx) {
-        return Base64.encodeBase64String(String.format("%s:%s", ctx.username, ctx.token).getBytes());
+    public static void setTransport(Transport value) {
+        if (value == null) {
+            throw new IllegalArgumentException("transport must not be null");
+        }
+        transport = value;
     }
 
     /**
-     * Builds the headers for the request including the auth header and the user agent
+     * Builds the transport request for the API endpoint including the headers, timeout values etc required
      *
-     * @return Map<String,String> map of headers (key/value pairs)
+     * @return TransportRequest the request to be sent
+     * @throws IOException
      */
-    private static Map<String, String> getHeaders(GatewayContext ctx) {
-        Map<String, String> headers = new HashMap<String, String>();
-        headers.put("Accept-Charset", CHARSET);
+    private static TransportRequest createRequest(Operation operation, String urlSuffix, Object payload, RequestType type, GatewayContext ctx, Deadline deadline, GatewayCall call) throws IOException {
+        byte[] body = null;
+        String contentType = null;
+        if (type == RequestType.GET) {
+            if (payload != null) {
+                urlSuffix = String.format("%s?%s", urlSuffix, payload);
+            }
+        } else {
+            body = payload instanceof JsonBody ? JsonBodyWriter.toBytes((JsonBody) payload) : GSON.toJson(payload).getBytes(CHARSET);
+            contentType = CONTENT_TYPE;
+        }
 
-        headers.put("User-Agent",
-                String.format("Fat Zebra v1 - Java %s", FatZebra.VERSION));
+        URL gatewayUrl = new URL(FatZebra.getGatewayUrl(urlSuffix, ctx));
+        Map<String, String> headers = call == null ? getHeaders(ctx) : call.headers(getHeaders(ctx));
+        return new TransportRequest(type.name(), gatewayUrl, headers, contentType, body,
+                getConnectTimeout(operation, ctx), getReadTimeout(operation, ctx), deadline, operation, getMetrics(ctx));
+    }
 
-        headers.put("Authorization", String.format("Basic %s", base64EncodedCredentials(ctx)));
+    /**
+     * Gets the executor which runs asynchronous requests when the context does not set its own
+     *
+     * @return the executor
+     */
+    public static Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
 
-        // debug headers
-        String[] propertyNames = {"os.name", "os.version", "os.arch",
-                "java.version", "java.vendor", "java.vm.version",
-                "java.vm.vendor"};
-        Map<String, String> propertyMap = new HashMap<String, String>();
-        for (String propertyName : propertyNames) {
-            propertyMap.put(propertyName, System.getProperty(propertyName));
+    /**
+     * Replaces the executor which runs asynchronous requests when the context does not set its own. The previous
+     * executor is not shut down.
+     *
+     * @param value the new executor
+     */
+    public static void setAsyncExecutor(Executor value) {
+        if (value == null) {
+            throw new IllegalArgumentException("executor must not be null");
         }
-        propertyMap.put("bindings.version", FatZebra.VERSION);
-        propertyMap.put("lang", "Java");
-        propertyMap.put("publisher", "Fat Zebra");
-        headers.put("X-Client-User-Agent", GSON.toJson(propertyMap));
-        return headers;
+        asyncExecutor = value;
     }
 
     /**
-     * Builds a HTTP URL Connection for the API endpoint and sets up the headers, timeout values etc required
+     * Looks up the outcome of an attempt which failed part way, so it can be retried without being processed twice
+     */
+    protected interface Reconciler<T> {
+        /**
+         * Looks up the earlier attempt
+         * @return the response for the earlier attempt, or null if the gateway has no record of it
+         * @throws Exception if the outcome can not be determined, in which case the request is not retried
+         */
+        FatZebraResponse<T> reconcile() throws Exception;
+    }
+
+    /**
+     * Gets the retry policy used when the context does not set its own
      *
-     * @return HttpsURLConnection the connection Object
-     * @throws IOException
+     * @return the retry policy, RetryPolicy.NONE unless one has been set
      */
-    private static javax.net.ssl.HttpsURLConnection createApiConnection(String urlSuffix, GatewayContext ctx) throws IOException {
-        URL gatewayUrl = new URL(FatZebra.getGatewayUrl(urlSuffix, ctx));
-        javax.net.ssl.HttpsURLConnection conn = (javax.net.ssl.HttpsURLConnection) gatewayUrl.openConnection();
-        conn.setConnectTimeout(FatZebra.timeout * 1000);
-        conn.setReadTimeout(FatZebra.timeout * 1000);
-        conn.setUseCaches(false);
-        for (Map.Entry<String, String> header : getHeaders(ctx).entrySet()) {
-            conn.setRequestProperty(header.getKey(), header.getValue());
+    public static RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Replaces the retry policy used when the context does not set its own
+     *
+     * @param value the new policy, or RetryPolicy.NONE to disable retries
+     */
+    public static void setRetryPolicy(RetryPolicy value) {
+        if (value == null) {
+            throw new IllegalArgumentException("retry policy must not be null");
         }
-        return conn;
+        retryPolicy = value;
+    }
+
+    /**
+     * Gets the circuit breaker settings used when the context does not set its own
+     *
+     * @return the circuit breaker policy, CircuitBreakerPolicy.DISABLED unless one has been set
+     */
+    public static CircuitBreakerPolicy getCircuitBreakerPolicy() {
+        return circuitBreakerPolicy;
+    }
+
+    /**
+     * Replaces the circuit breaker settings used when the context does not set its own. Breakers are reset
+     * when their policy changes.
+     *
+     * @param value the new policy, or CircuitBreakerPolicy.DISABLED to turn the breakers off
+     */
+    public static void setCircuitBreakerPolicy(CircuitBreakerPolicy value) {
+        if (value == null) {
+            throw new IllegalArgumentException("circuit breaker policy must not be null");
+        }
+        circuitBreakerPolicy = value;
+    }
+
+    /**
+     * Gets the rate limits used when the context does not set its own
+     *
+     * @return the rate limit policy
+     */
+    public static RateLimitPolicy getRateLimitPolicy() {
+        return rateLimitPolicy;
+    }
+
+    /**
+     * Replaces the rate limits used when the context does not set its own. Limiters start with a full bucket when
+     * their policy changes.
+     *
+     * @param value the new policy, or RateLimitPolicy.DISABLED to turn the limiters off
+     */
+    public static void setRateLimitPolicy(RateLimitPolicy value) {
+        if (value == null) {
+            throw new IllegalArgumentException("rate limit policy must not be null");
+        }
+        rateLimitPolicy = value;
+    }
+
+    /**
+     * Gets the timeouts used when the context does not set its own
+     *
+     * @return the timeouts, or null if FatZebra.timeout applies
+     */
+    public static Timeouts getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Replaces the timeouts used when the context does not set its own
+     *
+     * @param value the new timeouts, or null to use FatZebra.timeout for every operation
+     */
+    public static void setTimeouts(Timeouts value) {
+        timeouts = value;
+    }
+
+    /**
+     * Gets the metrics used when the context does not set its own
+     *
+     * @return the metrics
+     */
+    public static Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Replaces the metrics used when the context does not set its own. If the current transport is a
+     * PooledTransport it is bound to the metrics, so the pool can be reported.
+     *
+     * @param value the new metrics, or Metrics.NOOP to disable them
+     */
+    public static void setMetrics(Metrics value) {
+        if (value == null) {
+            throw new IllegalArgumentException("metrics must not be null");
+        }
+        metrics = value;
+        if (transport instanceof PooledTransport) {
+            value.bindPool((PooledTransport) transport);
+        }
+    }
+
+    /**
+     * Adds an interceptor, run for calls whose context does not set its own
+     *
+     * @param interceptor the interceptor
+     */
+    public static void addInterceptor(Interceptor interceptor) {
+        if (interceptor == null) {
+            throw new IllegalArgumentException("interceptor must not be null");
+        }
+        interceptors.add(interceptor);
+    }
+
+    /**
+     * Removes an interceptor added with addInterceptor
+     *
+     * @param interceptor the interceptor
+     */
+    public static void removeInterceptor(Interceptor interceptor) {
+        interceptors.remove(interceptor);
+    }
+
+    /**
+     * Gets the interceptors run for calls whose context does not set its own
+     *
+     * @return an unmodifiable view of the interceptors
+     */
+    public static List<Interceptor> getInterceptors() {
+        return Collections.unmodifiableList(interceptors);
+    }
+
+    private static List<Interceptor> getInterceptors(GatewayContext context) {
+        return context.interceptors != null ? context.interceptors : interceptors;
+    }
+
+    private static Metrics getMetrics(GatewayContext context) {
+        return context.metrics != null ? context.metrics : metrics;
+    }
+
+    private static Transport getTransport(GatewayContext context) {
+        return context.transport != null ? context.transport : transport;
+    }
+
+    private static Executor getAsyncExecutor(GatewayContext context) {
+        return context.asyncExecutor != null ? context.asyncExecutor : asyncExecutor;
+    }
+
+    private static int getConnectTimeout(Operation operation, GatewayContext context) {
+        Timeouts configured = context.timeouts != null ? context.timeouts : timeouts;
+        return configured != null ? configured.getConnectTimeout(operation) : FatZebra.timeout * 1000;
+    }
+
+    private static int getReadTimeout(Operation operation, GatewayContext context) {
+        Timeouts configured = context.timeouts != null ? context.timeouts : timeouts;
+        return configured != null ? configured.getReadTimeout(operation) : FatZebra.timeout * 1000;
+    }
+
+    private static RetryPolicy getRetryPolicy(GatewayContext context) {
+        return context.retryPolicy != null ? context.retryPolicy : retryPolicy;
+    }
+
+    /**
+     * Performs the request, working out the operation from the request type and URL. Requests it does not recognise
+     * are treated as purchases, so they are retried only where a purchase would be.
+     *
+     * @deprecated pass the operation, see {@link #doRequest(Operation, String, Object, RequestType, Class, GatewayContext)}
+     */
+    @Deprecated
+    protected static <T> FatZebraResponse<T> doRequest(String url, Object payload, RequestType type, Class<T> klass, GatewayContext context) throws IOException, NetworkError, APIError {
+        return doRequest(operationOf(url, type), url, payload, type, klass, context, null);
+    }
+
+    protected static <T> FatZebraResponse<T> doRequest(Operation operation, String url, Object payload, RequestType type, Class<T> klass, GatewayContext context) throws IOException, NetworkError, APIError {
+        return doRequest(operation, url, payload, type, klass, context, null);
     }
 
-    protected static javax.net.ssl.HttpsURLConnection createGetConnection(String url, String query, GatewayContext ctx) throws IOException {
-        String getURL = String.format("%s?%s", url, query);
-        javax.net.ssl.HttpsURLConnection conn = createApiConnection(getURL, ctx);
-        conn.setRequestMethod("GET");
-        return conn;
+    private static Operation operationOf(String url, RequestType type) {
+        if (type == RequestType.GET) {
+            return Operation.FIND;
+        } else if (type == RequestType.POST && url.startsWith("refunds")) {
+            return Operation.REFUND;
+        } else if (type == RequestType.POST && url.endsWith("/capture")) {
+            return Operation.CAPTURE;
+        }
+        return Operation.PURCHASE;
     }
 
-    protected static javax.net.ssl.HttpsURLConnection createPostConnection(String url, Object payloadObject, GatewayContext ctx) throws IOException {
-        javax.net.ssl.HttpsURLConnection conn = createApiConnection(url, ctx);
-        conn.setDoOutput(true);
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", CONTENT_TYPE);
-        OutputStream output = null;
+    /**
+     * Performs the request, retrying failures as the retry policy allows
+     *
+     * @param reconciler looks up the outcome of an attempt which may have been processed, or null if it can not be
+     *                   looked up
+     */
+    protected static <T> FatZebraResponse<T> doRequest(Operation operation, String url, Object payload, RequestType type, Class<T> klass, GatewayContext context, Reconciler<T> reconciler) throws IOException, NetworkError, APIError {
+        Metrics metrics = getMetrics(context);
+        List<Interceptor> interceptors = getInterceptors(context);
+        if (!metrics.isEnabled() && interceptors.isEmpty()) {
+            return execute(operation, url, payload, type, klass, context, reconciler, null);
+        }
+        long started = System.nanoTime();
+        GatewayCall call = interceptors.isEmpty() ? null : GatewayCall.start(operation, context, payload, interceptors);
         try {
-            output = conn.getOutputStream();
-            output.write(GSON.toJson(payloadObject).getBytes(CHARSET));
-        } finally {
-            if (output != null) {
-                output.close();
+            FatZebraResponse<T> response = execute(operation, url, payload, type, klass, context, reconciler, call);
+            complete(metrics, call, operation, response, null, started);
+            return response;
+        } catch (Exception ex) {
+            complete(metrics, call, operation, null, ex, started);
+            throw ex;
+        }
+    }
+
+    private static <T> FatZebraResponse<T> execute(Operation operation, String url, Object payload, RequestType type, Class<T> klass, GatewayContext context, Reconciler<T> reconciler, GatewayCall call) throws IOException, NetworkError, APIError {
+        Deadline deadline = Deadline.current();
+        TransportRequest request = createRequest(operation, url, payload, type, context, deadline, call);
+        RetryPolicy policy = getRetryPolicy(context);
+        CircuitBreaker breaker = context.getCircuitBreaker(operation);
+        policy.onRequest();
+        for (int attempt = 1; ; attempt++) {
+            FatZebraResponse<T> response;
+            try {
+                response = exchange(breaker, request, klass, context);
+            } catch (IOException ex) {
+                if (deadline != null && deadline.isExpired()) {
+                    throw deadlineExceeded(operation, ex);
+                }
+                if (!policy.isRetryable(operation, ex, reconciler != null) || !policy.tryRetry(attempt) || !backoff(policy, attempt, deadline)) {
+                    throw rethrow(ex, null);
+                }
+                if (policy.requiresReconcile(operation, ex)) {
+                    FatZebraResponse<T> existing;
+                    try {
+                        existing = reconciler.reconcile();
+                    } catch (Exception reconcileFailure) {
+                        throw rethrow(ex, reconcileFailure);
+                    }
+                    if (existing != null) {
+                        return existing;
+                    }
+                }
+                continue;
+            }
+            if (policy.isRetryableDecline(operation, response.result) && policy.tryRetry(attempt) && backoff(policy, attempt, deadline)) {
+                continue;
             }
+            return response;
         }
-        return conn;
     }
 
-    protected static javax.net.ssl.HttpsURLConnection createDeleteConnection(String url, Object payloadObject, GatewayContext ctx) throws IOException {
-        javax.net.ssl.HttpsURLConnection conn = createApiConnection(url, ctx);
-        conn.setDoOutput(true);
-        conn.setRequestMethod("DELETE");
-        conn.setRequestProperty("Content-Type", CONTENT_TYPE);
-        OutputStream output = null;
+    /**
+     * Sends one attempt of a request through the circuit breaker, recording its outcome. Network failures and 5xx
+     * responses count against the gateway's health.
+     */
+    private static <T> FatZebraResponse<T> exchange(CircuitBreaker breaker, TransportRequest request, Class<T> klass, GatewayContext context) throws IOException, NetworkError, APIError {
+        RateLimiter limiter = context.getRateLimiter(request.getOperation());
+        if (limiter != null) {
+            throttle(limiter, request.getDeadline());
+        }
+        boolean trial = breaker.acquire();
+        boolean healthy = false;
         try {
-            output = conn.getOutputStream();
-            output.write(GSON.toJson(payloadObject).getBytes(CHARSET));
+            FatZebraResponse<T> response = handleResponse(getTransport(context).execute(request), request, klass, context);
+            healthy = true;
+            return response;
+        } catch (APIError ex) {
+            healthy = ex.getStatus() < 500;
+            throw ex;
         } finally {
-            if (output != null) {
-                output.close();
+            breaker.release(trial, healthy);
+        }
+    }
+
+    /**
+     * Waits for a token from the rate limiter, unless that would take longer than the policy or the deadline allows
+     */
+    private static void throttle(RateLimiter limiter, Deadline deadline) throws NetworkError {
+        long maxWait = maxWait(limiter, deadline);
+        long wait = limiter.reserve(maxWait);
+        if (wait > maxWait) {
+            throw limiter.rejected(wait);
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw limiter.rejected(wait);
             }
         }
-        return conn;
     }
 
-    protected static <T> FatZebraResponse<T> doRequest(String url, Object payload, RequestType type, Class<T> klass, GatewayContext context) throws IOException, NetworkError, APIError {
+    private static long maxWait(RateLimiter limiter, Deadline deadline) {
+        long maxWait = TimeUnit.MILLISECONDS.toNanos(limiter.getPolicy().getMaxWait());
+        return deadline == null ? maxWait : Math.min(maxWait, deadline.remaining(TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Performs the request without blocking the calling thread
+     *
+     * The returned future completes with the response, or exceptionally with an APIError, NetworkError or IOException
+     * exactly as the blocking doRequest would have thrown.
+     */
+    protected static <T> CompletableFuture<FatZebraResponse<T>> doRequestAsync(Operation operation, String url, Object payload, RequestType type, Class<T> klass, GatewayContext context) {
+        return doRequestAsync(operation, url, payload, type, klass, context, null);
+    }
+
+    /**
+     * Performs the request without blocking the calling thread, retrying failures as the retry policy allows. The
+     * calling thread is not blocked during the backoff either.
+     *
+     * @param reconciler looks up the outcome of an attempt which may have been processed, or null if it can not be
+     *                   looked up. It is called from the async executor.
+     */
+    protected static <T> CompletableFuture<FatZebraResponse<T>> doRequestAsync(Operation operation, String url, Object payload, RequestType type, Class<T> klass, GatewayContext context, Reconciler<T> reconciler) {
+        final Metrics metrics = getMetrics(context);
+        List<Interceptor> interceptors = getInterceptors(context);
+        final long started = metrics.isEnabled() || !interceptors.isEmpty() ? System.nanoTime() : 0;
+        final GatewayCall intercepted = interceptors.isEmpty() ? null : GatewayCall.start(operation, context, payload, interceptors);
+        AsyncCall<T> call;
         try {
-            disableDnsCache();
-            HttpsURLConnection conn;
-            switch (type) {
-                case POST:
-                    conn = createPostConnection(url, payload, context);
-                    break;
-
-                case DELETE:
-                    conn = createDeleteConnection(url, payload, context);
-                    break;
-
-                case GET:
-                default:
-                    conn = createGetConnection(url, (String) payload, context);
-                    break;
-            }
-
-            int rCode = conn.getResponseCode();
-            String rBody;
-            Map<String, List<String>> headers;
-            if (rCode >= 200 && rCode < 300) {
-                rBody = getResponseBody(conn.getInputStream());
+            Deadline deadline = Deadline.current();
+            call = new AsyncCall<T>(operation, createRequest(operation, url, payload, type, context, deadline, intercepted), klass, context, reconciler);
+        } catch (IOException ex) {
+            CompletableFuture<FatZebraResponse<T>> failed = new CompletableFuture<FatZebraResponse<T>>();
+            Exception failure = translate(ex);
+            complete(metrics, intercepted, operation, null, failure, started);
+            failed.completeExceptionally(failure);
+            return failed;
+        }
+        if (metrics.isEnabled() || intercepted != null) {
+            call.future.whenComplete((response, error) -> complete(metrics, intercepted, operation, response, error, started));
+        }
+        context.trackCall(call.future);
+        call.start();
+        return call.future;
+    }
+
+    /**
+     * The state of an asynchronous request across its attempts
+     */
+    private static final class AsyncCall<T> {
+        final CompletableFuture<FatZebraResponse<T>> future = new CompletableFuture<FatZebraResponse<T>>();
+        private final Operation operation;
+        private final TransportRequest request;
+        private final Class<T> klass;
+        private final GatewayContext context;
+        private final Reconciler<T> reconciler;
+        private final RetryPolicy policy;
+        private final CircuitBreaker breaker;
+        private final RateLimiter limiter;
+        private final Deadline deadline;
+        private final Transport transport;
+        private final Executor executor;
+
+        AsyncCall(Operation operation, TransportRequest request, Class<T> klass, GatewayContext context, Reconciler<T> reconciler) {
+            this.deadline = request.getDeadline();
+            this.operation = operation;
+            this.request = request;
+            this.klass = klass;
+            this.context = context;
+            this.reconciler = reconciler;
+            this.policy = getRetryPolicy(context);
+            this.breaker = context.getCircuitBreaker(operation);
+            this.limiter = context.getRateLimiter(operation);
+            this.transport = getTransport(context);
+            this.executor = getAsyncExecutor(context);
+            policy.onRequest();
+        }
+
+        /**
+         * Sends the first attempt, and fails the call when its deadline passes
+         */
+        void start() {
+            if (deadline != null) {
+                final ScheduledFuture<?> timer = retryScheduler.schedule(
+                        () -> future.completeExceptionally(deadlineExceeded(operation, null)),
+                        deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+                future.whenComplete((response, error) -> timer.cancel(false));
+            }
+            attempt(1);
+        }
+
+        /**
+         * Indicates if there is time for a retry after the backoff
+         */
+        private boolean allows(long delay) {
+            return deadline == null || delay < deadline.remaining(TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Sends an attempt once the rate limiter lets it through, waiting for a token without holding a thread
+         */
+        void attempt(final int attempt) {
+            if (future.isDone()) {
+                return;
+            }
+            if (limiter != null) {
+                long maxWait = maxWait(limiter, deadline);
+                long wait = limiter.reserve(maxWait);
+                if (wait > maxWait) {
+                    future.completeExceptionally(limiter.rejected(wait));
+                    return;
+                }
+                if (wait > 0) {
+                    retryScheduler.schedule(() -> dispatch(() -> {
+                        try {
+                            send(attempt);
+                        } catch (Throwable ex) {
+                            future.completeExceptionally(ex);
+                        }
+                    }), wait, TimeUnit.NANOSECONDS);
+                    return;
+                }
+            }
+            send(attempt);
+        }
+
+        private void send(final int attempt) {
+            if (future.isDone()) {
+                return;
+            }
+            final boolean trial;
+            try {
+                trial = breaker.acquire();
+            } catch (NetworkError ex) {
+                future.completeExceptionally(ex);
+                return;
+            }
+            CompletableFuture<TransportResponse> exchange;
+            try {
+                exchange = transport.executeAsync(request, executor);
+            } catch (RuntimeException ex) {
+                breaker.release(trial, true);
+                future.completeExceptionally(ex);
+                return;
+            }
+            BiConsumer<TransportResponse, Throwable> handler = (transportResponse, error) -> {
+                FatZebraResponse<T> response;
+                try {
+                    if (error != null) {
+                        throw error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    }
+                    response = handleResponse(transportResponse, request, klass, context);
+                } catch (IOException ex) {
+                    breaker.release(trial, false);
+                    long delay = policy.backoff(attempt);
+                    if (deadline != null && deadline.isExpired()) {
+                        future.completeExceptionally(deadlineExceeded(operation, ex));
+                    } else if (policy.isRetryable(operation, ex, reconciler != null) && allows(delay) && policy.tryRetry(attempt)) {
+                        retryAfter(delay, attempt + 1, policy.requiresReconcile(operation, ex) ? ex : null);
+                    } else {
+                        future.completeExceptionally(translate(ex));
+                    }
+                    return;
+                } catch (APIError ex) {
+                    breaker.release(trial, ex.getStatus() < 500);
+                    future.completeExceptionally(ex);
+                    return;
+                } catch (Throwable ex) {
+                    breaker.release(trial, false);
+                    future.completeExceptionally(ex);
+                    return;
+                }
+                breaker.release(trial, true);
+                long delay = policy.backoff(attempt);
+                if (policy.isRetryableDecline(operation, response.result) && allows(delay) && policy.tryRetry(attempt)) {
+                    retryAfter(delay, attempt + 1, null);
+                } else {
+                    future.complete(response);
+                }
+            };
+            // Reading the body may block, so never run the handler on the caller's thread
+            if (exchange.isDone()) {
+                exchange.whenComplete((transportResponse, error) -> {
+                    if (!dispatch(() -> handler.accept(transportResponse, error))) {
+                        breaker.release(trial, true);
+                        closeQuietly(transportResponse);
+                    }
+                });
             } else {
-                rBody = getResponseBody(conn.getErrorStream());
+                exchange.whenComplete(handler);
             }
-            headers = conn.getHeaderFields();
+        }
 
-            FatZebraResponse<T> response = new FatZebraResponse<T>(rCode, rBody, headers);
-            response.parseResult(klass);
+        /**
+         * Runs a step of the call on the async executor, failing the call if the executor has been shut down
+         *
+         * @return false if the executor rejected the step
+         */
+        private boolean dispatch(Runnable step) {
+            try {
+                executor.execute(step);
+                return true;
+            } catch (RejectedExecutionException ex) {
+                future.completeExceptionally(new NetworkError(
+                        String.format("The %s request could not be run, as the async executor has been shut down", operation.name().toLowerCase(Locale.ROOT)),
+                        false, ex));
+                return false;
+            }
+        }
+
+        /**
+         * Sends the next attempt once the backoff has passed
+         *
+         * @param reconcileFailure the failure of an attempt which may have been processed, to be reconciled before
+         *                         the request is sent again, or null
+         */
+        private void retryAfter(long delay, final int attempt, final IOException reconcileFailure) {
+            retryScheduler.schedule(() -> dispatch(() -> {
+                if (reconcileFailure != null) {
+                    FatZebraResponse<T> existing;
+                    Deadline.Scope scope = deadline != null ? deadline.attach() : null;
+                    try {
+                        existing = reconciler.reconcile();
+                    } catch (Throwable ex) {
+                        Exception failure = translate(reconcileFailure);
+                        failure.addSuppressed(ex);
+                        future.completeExceptionally(failure);
+                        return;
+                    } finally {
+                        if (scope != null) {
+                            scope.close();
+                        }
+                    }
+                    if (existing != null) {
+                        future.complete(existing);
+                        return;
+                    }
+                }
+                try {
+                    attempt(attempt);
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            }), delay, TimeUnit.MILLISECONDS);
+        }
+    }
 
-            if (!response.successful) {
-                throw new APIError(response.errors);
+    /**
+     * Waits for the backoff before a retry, unless that would pass the deadline
+     *
+     * @return false if there is not time for another attempt or the thread was interrupted
+     */
+    private static boolean backoff(RetryPolicy policy, int attempt, Deadline deadline) {
+        long delay = policy.backoff(attempt);
+        if (deadline != null && delay >= deadline.remaining(TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        return sleep(delay);
+    }
+
+    private static void closeQuietly(TransportResponse response) {
+        if (response == null) {
+            return;
+        }
+        try {
+            response.close();
+        } catch (IOException e) {
+            // nothing more can be done
+        }
+    }
+
+    private static DeadlineExceededError deadlineExceeded(Operation operation, IOException cause) {
+        String message = String.format("The deadline for the %s request passed", operation.name().toLowerCase(Locale.ROOT));
+        return cause == null ? new DeadlineExceededError(message) : new DeadlineExceededError(message, cause);
+    }
+
+    /**
+     * Waits for the backoff before a retry
+     *
+     * @return false if the thread was interrupted, in which case the request should not be retried
+     */
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Reads and parses the response, closing it once done. The body is parsed straight from the stream unless
+     * the context asks for the raw body to be retained.
+     */
+    private static <T> FatZebraResponse<T> handleResponse(TransportResponse transportResponse, TransportRequest request, Class<T> klass, GatewayContext context) throws IOException, APIError {
+        Metrics metrics = request.getMetrics();
+        long started = metrics.isEnabled() ? System.nanoTime() : 0;
+        int rCode = transportResponse.getStatus();
+        Map<String, List<String>> headers = transportResponse.getHeaders();
+        RateLimiter limiter = context.getRateLimiter(request.getOperation());
+        if (limiter != null) {
+            limiter.onResponse(rCode, headers);
+        }
+        InputStream body = transportResponse.getBody();
+        CountingInputStream counter = null;
+        if (metrics.isEnabled()) {
+            body = counter = new CountingInputStream(body);
+        }
+        FatZebraResponse<T> response;
+        if (context.retainResponseBody) {
+            response = new FatZebraResponse<T>(rCode, getResponseBody(body), headers);
+            response.parseResult(klass);
+        } else {
+            response = new FatZebraResponse<T>(rCode, headers);
+            try {
+                response.parseResult(body, klass);
+            } finally {
+                transportResponse.close();
             }
+        }
 
-            return response;
-        } catch(java.net.UnknownHostException ex) {
-            throw new NetworkError(String.format("Unable to resolve address for %s", ex.getMessage()), true, ex);
-        } catch(java.net.ConnectException ex) {
-            throw new NetworkError(String.format("Unable to connect to Gateway: %s", ex.getMessage()), true, ex);
-        } finally {
-            enableDnsCache();
+        if (counter != null) {
+            Operation operation = request.getOperation();
+            byte[] requestBody = request.getBody();
+            metrics.recordPhase(operation, Metrics.Phase.PARSE, System.nanoTime() - started);
+            metrics.recordExchange(operation, rCode, requestBody == null ? 0 : requestBody.length, counter.count);
         }
+
+        if (!response.successful) {
+            throw new APIError(response.errors, rCode);
+        }
+
+        return response;
     }
 
-    protected static void disableDnsCache() {
+    /**
+     * Reports a completed call to the metrics and interceptors
+     *
+     * @param call the call seen by the interceptors, or null if there are none
+     */
+    private static void complete(Metrics metrics, GatewayCall call, Operation operation, FatZebraResponse<?> response, Throwable failure, long started) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (metrics.isEnabled()) {
+            recordCall(metrics, operation, response, failure, started);
+        }
+        if (call != null) {
+            call.complete(response, failure);
+        }
+    }
+
+    /**
+     * Reports a completed call to the metrics. A failing metrics implementation must not fail the call.
+     */
+    private static void recordCall(Metrics metrics, Operation operation, FatZebraResponse<?> response, Throwable failure, long started) {
+        long nanos = System.nanoTime() - started;
+        ResponseCode responseCode = ResponseCode.UNKNOWN;
+        Metrics.Outcome outcome;
+        if (failure == null) {
+            if (response.result instanceof FZBase) {
+                responseCode = ((FZBase) response.result).getResponseCode();
+            }
+            outcome = responseCode == ResponseCode.UNKNOWN || responseCode.isApproved() ? Metrics.Outcome.SUCCESS : Metrics.Outcome.DECLINED;
+        } else if (failure instanceof APIError) {
+            outcome = Metrics.Outcome.API_ERROR;
+        } else if (failure instanceof NetworkError) {
+            outcome = Metrics.Outcome.NETWORK_ERROR;
+        } else {
+            outcome = Metrics.Outcome.ERROR;
+        }
         try {
-            originalDNSCacheTTL = java.security.Security
-                    .getProperty(DNS_CACHE_TTL_PROPERTY_NAME);
-            // disable DNS cache
-            java.security.Security
-                    .setProperty(DNS_CACHE_TTL_PROPERTY_NAME, "0");
-        } catch (SecurityException se) {
-            allowedToSetTTL = false;
-        }
-    }
-
-    protected static void enableDnsCache() {
-        if (allowedToSetTTL) {
-            if (originalDNSCacheTTL == null) {
-                // value unspecified by implementation
-                // DNS_CACHE_TTL_PROPERTY_NAME of -1 = cache forever
-                java.security.Security.setProperty(
-                        DNS_CACHE_TTL_PROPERTY_NAME, "-1");
-            } else {
-                java.security.Security.setProperty(
-                        DNS_CACHE_TTL_PROPERTY_NAME, originalDNSCacheTTL);
+            metrics.recordCall(operation, outcome, responseCode, nanos);
+        } catch (RuntimeException e) {
+            // ignored, see above
+        }
+    }
+
+    /**
+     * Counts the bytes of the response body read
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
             }
+            return b;
+        }
+
+        @Override public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Maps a transport failure to the exception reported to the caller
+     *
+     * @return the NetworkError for connectivity failures and timeouts, otherwise the original exception
+     */
+    private static Exception translate(IOException ex) {
+        NetworkError error = toNetworkError(ex);
+        return error != null ? error : ex;
+    }
+
+    /**
+     * Throws the exception reported to the caller for a transport failure. Declared to return an exception so
+     * callers can write "throw rethrow(...)".
+     *
+     * @param suppressed a further failure to attach, or null
+     */
+    private static IOException rethrow(IOException ex, Exception suppressed) throws IOException, NetworkError {
+        NetworkError error = toNetworkError(ex);
+        Exception failure = error != null ? error : ex;
+        if (suppressed != null) {
+            failure.addSuppressed(suppressed);
+        }
+        if (error != null) {
+            throw error;
         }
+        throw ex;
     }
 
+    /**
+     * Maps connectivity failures, closed connections and timeouts to a NetworkError
+     *
+     * @param ex the exception raised by the transport
+     * @return the NetworkError, or null if it was not a connectivity failure
+     */
+    private static NetworkError toNetworkError(IOException ex) {
+        if (ex instanceof java.net.UnknownHostException) {
+            return new NetworkError(String.format("Unable to resolve address for %s", ex.getMessage()), true, ex);
+        }
+        if (ex instanceof java.net.ConnectException) {
+            return new NetworkError(String.format("Unable to connect to Gateway: %s", ex.getMessage()), true, ex);
+        }
+        if (ex instanceof java.net.SocketTimeoutException) {
+            return new NetworkError(String.format("Timed out waiting for the Gateway: %s", ex.getMessage()), true, ex);
+        }
+        if (ex instanceof java.io.EOFException) {
+            return new NetworkError(String.format("The Gateway closed the connection: %s", ex.getMessage()), false, ex);
+        }
+        return null;
+    }
 }
@@ -0,0 +1,338 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.FZBase;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a failed request is sent again, and how long to wait first.
+ *
+ * Each operation has a {@link Mode} describing which failures are safe to retry. A request which failed before it
+ * reached the gateway (DNS or connection failures) can always be repeated, but one which timed out or lost its
+ * connection part way may already have been processed. For purchases the client first looks the purchase up by its
+ * reference and only re-posts it if the gateway has no record of it, so a customer is never charged twice.
+ *
+ * Retries wait for an exponentially increasing, randomly jittered delay, and are limited by a budget shared by all
+ * requests using the policy - once retries make up more than a fraction of the traffic, failures are returned to
+ * the caller straight away rather than piling further load onto a struggling gateway.
+ *
+ * <pre>
+ * Resource.setRetryPolicy(RetryPolicy.builder()
+ *         .maxAttempts(4)
+ *         .retryDeclines(Operation.PURCHASE, true)
+ *         .build());
+ * </pre>
+ */
+public final class RetryPolicy {
+    /**
+     * Which failures of an operation may be retried
+     */
+    public enum Mode {
+        /**
+         * Failures are never retried
+         */
+        NEVER,
+        /**
+         * Only failures which happened before the request reached the gateway are retried
+         */
+        UNSENT,
+        /**
+         * As UNSENT, and requests which may have been processed are retried once the gateway confirms it has
+         * no record of them. Operations without a way to check behave as UNSENT.
+         */
+        RECONCILE,
+        /**
+         * Any network failure is retried - for operations which are safe to repeat
+         */
+        ALWAYS
+    }
+
+    /**
+     * Retries are never attempted
+     */
+    public static final RetryPolicy NONE = builder().maxAttempts(1).build();
+
+    /**
+     * The default policy: up to 3 attempts with a backoff from 100ms, finds retried on any network failure, purchases
+     * reconciled by reference, and refunds and captures only retried when they were never sent. Declines are not
+     * retried.
+     */
+    public static final RetryPolicy DEFAULT = builder().build();
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final Map<Operation, Mode> modes;
+    private final Set<Operation> declineRetries;
+    private final RetryBudget budget;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.modes = new EnumMap<Operation, Mode>(builder.modes);
+        this.declineRetries = EnumSet.copyOf(builder.declineRetries);
+        this.budget = new RetryBudget(builder.budgetRatio, builder.minRetries);
+    }
+
+    /**
+     * Starts building a policy from the default settings
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the maximum number of attempts for a request, including the first
+     * @return maximum attempts
+     */
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * Gets the retry mode for an operation
+     * @param operation the operation
+     * @return the mode
+     */
+    public Mode getMode(Operation operation) {
+        return this.modes.get(operation);
+    }
+
+    /**
+     * Indicates if the failure happened before the request could have reached the gateway
+     * @param failure the exception raised by the transport
+     * @return true if the request was not sent
+     */
+    public static boolean isUnsent(IOException failure) {
+        return failure instanceof UnknownHostException || failure instanceof ConnectException;
+    }
+
+    /**
+     * Indicates if the operation may be retried after the failure, once the outcome of any earlier attempt has been
+     * checked where {@link #requiresReconcile} says so
+     * @param operation the operation
+     * @param failure the exception raised by the transport
+     * @param reconcilable true if the outcome of the failed attempt can be looked up
+     * @return true if the failure may be retried
+     */
+    boolean isRetryable(Operation operation, IOException failure, boolean reconcilable) {
+        if (failure instanceof SSLException) {
+            // certificate and protocol problems will not fix themselves
+            return false;
+        }
+        switch (getMode(operation)) {
+            case ALWAYS:
+                return true;
+            case RECONCILE:
+                return reconcilable || isUnsent(failure);
+            case UNSENT:
+                return isUnsent(failure);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Indicates if the gateway must be checked for the earlier attempt before the request is sent again
+     * @param operation the operation
+     * @param failure the exception raised by the transport
+     * @return true if the request may already have been processed
+     */
+    boolean requiresReconcile(Operation operation, IOException failure) {
+        return getMode(operation) == Mode.RECONCILE && !isUnsent(failure);
+    }
+
+    /**
+     * Indicates if the result is a decline which may be approved if the request is sent again (Acquirer Busy,
+     * Declined - Please Retry)
+     * @param operation the operation
+     * @param result the result returned by the gateway
+     * @return true if the decline may be retried
+     */
+    boolean isRetryableDecline(Operation operation, Object result) {
+        return declineRetries.contains(operation)
+                && result instanceof FZBase
+                && ((FZBase) result).getResponseCode().isRetryable();
+    }
+
+    /**
+     * Records a new request, adding to the retry budget
+     */
+    void onRequest() {
+        budget.deposit();
+    }
+
+    /**
+     * Claims a retry, if the attempt limit and the retry budget allow another
+     * @param attempt the number of the attempt which failed, starting at 1
+     * @return true if the request may be sent again
+     */
+    boolean tryRetry(int attempt) {
+        return attempt < maxAttempts && budget.tryWithdraw();
+    }
+
+    /**
+     * Gets the delay before the next attempt - a random time between half and all of the exponential backoff for
+     * the attempt, so clients which failed together do not retry together
+     * @param attempt the number of the attempt which failed, starting at 1
+     * @return delay in milliseconds
+     */
+    long backoff(int attempt) {
+        long ceiling = initialBackoff << Math.min(attempt - 1, 20);
+        ceiling = Math.min(Math.max(ceiling, 0), maxBackoff);
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    /**
+     * Limits retries to a fraction of requests. Each request adds the ratio to the balance (up to a cap) and each
+     * retry spends one, so under a steady failure rate only ratio * requests are retried. The balance starts at the
+     * minimum so clients with little traffic can still retry.
+     */
+    private static final class RetryBudget {
+        private static final long SCALE = 1000;
+
+        private final long deposit;
+        private final long cap;
+        private final AtomicLong balance;
+
+        RetryBudget(double ratio, int minRetries) {
+            this.deposit = (long) (ratio * SCALE);
+            this.cap = Math.max(minRetries, 1) * SCALE * 10;
+            this.balance = new AtomicLong(minRetries * SCALE);
+        }
+
+        void deposit() {
+            if (deposit == 0) {
+                return;
+            }
+            long current;
+            do {
+                current = balance.get();
+                if (current >= cap) {
+                    return;
+                }
+            } while (!balance.compareAndSet(current, Math.min(cap, current + deposit)));
+        }
+
+        boolean tryWithdraw() {
+            long current;
+            do {
+                current = balance.get();
+                if (current < SCALE) {
+                    return false;
+                }
+            } while (!balance.compareAndSet(current, current - SCALE));
+            return true;
+        }
+    }
+
+    /**
+     * Builds a {@link RetryPolicy}
+     */
+    public static final class Builder {
+        private int maxAttempts = 3;
+        private long initialBackoff = 100;
+        private long maxBackoff = 2000;
+        private double budgetRatio = 0.1;
+        private int minRetries = 10;
+        private final Map<Operation, Mode> modes = new EnumMap<Operation, Mode>(Operation.class);
+        private final Set<Operation> declineRetries = EnumSet.noneOf(Operation.class);
+
+        private Builder() {
+            modes.put(Operation.PURCHASE, Mode.RECONCILE);
+            modes.put(Operation.FIND, Mode.ALWAYS);
+            modes.put(Operation.REFUND, Mode.UNSENT);
+            modes.put(Operation.CAPTURE, Mode.UNSENT);
+        }
+
+        /**
+         * Sets the maximum number of attempts for a request, including the first (default 3)
+         * @param value maximum attempts, 1 to disable retries
+         * @return this builder
+         */
+        public Builder maxAttempts(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            this.maxAttempts = value;
+            return this;
+        }
+
+        /**
+         * Sets the backoff - the delay before the first retry is up to the initial backoff, doubling with each
+         * further attempt up to the maximum (default 100ms and 2000ms)
+         * @param initial the initial backoff in milliseconds
+         * @param max the maximum backoff in milliseconds
+         * @return this builder
+         */
+        public Builder backoff(long initial, long max) {
+            if (initial < 0 || max < initial) {
+                throw new IllegalArgumentException("backoff must satisfy 0 <= initial <= max");
+            }
+            this.initialBackoff = initial;
+            this.maxBackoff = max;
+            return this;
+        }
+
+        /**
+         * Sets the retry budget (default 10% of requests, with a reserve of 10 retries)
+         * @param ratio the fraction of requests which may be retried
+         * @param minRetries the retries available before any requests have been made
+         * @return this builder
+         */
+        public Builder budget(double ratio, int minRetries) {
+            if (ratio < 0 || minRetries < 0) {
+                throw new IllegalArgumentException("budget must not be negative");
+            }
+            this.budgetRatio = ratio;
+            this.minRetries = minRetries;
+            return this;
+        }
+
+        /**
+         * Sets the retry mode for an operation
+         * @param operation the operation
+         * @param mode the mode
+         * @return this builder
+         */
+        public Builder mode(Operation operation, Mode mode) {
+            this.modes.put(operation, mode);
+            return this;
+        }
+
+        /**
+         * Sets whether temporary declines (Acquirer Busy, Declined - Please Retry) of an operation are retried
+         * (default false)
+         * @param operation the operation
+         * @param retry true to retry temporary declines
+         * @return this builder
+         */
+        public Builder retryDeclines(Operation operation, boolean retry) {
+            if (retry) {
+                this.declineRetries.add(operation);
+            } else {
+                this.declineRetries.remove(operation);
+            }
+            return this;
+        }
+
+        /**
+         * Builds the policy
+         * @return the policy
+         */
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.errors.APIError;
+import au.com.fatzebra.javalib.errors.DeadlineExceededError;
+import au.com.fatzebra.javalib.errors.NetworkError;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is in flight, further calls for the same key wait
+ * for it and share its result (or failure) instead of making their own request. Once the call completes the key is
+ * free again, so nothing is cached.
+ *
+ * Synchronous calls run on the caller's thread, as they would without coalescing. Synchronous and asynchronous
+ * calls for the same key are coalesced with each other. A synchronous caller waits for the call in flight no longer
+ * than its own {@link Deadline}.
+ *
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+public final class SingleFlight<K, V> {
+    /**
+     * A synchronous call, throwing the same exceptions as the gateway methods
+     */
+    public interface Call<V> {
+        V call() throws IOException, NetworkError, APIError;
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+    /**
+     * Makes a call, or waits for the identical call in flight
+     * @param key identifies the call
+     * @param call makes the call
+     * @return the result
+     */
+    public V execute(K key, Call<V> call) throws IOException, NetworkError, APIError {
+        CompletableFuture<V> mine = new CompletableFuture<V>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            return await(existing);
+        }
+        V result;
+        try {
+            result = call.call();
+        } catch (Throwable ex) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(ex);
+            throw ex;
+        }
+        inFlight.remove(key, mine);
+        mine.complete(result);
+        return result;
+    }
+
+    /**
+     * Makes an asynchronous call, or joins the identical call in flight
+     * @param key identifies the call
+     * @param call starts the call
+     * @return a future for the result, which is the caller's own and may be cancelled without affecting the others
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> mine = new CompletableFuture<V>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            return existing.thenApply(value -> value);
+        }
+        CompletableFuture<V> started;
+        try {
+            started = call.get();
+        } catch (RuntimeException ex) {
+            started = new CompletableFuture<V>();
+            started.completeExceptionally(ex);
+        }
+        started.whenComplete((value, error) -> {
+            inFlight.remove(key, mine);
+            if (error != null) {
+                mine.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                mine.complete(value);
+            }
+        });
+        return mine.thenApply(value -> value);
+    }
+
+    /**
+     * Gets the number of calls in flight
+     * @return the number of keys being fetched
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    /**
+     * Waits for the call in flight, for no longer than the deadline attached to the waiting thread
+     */
+    private static <V> V await(CompletableFuture<V> future) throws IOException, NetworkError, APIError {
+        Deadline deadline = Deadline.current();
+        try {
+            if (deadline == null) {
+                return future.get();
+            }
+            return future.get(deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            throw new DeadlineExceededError("The deadline passed waiting for an identical request");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for an identical request");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof NetworkError) {
+                throw (NetworkError) cause;
+            } else if (cause instanceof APIError) {
+                throw (APIError) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package au.com.fatzebra.javalib.net;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Connect and read timeouts for each operation, so a quick lookup can be given less time than an authorisation.
+ *
+ * <pre>
+ * ctx.timeouts = Timeouts.builder()
+ *         .connectTimeout(5000)
+ *         .readTimeout(45000)
+ *         .readTimeout(Operation.FIND, 10000)
+ *         .build();
+ * </pre>
+ */
+public final class Timeouts {
+    private final Map<Operation, int[]> timeouts;
+
+    private Timeouts(Builder builder) {
+        this.timeouts = new EnumMap<Operation, int[]>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            int[] override = builder.overrides.get(operation);
+            this.timeouts.put(operation, new int[]{
+                    override != null && override[0] >= 0 ? override[0] : builder.connectTimeout,
+                    override != null && override[1] >= 0 ? override[1] : builder.readTimeout
+            });
+        }
+    }
+
+    /**
+     * Creates timeouts applying to every operation
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param readTimeout the read timeout in milliseconds
+     * @return the timeouts
+     */
+    public static Timeouts of(int connectTimeout, int readTimeout) {
+        return builder().connectTimeout(connectTimeout).readTimeout(readTimeout).build();
+    }
+
+    /**
+     * Starts building timeouts, initially 60 seconds for everything
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the connect timeout for an operation. The connect timeout also limits the wait for a pooled connection.
+     * @param operation the operation
+     * @return the timeout in milliseconds
+     */
+    public int getConnectTimeout(Operation operation) {
+        return this.timeouts.get(operation)[0];
+    }
+
+    /**
+     * Gets the read timeout for an operation - the longest the gateway may take to send any part of the response
+     * @param operation the operation
+     * @return the timeout in milliseconds
+     */
+    public int getReadTimeout(Operation operation) {
+        return this.timeouts.get(operation)[1];
+    }
+
+    /**
+     * Builds {@link Timeouts}
+     */
+    public static final class Builder {
+        private int connectTimeout = 60000;
+        private int readTimeout = 60000;
+        private final Map<Operation, int[]> overrides = new EnumMap<Operation, int[]>(Operation.class);
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the connect timeout for every operation without its own
+         * @param value the timeout in milliseconds
+         * @return this builder
+         */
+        public Builder connectTimeout(int value) {
+            this.connectTimeout = check(value);
+            return this;
+        }
+
+        /**
+         * Sets the read timeout for every operation without its own
+         * @param value the timeout in milliseconds
+         * @return this builder
+         */
+        public Builder readTimeout(int value) {
+            this.readTimeout = check(value);
+            return this;
+        }
+
+        /**
+         * Sets the connect timeout for an operation
+         * @param operation the operation
+         * @param value the timeout in milliseconds
+         * @return this builder
+         */
+        public Builder connectTimeout(Operation operation, int value) {
+            override(operation)[0] = check(value);
+            return this;
+        }
+
+        /**
+         * Sets the read timeout for an operation
+         * @param operation the operation
+         * @param value the timeout in milliseconds
+         * @return this builder
+         */
+        public Builder readTimeout(Operation operation, int value) {
+            override(operation)[1] = check(value);
+            return this;
+        }
+
+        /**
+         * Builds the timeouts
+         * @return the timeouts
+         */
+        public Timeouts build() {
+            return new Timeouts(this);
+        }
+
+        private int[] override(Operation operation) {
+            int[] override = overrides.get(operation);
+            if (override == null) {
+                override = new int[]{-1, -1};
+                overrides.put(operation, override);
+            }
+            return override;
+        }
+
+        private static int check(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("timeouts must be at least 1ms");
+            }
+            return value;
+        }
+    }
+}
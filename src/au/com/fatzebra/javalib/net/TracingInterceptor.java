@@ -0,0 +1,258 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.ResponseCode;
+import au.com.fatzebra.javalib.models.FatZebraResponse;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Opens a span for every gateway call and propagates it to the gateway in a W3C traceparent header.
+ *
+ * The span continues the caller's trace when the parent supplier returns a traceparent - for example the header of
+ * the incoming checkout request, or the current span of your tracing library - and starts a new trace otherwise.
+ * Completed spans are handed to the exporter, tagged with the operation, your reference, the HTTP status and the
+ * gateway response code.
+ *
+ * <pre>
+ * Resource.addInterceptor(new TracingInterceptor(
+ *         span -&gt; log.info("{}", span),
+ *         () -&gt; MDC.get("traceparent")));
+ * </pre>
+ *
+ * Creating a span costs a couple of small allocations and a random number, so the interceptor can be left enabled.
+ */
+public class TracingInterceptor implements Interceptor {
+    public static final String TRACEPARENT = "traceparent";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Consumer<Span> exporter;
+    private final Supplier<String> parent;
+
+    /**
+     * Initialises an interceptor which starts a new trace for every call
+     * @param exporter receives each completed span
+     */
+    public TracingInterceptor(Consumer<Span> exporter) {
+        this(exporter, null);
+    }
+
+    /**
+     * Initialises an interceptor which continues the caller's trace
+     * @param exporter receives each completed span
+     * @param parent supplies the traceparent of the caller's span, called on the thread starting the call. It may be
+     *               null, or return null to start a new trace.
+     */
+    public TracingInterceptor(Consumer<Span> exporter, Supplier<String> parent) {
+        if (exporter == null) {
+            throw new IllegalArgumentException("exporter must not be null");
+        }
+        this.exporter = exporter;
+        this.parent = parent;
+    }
+
+    public void beforeSend(GatewayCall call) {
+        String parentHeader = parent == null ? null : parent.get();
+        Span span;
+        if (isValid(parentHeader)) {
+            span = new Span(call, parentHeader.substring(3, 35), randomHex(16), parentHeader.substring(36, 52),
+                    (Character.digit(parentHeader.charAt(54), 16) & 1) == 1);
+        } else {
+            span = new Span(call, randomHex(32), randomHex(16), null, true);
+        }
+        call.setAttribute(this, span);
+        call.setHeader(TRACEPARENT, span.getTraceparent());
+    }
+
+    public void afterReceive(GatewayCall call, FatZebraResponse<?> response) {
+        finish(call, null);
+    }
+
+    public void onError(GatewayCall call, Throwable error) {
+        finish(call, error);
+    }
+
+    private void finish(GatewayCall call, Throwable error) {
+        Span span = (Span) call.getAttribute(this);
+        if (span != null) {
+            span.end(call, error);
+            exporter.accept(span);
+        }
+    }
+
+    /**
+     * Checks a traceparent header of version 00: 00-{32 hex trace ID}-{16 hex parent ID}-{2 hex flags}
+     */
+    static boolean isValid(String traceparent) {
+        if (traceparent == null || traceparent.length() != 55 || !traceparent.startsWith("00-")
+                || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-') {
+            return false;
+        }
+        boolean traceIdZero = true;
+        boolean spanIdZero = true;
+        for (int i = 3; i < 55; i++) {
+            char c = traceparent.charAt(i);
+            if (i == 35 || i == 52) {
+                continue;
+            }
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+            if (c != '0') {
+                if (i < 35) {
+                    traceIdZero = false;
+                } else if (i < 52) {
+                    spanIdZero = false;
+                }
+            }
+        }
+        return !traceIdZero && !spanIdZero;
+    }
+
+    private static String randomHex(int length) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i += 16) {
+            long bits = random.nextLong();
+            if (bits == 0) {
+                // an all zero ID is invalid
+                bits = 1;
+            }
+            for (int j = Math.min(length, i + 16) - 1; j >= i; j--) {
+                chars[j] = HEX[(int) (bits & 0xf)];
+                bits >>>= 4;
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * A completed (or in progress) span for one gateway call
+     */
+    public static final class Span {
+        private final Operation operation;
+        private final String reference;
+        private final String traceId;
+        private final String spanId;
+        private final String parentSpanId;
+        private final boolean sampled;
+        private final long startNanos;
+        private long durationNanos;
+        private int status;
+        private ResponseCode responseCode = ResponseCode.UNKNOWN;
+        private Throwable error;
+
+        private Span(GatewayCall call, String traceId, String spanId, String parentSpanId, boolean sampled) {
+            this.operation = call.getOperation();
+            this.reference = call.getReference();
+            this.traceId = traceId;
+            this.spanId = spanId;
+            this.parentSpanId = parentSpanId;
+            this.sampled = sampled;
+            this.startNanos = call.getStartNanos();
+        }
+
+        private void end(GatewayCall call, Throwable error) {
+            this.durationNanos = System.nanoTime() - startNanos;
+            this.status = call.getStatus();
+            this.responseCode = call.getResponseCode();
+            this.error = error;
+        }
+
+        /**
+         * Gets the traceparent header sent to the gateway
+         * @return the header value
+         */
+        public String getTraceparent() {
+            return "00-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+        }
+
+        /**
+         * Gets the trace ID
+         * @return 32 hex characters
+         */
+        public String getTraceId() {
+            return this.traceId;
+        }
+
+        /**
+         * Gets the ID of this span
+         * @return 16 hex characters
+         */
+        public String getSpanId() {
+            return this.spanId;
+        }
+
+        /**
+         * Gets the ID of the caller's span
+         * @return 16 hex characters, or null if the span started a new trace
+         */
+        public String getParentSpanId() {
+            return this.parentSpanId;
+        }
+
+        /**
+         * Indicates whether the caller asked for the trace to be recorded
+         * @return the sampled flag
+         */
+        public boolean isSampled() {
+            return this.sampled;
+        }
+
+        /**
+         * Gets the operation
+         * @return the operation
+         */
+        public Operation getOperation() {
+            return this.operation;
+        }
+
+        /**
+         * Gets your reference for the transaction
+         * @return the reference, or null
+         */
+        public String getReference() {
+            return this.reference;
+        }
+
+        /**
+         * Gets the duration of the call
+         * @return the duration in nanoseconds
+         */
+        public long getDurationNanos() {
+            return this.durationNanos;
+        }
+
+        /**
+         * Gets the HTTP status of the final attempt
+         * @return the status, or 0 if the gateway did not respond
+         */
+        public int getStatus() {
+            return this.status;
+        }
+
+        /**
+         * Gets the gateway response code
+         * @return the response code, or ResponseCode.UNKNOWN
+         */
+        public ResponseCode getResponseCode() {
+            return this.responseCode;
+        }
+
+        /**
+         * Gets the exception the call failed with
+         * @return the exception, or null if the call succeeded
+         */
+        public Throwable getError() {
+            return this.error;
+        }
+
+        @Override public String toString() {
+            return String.format("<Span trace=%s span=%s parent=%s operation=%s reference=%s status=%d response_code=%d duration=%dus error=%s>",
+                    traceId, spanId, parentSpanId, operation, reference, status, responseCode.getCode(),
+                    durationNanos / 1000, error == null ? null : error.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package au.com.fatzebra.javalib.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * The HTTP transport used by {@link Resource} to exchange requests with the gateway.
+ *
+ * Implementations must be thread safe - a single transport is shared by every request.
+ */
+public interface Transport extends Closeable {
+    /**
+     * Sends the request and returns the response once the status line and headers have been received.
+     * The caller must close the returned response so that the underlying connection can be released.
+     *
+     * @param request the request to be sent
+     * @return the response from the server
+     * @throws IOException if the request could not be sent or the response could not be read
+     */
+    TransportResponse execute(TransportRequest request) throws IOException;
+
+    /**
+     * Sends the request without blocking the calling thread.
+     *
+     * Blocking transports run {@link #execute(TransportRequest)} on the executor provided. Transports backed by
+     * non-blocking I/O should override this to complete the future from their own I/O threads.
+     *
+     * @param request the request to be sent
+     * @param executor the executor for any blocking work
+     * @return a future which completes with the response, or exceptionally with the IOException raised
+     */
+    default CompletableFuture<TransportResponse> executeAsync(final TransportRequest request, Executor executor) {
+        final CompletableFuture<TransportResponse> future = new CompletableFuture<TransportResponse>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(execute(request));
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,172 @@
+package au.com.fatzebra.javalib.net;
+
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Represents a single HTTP request to be sent by a {@link Transport}
+ */
+public class TransportRequest {
+    private final String method;
+    private final URL url;
+    private final Map<String, String> headers;
+    private final String contentType;
+    private final byte[] body;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final Deadline deadline;
+    private final Operation operation;
+    private final Metrics metrics;
+
+    /**
+     * Initialises a new request
+     * @param method the HTTP method (GET, POST etc)
+     * @param url the full URL for the request
+     * @param headers the request headers
+     * @param contentType the content type of the body, or null if there is no body
+     * @param body the request body, or null if there is no body
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param readTimeout the read timeout in milliseconds
+     */
+    public TransportRequest(String method, URL url, Map<String, String> headers, String contentType, byte[] body, int connectTimeout, int readTimeout) {
+        this(method, url, headers, contentType, body, connectTimeout, readTimeout, null);
+    }
+
+    /**
+     * Initialises a new request with a deadline
+     * @param method the HTTP method (GET, POST etc)
+     * @param url the full URL for the request
+     * @param headers the request headers
+     * @param contentType the content type of the body, or null if there is no body
+     * @param body the request body, or null if there is no body
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param readTimeout the read timeout in milliseconds
+     * @param deadline the time by which the response must have been read, or null
+     */
+    public TransportRequest(String method, URL url, Map<String, String> headers, String contentType, byte[] body, int connectTimeout, int readTimeout, Deadline deadline) {
+        this(method, url, headers, contentType, body, connectTimeout, readTimeout, deadline, null, Metrics.NOOP);
+    }
+
+    /**
+     * Initialises a new request for an operation, whose phases are reported to the metrics given
+     * @param method the HTTP method (GET, POST etc)
+     * @param url the full URL for the request
+     * @param headers the request headers
+     * @param contentType the content type of the body, or null if there is no body
+     * @param body the request body, or null if there is no body
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param readTimeout the read timeout in milliseconds
+     * @param deadline the time by which the response must have been read, or null
+     * @param operation the operation, or null
+     * @param metrics the metrics to report to
+     */
+    public TransportRequest(String method, URL url, Map<String, String> headers, String contentType, byte[] body, int connectTimeout, int readTimeout, Deadline deadline, Operation operation, Metrics metrics) {
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.contentType = contentType;
+        this.body = body;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.deadline = deadline;
+        this.operation = operation;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the HTTP method
+     * @return the method
+     */
+    public String getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Gets the request URL
+     * @return the URL
+     */
+    public URL getUrl() {
+        return this.url;
+    }
+
+    /**
+     * Gets the request headers
+     * @return the headers
+     */
+    public Map<String, String> getHeaders() {
+        return this.headers;
+    }
+
+    /**
+     * Gets the content type of the body
+     * @return the content type, or null if there is no body
+     */
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    /**
+     * Gets the request body
+     * @return the body, or null if there is no body
+     */
+    public byte[] getBody() {
+        return this.body;
+    }
+
+    /**
+     * Gets the connect timeout
+     * @return the connect timeout in milliseconds
+     */
+    public int getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    /**
+     * Gets the read timeout
+     * @return the read timeout in milliseconds
+     */
+    public int getReadTimeout() {
+        return this.readTimeout;
+    }
+
+    /**
+     * Gets the deadline. Transports should shorten their timeouts so that connecting, sending and reading the
+     * response all end by the deadline.
+     * @return the deadline, or null if there is none
+     */
+    public Deadline getDeadline() {
+        return this.deadline;
+    }
+
+    /**
+     * Gets the operation the request is for
+     * @return the operation, or null if the request was not made by the library
+     */
+    public Operation getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Gets the metrics which transports report the phases of the request to
+     * @return the metrics, Metrics.NOOP if disabled
+     */
+    public Metrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Gets the connect timeout, shortened to end by the deadline
+     * @return the timeout in milliseconds
+     */
+    public int getEffectiveConnectTimeout() {
+        return deadline == null ? connectTimeout : deadline.cap(connectTimeout);
+    }
+
+    /**
+     * Gets the read timeout, shortened to end by the deadline
+     * @return the timeout in milliseconds
+     */
+    public int getEffectiveReadTimeout() {
+        return deadline == null ? readTimeout : deadline.cap(readTimeout);
+    }
+}
@@ -0,0 +1,62 @@
+package au.com.fatzebra.javalib.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents the response to a {@link TransportRequest}
+ *
+ * The body must be closed once it has been read so that the connection can be returned to the pool.
+ */
+public class TransportResponse implements Closeable {
+    private final int status;
+    private final Map<String, List<String>> headers;
+    private final InputStream body;
+
+    /**
+     * Initialises a new response
+     * @param status the HTTP status code
+     * @param headers the response headers
+     * @param body the response body stream
+     */
+    public TransportResponse(int status, Map<String, List<String>> headers, InputStream body) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * Gets the HTTP status code
+     * @return the status code
+     */
+    public int getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Gets the response headers
+     * @return the headers
+     */
+    public Map<String, List<String>> getHeaders() {
+        return this.headers;
+    }
+
+    /**
+     * Gets the response body
+     * @return the body stream
+     */
+    public InputStream getBody() {
+        return this.body;
+    }
+
+    /**
+     * Closes the response body, releasing the connection
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        this.body.close();
+    }
+}
@@ -0,0 +1,64 @@
+package au.com.fatzebra.javalib.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Transport} built on the JDK HttpURLConnection.
+ *
+ * Connection reuse is left to the JDK keep-alive cache. Use this transport where the JVM wide proxy settings
+ * (https.proxyHost etc) must be honoured, as the {@link PooledTransport} connects directly.
+ */
+public class UrlConnectionTransport implements Transport {
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        Metrics metrics = request.getMetrics();
+        long started = metrics.isEnabled() ? System.nanoTime() : 0;
+        HttpURLConnection conn = (HttpURLConnection) request.getUrl().openConnection();
+        conn.setConnectTimeout(request.getEffectiveConnectTimeout());
+        conn.setReadTimeout(request.getEffectiveReadTimeout());
+        conn.setUseCaches(false);
+        conn.setRequestMethod(request.getMethod());
+        if (request.getHeaders() != null) {
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                conn.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+
+        byte[] body = request.getBody();
+        if (body != null) {
+            conn.setDoOutput(true);
+            if (request.getContentType() != null) {
+                conn.setRequestProperty("Content-Type", request.getContentType());
+            }
+            conn.setFixedLengthStreamingMode(body.length);
+            OutputStream output = conn.getOutputStream();
+            try {
+                output.write(body);
+            } finally {
+                output.close();
+            }
+        }
+
+        int status = conn.getResponseCode();
+        if (metrics.isEnabled()) {
+            // connecting is not reported separately by HttpURLConnection, so it is included here
+            metrics.recordPhase(request.getOperation(), Metrics.Phase.TIME_TO_FIRST_BYTE, System.nanoTime() - started);
+        }
+        InputStream stream = status >= 200 && status < 300 ? conn.getInputStream() : conn.getErrorStream();
+        if (stream == null) {
+            stream = new ByteArrayInputStream(new byte[0]);
+        }
+        Map<String, List<String>> headers = conn.getHeaderFields();
+        return new TransportResponse(status, headers == null ? Collections.<String, List<String>>emptyMap() : headers, stream);
+    }
+
+    public void close() {
+        // connections are owned by the JDK keep-alive cache
+    }
+}
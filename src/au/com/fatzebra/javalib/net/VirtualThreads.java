@@ -0,0 +1,99 @@
+package au.com.fatzebra.javalib.net;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads on Java 21 and later. The library is built for Java 8, so the virtual thread API is found
+ * by reflection; {@link #isSupported()} says whether it was.
+ *
+ * A virtual thread blocked on the gateway releases its carrier thread, so blocking calls can be made from as many
+ * threads as there are requests in flight without a large platform thread pool. The connection pool still bounds
+ * the requests actually sent, and the threads waiting for a connection cost a few hundred bytes each.
+ */
+public final class VirtualThreads {
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+    private static final Method THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method threadPerTaskExecutor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            threadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            // a preview API on Java 19 and 20, which throws unless preview features are enabled
+            factory.invoke(ofVirtual.invoke(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        THREAD_PER_TASK_EXECUTOR = threadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Checks whether this JVM supports virtual threads
+     * @return true on Java 21 and later
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates a factory for named virtual threads
+     * @param prefix the thread name prefix
+     * @return the factory
+     * @throws UnsupportedOperationException before Java 21
+     */
+    public static ThreadFactory newThreadFactory(String prefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+        }
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 1L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads could not be created", e);
+        }
+    }
+
+    /**
+     * Creates an executor which runs each task on a new virtual thread, for use as an async executor
+     * @param prefix the thread name prefix
+     * @return the executor
+     * @throws UnsupportedOperationException before Java 21
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        ThreadFactory factory = newThreadFactory(prefix);
+        try {
+            return (ExecutorService) THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads could not be created", e);
+        }
+    }
+
+    /**
+     * Creates a virtual thread executor, or a fixed pool of daemon platform threads before Java 21
+     * @param prefix the thread name prefix
+     * @param platformThreads the size of the platform thread pool
+     * @return the executor
+     */
+    public static ExecutorService newExecutorOrFixedPool(String prefix, int platformThreads) {
+        return isSupported() ? newExecutor(prefix)
+                : Executors.newFixedThreadPool(platformThreads, new DaemonThreadFactory(prefix));
+    }
+}
@@ -0,0 +1,742 @@
+package au.com.fatzebra.javalib.simulator;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.net.DaemonThreadFactory;
+import au.com.fatzebra.javalib.net.Operation;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * An in-process stand-in for the gateway, for load testing and developing without the sandbox. It serves the
+ * purchases, purchases/{id}, purchases/{id}/capture and refunds endpoints over plain HTTP on the loopback interface,
+ * with the same JSON envelopes as the gateway, and keeps the transactions it creates so they can be found, captured
+ * and refunded.
+ *
+ * Every transaction is approved unless a rule says otherwise. Rules are checked in the order they were added and
+ * the first match decides the reply - a decline, an error response or a dropped connection - so failures can be
+ * keyed off the amount, card number or any other part of the request:
+ *
+ * <pre>
+ * GatewaySimulator simulator = GatewaySimulator.builder()
+ *         .latency(Latency.logNormal(40, 0.5))
+ *         .when(GatewaySimulator.amountCents(51), Reply.decline("51", "Declined - Insufficient Funds"))
+ *         .when(GatewaySimulator.cardNumber("4000000000000002"), Reply.error(503, "Service unavailable"))
+ *         .start();
+ *
+ * FatZebraClient client = FatZebraClient.builder()
+ *         .credentials("TEST", "TEST")
+ *         .gatewayUrl(simulator.getGatewayUrl())
+ *         .build();
+ * </pre>
+ *
+ * Latency is waited out on a timer, so a few threads serve thousands of requests a second whatever the delay.
+ *
+ * Loading the class sets the JVM wide sun.net.httpserver.nodelay system property to true, unless it is already set,
+ * which turns on TCP_NODELAY for every JDK HttpServer in the process created afterwards.
+ */
+public final class GatewaySimulator implements Closeable {
+    private static final String BASE_PATH = "/v1.0/";
+
+    static {
+        // the JDK server writes the headers and body separately, which without TCP_NODELAY waits on the client's
+        // delayed ACK. A value set on the command line is left alone.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ScheduledExecutorService executor;
+    private final List<Rule> rules;
+    private final Latency latency;
+    private final Map<Operation, Latency> latencies;
+    private final int maxTransactions;
+    private final Map<String, Transaction> transactions = new ConcurrentHashMap<String, Transaction>();
+    private final Map<String, String> idsByReference = new ConcurrentHashMap<String, String>();
+    private final ConcurrentLinkedQueue<String> order = new ConcurrentLinkedQueue<String>();
+    private final AtomicInteger stored = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+
+    private GatewaySimulator(Builder builder) throws IOException {
+        this.rules = new ArrayList<Rule>(builder.rules);
+        this.latency = builder.latency;
+        this.latencies = new EnumMap<Operation, Latency>(builder.latencies);
+        this.maxTransactions = builder.maxTransactions;
+        this.executor = Executors.newScheduledThreadPool(builder.threads, new DaemonThreadFactory("fatzebra-simulator"));
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", builder.port), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * Starts building a simulator which approves everything straight away
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Matches transactions whose amount ends in the given cents, e.g. 51 matches 1051 ($10.51)
+     * @param cents the cents, 0 to 99
+     * @return the predicate
+     */
+    public static Predicate<Request> amountCents(int cents) {
+        return request -> request.getOperation() != Operation.FIND && request.getAmount() % 100 == cents;
+    }
+
+    /**
+     * Matches transactions with the card number, including captures and refunds of purchases made with it
+     * @param cardNumber the card number
+     * @return the predicate
+     */
+    public static Predicate<Request> cardNumber(String cardNumber) {
+        return request -> cardNumber.equals(request.getCardNumber());
+    }
+
+    /**
+     * Gets the port the simulator listens on
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the URL to point a context or client at
+     * @return the gateway URL, including the version path
+     */
+    public String getGatewayUrl() {
+        return "http://127.0.0.1:" + getPort() + BASE_PATH;
+    }
+
+    /**
+     * Builds a gateway context pointing at the simulator
+     * @return the context
+     */
+    public GatewayContext newContext() {
+        GatewayContext ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.gateway_url = getGatewayUrl();
+        return ctx;
+    }
+
+    /**
+     * Gets the number of requests received
+     * @return the number of requests
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Gets the number of transactions held for finds, captures and refunds
+     * @return the number of transactions
+     */
+    public int getTransactionCount() {
+        return stored.get();
+    }
+
+    /**
+     * Stops the simulator, dropping any responses still waiting on their latency
+     */
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) {
+        requests.incrementAndGet();
+        Response response;
+        try {
+            response = process(exchange);
+        } catch (JsonParseException | IllegalStateException | ClassCastException | NumberFormatException e) {
+            response = Response.error(400, "Invalid JSON");
+        } catch (IOException | RuntimeException e) {
+            response = Response.error(500, e.toString());
+        }
+        final Response reply = response;
+        long delay = reply.latency == null ? 0 : reply.latency.nextNanos();
+        if (delay > 0) {
+            executor.schedule(() -> send(exchange, reply), delay, TimeUnit.NANOSECONDS);
+        } else {
+            send(exchange, reply);
+        }
+    }
+
+    private Response process(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        JsonObject body = readBody(exchange);
+        if (!path.startsWith(BASE_PATH)) {
+            return Response.error(404, "Not found");
+        }
+        if (exchange.getRequestHeaders().getFirst("Authorization") == null) {
+            return Response.error(401, "Authentication required");
+        }
+        String[] segments = path.substring(BASE_PATH.length()).split("/");
+        if ("POST".equals(method) && segments.length == 1 && "purchases".equals(segments[0])) {
+            return purchase(body);
+        } else if ("GET".equals(method) && segments.length == 2 && "purchases".equals(segments[0])) {
+            return find(segments[1]);
+        } else if ("POST".equals(method) && segments.length == 3 && "purchases".equals(segments[0]) && "capture".equals(segments[2])) {
+            return capture(segments[1], body);
+        } else if ("POST".equals(method) && segments.length == 1 && "refunds".equals(segments[0])) {
+            return refund(body);
+        }
+        return Response.error(404, "Not found");
+    }
+
+    private Response purchase(JsonObject body) {
+        Request request = new Request(Operation.PURCHASE, getInt(body, "amount"), getString(body, "card_number"),
+                getString(body, "reference"), null);
+        Reply reply = match(request);
+        if (reply.kind != Reply.Kind.APPROVE && reply.kind != Reply.Kind.DECLINE) {
+            return Response.of(reply, latency(Operation.PURCHASE));
+        }
+        if (request.amount <= 0) {
+            return Response.error(422, "Amount must be greater than 0").after(latency(Operation.PURCHASE));
+        }
+        if (request.reference == null || request.reference.isEmpty()) {
+            return Response.error(422, "Reference can't be blank").after(latency(Operation.PURCHASE));
+        }
+        Transaction purchase = new Transaction(nextId("P"), request, body, reply);
+        store(purchase);
+        return Response.ok(purchase.toPurchaseJson(), latency(Operation.PURCHASE));
+    }
+
+    private Response find(String idOrReference) {
+        Transaction purchase = lookup(idOrReference);
+        Request request = new Request(Operation.FIND, purchase == null ? 0 : purchase.amount,
+                purchase == null ? null : purchase.cardNumber, purchase == null ? idOrReference : purchase.reference,
+                purchase == null ? idOrReference : purchase.id);
+        Reply reply = match(request);
+        if (reply.kind == Reply.Kind.ERROR || reply.kind == Reply.Kind.DISCONNECT) {
+            return Response.of(reply, latency(Operation.FIND));
+        }
+        if (purchase == null) {
+            return Response.error(404, "Could not find Purchase").after(latency(Operation.FIND));
+        }
+        return Response.ok(purchase.toPurchaseJson(), latency(Operation.FIND));
+    }
+
+    private Response capture(String id, JsonObject body) {
+        Transaction purchase = lookup(id);
+        int amount = getInt(body, "amount");
+        Request request = new Request(Operation.CAPTURE, amount, purchase == null ? null : purchase.cardNumber,
+                purchase == null ? null : purchase.reference, id);
+        Reply reply = match(request);
+        if (reply.kind == Reply.Kind.ERROR || reply.kind == Reply.Kind.DISCONNECT) {
+            return Response.of(reply, latency(Operation.CAPTURE));
+        }
+        if (purchase == null) {
+            return Response.error(404, "Could not find Purchase").after(latency(Operation.CAPTURE));
+        }
+        JsonObject json;
+        synchronized (purchase) {
+            if (!purchase.successful) {
+                return Response.error(422, "Transaction was not approved").after(latency(Operation.CAPTURE));
+            }
+            if (amount <= 0 || purchase.captured + amount > purchase.amount) {
+                return Response.error(422, "Amount exceeds the authorised amount").after(latency(Operation.CAPTURE));
+            }
+            boolean successful = reply.kind == Reply.Kind.APPROVE;
+            if (successful) {
+                purchase.captured += amount;
+            }
+            json = new JsonObject();
+            json.addProperty("id", purchase.id);
+            json.addProperty("amount", amount);
+            json.addProperty("successful", successful);
+            json.addProperty("captured_total", purchase.captured);
+            json.addProperty("response_code", reply.responseCode);
+            json.addProperty("message", reply.message);
+        }
+        return Response.ok(json, latency(Operation.CAPTURE));
+    }
+
+    private Response refund(JsonObject body) {
+        String transactionId = getString(body, "transaction_id");
+        Transaction purchase = transactionId == null ? null : lookup(transactionId);
+        int amount = getInt(body, "amount");
+        Request request = new Request(Operation.REFUND, amount, purchase == null ? null : purchase.cardNumber,
+                getString(body, "reference"), transactionId);
+        Reply reply = match(request);
+        if (reply.kind == Reply.Kind.ERROR || reply.kind == Reply.Kind.DISCONNECT) {
+            return Response.of(reply, latency(Operation.REFUND));
+        }
+        if (purchase == null) {
+            return Response.error(422, "Original transaction could not be found").after(latency(Operation.REFUND));
+        }
+        if (request.reference == null || request.reference.isEmpty()) {
+            return Response.error(422, "Reference can't be blank").after(latency(Operation.REFUND));
+        }
+        Transaction refund;
+        synchronized (purchase) {
+            if (amount <= 0 || purchase.refunded + amount > Math.max(purchase.captured, purchase.amount)) {
+                return Response.error(422, "Amount exceeds the original transaction").after(latency(Operation.REFUND));
+            }
+            refund = new Transaction(nextId("R"), request, null, reply);
+            refund.cardNumber = purchase.cardNumber;
+            refund.cardHolder = purchase.cardHolder;
+            refund.cardExpiry = purchase.cardExpiry;
+            if (refund.successful) {
+                purchase.refunded += amount;
+            }
+        }
+        return Response.ok(refund.toRefundJson(), latency(Operation.REFUND));
+    }
+
+    private Reply match(Request request) {
+        for (Rule rule : rules) {
+            if (rule.condition.test(request)) {
+                return rule.reply;
+            }
+        }
+        return Reply.approve();
+    }
+
+    private Latency latency(Operation operation) {
+        Latency configured = latencies.get(operation);
+        return configured != null ? configured : latency;
+    }
+
+    private Transaction lookup(String idOrReference) {
+        Transaction transaction = transactions.get(idOrReference);
+        if (transaction == null) {
+            String id = idsByReference.get(idOrReference);
+            transaction = id == null ? null : transactions.get(id);
+        }
+        return transaction;
+    }
+
+    private void store(Transaction transaction) {
+        transactions.put(transaction.id, transaction);
+        idsByReference.put(transaction.reference, transaction.id);
+        order.add(transaction.id);
+        // drop the oldest transactions once full, so a long load test runs in constant memory
+        if (stored.incrementAndGet() > maxTransactions) {
+            String oldest = order.poll();
+            if (oldest != null) {
+                Transaction evicted = transactions.remove(oldest);
+                if (evicted != null) {
+                    idsByReference.remove(evicted.reference, evicted.id);
+                }
+                stored.decrementAndGet();
+            }
+        }
+    }
+
+    private String nextId(String type) {
+        return String.format("071-%s-%08X", type, sequence.incrementAndGet());
+    }
+
+    private static JsonObject readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        try {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                return null;
+            }
+            JsonElement json = new JsonParser().parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return json.isJsonObject() ? json.getAsJsonObject() : null;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String getString(JsonObject body, String name) {
+        JsonElement value = body == null ? null : body.get(name);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    private static int getInt(JsonObject body, String name) {
+        JsonElement value = body == null ? null : body.get(name);
+        return value == null || value.isJsonNull() ? 0 : value.getAsInt();
+    }
+
+    private static void send(HttpExchange exchange, Response response) {
+        try {
+            if (response.disconnect) {
+                // closing before the headers are sent closes the connection
+                exchange.close();
+                return;
+            }
+            byte[] body = response.envelope().toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } catch (IOException e) {
+            // the client has gone away
+            exchange.close();
+        }
+    }
+
+    /**
+     * A request as seen by the rules
+     */
+    public static final class Request {
+        private final Operation operation;
+        private final int amount;
+        private final String cardNumber;
+        private final String reference;
+        private final String transactionId;
+
+        Request(Operation operation, int amount, String cardNumber, String reference, String transactionId) {
+            this.operation = operation;
+            this.amount = amount;
+            this.cardNumber = cardNumber;
+            this.reference = reference;
+            this.transactionId = transactionId;
+        }
+
+        /**
+         * Gets the operation
+         * @return the operation
+         */
+        public Operation getOperation() {
+            return this.operation;
+        }
+
+        /**
+         * Gets the amount in cents - of the purchase, capture or refund, or of the purchase found
+         * @return the amount, or 0 if it is not known
+         */
+        public int getAmount() {
+            return this.amount;
+        }
+
+        /**
+         * Gets the card number of the purchase, or of the purchase being captured, refunded or found
+         * @return the card number, or null if it is not known
+         */
+        public String getCardNumber() {
+            return this.cardNumber;
+        }
+
+        /**
+         * Gets the reference of the request, or of the purchase found
+         * @return the reference, or null
+         */
+        public String getReference() {
+            return this.reference;
+        }
+
+        /**
+         * Gets the ID of the purchase being found, captured or refunded
+         * @return the ID, or null for a purchase
+         */
+        public String getTransactionId() {
+            return this.transactionId;
+        }
+
+        @Override public String toString() {
+            return String.format("<Request operation=%s amount=%d reference=%s transaction_id=%s>",
+                    operation, amount, reference, transactionId);
+        }
+    }
+
+    private static final class Rule {
+        final Predicate<Request> condition;
+        final Reply reply;
+
+        Rule(Predicate<Request> condition, Reply reply) {
+            this.condition = condition;
+            this.reply = reply;
+        }
+    }
+
+    /**
+     * A purchase or refund held by the simulator
+     */
+    private static final class Transaction {
+        final String id;
+        final String reference;
+        final int amount;
+        final boolean successful;
+        final String responseCode;
+        final String message;
+        final String currency;
+        final Date date = new Date();
+        String cardNumber;
+        String cardHolder;
+        String cardExpiry;
+        // guarded by this
+        int captured;
+        int refunded;
+
+        Transaction(String id, Request request, JsonObject body, Reply reply) {
+            this.id = id;
+            this.reference = request.reference;
+            this.amount = request.amount;
+            this.successful = reply.kind == Reply.Kind.APPROVE;
+            this.responseCode = reply.responseCode;
+            this.message = reply.message;
+            this.cardNumber = request.cardNumber;
+            this.cardHolder = getString(body, "card_holder");
+            this.cardExpiry = getString(body, "card_expiry");
+            String currency = getString(body, "currency");
+            this.currency = currency == null ? "AUD" : currency;
+            JsonElement capture = body == null ? null : body.get("capture");
+            if (successful && (capture == null || capture.isJsonNull() || capture.getAsBoolean())) {
+                this.captured = amount;
+            }
+        }
+
+        synchronized JsonObject toPurchaseJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("authorization", successful ? String.format("%06d", Math.abs(id.hashCode()) % 1000000) : "0");
+            json.addProperty("id", id);
+            json.addProperty("card_number", mask(cardNumber));
+            json.addProperty("card_holder", cardHolder);
+            json.addProperty("card_expiry", expiryDate(cardExpiry));
+            json.addProperty("card_token", Long.toString(Math.abs((long) id.hashCode()), 36));
+            json.addProperty("amount", amount);
+            json.addProperty("decimal_amount", amount / 100.0);
+            json.addProperty("successful", successful);
+            json.addProperty("message", message);
+            json.addProperty("reference", reference);
+            json.addProperty("currency", currency);
+            json.addProperty("transaction_id", id);
+            json.addProperty("settlement_date", successful ? format("yyyy-MM-dd", date) : null);
+            json.addProperty("transaction_date", format("yyyy-MM-dd'T'HH:mm:ssXXX", date));
+            json.addProperty("response_code", responseCode);
+            json.addProperty("captured", captured > 0);
+            json.addProperty("captured_amount", captured);
+            json.addProperty("captured_total", captured);
+            json.addProperty("rrn", id);
+            json.addProperty("cvv_match", "U");
+            return json;
+        }
+
+        JsonObject toRefundJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("authorization", successful ? String.format("%06d", Math.abs(id.hashCode()) % 1000000) : "0");
+            json.addProperty("id", id);
+            json.addProperty("amount", amount);
+            json.addProperty("reference", reference);
+            json.addProperty("message", message);
+            json.addProperty("card_holder", cardHolder);
+            json.addProperty("card_number", mask(cardNumber));
+            json.addProperty("card_expiry", expiryDate(cardExpiry));
+            json.addProperty("transaction_date", format("yyyy-MM-dd'T'HH:mm:ssXXX", date));
+            json.addProperty("successful", successful);
+            json.addProperty("response_code", responseCode);
+            return json;
+        }
+
+        private static String mask(String cardNumber) {
+            if (cardNumber == null || cardNumber.length() < 13) {
+                return cardNumber;
+            }
+            StringBuilder masked = new StringBuilder(cardNumber);
+            for (int i = 6; i < cardNumber.length() - 4; i++) {
+                masked.setCharAt(i, 'X');
+            }
+            return masked.toString();
+        }
+
+        /**
+         * Converts an expiry of mm/yyyy to the last day of the month, as the gateway reports it
+         */
+        private static String expiryDate(String expiry) {
+            if (expiry == null || !expiry.matches("\\d{1,2}/\\d{4}")) {
+                return null;
+            }
+            String[] parts = expiry.split("/");
+            int month = Integer.parseInt(parts[0]);
+            int year = Integer.parseInt(parts[1]);
+            int days = java.time.YearMonth.of(year, Math.max(1, Math.min(12, month))).lengthOfMonth();
+            return String.format("%04d-%02d-%02d", year, month, days);
+        }
+
+        private static String format(String pattern, Date date) {
+            return new SimpleDateFormat(pattern).format(date);
+        }
+    }
+
+    /**
+     * A response waiting to be sent
+     */
+    private static final class Response {
+        final int status;
+        final JsonElement result;
+        final String error;
+        final boolean disconnect;
+        Latency latency;
+
+        private Response(int status, JsonElement result, String error, boolean disconnect, Latency latency) {
+            this.status = status;
+            this.result = result;
+            this.error = error;
+            this.disconnect = disconnect;
+            this.latency = latency;
+        }
+
+        static Response ok(JsonElement result, Latency latency) {
+            return new Response(200, result, null, false, latency);
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, JsonNull.INSTANCE, message, false, null);
+        }
+
+        static Response of(Reply reply, Latency latency) {
+            if (reply.kind == Reply.Kind.DISCONNECT) {
+                return new Response(0, null, null, true, latency);
+            }
+            return error(reply.status, reply.message).after(latency);
+        }
+
+        Response after(Latency value) {
+            this.latency = value;
+            return this;
+        }
+
+        JsonObject envelope() {
+            JsonObject json = new JsonObject();
+            json.addProperty("successful", error == null);
+            json.add("response", result);
+            JsonArray errors = new JsonArray();
+            if (error != null) {
+                errors.add(new JsonPrimitive(error));
+            }
+            json.add("errors", errors);
+            json.addProperty("test", true);
+            return json;
+        }
+    }
+
+    /**
+     * Builds a {@link GatewaySimulator}
+     */
+    public static final class Builder {
+        private final List<Rule> rules = new ArrayList<Rule>();
+        private final Map<Operation, Latency> latencies = new EnumMap<Operation, Latency>(Operation.class);
+        private Latency latency = Latency.NONE;
+        private int port = 0;
+        private int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        private int maxTransactions = 100000;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a rule. Rules are checked in the order added, and requests no rule matches are approved.
+         * @param condition matches the requests the rule applies to
+         * @param reply the reply to matching requests
+         * @return this builder
+         */
+        public Builder when(Predicate<Request> condition, Reply reply) {
+            if (condition == null || reply == null) {
+                throw new IllegalArgumentException("condition and reply must not be null");
+            }
+            this.rules.add(new Rule(condition, reply));
+            return this;
+        }
+
+        /**
+         * Sets the delay before every response (default none)
+         * @param value the latency
+         * @return this builder
+         */
+        public Builder latency(Latency value) {
+            if (value == null) {
+                throw new IllegalArgumentException("latency must not be null");
+            }
+            this.latency = value;
+            return this;
+        }
+
+        /**
+         * Sets the delay before the responses to one operation
+         * @param operation the operation
+         * @param value the latency
+         * @return this builder
+         */
+        public Builder latency(Operation operation, Latency value) {
+            if (value == null) {
+                throw new IllegalArgumentException("latency must not be null");
+            }
+            this.latencies.put(operation, value);
+            return this;
+        }
+
+        /**
+         * Sets the port to listen on (default 0, any free port)
+         * @param value the port
+         * @return this builder
+         */
+        public Builder port(int value) {
+            this.port = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads serving requests (default the number of processors, at least 2)
+         * @param value the number of threads
+         * @return this builder
+         */
+        public Builder threads(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("threads must be at least 1");
+            }
+            this.threads = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of purchases kept for finds, captures and refunds, after which the oldest are dropped
+         * (default 100000)
+         * @param value the number of transactions
+         * @return this builder
+         */
+        public Builder maxTransactions(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("maxTransactions must be at least 1");
+            }
+            this.maxTransactions = value;
+            return this;
+        }
+
+        /**
+         * Starts the simulator on the loopback interface
+         * @return the running simulator
+         * @throws IOException if the port can not be bound
+         */
+        public GatewaySimulator start() throws IOException {
+            return new GatewaySimulator(this);
+        }
+    }
+}
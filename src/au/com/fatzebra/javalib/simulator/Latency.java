@@ -0,0 +1,61 @@
+package au.com.fatzebra.javalib.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The delay the {@link GatewaySimulator} adds before each response. The simulator waits on a timer rather than a
+ * thread, so long delays do not limit its throughput.
+ */
+public interface Latency {
+    /**
+     * Responds straight away
+     */
+    Latency NONE = () -> 0;
+
+    /**
+     * Samples the delay for one response
+     * @return the delay in nanoseconds
+     */
+    long nextNanos();
+
+    /**
+     * Delays every response by the same time
+     * @param millis the delay in milliseconds
+     * @return the latency
+     */
+    static Latency fixed(long millis) {
+        final long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return () -> nanos;
+    }
+
+    /**
+     * Delays each response by a time picked evenly from a range
+     * @param minMillis the shortest delay in milliseconds
+     * @param maxMillis the longest delay in milliseconds
+     * @return the latency
+     */
+    static Latency uniform(long minMillis, long maxMillis) {
+        if (maxMillis < minMillis) {
+            throw new IllegalArgumentException("maxMillis must not be less than minMillis");
+        }
+        final long min = TimeUnit.MILLISECONDS.toNanos(minMillis);
+        final long max = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        return () -> min == max ? min : ThreadLocalRandom.current().nextLong(min, max + 1);
+    }
+
+    /**
+     * Delays responses with a long tail, as a real gateway does: half are faster than the median, and the spread
+     * grows with sigma (0.5 puts the 99th percentile at about 3x the median)
+     * @param medianMillis the median delay in milliseconds
+     * @param sigma the standard deviation of the log of the delay
+     * @return the latency
+     */
+    static Latency logNormal(double medianMillis, double sigma) {
+        if (!(medianMillis > 0) || sigma < 0) {
+            throw new IllegalArgumentException("medianMillis must be positive and sigma must not be negative");
+        }
+        final double median = medianMillis * 1000000;
+        return () -> (long) (median * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+}
@@ -0,0 +1,73 @@
+package au.com.fatzebra.javalib.simulator;
+
+/**
+ * How the {@link GatewaySimulator} answers a request matched by a rule
+ */
+public final class Reply {
+    enum Kind {
+        APPROVE,
+        DECLINE,
+        ERROR,
+        DISCONNECT
+    }
+
+    private static final Reply APPROVE = new Reply(Kind.APPROVE, 200, "00", "Approved");
+    private static final Reply DISCONNECT = new Reply(Kind.DISCONNECT, 0, null, null);
+
+    final Kind kind;
+    final int status;
+    final String responseCode;
+    final String message;
+
+    private Reply(Kind kind, int status, String responseCode, String message) {
+        this.kind = kind;
+        this.status = status;
+        this.responseCode = responseCode;
+        this.message = message;
+    }
+
+    /**
+     * Approves the transaction (response code 00)
+     * @return the reply
+     */
+    public static Reply approve() {
+        return APPROVE;
+    }
+
+    /**
+     * Processes the transaction but declines it, as the gateway does with a successful response and an unsuccessful
+     * transaction
+     * @param responseCode the response code, e.g. "05" or "51"
+     * @param message the message, e.g. "Declined"
+     * @return the reply
+     */
+    public static Reply decline(String responseCode, String message) {
+        return new Reply(Kind.DECLINE, 200, responseCode, message);
+    }
+
+    /**
+     * Rejects the request with an error envelope, as the gateway does for validation failures (422) or outages (5xx)
+     * @param status the HTTP status
+     * @param message the error message
+     * @return the reply
+     */
+    public static Reply error(int status, String message) {
+        if (status < 400 || status > 599) {
+            throw new IllegalArgumentException("status must be a 4xx or 5xx status");
+        }
+        return new Reply(Kind.ERROR, status, null, message);
+    }
+
+    /**
+     * Closes the connection without responding, which the client sees as a network error. The request is not
+     * processed.
+     * @return the reply
+     */
+    public static Reply disconnect() {
+        return DISCONNECT;
+    }
+
+    @Override public String toString() {
+        return String.format("<Reply %s status=%d response_code=%s message=%s>", kind, status, responseCode, message);
+    }
+}
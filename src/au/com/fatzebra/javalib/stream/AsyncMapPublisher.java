@@ -0,0 +1,221 @@
+package au.com.fatzebra.javalib.stream;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Sends each item of the source through an asynchronous call and publishes the results, with at most maxInFlight
+ * items taken from the source and not yet emitted - whether their call is in flight or its result is waiting for
+ * demand. A slow subscriber therefore holds back the source rather than letting results pile up.
+ *
+ * Supports one subscriber, as the source is consumed as it is read.
+ */
+final class AsyncMapPublisher<I, O> implements Publisher<Result<O>> {
+    private final Publisher<? extends I> source;
+    private final Function<? super I, CompletableFuture<O>> call;
+    private final int maxInFlight;
+    private final boolean ordered;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    AsyncMapPublisher(Publisher<? extends I> source, Function<? super I, CompletableFuture<O>> call, int maxInFlight,
+                      boolean ordered) {
+        this.source = source;
+        this.call = call;
+        this.maxInFlight = maxInFlight;
+        this.ordered = ordered;
+    }
+
+    public void subscribe(Subscriber<? super Result<O>> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber must not be null");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                public void request(long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+            return;
+        }
+        source.subscribe(new Operator(subscriber));
+    }
+
+    /**
+     * A result slot, completed by the call's future
+     */
+    private static final class Slot<O> {
+        final long index;
+        volatile Result<O> result;
+
+        Slot(long index) {
+            this.index = index;
+        }
+    }
+
+    private final class Operator implements Subscriber<I>, Subscription {
+        private final Subscriber<? super Result<O>> downstream;
+        // ordered: every slot in source order; unordered: completed slots in completion order
+        private final Queue<Slot<O>> slots = new ConcurrentLinkedQueue<Slot<O>>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private volatile Subscription upstream;
+        private volatile boolean done;
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+        // a non-positive request, reported once the stream is cancelled
+        private volatile Throwable rejected;
+        private boolean terminated;
+        private long index;
+
+        Operator(Subscriber<? super Result<O>> downstream) {
+            this.downstream = downstream;
+        }
+
+        public void onSubscribe(Subscription subscription) {
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+            downstream.onSubscribe(this);
+            if (!cancelled) {
+                subscription.request(maxInFlight);
+            }
+        }
+
+        public void onNext(I item) {
+            if (done || cancelled) {
+                return;
+            }
+            if (item == null) {
+                upstream.cancel();
+                onError(new NullPointerException("The source published a null item"));
+                return;
+            }
+            final Slot<O> slot = new Slot<O>(index++);
+            if (ordered) {
+                slots.offer(slot);
+            }
+            active.incrementAndGet();
+            CompletableFuture<O> future;
+            try {
+                future = call.apply(item);
+            } catch (RuntimeException e) {
+                future = new CompletableFuture<O>();
+                future.completeExceptionally(e);
+            }
+            future.whenComplete((value, failure) -> {
+                slot.result = failure == null ? Result.<O>success(slot.index, value)
+                        : Result.<O>failure(slot.index, unwrap(failure));
+                if (!ordered) {
+                    slots.offer(slot);
+                }
+                active.decrementAndGet();
+                drain();
+            });
+        }
+
+        public void onError(Throwable failure) {
+            if (done) {
+                return;
+            }
+            error = failure;
+            done = true;
+            drain();
+        }
+
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                // reported by drain, so it cannot overlap an onNext on another thread
+                rejected = new IllegalArgumentException("Requested " + n + " items, which must be positive");
+                cancel();
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                upstream.cancel();
+                // calls already sent complete, but their results are dropped
+                drain();
+            }
+        }
+
+        /**
+         * Emits what the subscriber has asked for, on whichever thread gets here first, and finishes the stream
+         * once the source is done and every result has been emitted
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (cancelled || terminated) {
+                    slots.clear();
+                    if (rejected != null && !terminated) {
+                        terminated = true;
+                        downstream.onError(rejected);
+                    }
+                } else {
+                    long demand = requested.get();
+                    long emitted = 0;
+                    while (emitted != demand) {
+                        Slot<O> head = slots.peek();
+                        if (head == null || head.result == null || cancelled) {
+                            break;
+                        }
+                        slots.poll();
+                        downstream.onNext(head.result);
+                        emitted++;
+                    }
+                    if (emitted > 0) {
+                        if (demand != Long.MAX_VALUE) {
+                            requested.addAndGet(-emitted);
+                        }
+                        if (!done && !cancelled) {
+                            // each result emitted frees a slot for the next item
+                            upstream.request(emitted);
+                        }
+                    }
+                    if (done && !cancelled && active.get() == 0 && slots.isEmpty()) {
+                        terminated = true;
+                        if (error != null) {
+                            downstream.onError(error);
+                        } else {
+                            downstream.onComplete();
+                        }
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+}
@@ -0,0 +1,16 @@
+package au.com.fatzebra.javalib.stream;
+
+/**
+ * A source of items which a {@link Subscriber} pulls at its own pace. The same contract as
+ * java.util.concurrent.Flow.Publisher and org.reactivestreams.Publisher, which the library can not depend on while it
+ * supports Java 8 - adapting either is a matter of forwarding each method.
+ *
+ * @param <T> the item type
+ */
+public interface Publisher<T> {
+    /**
+     * Adds a subscriber, which is called back with onSubscribe and then receives items as it requests them
+     * @param subscriber the subscriber
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+}
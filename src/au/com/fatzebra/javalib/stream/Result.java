@@ -0,0 +1,65 @@
+package au.com.fatzebra.javalib.stream;
+
+/**
+ * The outcome of one transaction in a stream: the response, or the exception the call failed with. A declined
+ * transaction is a successful call - check the response's successful flag.
+ *
+ * @param <T> the response type
+ */
+public final class Result<T> {
+    private final long index;
+    private final T value;
+    private final Throwable error;
+
+    private Result(long index, T value, Throwable error) {
+        this.index = index;
+        this.value = value;
+        this.error = error;
+    }
+
+    static <T> Result<T> success(long index, T value) {
+        return new Result<T>(index, value, null);
+    }
+
+    static <T> Result<T> failure(long index, Throwable error) {
+        return new Result<T>(index, null, error);
+    }
+
+    /**
+     * Gets the position of the request in the source stream, counting from 0, to match results to requests when
+     * they are emitted as they complete
+     * @return the index
+     */
+    public long getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Checks whether the call completed with a response
+     * @return true if there is a response, false if there is an error
+     */
+    public boolean isSuccess() {
+        return this.error == null;
+    }
+
+    /**
+     * Gets the response
+     * @return the response, or null if the call failed
+     */
+    public T getValue() {
+        return this.value;
+    }
+
+    /**
+     * Gets the exception the call failed with - an IOException, NetworkError, APIError or RuntimeException
+     * @return the exception, or null if the call succeeded
+     */
+    public Throwable getError() {
+        return this.error;
+    }
+
+    @Override public String toString() {
+        return error == null ? String.format("<Result index=%d value=%s>", index, value)
+                : String.format("<Result index=%d error=%s>", index, error);
+    }
+}
@@ -0,0 +1,33 @@
+package au.com.fatzebra.javalib.stream;
+
+/**
+ * Receives the items of a {@link Publisher}. The same contract as java.util.concurrent.Flow.Subscriber: calls are
+ * made one at a time, onNext only as often as requested through the subscription, and onError or onComplete at most
+ * once, last.
+ *
+ * @param <T> the item type
+ */
+public interface Subscriber<T> {
+    /**
+     * Called before any other method with the subscription to request items through
+     * @param subscription the subscription
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Called with each requested item
+     * @param item the item, never null
+     */
+    void onNext(T item);
+
+    /**
+     * Called when the publisher fails. No further calls follow.
+     * @param error the failure
+     */
+    void onError(Throwable error);
+
+    /**
+     * Called when the publisher has no more items. No further calls follow.
+     */
+    void onComplete();
+}
@@ -0,0 +1,17 @@
+package au.com.fatzebra.javalib.stream;
+
+/**
+ * Links a {@link Subscriber} to its {@link Publisher}. The same contract as java.util.concurrent.Flow.Subscription.
+ */
+public interface Subscription {
+    /**
+     * Asks for up to n more items
+     * @param n the number of items, which must be positive; Long.MAX_VALUE means no limit
+     */
+    void request(long n);
+
+    /**
+     * Stops the publisher sending items. Items already on their way may still arrive.
+     */
+    void cancel();
+}
@@ -0,0 +1,129 @@
+package au.com.fatzebra.javalib.stream;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.models.CaptureRequest;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import au.com.fatzebra.javalib.models.Refund;
+import au.com.fatzebra.javalib.models.RefundRequest;
+
+/**
+ * Turns a stream of requests into a stream of gateway results, for pipelines built on Reactive Streams libraries or
+ * java.util.concurrent.Flow. Each request is sent with the async API as soon as it arrives, and results are emitted
+ * as the subscriber asks for them.
+ *
+ * Backpressure runs end to end: at most maxInFlight requests are taken from the source and not yet emitted, so a
+ * subscriber which stops requesting stops the source too, and the client never holds more than maxInFlight
+ * responses. A failed request is emitted as a failed {@link Result} and does not end the stream.
+ *
+ * <pre>
+ * Publisher&lt;Result&lt;Purchase&gt;&gt; purchases = TransactionStreams.builder(ctx)
+ *         .maxInFlight(32)
+ *         .build()
+ *         .purchases(requests);
+ * </pre>
+ *
+ * Each publisher returned supports one subscriber.
+ */
+public final class TransactionStreams {
+    private final GatewayContext ctx;
+    private final int maxInFlight;
+    private final boolean ordered;
+
+    private TransactionStreams(Builder builder) {
+        this.ctx = builder.ctx;
+        this.maxInFlight = builder.maxInFlight;
+        this.ordered = builder.ordered;
+    }
+
+    /**
+     * Starts building streams with at most 16 requests in flight, emitting results in request order
+     * @param ctx the gateway context
+     * @return the builder
+     */
+    public static Builder builder(GatewayContext ctx) {
+        return new Builder(ctx);
+    }
+
+    /**
+     * Sends each purchase request to the gateway
+     * @param requests the purchase requests
+     * @return the results, indexed by the position of their request
+     */
+    public Publisher<Result<Purchase>> purchases(Publisher<? extends PurchaseRequest> requests) {
+        return new AsyncMapPublisher<PurchaseRequest, Purchase>(requests,
+                request -> Purchase.createAsync(request, ctx), maxInFlight, ordered);
+    }
+
+    /**
+     * Sends each refund request to the gateway
+     * @param requests the refund requests
+     * @return the results, indexed by the position of their request
+     */
+    public Publisher<Result<Refund>> refunds(Publisher<? extends RefundRequest> requests) {
+        return new AsyncMapPublisher<RefundRequest, Refund>(requests, request -> request.reference == null
+                ? Refund.createAsync(request.amount, request.transaction_id, ctx)
+                : Refund.createAsync(request.amount, request.transaction_id, request.reference, ctx),
+                maxInFlight, ordered);
+    }
+
+    /**
+     * Sends each capture to the gateway, using its amount and authorisation ID
+     * @param requests the captures
+     * @return the results, indexed by the position of their request
+     */
+    public Publisher<Result<CaptureRequest>> captures(Publisher<? extends CaptureRequest> requests) {
+        return new AsyncMapPublisher<CaptureRequest, CaptureRequest>(requests,
+                request -> CaptureRequest.createAsync(request.amount, request.id, ctx), maxInFlight, ordered);
+    }
+
+    /**
+     * Builds {@link TransactionStreams}
+     */
+    public static final class Builder {
+        private final GatewayContext ctx;
+        private int maxInFlight = 16;
+        private boolean ordered = true;
+
+        private Builder(GatewayContext ctx) {
+            if (ctx == null) {
+                throw new IllegalArgumentException("ctx must not be null");
+            }
+            this.ctx = ctx;
+        }
+
+        /**
+         * Sets the most requests taken from the source and not yet emitted (default 16). Requests beyond the
+         * connection pool size wait for a connection, so this is usually no more than the pool size.
+         * @param value the number of requests
+         * @return this builder
+         */
+        public Builder maxInFlight(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("maxInFlight must be at least 1");
+            }
+            this.maxInFlight = value;
+            return this;
+        }
+
+        /**
+         * Sets whether results are emitted in request order (default true). Unordered results are emitted as they
+         * complete, so one slow request does not hold back the rest; {@link Result#getIndex()} gives the position
+         * of the request.
+         * @param value true to emit results in request order
+         * @return this builder
+         */
+        public Builder ordered(boolean value) {
+            this.ordered = value;
+            return this;
+        }
+
+        /**
+         * Builds the streams
+         * @return the streams
+         */
+        public TransactionStreams build() {
+            return new TransactionStreams(this);
+        }
+    }
+}
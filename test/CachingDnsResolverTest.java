@@ -0,0 +1,116 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.models.Purchase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachingDnsResolverTest {
+    private static final String DNS_CACHE_TTL_PROPERTY_NAME = "networkaddress.cache.ttl";
+
+    /**
+     * A resolver which counts its lookups and hands out a new address for each one
+     */
+    private static class CountingResolver implements DnsResolver {
+        final AtomicInteger lookups = new AtomicInteger();
+
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            int lookup = lookups.incrementAndGet();
+            return new InetAddress[]{InetAddress.getByAddress(host, new byte[]{10, 0, 0, (byte) lookup})};
+        }
+    }
+
+    @Test
+    public void testConcurrentHitsShareOneLookup() throws Exception {
+        final CountingResolver counting = new CountingResolver();
+        final CachingDnsResolver resolver = new CachingDnsResolver(counting, 60000);
+        resolver.resolve("gateway.example");
+
+        final String ttlBefore = Security.getProperty(DNS_CACHE_TTL_PROPERTY_NAME);
+        final Set<String> ttlsSeen = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 16; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 1000; i++) {
+                        Assert.assertEquals("10.0.0.1", resolver.resolve("gateway.example")[0].getHostAddress());
+                        ttlsSeen.add(String.valueOf(Security.getProperty(DNS_CACHE_TTL_PROPERTY_NAME)));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Assert.assertEquals(1, counting.lookups.get());
+        Assert.assertEquals(Collections.singleton(String.valueOf(ttlBefore)), ttlsSeen);
+        Assert.assertEquals(ttlBefore, Security.getProperty(DNS_CACHE_TTL_PROPERTY_NAME));
+    }
+
+    @Test
+    public void testRefreshesInBackgroundAndExpires() throws Exception {
+        CountingResolver counting = new CountingResolver();
+        // refresh runs on the calling thread so the test is deterministic
+        CachingDnsResolver resolver = new CachingDnsResolver(counting, 200, Runnable::run);
+
+        Assert.assertEquals("10.0.0.1", resolver.resolve("gateway.example")[0].getHostAddress());
+        Thread.sleep(160);
+        // past the refresh point the cached address is served while the refresh runs
+        Assert.assertEquals("10.0.0.1", resolver.resolve("gateway.example")[0].getHostAddress());
+        Assert.assertEquals(2, counting.lookups.get());
+        Assert.assertEquals("10.0.0.2", resolver.resolve("gateway.example")[0].getHostAddress());
+
+        Thread.sleep(250);
+        Assert.assertEquals("10.0.0.3", resolver.resolve("gateway.example")[0].getHostAddress());
+        Assert.assertEquals(3, counting.lookups.get());
+    }
+
+    @Test
+    public void testConcurrentRequestsLeaveJvmDnsCacheAlone() throws Exception {
+        final String ttlBefore = Security.getProperty(DNS_CACHE_TTL_PROPERTY_NAME);
+        final Set<String> ttlsSeen = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final GatewayContext ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.transport = new ScriptedTransport().otherwise(request -> {
+            ttlsSeen.add(String.valueOf(Security.getProperty(DNS_CACHE_TTL_PROPERTY_NAME)));
+            return ScriptedTransport.APPROVED;
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Purchase>> futures = new ArrayList<Future<Purchase>>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(pool.submit(() -> Purchase.find("071-P-ABC123D5", ctx)));
+            }
+            for (Future<Purchase> future : futures) {
+                Assert.assertEquals("071-P-ABC123D5", future.get(10, TimeUnit.SECONDS).id);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Assert.assertEquals(Collections.singleton(String.valueOf(ttlBefore)), ttlsSeen);
+        Assert.assertEquals(ttlBefore, Security.getProperty(DNS_CACHE_TTL_PROPERTY_NAME));
+    }
+}
@@ -0,0 +1,108 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.errors.APIError;
+import au.com.fatzebra.javalib.errors.BulkheadFullError;
+import au.com.fatzebra.javalib.errors.CircuitOpenError;
+import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.models.Purchase;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class CircuitBreakerTest {
+    private ScriptedTransport transport;
+    private GatewayContext ctx;
+    private final List<String> transitions = new CopyOnWriteArrayList<String>();
+
+    @Before
+    public void setUp() {
+        transport = new ScriptedTransport().otherwise(new ConnectException("Connection refused"));
+        ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.transport = transport;
+        ctx.retryPolicy = RetryPolicy.NONE;
+        ctx.circuitBreakerPolicy = CircuitBreakerPolicy.builder()
+                .failureThreshold(2)
+                .openDuration(50)
+                .listener((breaker, from, to) -> transitions.add(breaker.getOperation() + " " + from + "->" + to))
+                .build();
+    }
+
+    private void assertFindFails(Class<? extends NetworkError> expected) throws Exception {
+        assertFindFails("071-P-ABC123D5", expected);
+    }
+
+    private void assertFindFails(String id, Class<? extends NetworkError> expected) throws Exception {
+        try {
+            Purchase.find(id, ctx);
+            Assert.fail("Expected " + expected.getSimpleName());
+        } catch (NetworkError ex) {
+            Assert.assertEquals(expected, ex.getClass());
+        }
+    }
+
+    @Test
+    public void testOpensAndRecovers() throws Exception {
+        assertFindFails(NetworkError.class);
+        assertFindFails(NetworkError.class);
+        assertFindFails(CircuitOpenError.class);
+        Assert.assertEquals(2, transport.count());
+        Assert.assertEquals(CircuitBreaker.State.OPEN, ctx.getCircuitBreaker(Operation.FIND).getState());
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, ctx.getCircuitBreaker(Operation.PURCHASE).getState());
+
+        Thread.sleep(60);
+        transport.otherwise(ScriptedTransport.APPROVED);
+        Assert.assertTrue(Purchase.find("071-P-ABC123D5", ctx).successful);
+        Assert.assertEquals(Arrays.asList("FIND CLOSED->OPEN", "FIND OPEN->HALF_OPEN", "FIND HALF_OPEN->CLOSED"), transitions);
+    }
+
+    @Test
+    public void testFailedTrialReopens() throws Exception {
+        assertFindFails(NetworkError.class);
+        assertFindFails(NetworkError.class);
+        Thread.sleep(60);
+        assertFindFails(NetworkError.class);
+        assertFindFails(CircuitOpenError.class);
+        Assert.assertEquals(3, transport.count());
+        Assert.assertEquals(Arrays.asList("FIND CLOSED->OPEN", "FIND OPEN->HALF_OPEN", "FIND HALF_OPEN->OPEN"), transitions);
+    }
+
+    @Test
+    public void testRejectionsDoNotCountAsFailures() throws Exception {
+        transport.otherwise(ScriptedTransport.INVALID);
+        for (int i = 0; i < 5; i++) {
+            try {
+                Purchase.find("071-P-ABC123D5", ctx);
+                Assert.fail("Expected an APIError");
+            } catch (APIError ex) {
+                Assert.assertEquals(422, ex.getStatus());
+            }
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, ctx.getCircuitBreaker(Operation.FIND).getState());
+    }
+
+    @Test
+    public void testBulkheadCapsRequestsInFlight() throws Exception {
+        ctx.circuitBreakerPolicy = CircuitBreakerPolicy.builder().maxConcurrentCalls(1).build();
+        transport.otherwise(ScriptedTransport.APPROVED);
+        transport.hold();
+
+        CompletableFuture<Purchase> first = Purchase.findAsync("071-P-ABC123D5", ctx);
+        while (ctx.getCircuitBreaker(Operation.FIND).getInFlight() == 0 || transport.count() == 0) {
+            Thread.sleep(1);
+        }
+        assertFindFails("071-P-ABC123D6", BulkheadFullError.class);
+
+        transport.release();
+        Assert.assertTrue(first.get(5, TimeUnit.SECONDS).successful);
+        Assert.assertEquals(0, ctx.getCircuitBreaker(Operation.FIND).getInFlight());
+        Assert.assertTrue(Purchase.find("071-P-ABC123D5", ctx).successful);
+    }
+}
@@ -0,0 +1,116 @@
+package au.com.fatzebra.javalib;
+
+import au.com.fatzebra.javalib.errors.CircuitOpenError;
+import au.com.fatzebra.javalib.net.CircuitBreaker;
+import au.com.fatzebra.javalib.net.CircuitBreakerPolicy;
+import au.com.fatzebra.javalib.net.Metrics;
+import au.com.fatzebra.javalib.net.Operation;
+import au.com.fatzebra.javalib.net.RetryPolicy;
+import au.com.fatzebra.javalib.net.ScriptedTransport;
+import au.com.fatzebra.javalib.net.TransportRequest;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ClientRegistryTest {
+    private ScriptedTransport transport;
+    private ClientRegistry registry;
+
+    @Before
+    public void setUp() {
+        transport = new ScriptedTransport();
+        registry = ClientRegistry.builder()
+                .transport(transport)
+                .retryPolicy(RetryPolicy.NONE)
+                .circuitBreakerPolicy(CircuitBreakerPolicy.builder().failureThreshold(2).build())
+                .build();
+    }
+
+    /**
+     * Counts the distinct Authorization headers sent
+     */
+    private int merchants() {
+        Set<String> merchants = new HashSet<String>();
+        for (TransportRequest request : transport.requests) {
+            merchants.add(request.getHeaders().get("Authorization"));
+        }
+        return merchants.size();
+    }
+
+    @Test
+    public void testMerchantsShareTransportButNotBreakers() throws Exception {
+        FatZebraClient a = registry.register("a", "merchant-a", "token-a");
+        FatZebraClient b = registry.register("b", "merchant-b", "token-b");
+        final String failing = a.context().getRequestHeaders().asMap().get("Authorization");
+        transport.otherwise(request -> failing.equals(request.getHeaders().get("Authorization"))
+                ? new ConnectException("Connection refused") : ScriptedTransport.APPROVED);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                registry.get("a").findPurchase("071-P-ABC123D5");
+                Assert.fail("Expected a NetworkError");
+            } catch (au.com.fatzebra.javalib.errors.NetworkError e) {
+                Assert.assertFalse(e instanceof CircuitOpenError);
+            }
+        }
+        try {
+            registry.get("a").findPurchase("071-P-ABC123D5");
+            Assert.fail("Expected a CircuitOpenError");
+        } catch (CircuitOpenError e) {
+            // expected
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN, a.getCircuitBreaker(Operation.FIND).getState());
+        Assert.assertEquals("merchant-a", a.getCircuitBreaker(Operation.FIND).getUsername());
+
+        Assert.assertTrue(registry.get("b").findPurchase("071-P-ABC123D5").successful);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, b.getCircuitBreaker(Operation.FIND).getState());
+        Assert.assertEquals(2, merchants());
+    }
+
+    @Test
+    public void testReplaceAndRemove() throws Exception {
+        FatZebraClient original = registry.register("a", "merchant-a", "token-a");
+        FatZebraClient rotated = registry.register("a", "merchant-a", "token-rotated");
+        Assert.assertNotSame(original, rotated);
+        Assert.assertSame(rotated, registry.get("a"));
+        Assert.assertEquals(1, registry.size());
+
+        // a client removed from the registry keeps working for requests already holding it
+        Assert.assertSame(rotated, registry.remove("a"));
+        Assert.assertNull(registry.get("a"));
+        Assert.assertTrue(rotated.findPurchase("071-P-ABC123D5").successful);
+        Assert.assertTrue(original.findPurchase("071-P-ABC123D5").successful);
+        Assert.assertEquals(2, merchants());
+        Assert.assertTrue(registry.getMerchantIds().isEmpty());
+    }
+
+    @Test
+    public void testMerchantsCanHaveTheirOwnMetrics() throws Exception {
+        final List<Operation> callsA = new CopyOnWriteArrayList<Operation>();
+        final List<Operation> callsB = new CopyOnWriteArrayList<Operation>();
+        registry.register("a", "merchant-a", "token-a", new Metrics() {
+            @Override public void recordCall(Operation operation, Outcome outcome, ResponseCode responseCode, long nanos) {
+                callsA.add(operation);
+            }
+        });
+        registry.register("b", "merchant-b", "token-b", new Metrics() {
+            @Override public void recordCall(Operation operation, Outcome outcome, ResponseCode responseCode, long nanos) {
+                callsB.add(operation);
+            }
+        });
+
+        registry.get("a").findPurchase("071-P-ABC123D5");
+        registry.get("a").findPurchase("071-P-ABC123D5");
+        registry.get("b").findPurchase("071-P-ABC123D5");
+
+        Assert.assertEquals(Arrays.asList(Operation.FIND, Operation.FIND), callsA);
+        Assert.assertEquals(Arrays.asList(Operation.FIND), callsB);
+    }
+}
@@ -0,0 +1,124 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.errors.DeadlineExceededError;
+import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.models.Purchase;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class DeadlineTest {
+    /**
+     * Takes a fixed time to approve, timing out like a socket would when the read timeout is shorter
+     */
+    private static ScriptedTransport.Responder slow(final long delay) {
+        return request -> {
+            int timeout = request.getEffectiveReadTimeout();
+            try {
+                Thread.sleep(Math.min(delay, timeout));
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return delay > timeout ? new SocketTimeoutException("Read timed out") : ScriptedTransport.APPROVED;
+        };
+    }
+
+    private ScriptedTransport transport;
+    private GatewayContext ctx;
+
+    @Before
+    public void setUp() {
+        transport = new ScriptedTransport();
+        ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.transport = transport;
+        ctx.retryPolicy = RetryPolicy.builder().backoff(0, 0).build();
+        ctx.circuitBreakerPolicy = CircuitBreakerPolicy.DISABLED;
+    }
+
+    @Test
+    public void testTimeoutsPerOperation() throws Exception {
+        ctx.timeouts = Timeouts.builder().connectTimeout(2000).readTimeout(30000).readTimeout(Operation.FIND, 5000).build();
+        Purchase.find("071-P-ABC123D5", ctx);
+
+        TransportRequest request = transport.requests.get(0);
+        Assert.assertEquals(2000, request.getConnectTimeout());
+        Assert.assertEquals(5000, request.getReadTimeout());
+        Assert.assertNull(request.getDeadline());
+        Assert.assertEquals(30000, ctx.timeouts.getReadTimeout(Operation.PURCHASE));
+    }
+
+    @Test
+    public void testReadTimeoutIsReportedAsTimeout() throws Exception {
+        ctx.timeouts = Timeouts.of(1000, 50);
+        ctx.retryPolicy = RetryPolicy.NONE;
+        transport.otherwise(slow(200));
+        try {
+            Purchase.find("071-P-ABC123D5", ctx);
+            Assert.fail("Expected a NetworkError");
+        } catch (NetworkError e) {
+            Assert.assertTrue(e.getTimeout());
+            Assert.assertFalse(e instanceof DeadlineExceededError);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void testDeadlineCapsReadTimeoutAndStopsRetries() throws Exception {
+        transport.otherwise(slow(500));
+        long started = System.nanoTime();
+        try (Deadline.Scope scope = Deadline.after(150, TimeUnit.MILLISECONDS).attach()) {
+            Purchase.find("071-P-ABC123D5", ctx);
+            Assert.fail("Expected a DeadlineExceededError");
+        } catch (DeadlineExceededError e) {
+            Assert.assertTrue(e.getTimeout());
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 450);
+        Assert.assertEquals(1, transport.requests.size());
+        Assert.assertTrue(transport.requests.get(0).getEffectiveReadTimeout() <= 150);
+        Assert.assertNull(Deadline.current());
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void testEarlierDeadlineWins() {
+        Deadline outer = Deadline.after(100, TimeUnit.MILLISECONDS);
+        try (Deadline.Scope a = outer.attach()) {
+            try (Deadline.Scope b = Deadline.after(10, TimeUnit.SECONDS).attach()) {
+                Assert.assertSame(outer, Deadline.current());
+            }
+            Assert.assertSame(outer, Deadline.current());
+        }
+        Assert.assertNull(Deadline.current());
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void testAsyncCallFailsAtDeadline() throws Exception {
+        transport.otherwise(slow(1000));
+        long started = System.nanoTime();
+        try (Deadline.Scope scope = Deadline.after(100, TimeUnit.MILLISECONDS).attach()) {
+            Purchase.findAsync("071-P-ABC123D5", ctx).get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected a DeadlineExceededError");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof DeadlineExceededError);
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 900);
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void testAsyncCallWithinDeadline() throws Exception {
+        transport.otherwise(slow(10));
+        Purchase purchase;
+        try (Deadline.Scope scope = Deadline.after(5, TimeUnit.SECONDS).attach()) {
+            purchase = Purchase.findAsync("071-P-ABC123D5", ctx).get(5, TimeUnit.SECONDS);
+        }
+        Assert.assertTrue(purchase.successful);
+    }
+}
@@ -0,0 +1,129 @@
+package au.com.fatzebra.javalib.batch;
+
+import au.com.fatzebra.javalib.net.VirtualThreads;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FanOutTest {
+    @Test
+    public void testJoinsResultsInForkOrder() throws Exception {
+        try (FanOut<Integer> fanOut = FanOut.open()) {
+            for (int i = 0; i < 50; i++) {
+                final int value = i;
+                fanOut.fork(() -> {
+                    Thread.sleep(50 - value);
+                    return value;
+                });
+            }
+            List<Integer> results = fanOut.join();
+            Assert.assertEquals(50, results.size());
+            for (int i = 0; i < 50; i++) {
+                Assert.assertEquals(i, (int) results.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testFirstFailureCancelsTheRest() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger interrupted = new AtomicInteger();
+        FanOut<String> fanOut = FanOut.open();
+        try {
+            fanOut.fork(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                    throw e;
+                }
+                return "slow";
+            });
+            started.await();
+            fanOut.fork(() -> {
+                throw new IOException("declined by the network");
+            });
+            fanOut.join();
+            Assert.fail("the failure was not thrown");
+        } catch (ExecutionException e) {
+            Assert.assertEquals("declined by the network", e.getCause().getMessage());
+            // calls forked after a failure are not run
+            Assert.assertTrue(fanOut.fork(() -> "late").isCancelled());
+        } finally {
+            fanOut.close();
+        }
+        Assert.assertEquals(1, interrupted.get());
+    }
+
+    @Test
+    public void testBoundsConcurrency() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        try (FanOut<Void> fanOut = FanOut.open(3)) {
+            for (int i = 0; i < 20; i++) {
+                fanOut.fork(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(5);
+                    running.decrementAndGet();
+                    return null;
+                });
+            }
+            Assert.assertEquals(20, fanOut.join().size());
+        }
+        Assert.assertEquals(3, peak.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testInterruptedForkCancelsTheRest() throws Exception {
+        final CountDownLatch never = new CountDownLatch(1);
+        try (FanOut<Void> fanOut = FanOut.open(1)) {
+            fanOut.fork(() -> {
+                never.await();
+                return null;
+            });
+            Thread.currentThread().interrupt();
+            try {
+                fanOut.fork(() -> null);
+                Assert.fail("Expected the fork to be interrupted");
+            } catch (InterruptedException e) {
+                // expected
+            }
+            try {
+                fanOut.join();
+                Assert.fail("Expected the blocked call to be cancelled");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof InterruptedException);
+            }
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsMatchTheJavaVersion() throws Exception {
+        String version = System.getProperty("java.specification.version");
+        boolean java21 = !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+        Assert.assertEquals(java21, VirtualThreads.isSupported());
+
+        ExecutorService executor = VirtualThreads.newExecutorOrFixedPool("fanout-test", 2);
+        try {
+            Assert.assertEquals("ran", executor.submit(() -> "ran").get());
+        } finally {
+            executor.shutdown();
+        }
+        if (!java21) {
+            try {
+                VirtualThreads.newExecutor("fanout-test");
+                Assert.fail("created virtual threads before Java 21");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        }
+    }
+}
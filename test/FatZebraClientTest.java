@@ -0,0 +1,138 @@
+package au.com.fatzebra.javalib;
+
+import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.net.RateLimitPolicy;
+import au.com.fatzebra.javalib.net.ScriptedTransport;
+import au.com.fatzebra.javalib.net.TransportRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class FatZebraClientTest {
+    /**
+     * Gets the Authorization header and host of every request
+     */
+    private static Set<String> seen(ScriptedTransport transport) {
+        Set<String> seen = new HashSet<String>();
+        for (TransportRequest request : transport.requests) {
+            seen.add(request.getHeaders().get("Authorization") + " " + request.getUrl().getHost());
+        }
+        return seen;
+    }
+
+    @Test
+    public void testClientsAreIndependent() throws Exception {
+        ScriptedTransport first = new ScriptedTransport();
+        ScriptedTransport second = new ScriptedTransport();
+        FatZebraClient a = FatZebraClient.builder().credentials("merchant-a", "token-a").transport(first).build();
+        FatZebraClient b = FatZebraClient.builder().credentials("merchant-b", "token-b").sandbox(false).transport(second).build();
+
+        List<CompletableFuture<Purchase>> futures = new ArrayList<CompletableFuture<Purchase>>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(a.findPurchaseAsync("071-P-ABC123D5"));
+            futures.add(b.findPurchaseAsync("071-P-ABC123D5"));
+        }
+        for (CompletableFuture<Purchase> future : futures) {
+            Assert.assertTrue(future.get(5, TimeUnit.SECONDS).successful);
+        }
+        Assert.assertTrue(a.findPurchase("071-P-ABC123D5").successful);
+
+        Assert.assertEquals(1, seen(first).size());
+        Assert.assertEquals(1, seen(second).size());
+        Assert.assertTrue(seen(first).iterator().next().endsWith("sandbox-gateway.cloudpayments.com.au"));
+        Assert.assertTrue(seen(second).iterator().next().endsWith("gateway.fatzebra.com.au"));
+        Assert.assertNotEquals(seen(first), seen(second));
+
+        a.close();
+        b.close();
+    }
+
+    @Test
+    public void testClientIgnoresStaticSettings() throws Exception {
+        ScriptedTransport transport = new ScriptedTransport();
+        FatZebraClient client = FatZebraClient.builder().credentials("merchant", "token").transport(transport).build();
+        String username = FatZebra.username;
+        try {
+            FatZebra.username = "someone-else";
+            client.findPurchase("071-P-ABC123D5");
+        } finally {
+            FatZebra.username = username;
+        }
+        Assert.assertEquals("merchant", client.getUsername());
+        Assert.assertEquals(1, seen(transport).size());
+        client.close();
+    }
+
+    @Test
+    public void testCloseFailsCallsWaitingForTheRateLimiter() throws Exception {
+        FatZebraClient client = FatZebraClient.builder()
+                .transport(new ScriptedTransport())
+                .rateLimitPolicy(RateLimitPolicy.builder().rate(1, 1).build())
+                .build();
+        Assert.assertTrue(client.findPurchaseAsync("071-P-ABC123D5").get(5, TimeUnit.SECONDS).successful);
+        CompletableFuture<Purchase> waiting = client.findPurchaseAsync("071-P-ABC123D5");
+        client.close();
+        try {
+            waiting.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected the call to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof NetworkError);
+        }
+    }
+
+    @Test
+    public void testShutDownExecutorFailsWaitingCalls() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        FatZebraClient client = FatZebraClient.builder()
+                .transport(new ScriptedTransport())
+                .asyncExecutor(executor)
+                .rateLimitPolicy(RateLimitPolicy.builder().rate(5, 1).build())
+                .build();
+        Assert.assertTrue(client.findPurchaseAsync("071-P-ABC123D5").get(5, TimeUnit.SECONDS).successful);
+        CompletableFuture<Purchase> waiting = client.findPurchaseAsync("071-P-ABC123D5");
+        executor.shutdown();
+        try {
+            waiting.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected the call to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof NetworkError);
+            Assert.assertTrue(e.getCause().getCause() instanceof RejectedExecutionException);
+        }
+        client.close();
+    }
+
+    @Test
+    public void testStaticClientFollowsSettings() {
+        String username = FatZebra.username;
+        try {
+            FatZebraClient client = FatZebra.getClient();
+            Assert.assertSame(client, FatZebra.getClient());
+            FatZebra.username = "someone-else";
+            Assert.assertNotSame(client, FatZebra.getClient());
+            Assert.assertEquals("someone-else", FatZebra.getClient().getUsername());
+        } finally {
+            FatZebra.username = username;
+        }
+    }
+
+    @Test
+    public void testGetContextReturnsACopy() {
+        GatewayContext ctx = FatZebra.getContext();
+        Assert.assertNotSame(ctx, FatZebra.getContext());
+        ctx.gateway_url = "http://127.0.0.1:1/v1.0/";
+        ctx.username = "someone-else";
+        Assert.assertEquals(FatZebra.SANDBOX_URL + "purchases", FatZebra.getGatewayUrl("purchases"));
+        Assert.assertEquals(FatZebra.username, FatZebra.getClient().getUsername());
+    }
+}
@@ -0,0 +1,155 @@
+package au.com.fatzebra.javalib.simulator;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.errors.APIError;
+import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.models.Refund;
+import au.com.fatzebra.javalib.net.CircuitBreakerPolicy;
+import au.com.fatzebra.javalib.net.Operation;
+import au.com.fatzebra.javalib.net.RetryPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class GatewaySimulatorTest {
+    private GatewaySimulator simulator;
+    private GatewayContext ctx;
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = GatewaySimulator.builder()
+                .when(GatewaySimulator.amountCents(51), Reply.decline("51", "Declined - Insufficient Funds"))
+                .when(GatewaySimulator.cardNumber("4000000000000002"), Reply.error(503, "Service unavailable"))
+                .when(GatewaySimulator.amountCents(99), Reply.disconnect())
+                .latency(Operation.FIND, Latency.fixed(100))
+                .maxTransactions(10)
+                .start();
+        ctx = simulator.newContext();
+        ctx.retryPolicy = RetryPolicy.NONE;
+        ctx.circuitBreakerPolicy = CircuitBreakerPolicy.DISABLED;
+    }
+
+    @After
+    public void tearDown() {
+        simulator.close();
+    }
+
+    private Purchase purchase(int amount, String reference) throws Exception {
+        return purchase(amount, reference, "5123456789012346", true);
+    }
+
+    private Purchase purchase(int amount, String reference, String cardNumber, boolean capture) throws Exception {
+        HashMap<String, Object> card = new HashMap<String, Object>();
+        card.put("card_holder", "Joe Smith");
+        card.put("card_number", cardNumber);
+        card.put("cvv", "123");
+        card.put("card_expiry", "02/2030");
+        return Purchase.create(amount, card, reference, "127.0.0.1", "AUD", capture, null, ctx);
+    }
+
+    @Test
+    public void testPurchaseFindAndRefund() throws Exception {
+        Purchase purchase = purchase(1000, "ORDER-1");
+        Assert.assertTrue(purchase.successful);
+        Assert.assertEquals("00", purchase.response_code);
+        Assert.assertEquals(1000, purchase.amount);
+        Assert.assertEquals("512345XXXXXX2346", purchase.card_number);
+        Assert.assertNotNull(purchase.card_expiry);
+        Assert.assertTrue(purchase.id.startsWith("071-P-"));
+
+        Assert.assertEquals(purchase.id, Purchase.find("ORDER-1", ctx).id);
+        Assert.assertEquals("ORDER-1", Purchase.find(purchase.id, ctx).reference);
+
+        Refund refund = Refund.create(400, purchase.id, "ORDER-1-R", ctx);
+        Assert.assertTrue(refund.successful);
+        Assert.assertEquals(400, refund.amount);
+        Assert.assertTrue(refund.id.startsWith("071-R-"));
+        try {
+            Refund.create(700, purchase.id, "ORDER-1-R2", ctx);
+            Assert.fail("refunded more than the purchase");
+        } catch (APIError e) {
+            Assert.assertEquals(422, e.getStatus());
+        }
+    }
+
+    @Test
+    public void testAuthoriseAndCapture() throws Exception {
+        Purchase auth = purchase(1000, "AUTH-1", "5123456789012346", false);
+        Assert.assertTrue(auth.successful);
+        Assert.assertFalse(auth.captured);
+        Assert.assertTrue(auth.capture(1000, ctx));
+        try {
+            auth.capture(1, ctx);
+            Assert.fail("captured more than the authorisation");
+        } catch (APIError e) {
+            Assert.assertEquals(422, e.getStatus());
+        }
+    }
+
+    @Test
+    public void testInjectedFailures() throws Exception {
+        Purchase declined = purchase(1051, "DECLINE-1");
+        Assert.assertFalse(declined.successful);
+        Assert.assertEquals("51", declined.response_code);
+
+        try {
+            purchase(1000, "ERROR-1", "4000000000000002", true);
+            Assert.fail("the rule for the card number was not applied");
+        } catch (APIError e) {
+            Assert.assertEquals(503, e.getStatus());
+        }
+
+        try {
+            purchase(1099, "DISCONNECT-1");
+            Assert.fail("the connection was not dropped");
+        } catch (NetworkError | IOException e) {
+            // expected
+        }
+
+        try {
+            Purchase.find("MISSING", ctx);
+            Assert.fail("found a purchase which was never made");
+        } catch (APIError e) {
+            Assert.assertEquals(404, e.getStatus());
+        }
+    }
+
+    @Test
+    public void testLatencyDoesNotHoldThreads() throws Exception {
+        Purchase purchase = purchase(1000, "ORDER-1");
+        List<CompletableFuture<Purchase>> finds = new ArrayList<CompletableFuture<Purchase>>();
+        ctx.coalesceFinds = false;
+        long start = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            finds.add(Purchase.findAsync(purchase.id, ctx));
+        }
+        for (CompletableFuture<Purchase> find : finds) {
+            Assert.assertEquals(purchase.id, find.get().id);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        Assert.assertTrue("took " + elapsedMillis + "ms", elapsedMillis >= 100 && elapsedMillis < 2000);
+    }
+
+    @Test
+    public void testOldestTransactionsAreDropped() throws Exception {
+        for (int i = 0; i < 15; i++) {
+            purchase(1000, "ORDER-" + i);
+        }
+        Assert.assertEquals(10, simulator.getTransactionCount());
+        Assert.assertEquals("ORDER-14", Purchase.find("ORDER-14", ctx).reference);
+        try {
+            Purchase.find("ORDER-0", ctx);
+            Assert.fail("the oldest purchase was kept");
+        } catch (APIError e) {
+            Assert.assertEquals(404, e.getStatus());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.FatZebraClient;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import au.com.fatzebra.javalib.simulator.GatewaySimulator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exercises the HttpClient transport against a local HTTPS stand-in for the gateway, which only speaks HTTP/1.1
+ */
+public class HttpClientTransportTest {
+    private HttpsServer server;
+    private ExecutorService serverExecutor;
+    private HttpClientTransport transport;
+
+    @Before
+    public void startServer() throws Exception {
+        Assume.assumeTrue(HttpClientTransport.isSupported());
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream keyStream = getClass().getResourceAsStream("/fixtures/localhost.jks");
+        try {
+            keyStore.load(keyStream, "changeit".toCharArray());
+        } finally {
+            keyStream.close();
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, "changeit".toCharArray());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        server.setExecutor(serverExecutor);
+        server.createContext("/v1.0/purchases", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] request = readAll(exchange.getRequestBody());
+                if (exchange.getRequestURI().getPath().endsWith("/slow")) {
+                    try {
+                        Thread.sleep(2000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                byte[] response = ("{\"successful\":true,\"echo\":" + (request.length == 0 ? "null" : new String(request, StandardCharsets.UTF_8)) + "}")
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(response);
+                body.close();
+            }
+        });
+        server.start();
+        transport = new HttpClientTransport(5000, null, sslContext);
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        if (transport != null) {
+            transport.close();
+        }
+        if (server != null) {
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFallsBackToHttp1WhenHttp2IsNotNegotiated() throws Exception {
+        Assert.assertEquals("{\"successful\":true,\"echo\":null}", send("GET", "purchases", null));
+        Assert.assertEquals("{\"successful\":true,\"echo\":{\"amount\":100}}", send("POST", "purchases", "{\"amount\":100}"));
+        Assert.assertEquals(2, transport.getHttp1Responses());
+        Assert.assertEquals(0, transport.getHttp2Responses());
+    }
+
+    @Test
+    public void testSendsConcurrentAsyncRequests() throws Exception {
+        List<CompletableFuture<TransportResponse>> responses = new ArrayList<CompletableFuture<TransportResponse>>();
+        for (int i = 0; i < 20; i++) {
+            responses.add(transport.executeAsync(request("POST", "purchases", "{\"amount\":" + i + "}", 5000), Runnable::run));
+        }
+        for (int i = 0; i < 20; i++) {
+            TransportResponse response = responses.get(i).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("{\"successful\":true,\"echo\":{\"amount\":" + i + "}}",
+                    new String(readAll(response.getBody()), StandardCharsets.UTF_8));
+            response.close();
+        }
+    }
+
+    @Test
+    public void testReportsTimeoutsAsSocketTimeouts() throws Exception {
+        try {
+            transport.execute(request("GET", "purchases/slow", null, 200));
+            Assert.fail("Expected the request to time out");
+        } catch (SocketTimeoutException ex) {
+            Assert.assertNotNull(ex.getCause());
+        }
+
+        try {
+            transport.executeAsync(request("GET", "purchases/slow", null, 200), Runnable::run).get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected the request to time out");
+        } catch (java.util.concurrent.ExecutionException ex) {
+            Assert.assertTrue(ex.getCause() instanceof SocketTimeoutException);
+        }
+    }
+
+    @Test
+    public void testClientCanBeBuiltForHttp2() throws Exception {
+        GatewaySimulator simulator = GatewaySimulator.builder().start();
+        FatZebraClient client = FatZebraClient.builder()
+                .gatewayUrl(simulator.getGatewayUrl())
+                .http2(true)
+                .retryPolicy(RetryPolicy.NONE)
+                .build();
+        try {
+            HashMap<String, Object> card = new HashMap<String, Object>();
+            card.put("card_holder", "Joe Smith");
+            card.put("card_number", "5123456789012346");
+            card.put("cvv", "123");
+            card.put("card_expiry", "05/2030");
+            PurchaseRequest request = new PurchaseRequest(card);
+            request.setAmount(1000);
+            request.setReference("H2-1");
+            request.setCustomerIp("127.0.0.1");
+
+            Purchase purchase = client.purchase(request);
+            Assert.assertTrue(purchase.successful);
+            Assert.assertTrue(client.purchaseAsync(request).get(10, TimeUnit.SECONDS).successful);
+        } finally {
+            client.close();
+            simulator.close();
+        }
+    }
+
+    private String send(String method, String path, String body) throws IOException {
+        TransportResponse response = transport.execute(request(method, path, body, 5000));
+        try {
+            Assert.assertEquals(200, response.getStatus());
+            return new String(readAll(response.getBody()), StandardCharsets.UTF_8);
+        } finally {
+            response.close();
+        }
+    }
+
+    private TransportRequest request(String method, String path, String body, int timeout) throws IOException {
+        URL url = new URL("https://localhost:" + server.getAddress().getPort() + "/v1.0/" + path);
+        return new TransportRequest(method, url, Collections.singletonMap("Accept", "application/json"),
+                body == null ? null : "application/json",
+                body == null ? null : body.getBytes(StandardCharsets.UTF_8),
+                timeout, timeout);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
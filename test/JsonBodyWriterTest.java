@@ -0,0 +1,86 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.models.CaptureRequest;
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import au.com.fatzebra.javalib.models.RefundRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+public class JsonBodyWriterTest {
+    private static void assertMatchesGson(Object payload) throws Exception {
+        byte[] expected = Resource.GSON.toJson(payload).getBytes(Resource.CHARSET);
+        byte[] actual = JsonBodyWriter.toBytes((JsonBody) payload);
+        Assert.assertEquals(new String(expected, StandardCharsets.UTF_8), new String(actual, StandardCharsets.UTF_8));
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    private static PurchaseRequest purchaseRequest() {
+        HashMap<String, Object> card = new HashMap<String, Object>();
+        card.put("card_holder", "Joe Smith");
+        card.put("card_number", "5123456789012346");
+        card.put("cvv", "123");
+        card.put("card_expiry", "05/2030");
+        PurchaseRequest request = new PurchaseRequest(card);
+        request.setAmount(12345);
+        request.setReference("ORDER-1");
+        request.setCustomerIp("127.0.0.1");
+        return request;
+    }
+
+    @Test
+    public void testPurchaseRequestMatchesGson() throws Exception {
+        assertMatchesGson(purchaseRequest());
+
+        PurchaseRequest request = purchaseRequest();
+        request.setCapture(false);
+        request.setAmount(-1);
+        HashMap<String, String> extra = new LinkedHashMap<String, String>();
+        extra.put("cavv", "AAABBJg0VhI0VniQEjRWAAAAAAA=");
+        extra.put("xid", null);
+        extra.put("sli", "05");
+        request.setExtra(extra);
+        assertMatchesGson(request);
+
+        // nulls are left out
+        assertMatchesGson(new PurchaseRequest());
+    }
+
+    @Test
+    public void testEscapesAsGson() throws Exception {
+        PurchaseRequest request = purchaseRequest();
+        request.setReference("\"quoted\" \\ <tag> & a='b'\t\n\r\b\f\u0001\u001f\u007f");
+        request.card_holder = "Zo\u00eb M\u00fcller \u4e2d\u6587 \u2028\u2029 \ud83d\ude00 \ud83d";
+        assertMatchesGson(request);
+    }
+
+    @Test
+    public void testRefundAndCaptureMatchGson() throws Exception {
+        RefundRequest refund = new RefundRequest();
+        refund.setOriginalTransactionId("071-P-ABC123D5");
+        refund.setReference("ORDER-1-R");
+        refund.setAmount(100);
+        assertMatchesGson(refund);
+        assertMatchesGson(new RefundRequest());
+
+        CaptureRequest capture = new CaptureRequest();
+        capture.amount = 100;
+        capture.id = "071-P-ABC123D5";
+        assertMatchesGson(capture);
+    }
+
+    @Test
+    public void testLargeBodiesAreNotRetained() throws Exception {
+        PurchaseRequest request = purchaseRequest();
+        StringBuilder reference = new StringBuilder();
+        for (int i = 0; i < JsonBodyWriter.MAX_RETAINED; i++) {
+            reference.append('x');
+        }
+        request.setReference(reference.toString());
+        assertMatchesGson(request);
+        assertMatchesGson(purchaseRequest());
+    }
+}
@@ -0,0 +1,55 @@
+package au.com.fatzebra.javalib.loadtest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        Assert.assertEquals(100000, histogram.getTotalCount());
+        assertClose(50000, histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS));
+        assertClose(99000, histogram.getValueAtPercentile(99, TimeUnit.MICROSECONDS));
+        assertClose(99900, histogram.getValueAtPercentile(99.9, TimeUnit.MICROSECONDS));
+        Assert.assertEquals(100000, histogram.getValueAtPercentile(100, TimeUnit.MICROSECONDS));
+        Assert.assertEquals(100, histogram.getMax(TimeUnit.MILLISECONDS));
+        Assert.assertEquals(50.0005, histogram.getMean(TimeUnit.MILLISECONDS), 0.0001);
+        // small values are exact
+        Assert.assertEquals(1, histogram.getValueAtPercentile(0, TimeUnit.MICROSECONDS));
+    }
+
+    @Test
+    public void testExtremeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99, TimeUnit.MICROSECONDS));
+        histogram.record(-5);
+        histogram.record(TimeUnit.HOURS.toNanos(5));
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS));
+        Assert.assertEquals(1, histogram.getValueAtPercentile(100, TimeUnit.HOURS));
+    }
+
+    @Test
+    public void testPercentileDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        histogram.outputPercentileDistribution(new PrintStream(bytes, true));
+        String output = bytes.toString();
+        Assert.assertTrue(output, output.contains("     500.223 0.500000000000        500           2.00"));
+        Assert.assertTrue(output, output.contains("    1000.000 1.000000000000       1000"));
+        Assert.assertTrue(output, output.contains("#[Total count    =         1000]"));
+    }
+
+    private static void assertClose(long expected, long actual) {
+        Assert.assertEquals(expected, actual, expected / 1000.0);
+    }
+}
@@ -0,0 +1,80 @@
+package au.com.fatzebra.javalib.loadtest;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.net.CircuitBreakerPolicy;
+import au.com.fatzebra.javalib.net.Operation;
+import au.com.fatzebra.javalib.net.RetryPolicy;
+import au.com.fatzebra.javalib.simulator.GatewaySimulator;
+import au.com.fatzebra.javalib.simulator.Latency;
+import au.com.fatzebra.javalib.simulator.Reply;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LoadTestTest {
+    private GatewaySimulator simulator;
+    private GatewayContext ctx;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = GatewaySimulator.builder()
+                .latency(Latency.fixed(20))
+                .when(request -> request.getOperation() == Operation.REFUND, Reply.decline("05", "Declined"))
+                .start();
+        ctx = simulator.newContext();
+        ctx.retryPolicy = RetryPolicy.NONE;
+        ctx.circuitBreakerPolicy = CircuitBreakerPolicy.DISABLED;
+    }
+
+    @After
+    public void tearDown() {
+        simulator.close();
+    }
+
+    @Test
+    public void testRunsTheMixAtTheRate() throws Exception {
+        LoadTestResult result = LoadTest.builder(ctx)
+                .rate(200)
+                .warmup(200, TimeUnit.MILLISECONDS)
+                .duration(1, TimeUnit.SECONDS)
+                .build()
+                .run();
+
+        long completed = 0;
+        for (Operation operation : Operation.values()) {
+            LoadTestResult.OperationResult stats = result.get(operation);
+            Assert.assertEquals(operation.name(), 0, stats.getErrors());
+            completed += stats.getCount() + stats.getSkipped();
+        }
+        Assert.assertEquals(200, completed, 10);
+        Assert.assertTrue(result.get(Operation.PURCHASE).getCount() > result.get(Operation.FIND).getCount());
+        Assert.assertEquals(result.get(Operation.REFUND).getCount(), result.get(Operation.REFUND).getDeclined());
+        Assert.assertTrue(result.get(Operation.PURCHASE).getResponseTimes().getValueAtPercentile(50, TimeUnit.MILLISECONDS) >= 20);
+        Assert.assertTrue(result.getPeakInFlight() > 0);
+    }
+
+    @Test
+    public void testWaitingForASlotCountsInTheLatency() throws Exception {
+        // one request at a time against a 20ms gateway can not keep up with 100 a second
+        LoadTestResult result = LoadTest.builder(ctx)
+                .rate(100)
+                .warmup(0, TimeUnit.SECONDS)
+                .duration(500, TimeUnit.MILLISECONDS)
+                .clearMix()
+                .mix(Operation.PURCHASE, 1)
+                .maxInFlight(1)
+                .build()
+                .run();
+
+        LoadTestResult.OperationResult purchases = result.get(Operation.PURCHASE);
+        Assert.assertEquals(50, purchases.getCount());
+        Assert.assertEquals(1, result.getPeakInFlight());
+        long serviceMax = purchases.getServiceTimes().getMax(TimeUnit.MILLISECONDS);
+        long responseMax = purchases.getResponseTimes().getMax(TimeUnit.MILLISECONDS);
+        Assert.assertTrue("service " + serviceMax + "ms", serviceMax < 200);
+        Assert.assertTrue("response " + responseMax + "ms", responseMax > 400);
+    }
+}
@@ -0,0 +1,106 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.ResponseCode;
+import au.com.fatzebra.javalib.errors.APIError;
+import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.models.Purchase;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsTest {
+    /**
+     * Keeps every measurement as a string
+     */
+    private static class RecordingMetrics implements Metrics {
+        final List<String> calls = new CopyOnWriteArrayList<String>();
+        final List<String> exchanges = new CopyOnWriteArrayList<String>();
+        final List<Phase> phases = new CopyOnWriteArrayList<Phase>();
+
+        @Override public void recordPhase(Operation operation, Phase phase, long nanos) {
+            phases.add(phase);
+        }
+
+        @Override public void recordExchange(Operation operation, int status, long requestBytes, long responseBytes) {
+            exchanges.add(operation + " " + status + " " + requestBytes + " " + responseBytes);
+        }
+
+        @Override public void recordCall(Operation operation, Outcome outcome, ResponseCode responseCode, long nanos) {
+            calls.add(operation + " " + outcome + " " + responseCode.getCode());
+        }
+    }
+
+    private ScriptedTransport transport;
+    private RecordingMetrics metrics;
+    private GatewayContext ctx;
+
+    @Before
+    public void setUp() {
+        transport = new ScriptedTransport();
+        metrics = new RecordingMetrics();
+        ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.transport = transport;
+        ctx.metrics = metrics;
+        ctx.retryPolicy = RetryPolicy.NONE;
+        ctx.circuitBreakerPolicy = CircuitBreakerPolicy.DISABLED;
+    }
+
+    @Test
+    public void testRecordsOutcomes() throws Exception {
+        transport.then(ScriptedTransport.APPROVED);
+        transport.then(ScriptedTransport.DECLINED);
+        transport.then(ScriptedTransport.INVALID);
+        transport.then(new ConnectException("Connection refused"));
+
+        Purchase.find("071-P-ABC123D5", ctx);
+        Purchase.find("071-P-ABC123D4", ctx);
+        try {
+            Purchase.find("071-P-ABC123D3", ctx);
+            Assert.fail("Expected an APIError");
+        } catch (APIError e) {
+            // expected
+        }
+        try {
+            Purchase.find("071-P-ABC123D2", ctx);
+            Assert.fail("Expected a NetworkError");
+        } catch (NetworkError e) {
+            // expected
+        }
+
+        Assert.assertEquals(Arrays.asList("FIND SUCCESS 0", "FIND DECLINED 5", "FIND API_ERROR -1", "FIND NETWORK_ERROR -1"), metrics.calls);
+        Assert.assertEquals(Arrays.asList(
+                "FIND 200 0 " + ScriptedTransport.APPROVED.length(), "FIND 200 0 " + ScriptedTransport.DECLINED.length(), "FIND 422 0 " + ScriptedTransport.INVALID.getBody().length()), metrics.exchanges);
+        Assert.assertEquals(3, metrics.phases.size());
+        Assert.assertTrue(metrics.phases.contains(Metrics.Phase.PARSE));
+    }
+
+    @Test
+    public void testRecordsAsyncCall() throws Exception {
+        transport.then(ScriptedTransport.APPROVED);
+        Purchase.findAsync("071-P-ABC123D5", ctx).get(5, TimeUnit.SECONDS);
+        // the metrics are recorded as the future completes, which may be just after get returns
+        for (int i = 0; i < 100 && metrics.calls.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(Collections.singletonList("FIND SUCCESS 0"), metrics.calls);
+    }
+
+    @Test
+    public void testFailingMetricsDoNotFailCall() throws Exception {
+        transport.then(ScriptedTransport.APPROVED);
+        ctx.metrics = new Metrics() {
+            @Override public void recordCall(Operation operation, Outcome outcome, ResponseCode responseCode, long nanos) {
+                throw new IllegalStateException("broken");
+            }
+        };
+        Assert.assertTrue(Purchase.find("071-P-ABC123D5", ctx).successful);
+    }
+}
@@ -0,0 +1,227 @@
+package au.com.fatzebra.javalib.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+/**
+ * Exercises the pooled transport against a local HTTPS stand-in for the gateway
+ */
+public class PooledTransportTest {
+    private HttpsServer server;
+    private SSLContext sslContext;
+    private PooledTransport transport;
+
+    @Before
+    public void startServer() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream keyStream = getClass().getResourceAsStream("/fixtures/localhost.jks");
+        try {
+            keyStore.load(keyStream, "changeit".toCharArray());
+        } finally {
+            keyStream.close();
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, "changeit".toCharArray());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1.0/purchases", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] request = readAll(exchange.getRequestBody());
+                byte[] response = ("{\"successful\":true,\"echo\":" + (request.length == 0 ? "null" : new String(request, StandardCharsets.UTF_8)) + "}")
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                // a zero length makes the server use chunked encoding
+                boolean chunked = exchange.getRequestURI().getQuery() != null && exchange.getRequestURI().getQuery().contains("chunked");
+                exchange.sendResponseHeaders(200, chunked ? 0 : response.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(response);
+                body.close();
+            }
+        });
+        server.createContext("/v1.0/close", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                // drops the connection without a response
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        if (transport != null) {
+            transport.close();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void testReusesConnectionBetweenRequests() throws Exception {
+        transport = new PooledTransport(4, 30000, sslContext.getSocketFactory());
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("{\"successful\":true,\"echo\":null}", send("GET", "purchases", null));
+        }
+
+        PoolStats stats = transport.getStats();
+        Assert.assertEquals(1, stats.getCreated());
+        Assert.assertEquals(4, stats.getReused());
+        Assert.assertEquals(0, stats.getLeased());
+        Assert.assertEquals(1, stats.getIdle());
+    }
+
+    @Test
+    public void testPostsBodyAndReadsChunkedResponse() throws Exception {
+        transport = new PooledTransport(4, 30000, sslContext.getSocketFactory());
+
+        Assert.assertEquals("{\"successful\":true,\"echo\":{\"amount\":100}}", send("POST", "purchases?chunked", "{\"amount\":100}"));
+        Assert.assertEquals("{\"successful\":true,\"echo\":{\"amount\":200}}", send("POST", "purchases?chunked", "{\"amount\":200}"));
+        Assert.assertEquals(1, transport.getStats().getCreated());
+    }
+
+    @Test
+    public void testLimitsConnectionsPerRoute() throws Exception {
+        transport = new PooledTransport(1, 30000, sslContext.getSocketFactory());
+
+        TransportResponse held = transport.execute(request("GET", "purchases", null, 500));
+        try {
+            Assert.assertEquals(1, transport.getStats().getLeased());
+            transport.execute(request("GET", "purchases", null, 200));
+            Assert.fail("Expected the pool to be exhausted");
+        } catch (ConnectException ex) {
+            Assert.assertTrue(ex.getMessage().contains("Timed out waiting for a pooled connection"));
+        } finally {
+            held.close();
+        }
+        Assert.assertEquals(0, transport.getStats().getLeased());
+        Assert.assertEquals("{\"successful\":true,\"echo\":null}", send("GET", "purchases", null));
+    }
+
+    @Test
+    public void testEvictsIdleConnections() throws Exception {
+        transport = new PooledTransport(4, 100, sslContext.getSocketFactory());
+
+        send("GET", "purchases", null);
+        Assert.assertEquals(1, transport.getStats().getIdle());
+
+        Thread.sleep(500);
+        Assert.assertEquals(0, transport.getStats().getIdle());
+        Assert.assertEquals(1, transport.getStats().getEvicted());
+
+        send("GET", "purchases", null);
+        Assert.assertEquals(2, transport.getStats().getCreated());
+    }
+
+    @Test
+    public void testReportsPhasesToMetrics() throws Exception {
+        transport = new PooledTransport(4, 30000, sslContext.getSocketFactory());
+        final List<Metrics.Phase> phases = new CopyOnWriteArrayList<Metrics.Phase>();
+        Metrics metrics = new Metrics() {
+            @Override public void recordPhase(Operation operation, Phase phase, long nanos) {
+                Assert.assertEquals(Operation.FIND, operation);
+                Assert.assertTrue(nanos >= 0);
+                phases.add(phase);
+            }
+        };
+
+        for (int i = 0; i < 2; i++) {
+            URL url = new URL("https://localhost:" + server.getAddress().getPort() + "/v1.0/purchases");
+            TransportResponse response = transport.execute(new TransportRequest("GET", url, Collections.<String, String>emptyMap(),
+                    null, null, 5000, 5000, null, Operation.FIND, metrics));
+            readAll(response.getBody());
+            response.close();
+        }
+
+        // the second request reuses the pooled connection
+        Assert.assertEquals(Arrays.asList(Metrics.Phase.DNS, Metrics.Phase.CONNECT, Metrics.Phase.TLS,
+                Metrics.Phase.TIME_TO_FIRST_BYTE, Metrics.Phase.TIME_TO_FIRST_BYTE), phases);
+    }
+
+    @Test
+    public void testTriesEachResolvedAddress() throws Exception {
+        // nothing listens on 127.0.0.2, so the first address is refused
+        DnsResolver resolver = host -> new InetAddress[]{InetAddress.getByName("127.0.0.2"), InetAddress.getByName("127.0.0.1")};
+        transport = new PooledTransport(4, 30000, sslContext.getSocketFactory(), resolver);
+
+        Assert.assertEquals("{\"successful\":true,\"echo\":null}", send("GET", "purchases", null));
+        Assert.assertEquals(1, transport.getStats().getCreated());
+    }
+
+    @Test(expected = UnknownHostException.class)
+    public void testNoResolvedAddressesIsAnUnknownHost() throws Exception {
+        transport = new PooledTransport(4, 30000, sslContext.getSocketFactory(), host -> new InetAddress[0]);
+        send("GET", "purchases", null);
+    }
+
+    @Test
+    public void testReportsAClosedConnectionAsEndOfStream() throws Exception {
+        transport = new PooledTransport(4, 30000, sslContext.getSocketFactory());
+        try {
+            transport.execute(request("GET", "close", null, 5000));
+            Assert.fail("Expected the closed connection to fail the request");
+        } catch (EOFException ex) {
+            Assert.assertTrue(ex.getMessage().contains("Connection closed by the server"));
+        }
+    }
+
+    private String send(String method, String path, String body) throws IOException {
+        TransportResponse response = transport.execute(request(method, path, body, 5000));
+        try {
+            Assert.assertEquals(200, response.getStatus());
+            return new String(readAll(response.getBody()), StandardCharsets.UTF_8);
+        } finally {
+            response.close();
+        }
+    }
+
+    private TransportRequest request(String method, String path, String body, int timeout) throws IOException {
+        URL url = new URL("https://localhost:" + server.getAddress().getPort() + "/v1.0/" + path);
+        return new TransportRequest(method, url, Collections.singletonMap("Accept", "application/json"),
+                body == null ? null : "application/json",
+                body == null ? null : body.getBytes(StandardCharsets.UTF_8),
+                timeout, timeout);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
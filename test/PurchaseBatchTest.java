@@ -0,0 +1,92 @@
+package au.com.fatzebra.javalib.batch;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import au.com.fatzebra.javalib.net.ScriptedTransport;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+public class PurchaseBatchTest {
+    @Test
+    public void testRunsWithBoundedConcurrency() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        GatewayContext ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.transport = new ScriptedTransport().otherwise(request -> {
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            // every tenth request (odd amounts) is declined
+            boolean approved = new String(request.getBody(), StandardCharsets.UTF_8).contains("\"amount\":100,");
+            return "{\"successful\":true,\"response\":{\"id\":\"071-P-ABC123D5\",\"successful\":" + approved + "},\"errors\":[],\"test\":true}";
+        });
+
+        final AtomicInteger results = new AtomicInteger();
+        PurchaseBatch batch = new PurchaseBatch(ctx, 4, 0);
+        BatchProgress progress = batch.run(IntStream.range(0, 100).mapToObj(i -> {
+            PurchaseRequest request = new PurchaseRequest();
+            request.setAmount(i % 10 == 0 ? 101 : 100);
+            request.setReference("BATCH-" + i);
+            return request;
+        }), new PurchaseBatch.Listener() {
+            public void onResult(PurchaseRequest request, Purchase purchase) {
+                results.incrementAndGet();
+            }
+
+            public void onError(PurchaseRequest request, Exception error) {
+                Assert.fail(error.toString());
+            }
+        });
+
+        Assert.assertEquals(100, results.get());
+        Assert.assertEquals(100, progress.getSubmitted());
+        Assert.assertEquals(90, progress.getApproved());
+        Assert.assertEquals(10, progress.getDeclined());
+        Assert.assertEquals(0, progress.getFailed());
+        Assert.assertEquals(0, progress.getInFlight());
+        Assert.assertTrue("max in flight " + maxInFlight.get(), maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void testListenerFailureIsRethrownOnceTheBatchDrains() throws Exception {
+        GatewayContext ctx = new GatewayContext("TEST", "TEST", true);
+        ScriptedTransport transport = new ScriptedTransport();
+        ctx.transport = transport;
+        final IllegalStateException failure = new IllegalStateException("The ledger is unavailable");
+
+        PurchaseBatch batch = new PurchaseBatch(ctx, 2, 0);
+        try {
+            batch.run(IntStream.range(0, 100).mapToObj(i -> {
+                PurchaseRequest request = new PurchaseRequest();
+                request.setAmount(100);
+                request.setReference("BATCH-" + i);
+                return request;
+            }), new PurchaseBatch.Listener() {
+                public void onResult(PurchaseRequest request, Purchase purchase) {
+                    throw failure;
+                }
+
+                public void onError(PurchaseRequest request, Exception error) {
+                }
+            });
+            Assert.fail("Expected the listener's exception");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(failure, e);
+        }
+        BatchProgress progress = batch.getProgress();
+        Assert.assertEquals(0, progress.getInFlight());
+        Assert.assertEquals(progress.getSubmitted(), progress.getApproved());
+        Assert.assertEquals(transport.count(), progress.getSubmitted());
+        Assert.assertTrue(progress.getSubmitted() < 100);
+    }
+}
@@ -0,0 +1,97 @@
+package au.com.fatzebra.javalib.models;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.net.CircuitBreakerPolicy;
+import au.com.fatzebra.javalib.net.RetryPolicy;
+import au.com.fatzebra.javalib.net.ScriptedTransport;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PurchaseCacheTest {
+    private static final String REFUND = "{\"successful\":true,\"response\":{\"id\":\"071-R-ABC123D6\",\"reference\":\"ORDER-1-R\",\"amount\":100,\"successful\":true,\"response_code\":\"00\"},\"errors\":[],\"test\":true}";
+    private static final String CAPTURE = "{\"successful\":true,\"response\":{\"id\":\"071-P-ABC123D5\",\"amount\":100,\"successful\":true},\"errors\":[],\"test\":true}";
+
+    private ScriptedTransport transport;
+    private PurchaseCache cache;
+    private GatewayContext ctx;
+
+    @Before
+    public void setUp() {
+        transport = new ScriptedTransport();
+        cache = new PurchaseCache(100, 60000);
+        ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.transport = transport;
+        ctx.purchaseCache = cache;
+        ctx.retryPolicy = RetryPolicy.NONE;
+        ctx.circuitBreakerPolicy = CircuitBreakerPolicy.DISABLED;
+    }
+
+    @Test
+    public void testFindsCreatedPurchaseByIdAndReference() throws Exception {
+        transport.then(ScriptedTransport.APPROVED);
+        PurchaseRequest request = new PurchaseRequest();
+        request.setAmount(100);
+        request.setReference("ORDER-1");
+        request.setCurrency("AUD");
+        Purchase created = Purchase.create(request, ctx);
+
+        Assert.assertSame(created, Purchase.find("071-P-ABC123D5", ctx));
+        Assert.assertSame(created, Purchase.find("ORDER-1", ctx));
+        Assert.assertSame(created, Purchase.findAsync("ORDER-1", ctx).get());
+        Assert.assertEquals(1, transport.count());
+        Assert.assertEquals(3, cache.getHits());
+    }
+
+    @Test
+    public void testRefundUsesCachedPurchaseThenInvalidates() throws Exception {
+        transport.then(ScriptedTransport.APPROVED);
+        transport.then(REFUND);
+        transport.then(ScriptedTransport.APPROVED);
+
+        Purchase.find("ORDER-1", ctx);
+        Refund refund = Refund.create(100, "071-P-ABC123D5", ctx);
+        Assert.assertTrue(refund.successful);
+        Assert.assertEquals(0, cache.size());
+
+        Purchase.find("071-P-ABC123D5", ctx);
+        Assert.assertEquals(3, transport.count());
+        Assert.assertEquals("POST /v1.0/refunds", transport.paths().get(1));
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testCaptureInvalidates() throws Exception {
+        transport.then(ScriptedTransport.APPROVED);
+        transport.then(CAPTURE);
+
+        Purchase.find("ORDER-1", ctx);
+        CaptureRequest.createAsync(100, "071-P-ABC123D5", ctx).get();
+        Assert.assertNull(cache.get("071-P-ABC123D5"));
+        Assert.assertNull(cache.get("ORDER-1"));
+    }
+
+    @Test
+    public void testExpiresAndEvicts() throws Exception {
+        PurchaseCache small = new PurchaseCache(2, 50);
+        small.put(purchase("1", "A"));
+        small.put(purchase("2", "B"));
+        small.get("A");
+        small.put(purchase("3", "C"));
+
+        Assert.assertEquals(2, small.size());
+        Assert.assertNotNull(small.get("1"));
+        Assert.assertNull(small.get("B"));
+
+        Thread.sleep(60);
+        Assert.assertNull(small.get("C"));
+        Assert.assertEquals(1, small.size());
+    }
+
+    private static Purchase purchase(String id, String reference) {
+        Purchase p = new Purchase();
+        p.id = id;
+        p.reference = reference;
+        return p;
+    }
+}
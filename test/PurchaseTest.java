@@ -2,9 +2,11 @@ package au.com.fatzebra.javalib.models;
 
 import au.com.fatzebra.javalib.FatZebra;
 import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.ResponseCode;
 import au.com.fatzebra.javalib.errors.APIError;
 import au.com.fatzebra.javalib.errors.NetworkError;
 import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.net.ScriptedTransport;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -12,9 +14,15 @@ import com.google.gson.JsonParser;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by broc on 3/09/2014.
@@ -43,4 +51,94 @@ public class PurchaseTest {
 
     }
 
+    @Test
+    public void testParseStream() throws IOException {
+        FatZebraResponse<Purchase> r = new FatZebraResponse<Purchase>(200, null);
+        r.parseResult(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), Purchase.class);
+
+        Assert.assertTrue(r.successful);
+        Assert.assertFalse(r.test);
+        Assert.assertEquals(0, r.errors.size());
+        Assert.assertNull(r.responseBody);
+        Assert.assertEquals("369-P-89IY10K7", r.result.id);
+        Assert.assertEquals("01", r.result.response_code);
+        Assert.assertFalse(r.result.successful);
+
+        FatZebraResponse<Purchase> failed = new FatZebraResponse<Purchase>(422, null);
+        failed.parseResult(new ByteArrayInputStream("{\"successful\":false,\"response\":{},\"errors\":[\"Amount is invalid\"],\"test\":true}".getBytes(StandardCharsets.UTF_8)), Purchase.class);
+        Assert.assertFalse(failed.successful);
+        Assert.assertTrue(failed.test);
+        Assert.assertEquals(Arrays.asList("Amount is invalid"), failed.errors);
+    }
+
+    @Test
+    public void testResponseCode() {
+        Purchase purchase = new Purchase();
+        Assert.assertSame(ResponseCode.UNKNOWN, purchase.getResponseCode());
+        Assert.assertEquals("Unknown", purchase.getResponseMessage());
+
+        purchase.response_code = "00";
+        Assert.assertTrue(purchase.getResponseCode().isApproved());
+        Assert.assertEquals("Approved", purchase.getResponseMessage());
+
+        purchase.response_code = "90";
+        Assert.assertTrue(purchase.getResponseCode().isRetryable());
+        Assert.assertFalse(purchase.getResponseCode().isHardDecline());
+        Assert.assertEquals("Declined - Please Retry", purchase.getResponseMessage());
+
+        purchase.response_code = "54";
+        Assert.assertTrue(purchase.getResponseCode().isExpiredCard());
+        Assert.assertTrue(purchase.getResponseCode().isHardDecline());
+        Assert.assertSame(ResponseCode.of(54), purchase.getResponseCode());
+
+        purchase.response_code = "N7";
+        Assert.assertSame(ResponseCode.UNKNOWN, purchase.getResponseCode());
+        purchase.response_code = "97";
+        Assert.assertEquals("Unknown", purchase.getResponseMessage());
+    }
+
+    @Test
+    public void testToStringMasksCardData() throws IOException {
+        FatZebraResponse<Purchase> r = new FatZebraResponse<Purchase>(200, payload, null);
+        r.parseResult(Purchase.class);
+        String rendered = r.result.toString();
+
+        Assert.assertTrue(rendered, rendered.startsWith("<Purchase id=369-P-89IY10K7 amount=1 decimal_amount=0.01 "));
+        Assert.assertTrue(rendered, rendered.contains(" card_number=552350XXXXXX5094 "));
+        Assert.assertFalse(rendered, rendered.contains("5523509999995094"));
+        Assert.assertTrue(rendered, rendered.contains(" settlement_date=null "));
+        Assert.assertTrue(rendered, rendered.endsWith(" rrn=null cvv_match=U>"));
+
+        StringBuilder log = new StringBuilder("purchase: ");
+        r.result.appendTo((Appendable) log);
+        Assert.assertEquals("purchase: " + rendered, log.toString());
+        Assert.assertTrue(r.result.toPrettyJson().contains("\"card_number\": \"5523509999995094\""));
+
+        HashMap<String, Object> card_data = new HashMap<String, Object>();
+        card_data.put("card_number", "5123456789012346");
+        card_data.put("card_holder", "James Smith");
+        card_data.put("cvv", "591");
+        PurchaseRequest request = new PurchaseRequest(card_data);
+        request.setReference("Order #1");
+        Assert.assertEquals("<PurchaseRequest amount=0 reference=\"Order #1\" card_holder=\"James Smith\" card_number=512345XXXXXX2346 " +
+                "card_expiry=null capture=true currency=AUD customer_ip=null>", request.toString());
+    }
+
+    @Test
+    public void testFindAsync() throws Exception {
+        final List<String> threads = new ArrayList<String>();
+        ScriptedTransport transport = new ScriptedTransport().otherwise(request -> {
+            threads.add(Thread.currentThread().getName());
+            return payload;
+        });
+        GatewayContext ctx = new GatewayContext();
+        ctx.transport = transport;
+        Purchase x = Purchase.findAsync("369-P-89IY10K7", ctx).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("369-P-89IY10K7", x.id);
+        Assert.assertEquals("1234-140902092649405", x.reference);
+        Assert.assertEquals(1, threads.size());
+        Assert.assertTrue(threads.get(0), threads.get(0).startsWith("fatzebra-async"));
+        Assert.assertEquals(Collections.singletonList("GET /v1.0/purchases/369-P-89IY10K7"), transport.paths());
+    }
+
 }
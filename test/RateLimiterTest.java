@@ -0,0 +1,125 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.errors.APIError;
+import au.com.fatzebra.javalib.errors.RateLimitedError;
+import au.com.fatzebra.javalib.models.Purchase;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiterTest {
+    private static final ScriptedTransport.Reply THROTTLED = ScriptedTransport.reply(429,
+            Collections.singletonMap("retry-after", Collections.singletonList("1")),
+            "{\"successful\":false,\"response\":null,\"errors\":[\"Too many requests\"],\"test\":true}");
+
+    private ScriptedTransport transport;
+    private GatewayContext ctx;
+
+    @Before
+    public void setUp() {
+        transport = new ScriptedTransport();
+        ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.transport = transport;
+        ctx.retryPolicy = RetryPolicy.NONE;
+        ctx.circuitBreakerPolicy = CircuitBreakerPolicy.DISABLED;
+    }
+
+    @Test
+    public void testBucketAllowsBurstThenRate() throws Exception {
+        ctx.rateLimitPolicy = RateLimitPolicy.builder().rate(Operation.REFUND, 10, 3).build();
+        Assert.assertNull(ctx.getRateLimiter(Operation.FIND));
+        RateLimiter limiter = ctx.getRateLimiter(Operation.REFUND);
+        Assert.assertSame(limiter, ctx.getRateLimiter(Operation.REFUND));
+
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertFalse(limiter.tryAcquire());
+
+        long started = System.nanoTime();
+        Assert.assertTrue(limiter.tryAcquire(500, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testRejectsWithoutSending() throws Exception {
+        ctx.rateLimitPolicy = RateLimitPolicy.builder().rate(1, 2).maxWait(0).build();
+        Purchase.find("071-P-ABC123D5", ctx);
+        Purchase.find("071-P-ABC123D5", ctx);
+        try {
+            Purchase.find("071-P-ABC123D5", ctx);
+            Assert.fail("Expected a RateLimitedError");
+        } catch (RateLimitedError ex) {
+            Assert.assertTrue(ex.getRetryAfter() > 0);
+        }
+        try {
+            Purchase.findAsync("071-P-ABC123D5", ctx).get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected a RateLimitedError");
+        } catch (Exception ex) {
+            Assert.assertTrue(ex.getCause() instanceof RateLimitedError);
+        }
+        Assert.assertEquals(2, transport.count());
+    }
+
+    @Test
+    public void testWaitsForTokens() throws Exception {
+        ctx.rateLimitPolicy = RateLimitPolicy.builder().rate(20, 1).build();
+        long started = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            Purchase.find("071-P-ABC123D5", ctx);
+        }
+        List<CompletableFuture<Purchase>> futures = new ArrayList<CompletableFuture<Purchase>>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(Purchase.findAsync("071-P-ABC123D" + i, ctx));
+        }
+        for (CompletableFuture<Purchase> future : futures) {
+            Assert.assertTrue(future.get(5, TimeUnit.SECONDS).successful);
+        }
+        // the first request is free, the other five wait 50ms each
+        Assert.assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(240));
+        Assert.assertEquals(6, transport.count());
+    }
+
+    @Test
+    public void testAdaptsToThrottling() throws Exception {
+        ctx.rateLimitPolicy = RateLimitPolicy.builder().rate(100, 10).maxWait(0).build();
+        RateLimiter limiter = ctx.getRateLimiter(Operation.FIND);
+        transport.otherwise(THROTTLED);
+        try {
+            Purchase.find("071-P-ABC123D5", ctx);
+            Assert.fail("Expected an APIError");
+        } catch (APIError ex) {
+            Assert.assertEquals(429, ex.getStatus());
+        }
+        Assert.assertEquals(50, limiter.getRate(), 0.1);
+        // paused for the Retry-After, despite the tokens left in the bucket
+        try {
+            Purchase.find("071-P-ABC123D5", ctx);
+            Assert.fail("Expected a RateLimitedError");
+        } catch (RateLimitedError ex) {
+            Assert.assertTrue(ex.getRetryAfter() > 900);
+        }
+        Assert.assertEquals(1, transport.count());
+
+        for (int i = 0; i < 20; i++) {
+            limiter.onResponse(200, Collections.<String, List<String>>emptyMap());
+        }
+        Assert.assertEquals(100, limiter.getRate(), 0.1);
+    }
+
+    @Test
+    public void testStaticLimitIgnoresThrottling() throws Exception {
+        ctx.rateLimitPolicy = RateLimitPolicy.builder().rate(100, 10).adaptive(false).build();
+        RateLimiter limiter = ctx.getRateLimiter(Operation.FIND);
+        limiter.onResponse(429, Collections.singletonMap("Retry-After", Collections.singletonList("5")));
+        Assert.assertEquals(100, limiter.getRate(), 0.1);
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+}
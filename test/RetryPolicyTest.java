@@ -0,0 +1,131 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import au.com.fatzebra.javalib.models.Refund;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class RetryPolicyTest {
+    private static final String RETRY_DECLINE = "{\"successful\":true,\"response\":{\"id\":\"071-P-ABC123D4\",\"amount\":100,\"successful\":false,\"response_code\":\"90\"},\"errors\":[],\"test\":true}";
+    private static final ScriptedTransport.Reply NOT_FOUND = ScriptedTransport.reply(404, "{\"successful\":false,\"response\":null,\"errors\":[\"Could not find Purchase\"],\"test\":true}");
+
+    private ScriptedTransport transport;
+    private GatewayContext ctx;
+
+    @Before
+    public void setUp() {
+        transport = new ScriptedTransport();
+        ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.transport = transport;
+        ctx.retryPolicy = RetryPolicy.builder().backoff(0, 0).build();
+    }
+
+    private static PurchaseRequest purchaseRequest() {
+        PurchaseRequest request = new PurchaseRequest();
+        request.setAmount(100);
+        request.setReference("RETRY-1");
+        return request;
+    }
+
+    @Test
+    public void testRetriesPurchaseWhichWasNeverSent() throws Exception {
+        transport.then(new ConnectException("Connection refused")).then(ScriptedTransport.APPROVED);
+
+        Purchase purchase = Purchase.create(purchaseRequest(), ctx);
+
+        Assert.assertTrue(purchase.successful);
+        Assert.assertEquals(Arrays.asList("POST /v1.0/purchases", "POST /v1.0/purchases"), transport.paths());
+    }
+
+    @Test
+    public void testReconcilesPurchaseWhichMayHaveBeenProcessed() throws Exception {
+        transport.then(new SocketTimeoutException("Read timed out")).then(ScriptedTransport.APPROVED);
+
+        Purchase purchase = Purchase.create(purchaseRequest(), ctx);
+
+        Assert.assertEquals("071-P-ABC123D5", purchase.id);
+        Assert.assertEquals(Arrays.asList("POST /v1.0/purchases", "GET /v1.0/purchases/RETRY-1"), transport.paths());
+    }
+
+    @Test
+    public void testRepostsPurchaseUnknownToTheGateway() throws Exception {
+        transport.then(new SocketTimeoutException("Read timed out")).then(NOT_FOUND).then(ScriptedTransport.APPROVED);
+
+        Purchase purchase = Purchase.create(purchaseRequest(), ctx);
+
+        Assert.assertTrue(purchase.successful);
+        Assert.assertEquals(Arrays.asList("POST /v1.0/purchases", "GET /v1.0/purchases/RETRY-1", "POST /v1.0/purchases"), transport.paths());
+    }
+
+    @Test
+    public void testDoesNotRetryRefundWhichMayHaveBeenProcessed() throws Exception {
+        transport.then(new SocketTimeoutException("Read timed out")).then(ScriptedTransport.APPROVED);
+
+        try {
+            Refund.create(100, "071-P-ABC123D5", "REFUND-1", ctx);
+            Assert.fail("Expected a NetworkError");
+        } catch (NetworkError ex) {
+            Assert.assertTrue(ex.getTimeout());
+            Assert.assertEquals("Timed out waiting for the Gateway: Read timed out", ex.getMessage());
+            Assert.assertTrue(ex.getInnerException() instanceof SocketTimeoutException);
+        }
+        Assert.assertEquals(1, transport.requests.size());
+    }
+
+    @Test
+    public void testBudgetLimitsRetries() throws Exception {
+        ctx.retryPolicy = RetryPolicy.builder().backoff(0, 0).budget(0, 1).build();
+        for (int i = 0; i < 4; i++) {
+            transport.then(new ConnectException("Connection refused"));
+        }
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                Purchase.find("071-P-ABC123D5", ctx);
+                Assert.fail("Expected a NetworkError");
+            } catch (NetworkError ex) {
+                Assert.assertTrue(ex.getInnerException() instanceof ConnectException);
+            }
+        }
+        // one retry for the first find, none left for the second
+        Assert.assertEquals(3, transport.requests.size());
+    }
+
+    @Test
+    public void testAsyncRetriesTemporaryDecline() throws Exception {
+        ctx.retryPolicy = RetryPolicy.builder().backoff(10, 10).retryDeclines(Operation.PURCHASE, true).build();
+        transport.then(RETRY_DECLINE).then(ScriptedTransport.APPROVED);
+
+        Purchase purchase = Purchase.createAsync(purchaseRequest(), ctx).get(5, TimeUnit.SECONDS);
+
+        Assert.assertTrue(purchase.successful);
+        Assert.assertEquals(2, transport.requests.size());
+
+        ctx.retryPolicy = RetryPolicy.NONE;
+        transport.then(RETRY_DECLINE);
+        Assert.assertFalse(Purchase.createAsync(purchaseRequest(), ctx).get(5, TimeUnit.SECONDS).successful);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testRequestWithoutOperationIsInferred() throws Exception {
+        Resource.doRequest("purchases/071-P-ABC123D5", null, Resource.RequestType.GET, Purchase.class, ctx);
+        Resource.doRequest("refunds", null, Resource.RequestType.POST, Refund.class, ctx);
+        Resource.doRequest("purchases/071-P-ABC123D5/capture", null, Resource.RequestType.POST, Purchase.class, ctx);
+        Resource.doRequest("purchases", null, Resource.RequestType.POST, Purchase.class, ctx);
+
+        Assert.assertEquals(Operation.FIND, transport.requests.get(0).getOperation());
+        Assert.assertEquals(Operation.REFUND, transport.requests.get(1).getOperation());
+        Assert.assertEquals(Operation.CAPTURE, transport.requests.get(2).getOperation());
+        Assert.assertEquals(Operation.PURCHASE, transport.requests.get(3).getOperation());
+    }
+}
@@ -0,0 +1,181 @@
+package au.com.fatzebra.javalib.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for the gateway in tests, playing back a script of replies and failures and recording every request.
+ * Once the script has run out each request gets the fallback, which approves it unless the test sets another.
+ *
+ * Tests give it to their own context with ctx.transport (or to a client builder), so the shared transport is left
+ * alone.
+ */
+public class ScriptedTransport implements Transport {
+    public static final String APPROVED = "{\"successful\":true,\"response\":{\"id\":\"071-P-ABC123D5\",\"reference\":\"ORDER-1\",\"amount\":100,\"successful\":true,\"response_code\":\"00\"},\"errors\":[],\"test\":true}";
+    public static final String DECLINED = "{\"successful\":true,\"response\":{\"id\":\"071-P-ABC123D4\",\"reference\":\"ORDER-1\",\"amount\":100,\"successful\":false,\"response_code\":\"05\"},\"errors\":[],\"test\":true}";
+    public static final Reply INVALID = reply(422, "{\"successful\":false,\"response\":null,\"errors\":[\"Amount is invalid\"],\"test\":true}");
+
+    /**
+     * Works out the reply to a request: a response body, a {@link Reply}, or an IOException to throw
+     */
+    public interface Responder {
+        Object respond(TransportRequest request) throws IOException;
+    }
+
+    /**
+     * A response body with its status and headers
+     */
+    public static final class Reply {
+        final int status;
+        final Map<String, List<String>> headers;
+        final String body;
+
+        private Reply(int status, Map<String, List<String>> headers, String body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /**
+         * Gets the response body
+         * @return the body
+         */
+        public String getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * The requests received, in order
+     */
+    public final List<TransportRequest> requests = new CopyOnWriteArrayList<TransportRequest>();
+
+    private final Queue<Object> script = new ConcurrentLinkedQueue<Object>();
+    private volatile Responder fallback = request -> APPROVED;
+    private volatile CountDownLatch gate;
+
+    /**
+     * Builds a reply with a status other than 200
+     * @param status the HTTP status
+     * @param body the response body
+     * @return the reply
+     */
+    public static Reply reply(int status, String body) {
+        return reply(status, Collections.<String, List<String>>emptyMap(), body);
+    }
+
+    /**
+     * Builds a reply with headers
+     * @param status the HTTP status
+     * @param headers the response headers
+     * @param body the response body
+     * @return the reply
+     */
+    public static Reply reply(int status, Map<String, List<String>> headers, String body) {
+        return new Reply(status, headers, body);
+    }
+
+    /**
+     * Adds a step to the script
+     * @param step a response body (sent with status 200), a {@link Reply}, or an IOException to throw
+     * @return this transport
+     */
+    public ScriptedTransport then(Object step) {
+        script.add(step);
+        return this;
+    }
+
+    /**
+     * Sets the reply to every request once the script has run out
+     * @param step a response body, a {@link Reply}, or an IOException to throw
+     * @return this transport
+     */
+    public ScriptedTransport otherwise(final Object step) {
+        return otherwise(request -> step);
+    }
+
+    /**
+     * Works out the reply to each request once the script has run out
+     * @param responder the responder
+     * @return this transport
+     */
+    public ScriptedTransport otherwise(Responder responder) {
+        this.fallback = responder;
+        return this;
+    }
+
+    /**
+     * Holds every request until {@link #release()} is called, for up to five seconds
+     * @return this transport
+     */
+    public ScriptedTransport hold() {
+        this.gate = new CountDownLatch(1);
+        return this;
+    }
+
+    /**
+     * Lets the held requests, and any after them, through
+     */
+    public void release() {
+        CountDownLatch gate = this.gate;
+        this.gate = null;
+        if (gate != null) {
+            gate.countDown();
+        }
+    }
+
+    /**
+     * Gets the number of requests received
+     * @return the request count
+     */
+    public int count() {
+        return requests.size();
+    }
+
+    /**
+     * Gets the method and path of each request, such as "POST /v1.0/purchases"
+     * @return the methods and paths, in order
+     */
+    public List<String> paths() {
+        List<String> paths = new ArrayList<String>();
+        for (TransportRequest request : requests) {
+            paths.add(request.getMethod() + " " + request.getUrl().getPath());
+        }
+        return paths;
+    }
+
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        requests.add(request);
+        CountDownLatch gate = this.gate;
+        if (gate != null) {
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+        Object step = script.poll();
+        if (step == null) {
+            step = fallback.respond(request);
+        }
+        if (step instanceof IOException) {
+            throw (IOException) step;
+        }
+        Reply reply = step instanceof Reply ? (Reply) step : reply(200, (String) step);
+        return new TransportResponse(reply.status, reply.headers,
+                new ByteArrayInputStream(reply.body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void close() {
+    }
+}
@@ -0,0 +1,120 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.errors.DeadlineExceededError;
+import au.com.fatzebra.javalib.errors.NetworkError;
+import au.com.fatzebra.javalib.models.Purchase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class SingleFlightTest {
+    private ScriptedTransport transport;
+    private GatewayContext ctx;
+    private ExecutorService threads;
+
+    @Before
+    public void setUp() {
+        transport = new ScriptedTransport().hold();
+        ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.transport = transport;
+        ctx.retryPolicy = RetryPolicy.NONE;
+        ctx.circuitBreakerPolicy = CircuitBreakerPolicy.DISABLED;
+        ctx.coalesceFinds = true;
+        threads = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    private List<Future<Purchase>> findConcurrently(int count) throws Exception {
+        List<Future<Purchase>> results = new ArrayList<Future<Purchase>>();
+        for (int i = 0; i < count; i++) {
+            results.add(threads.submit(() -> Purchase.find("ORDER-1", ctx)));
+        }
+        results.add(Purchase.findAsync("ORDER-1", ctx));
+        while (transport.count() == 0 || ctx.getFinds().size() == 0) {
+            Thread.sleep(1);
+        }
+        // give the other finds time to join
+        Thread.sleep(50);
+        return results;
+    }
+
+    @Test
+    public void testConcurrentFindsShareOneRequest() throws Exception {
+        List<Future<Purchase>> results = findConcurrently(4);
+        transport.release();
+
+        Purchase first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<Purchase> result : results) {
+            Assert.assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, transport.count());
+        Assert.assertEquals(0, ctx.getFinds().size());
+
+        // nothing is kept once the find completes
+        Purchase.find("ORDER-1", ctx);
+        Assert.assertEquals(2, transport.count());
+    }
+
+    @Test
+    public void testConcurrentFindsShareFailure() throws Exception {
+        transport.otherwise(new ConnectException("Connection refused"));
+        List<Future<Purchase>> results = findConcurrently(2);
+        transport.release();
+
+        for (Future<Purchase> result : results) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                Assert.fail("Expected a NetworkError");
+            } catch (ExecutionException ex) {
+                Assert.assertTrue(ex.getCause() instanceof NetworkError);
+            }
+        }
+        Assert.assertEquals(1, transport.count());
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void testWaitIsBoundedByTheDeadline() throws Exception {
+        Future<Purchase> leader = threads.submit(() -> Purchase.find("ORDER-1", ctx));
+        while (ctx.getFinds().size() == 0) {
+            Thread.sleep(1);
+        }
+        try (Deadline.Scope scope = Deadline.after(100, TimeUnit.MILLISECONDS).attach()) {
+            Purchase.find("ORDER-1", ctx);
+            Assert.fail("Expected the deadline to pass");
+        } catch (DeadlineExceededError ex) {
+            // expected
+        }
+        transport.release();
+        Assert.assertTrue(leader.get(5, TimeUnit.SECONDS).successful);
+        Assert.assertEquals(1, transport.count());
+    }
+
+    @Test
+    public void testCoalescingIsOffByDefault() throws Exception {
+        Assert.assertFalse(new GatewayContext().coalesceFinds);
+        ctx.coalesceFinds = false;
+        CompletableFuture<Purchase> first = Purchase.findAsync("ORDER-1", ctx);
+        CompletableFuture<Purchase> second = Purchase.findAsync("ORDER-1", ctx);
+        transport.release();
+
+        Assert.assertNotSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, transport.count());
+    }
+}
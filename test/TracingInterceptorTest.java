@@ -0,0 +1,142 @@
+package au.com.fatzebra.javalib.net;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.errors.APIError;
+import au.com.fatzebra.javalib.models.FatZebraResponse;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class TracingInterceptorTest {
+    private static final String PARENT = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+
+    private ScriptedTransport transport;
+    private List<TracingInterceptor.Span> spans;
+    private GatewayContext ctx;
+
+    @Before
+    public void setUp() {
+        transport = new ScriptedTransport();
+        spans = new CopyOnWriteArrayList<TracingInterceptor.Span>();
+        ctx = new GatewayContext("TEST", "TEST", true);
+        ctx.transport = transport;
+        ctx.retryPolicy = RetryPolicy.NONE;
+        ctx.circuitBreakerPolicy = CircuitBreakerPolicy.DISABLED;
+    }
+
+    private static PurchaseRequest purchaseRequest() {
+        PurchaseRequest request = new PurchaseRequest();
+        request.setAmount(100);
+        request.setReference("ORDER-1");
+        return request;
+    }
+
+    @Test
+    public void testContinuesCallersTrace() throws Exception {
+        ctx.interceptors = Collections.<Interceptor>singletonList(new TracingInterceptor(spans::add, () -> PARENT));
+        transport.then(ScriptedTransport.DECLINED);
+
+        Purchase.create(purchaseRequest(), ctx);
+
+        Map<String, String> sent = transport.requests.get(0).getHeaders();
+        Assert.assertNotNull(sent.get("Authorization"));
+        Assert.assertNotNull(sent.get("X-Client-User-Agent"));
+        String traceparent = sent.get(TracingInterceptor.TRACEPARENT);
+        Assert.assertTrue(TracingInterceptor.isValid(traceparent));
+        Assert.assertTrue(traceparent.startsWith("00-4bf92f3577b34da6a3ce929d0e0e4736-"));
+        Assert.assertFalse(traceparent.contains("00f067aa0ba902b7"));
+        // the context's cached headers are not modified
+        Assert.assertNull(ctx.getRequestHeaders().asMap().get(TracingInterceptor.TRACEPARENT));
+
+        Assert.assertEquals(1, spans.size());
+        TracingInterceptor.Span span = spans.get(0);
+        Assert.assertEquals(traceparent, span.getTraceparent());
+        Assert.assertEquals("00f067aa0ba902b7", span.getParentSpanId());
+        Assert.assertEquals(Operation.PURCHASE, span.getOperation());
+        Assert.assertEquals("ORDER-1", span.getReference());
+        Assert.assertEquals(200, span.getStatus());
+        Assert.assertEquals(5, span.getResponseCode().getCode());
+        Assert.assertNull(span.getError());
+    }
+
+    @Test
+    public void testReadsTheSampledBitFromTheTraceFlags() throws Exception {
+        String[] flags = {"00", "01", "02", "05", "0a", "0f", "ff"};
+        boolean[] sampled = {false, true, false, true, false, true, true};
+        for (int i = 0; i < flags.length; i++) {
+            final String parent = PARENT.substring(0, 53) + flags[i];
+            ctx.interceptors = Collections.<Interceptor>singletonList(new TracingInterceptor(spans::add, () -> parent));
+            transport.then(ScriptedTransport.DECLINED);
+            Purchase.create(purchaseRequest(), ctx);
+            Assert.assertEquals(flags[i], sampled[i], spans.get(i).isSampled());
+        }
+    }
+
+    @Test
+    public void testStartsNewTraceAndRecordsErrors() throws Exception {
+        ctx.interceptors = Collections.<Interceptor>singletonList(new TracingInterceptor(spans::add));
+        transport.then(ScriptedTransport.INVALID);
+        try {
+            Purchase.createAsync(purchaseRequest(), ctx).get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected an APIError");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof APIError);
+        }
+        for (int i = 0; i < 100 && spans.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+
+        TracingInterceptor.Span span = spans.get(0);
+        Assert.assertNull(span.getParentSpanId());
+        Assert.assertTrue(TracingInterceptor.isValid(span.getTraceparent()));
+        Assert.assertEquals(422, span.getStatus());
+        Assert.assertTrue(span.getError() instanceof APIError);
+    }
+
+    @Test
+    public void testInterceptorsRunInOrder() throws Exception {
+        final List<String> events = new CopyOnWriteArrayList<String>();
+        ctx.interceptors = Arrays.<Interceptor>asList(new Interceptor() {
+            public void beforeSend(GatewayCall call) {
+                events.add("a before " + call.getUsername());
+            }
+
+            public void afterReceive(GatewayCall call, FatZebraResponse<?> response) {
+                events.add("a after");
+            }
+        }, new Interceptor() {
+            public void beforeSend(GatewayCall call) {
+                events.add("b before");
+                throw new IllegalStateException("ignored");
+            }
+
+            public void afterReceive(GatewayCall call, FatZebraResponse<?> response) {
+                events.add("b after");
+            }
+        });
+        transport.then(ScriptedTransport.DECLINED);
+
+        Purchase.create(purchaseRequest(), ctx);
+        Assert.assertEquals(Arrays.asList("a before TEST", "b before", "b after", "a after"), events);
+    }
+
+    @Test
+    public void testValidatesTraceparent() {
+        Assert.assertTrue(TracingInterceptor.isValid(PARENT));
+        Assert.assertFalse(TracingInterceptor.isValid(null));
+        Assert.assertFalse(TracingInterceptor.isValid("00-00000000000000000000000000000000-00f067aa0ba902b7-01"));
+        Assert.assertFalse(TracingInterceptor.isValid("00-4bf92f3577b34da6a3ce929d0e0e4736-0000000000000000-01"));
+        Assert.assertFalse(TracingInterceptor.isValid("00-4BF92F3577B34DA6A3CE929D0E0E4736-00f067aa0ba902b7-01"));
+        Assert.assertFalse(TracingInterceptor.isValid("01-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01"));
+    }
+}
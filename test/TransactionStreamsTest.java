@@ -0,0 +1,252 @@
+package au.com.fatzebra.javalib.stream;
+
+import au.com.fatzebra.javalib.GatewayContext;
+import au.com.fatzebra.javalib.models.Purchase;
+import au.com.fatzebra.javalib.models.PurchaseRequest;
+import au.com.fatzebra.javalib.net.CircuitBreakerPolicy;
+import au.com.fatzebra.javalib.net.RetryPolicy;
+import au.com.fatzebra.javalib.simulator.GatewaySimulator;
+import au.com.fatzebra.javalib.simulator.Latency;
+import au.com.fatzebra.javalib.simulator.Reply;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TransactionStreamsTest {
+    private GatewaySimulator simulator;
+    private GatewayContext ctx;
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = GatewaySimulator.builder()
+                .when(GatewaySimulator.amountCents(51), Reply.decline("51", "Declined - Insufficient Funds"))
+                .when(GatewaySimulator.amountCents(53), Reply.error(503, "Service unavailable"))
+                .latency(Latency.uniform(1, 30))
+                .start();
+        ctx = simulator.newContext();
+        ctx.retryPolicy = RetryPolicy.NONE;
+        ctx.circuitBreakerPolicy = CircuitBreakerPolicy.DISABLED;
+    }
+
+    @After
+    public void tearDown() {
+        simulator.close();
+    }
+
+    private static List<PurchaseRequest> requests(int... amounts) {
+        List<PurchaseRequest> requests = new ArrayList<PurchaseRequest>();
+        for (int amount : amounts) {
+            HashMap<String, Object> card = new HashMap<String, Object>();
+            card.put("card_holder", "Joe Smith");
+            card.put("card_number", "5123456789012346");
+            card.put("cvv", "123");
+            card.put("card_expiry", "05/2030");
+            PurchaseRequest request = new PurchaseRequest(card);
+            request.setAmount(amount);
+            request.setReference("STREAM-" + requests.size());
+            request.setCustomerIp("127.0.0.1");
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    private static int[] amounts(int count) {
+        int[] amounts = new int[count];
+        for (int i = 0; i < count; i++) {
+            amounts[i] = 100 + i;
+        }
+        return amounts;
+    }
+
+    @Test
+    public void testOrderedPurchasesStayWithinMaxInFlight() throws Exception {
+        SourcePublisher<PurchaseRequest> source = new SourcePublisher<PurchaseRequest>(requests(amounts(30)));
+        CollectingSubscriber<Result<Purchase>> subscriber = new CollectingSubscriber<Result<Purchase>>(Long.MAX_VALUE);
+        TransactionStreams.builder(ctx).maxInFlight(4).build().purchases(source).subscribe(subscriber);
+        subscriber.await();
+
+        Assert.assertNull(subscriber.error);
+        Assert.assertEquals(30, subscriber.items.size());
+        for (int i = 0; i < 30; i++) {
+            Result<Purchase> result = subscriber.items.get(i);
+            Assert.assertEquals(i, result.getIndex());
+            Assert.assertTrue(result.isSuccess());
+            Assert.assertEquals(100 + i, result.getValue().amount);
+        }
+        Assert.assertEquals(4, source.maxRequested.get());
+    }
+
+    @Test
+    public void testUnorderedEmitsEveryResultOnce() throws Exception {
+        SourcePublisher<PurchaseRequest> source = new SourcePublisher<PurchaseRequest>(requests(amounts(30)));
+        CollectingSubscriber<Result<Purchase>> subscriber = new CollectingSubscriber<Result<Purchase>>(Long.MAX_VALUE);
+        TransactionStreams.builder(ctx).maxInFlight(8).ordered(false).build().purchases(source).subscribe(subscriber);
+        subscriber.await();
+
+        Assert.assertNull(subscriber.error);
+        Assert.assertEquals(30, subscriber.items.size());
+        boolean[] seen = new boolean[30];
+        for (Result<Purchase> result : subscriber.items) {
+            int index = (int) result.getIndex();
+            Assert.assertFalse(seen[index]);
+            seen[index] = true;
+            Assert.assertEquals(100 + index, result.getValue().amount);
+        }
+    }
+
+    @Test
+    public void testSlowSubscriberHoldsBackTheSource() throws Exception {
+        SourcePublisher<PurchaseRequest> source = new SourcePublisher<PurchaseRequest>(requests(amounts(30)));
+        CollectingSubscriber<Result<Purchase>> subscriber = new CollectingSubscriber<Result<Purchase>>(1);
+        TransactionStreams.builder(ctx).maxInFlight(3).build().purchases(source).subscribe(subscriber);
+
+        // one result emitted frees one slot: 3 + 1 requests, after which everything waits for the subscriber
+        long deadline = System.currentTimeMillis() + 5000;
+        while (simulator.getRequestCount() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        Assert.assertEquals(1, subscriber.items.size());
+        Assert.assertEquals(4, source.emitted.get());
+        Assert.assertEquals(4, simulator.getRequestCount());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.await();
+        Assert.assertEquals(30, subscriber.items.size());
+        Assert.assertEquals(30, simulator.getRequestCount());
+    }
+
+    @Test
+    public void testFailedRequestsAreEmittedAsResults() throws Exception {
+        SourcePublisher<PurchaseRequest> source = new SourcePublisher<PurchaseRequest>(requests(100, 51, 53, 101));
+        CollectingSubscriber<Result<Purchase>> subscriber = new CollectingSubscriber<Result<Purchase>>(Long.MAX_VALUE);
+        TransactionStreams.builder(ctx).build().purchases(source).subscribe(subscriber);
+        subscriber.await();
+
+        Assert.assertNull(subscriber.error);
+        Assert.assertEquals(4, subscriber.items.size());
+        Assert.assertTrue(subscriber.items.get(0).getValue().successful);
+        Assert.assertTrue(subscriber.items.get(1).isSuccess());
+        Assert.assertFalse(subscriber.items.get(1).getValue().successful);
+        Assert.assertFalse(subscriber.items.get(2).isSuccess());
+        Assert.assertNotNull(subscriber.items.get(2).getError());
+        Assert.assertTrue(subscriber.items.get(3).getValue().successful);
+    }
+
+    @Test
+    public void testSecondSubscriberIsRejected() throws Exception {
+        Publisher<Result<Purchase>> purchases = TransactionStreams.builder(ctx).build()
+                .purchases(new SourcePublisher<PurchaseRequest>(requests()));
+        CollectingSubscriber<Result<Purchase>> first = new CollectingSubscriber<Result<Purchase>>(Long.MAX_VALUE);
+        CollectingSubscriber<Result<Purchase>> second = new CollectingSubscriber<Result<Purchase>>(Long.MAX_VALUE);
+        purchases.subscribe(first);
+        purchases.subscribe(second);
+        first.await();
+        second.await();
+
+        Assert.assertNull(first.error);
+        Assert.assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testNonPositiveRequestCancelsWithAnError() throws Exception {
+        SourcePublisher<PurchaseRequest> source = new SourcePublisher<PurchaseRequest>(requests(amounts(5)));
+        CollectingSubscriber<Result<Purchase>> subscriber = new CollectingSubscriber<Result<Purchase>>(0);
+        TransactionStreams.builder(ctx).build().purchases(source).subscribe(subscriber);
+        subscriber.await();
+
+        Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+        Assert.assertEquals(0, subscriber.items.size());
+        Assert.assertEquals(0, source.emitted.get());
+    }
+
+    /**
+     * Publishes a list as it is requested, tracking the most items requested and not yet delivered
+     */
+    private static final class SourcePublisher<T> implements Publisher<T> {
+        private final Iterator<T> items;
+        final AtomicInteger emitted = new AtomicInteger();
+        final AtomicLong maxRequested = new AtomicLong();
+
+        SourcePublisher(List<T> items) {
+            this.items = items.iterator();
+        }
+
+        public void subscribe(final Subscriber<? super T> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                private final AtomicLong requested = new AtomicLong();
+                private final AtomicInteger wip = new AtomicInteger();
+                private volatile boolean cancelled;
+                private boolean done;
+
+                public void request(long n) {
+                    long outstanding = requested.addAndGet(n);
+                    maxRequested.accumulateAndGet(outstanding, Math::max);
+                    if (wip.getAndIncrement() != 0) {
+                        return;
+                    }
+                    do {
+                        while (!done && !cancelled && requested.get() > 0 && items.hasNext()) {
+                            requested.decrementAndGet();
+                            emitted.incrementAndGet();
+                            subscriber.onNext(items.next());
+                        }
+                        if (!done && !cancelled && !items.hasNext()) {
+                            done = true;
+                            subscriber.onComplete();
+                        }
+                    } while (wip.decrementAndGet() != 0);
+                }
+
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    private static final class CollectingSubscriber<T> implements Subscriber<T> {
+        private final long initialRequest;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        final List<T> items = new ArrayList<T>();
+        volatile Subscription subscription;
+        volatile Throwable error;
+
+        CollectingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        public synchronized void onNext(T item) {
+            items.add(item);
+        }
+
+        public void onError(Throwable error) {
+            this.error = error;
+            finished.countDown();
+        }
+
+        public void onComplete() {
+            finished.countDown();
+        }
+
+        void await() throws InterruptedException {
+            Assert.assertTrue("the stream did not finish", finished.await(30, TimeUnit.SECONDS));
+        }
+    }
+}